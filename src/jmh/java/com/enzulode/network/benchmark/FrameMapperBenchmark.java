@@ -0,0 +1,69 @@
+package com.enzulode.network.benchmark;
+
+import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.mapper.FrameMapper;
+import com.enzulode.network.model.transport.UDPFrame;
+import com.enzulode.network.util.NetworkUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link FrameMapper} encoding and decoding of a single frame
+ *
+ */
+@State(Scope.Thread)
+public class FrameMapperBenchmark
+{
+	/**
+	 * Frame payload size: from a tiny frame to a full default sized frame
+	 *
+	 */
+	@Param({"64", "512", "1444"})
+	public int payloadSize;
+
+	/**
+	 * Frame checksum state
+	 *
+	 */
+	@Param({"false", "true"})
+	public boolean checksum;
+
+	/**
+	 * Frame to be encoded
+	 *
+	 */
+	private UDPFrame frame;
+
+	/**
+	 * Encoded frame to be decoded
+	 *
+	 */
+	private byte[] frameBytes;
+
+	@Setup
+	public void setup() throws MappingException
+	{
+		byte[] payload = new byte[payloadSize];
+		ThreadLocalRandom.current().nextBytes(payload);
+
+		frame = NetworkUtils.wrapBytesWithUDPFrame(payload, NetworkUtils.nextMessageId());
+		frameBytes = FrameMapper.mapFromInstanceToBytes(frame, checksum);
+	}
+
+	@Benchmark
+	public byte[] encode() throws MappingException
+	{
+		return FrameMapper.mapFromInstanceToBytes(frame, checksum);
+	}
+
+	@Benchmark
+	public UDPFrame decode() throws MappingException
+	{
+		return FrameMapper.mapFromBytesToInstance(frameBytes, 0, frameBytes.length);
+	}
+}
@@ -0,0 +1,98 @@
+package com.enzulode.network.benchmark;
+
+import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.mapper.RequestMapper;
+import com.enzulode.network.model.interconnection.Request;
+import com.enzulode.network.model.transport.UDPFrame;
+import com.enzulode.network.util.NetworkUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * {@link NetworkUtils} message framing: splitting into chunks, wrapping chunks with frames,
+ * encoding frames and reassembling the message from frames
+ *
+ */
+@State(Scope.Thread)
+public class FramingBenchmark
+{
+	/**
+	 * Message payload size from 64 B to 16 MB
+	 *
+	 */
+	@Param({"64", "1024", "16384", "262144", "1048576", "16777216"})
+	public int payloadSize;
+
+	/**
+	 * Mapped request
+	 *
+	 */
+	private byte[] requestBytes;
+
+	/**
+	 * Request chunks
+	 *
+	 */
+	private List<byte[]> chunks;
+
+	/**
+	 * Request frames
+	 *
+	 */
+	private List<UDPFrame> frames;
+
+	/**
+	 * Request frame payload size
+	 *
+	 */
+	private int framePayloadSize;
+
+	@Setup
+	public void setup() throws MappingException
+	{
+		framePayloadSize = NetworkUtils.payloadSize(NetworkUtils.DEFAULT_FRAME_SIZE);
+		requestBytes = RequestMapper.mapFromInstanceToBytes(new PayloadRequest(payloadSize));
+		chunks = NetworkUtils.splitIntoChunks(requestBytes, framePayloadSize);
+		frames = NetworkUtils.wrapChunksWithUDPFrames(chunks, NetworkUtils.nextMessageId(), null);
+	}
+
+	@Benchmark
+	public List<byte[]> splitIntoChunks()
+	{
+		return NetworkUtils.splitIntoChunks(requestBytes, framePayloadSize);
+	}
+
+	@Benchmark
+	public List<UDPFrame> wrapChunksWithUDPFrames()
+	{
+		return NetworkUtils.wrapChunksWithUDPFrames(chunks, NetworkUtils.nextMessageId(), null);
+	}
+
+	@Benchmark
+	public List<byte[]> udpFramesToBytes() throws NetworkException
+	{
+		return NetworkUtils.udpFramesToBytes(frames, false);
+	}
+
+	@Benchmark
+	public byte[] concatReassembly()
+	{
+		byte[] message = new byte[0];
+		for (UDPFrame frame : frames)
+			message = NetworkUtils.concatTwoByteArrays(message, frame.data());
+
+		return message;
+	}
+
+	@Benchmark
+	public Request requestFromFrames() throws NetworkException
+	{
+		return NetworkUtils.requestFromFrames(frames);
+	}
+}
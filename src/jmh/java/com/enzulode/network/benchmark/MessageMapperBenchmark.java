@@ -0,0 +1,84 @@
+package com.enzulode.network.benchmark;
+
+import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.mapper.RequestMapper;
+import com.enzulode.network.mapper.ResponseMapper;
+import com.enzulode.network.model.interconnection.Request;
+import com.enzulode.network.model.interconnection.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link RequestMapper} and {@link ResponseMapper} serialization and deserialization
+ *
+ */
+@State(Scope.Thread)
+public class MessageMapperBenchmark
+{
+	/**
+	 * Message payload size from 64 B to 16 MB
+	 *
+	 */
+	@Param({"64", "1024", "16384", "262144", "1048576", "16777216"})
+	public int payloadSize;
+
+	/**
+	 * Request to be mapped
+	 *
+	 */
+	private PayloadRequest request;
+
+	/**
+	 * Response to be mapped
+	 *
+	 */
+	private PayloadResponse response;
+
+	/**
+	 * Mapped request
+	 *
+	 */
+	private byte[] requestBytes;
+
+	/**
+	 * Mapped response
+	 *
+	 */
+	private byte[] responseBytes;
+
+	@Setup
+	public void setup() throws MappingException
+	{
+		request = new PayloadRequest(payloadSize);
+		response = new PayloadResponse(payloadSize);
+		requestBytes = RequestMapper.mapFromInstanceToBytes(request);
+		responseBytes = ResponseMapper.mapFromInstanceToBytes(response);
+	}
+
+	@Benchmark
+	public byte[] requestToBytes() throws MappingException
+	{
+		return RequestMapper.mapFromInstanceToBytes(request);
+	}
+
+	@Benchmark
+	public Request requestFromBytes() throws MappingException
+	{
+		return RequestMapper.mapFromBytesToInstance(requestBytes);
+	}
+
+	@Benchmark
+	public byte[] responseToBytes() throws MappingException
+	{
+		return ResponseMapper.mapFromInstanceToBytes(response);
+	}
+
+	@Benchmark
+	public Response responseFromBytes() throws MappingException
+	{
+		return ResponseMapper.mapFromBytesToInstance(responseBytes);
+	}
+}
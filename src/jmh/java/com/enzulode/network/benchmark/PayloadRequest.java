@@ -0,0 +1,47 @@
+package com.enzulode.network.benchmark;
+
+import com.enzulode.network.model.interconnection.Request;
+
+import java.io.Serial;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmark request carrying a random payload
+ *
+ */
+public final class PayloadRequest extends Request
+{
+	/**
+	 * Serial UID
+	 *
+	 */
+	@Serial
+	private static final long serialVersionUID = 4120968721556309183L;
+
+	/**
+	 * Request payload
+	 *
+	 */
+	private final byte[] payload;
+
+	/**
+	 * Payload request constructor
+	 *
+	 * @param size payload size in bytes
+	 */
+	public PayloadRequest(int size)
+	{
+		this.payload = new byte[size];
+		ThreadLocalRandom.current().nextBytes(payload);
+	}
+
+	/**
+	 * Payload getter
+	 *
+	 * @return request payload
+	 */
+	public byte[] getPayload()
+	{
+		return payload;
+	}
+}
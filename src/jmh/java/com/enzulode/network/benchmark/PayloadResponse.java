@@ -0,0 +1,50 @@
+package com.enzulode.network.benchmark;
+
+import com.enzulode.network.model.interconnection.Response;
+import com.enzulode.network.model.interconnection.util.ResponseCode;
+
+import java.io.Serial;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmark response carrying a random payload
+ *
+ */
+public final class PayloadResponse extends Response
+{
+	/**
+	 * Serial UID
+	 *
+	 */
+	@Serial
+	private static final long serialVersionUID = -2395611043075160447L;
+
+	/**
+	 * Response payload
+	 *
+	 */
+	private final byte[] payload;
+
+	/**
+	 * Payload response constructor
+	 *
+	 * @param size payload size in bytes
+	 */
+	public PayloadResponse(int size)
+	{
+		super(ResponseCode.SUCCEED);
+
+		this.payload = new byte[size];
+		ThreadLocalRandom.current().nextBytes(payload);
+	}
+
+	/**
+	 * Payload getter
+	 *
+	 * @return response payload
+	 */
+	public byte[] getPayload()
+	{
+		return payload;
+	}
+}
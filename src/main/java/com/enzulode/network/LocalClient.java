@@ -0,0 +1,173 @@
+package com.enzulode.network;
+
+import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.exception.ServerNotAvailableException;
+import com.enzulode.network.mapper.RequestMapper;
+import com.enzulode.network.mapper.ResponseMapper;
+import com.enzulode.network.metrics.LatencyStage;
+import com.enzulode.network.metrics.NetworkMetrics;
+import com.enzulode.network.model.interconnection.Request;
+import com.enzulode.network.model.interconnection.Response;
+import com.enzulode.network.protocol.LocalEndpoint;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Objects;
+
+/**
+ * This class is an in-process client of a server running in the same JVM.
+ * Requests are handed to the server request handler as they are: they are not serialized, framed or sent over loopback,
+ * so the handler and the client must not modify shared instances unless the defensive copy is enabled
+ *
+ */
+public final class LocalClient implements AutoCloseable
+{
+	/**
+	 * Name of the server local endpoint
+	 *
+	 */
+	private final String endpointName;
+
+	/**
+	 * Local address instance
+	 *
+	 */
+	private final InetSocketAddress localAddress;
+
+	/**
+	 * Network metrics instance
+	 *
+	 */
+	private final NetworkMetrics metrics;
+
+	/**
+	 * Defensive copy state
+	 *
+	 */
+	private volatile boolean defensiveCopy;
+
+	/**
+	 * Client state
+	 *
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Local client constructor
+	 *
+	 * @param endpointName name the server was bound to with {@code bindLocal}
+	 */
+	public LocalClient(String endpointName)
+	{
+//		Requiring endpoint name to be non-null
+		Objects.requireNonNull(endpointName, "Endpoint name cannot be null");
+
+		this.endpointName = endpointName;
+		this.localAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+		this.metrics = new NetworkMetrics();
+	}
+
+	/**
+	 * Endpoint name getter
+	 *
+	 * @return name of the server local endpoint
+	 */
+	public String getEndpointName()
+	{
+		return endpointName;
+	}
+
+	/**
+	 * Client address getter
+	 *
+	 * @return client address instance
+	 */
+	public InetSocketAddress getLocalAddress()
+	{
+		return localAddress;
+	}
+
+	/**
+	 * This method enables or disables the defensive copy.
+	 * If enabled, the handler gets a copy of the request and the client gets a copy of the response,
+	 * so neither side sees the instances of the other one. Copies are made by serialization
+	 *
+	 * @param defensiveCopy true to copy requests and responses and false to hand them over as they are
+	 */
+	public void setDefensiveCopy(boolean defensiveCopy)
+	{
+		this.defensiveCopy = defensiveCopy;
+	}
+
+	/**
+	 * Network metrics getter
+	 *
+	 * @return network metrics instance
+	 */
+	public NetworkMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * This method allows you to send a request and receive a response for it
+	 *
+	 * @param <T> means the expected type of response
+	 * @param request request to be sent
+	 * @return a response instance
+	 * @throws NetworkException if the client was closed, the server request handler was not set or
+	 * the defensive copy failed
+	 * @throws ServerNotAvailableException if no server is bound to the endpoint name
+	 */
+	public <T extends Response> T sendRequestAndWaitResponse(Request request) throws NetworkException, ServerNotAvailableException
+	{
+//		Requiring request to be non-null
+		Objects.requireNonNull(request, "Request cannot be null");
+
+		if (closed)
+			throw new NetworkException("Failed to send the request: client was closed");
+
+		LocalEndpoint endpoint = LocalEndpoint.lookup(endpointName);
+		if (endpoint == null)
+			throw new ServerNotAvailableException("Server is not bound to the local endpoint " + endpointName);
+
+//		Readjusting request addresses
+		request.setFrom(localAddress);
+		request.setTo(endpoint.getServerAddress());
+
+		long sendingStart = System.nanoTime();
+		boolean copy = defensiveCopy;
+
+		try
+		{
+			Request handedRequest = copy
+					? RequestMapper.mapFromBytesToInstance(RequestMapper.mapFromInstanceToBytes(request))
+					: request;
+
+			Response response = endpoint.call(handedRequest, localAddress);
+			if (copy)
+				response = ResponseMapper.mapFromBytesToInstance(ResponseMapper.mapFromInstanceToBytes(response));
+
+			metrics.recordLatency(LatencyStage.ROUND_TRIP, request.getClass(), System.nanoTime() - sendingStart);
+			@SuppressWarnings("unchecked")
+			T typedResponse = (T) response;
+			return typedResponse;
+		}
+		catch (MappingException e)
+		{
+			throw new NetworkException("Failed to copy the request or the response", e);
+		}
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Allows to use this class in the try-with-resources construction
+	 *
+	 */
+	@Override
+	public void close()
+	{
+		closed = true;
+	}
+}
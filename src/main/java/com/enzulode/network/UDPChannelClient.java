@@ -1,27 +1,19 @@
 package com.enzulode.network;
 
-import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.compression.CompressionDictionary;
 import com.enzulode.network.exception.NetworkException;
 import com.enzulode.network.exception.ServerNotAvailableException;
-import com.enzulode.network.mapper.FrameMapper;
-import com.enzulode.network.mapper.RequestMapper;
-import com.enzulode.network.mapper.ResponseMapper;
+import com.enzulode.network.fec.FecScheme;
+import com.enzulode.network.metrics.NetworkMetrics;
 import com.enzulode.network.model.interconnection.Request;
 import com.enzulode.network.model.interconnection.Response;
-import com.enzulode.network.model.interconnection.impl.PingRequest;
-import com.enzulode.network.model.interconnection.impl.PongResponse;
-import com.enzulode.network.model.transport.UDPFrame;
-import com.enzulode.network.util.NetworkUtils;
+import com.enzulode.network.protocol.ClientProtocol;
+import com.enzulode.network.transport.ChannelDatagramTransport;
+import com.enzulode.network.transport.DatagramTransport;
+import com.enzulode.network.util.ReassemblyArena;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.SocketAddress;
-import java.net.SocketTimeoutException;
-import java.net.StandardSocketOptions;
-import java.nio.ByteBuffer;
-import java.nio.channels.DatagramChannel;
-import java.util.List;
 import java.util.Objects;
 
 /**
@@ -30,6 +22,18 @@ import java.util.Objects;
  */
 public class UDPChannelClient implements AutoCloseable
 {
+	/**
+	 * Pause between request frames in milliseconds
+	 *
+	 */
+	private static final long PACING = 0;
+
+	/**
+	 * The longest wait for the next response frame in milliseconds
+	 *
+	 */
+	private static final long RESPONSE_TIMEOUT = 5000;
+
 	/**
 	 * Local address instance
 	 *
@@ -43,15 +47,15 @@ public class UDPChannelClient implements AutoCloseable
 	private final InetSocketAddress serverAddress;
 
 	/**
-	 * Datagram channel instance
+	 * Client protocol instance
 	 *
 	 */
-	private final DatagramChannel channel;
+	private final ClientProtocol protocol;
 
 	/**
 	 * UDPChannel client constructor with default params
 	 *
-	 * @throws NetworkException if it's failed to open a channel
+	 * @throws NetworkException if it's failed to open a datagram channel
 	 */
 	public UDPChannelClient() throws NetworkException
 	{
@@ -59,44 +63,47 @@ public class UDPChannelClient implements AutoCloseable
 	}
 
 	/**
-	 * UDPSocket client constructor.
+	 * UDPChannel client constructor.
 	 *
-	 * @param localPort the port, UDPSocket will be bind to (0 - any available port automatically / provide your own port)
+	 * @param localPort the port, the client will be bind to (0 - any available port automatically / provide your own port)
 	 * @param serverHost the remote server host
 	 * @param serverPort the remote server port
 	 * @throws NetworkException if it's failed to open a datagram channel
 	 */
 	public UDPChannelClient(int localPort, String serverHost, int serverPort) throws NetworkException
 	{
-//		Requiring server host to be non-null
+		this(openUDPChannelTransport(), localPort, serverHost, serverPort);
+	}
+
+	/**
+	 * UDPChannel client constructor with the datagram transport specified.
+	 * The client takes the ownership of the transport and closes it
+	 *
+	 * @param transport unbound datagram transport instance
+	 * @param localPort the port, the transport will be bind to (0 - any available port automatically / provide your own port)
+	 * @param serverHost the remote server host
+	 * @param serverPort the remote server port
+	 * @throws NetworkException if it's failed to bind the transport
+	 */
+	public UDPChannelClient(DatagramTransport transport, int localPort, String serverHost, int serverPort) throws NetworkException
+	{
+//		Requiring transport and server host to be non-null
+		Objects.requireNonNull(transport, "Transport instance cannot be null");
 		Objects.requireNonNull(serverHost, "Server host cannot be null");
 
 		try
 		{
-			this.channel = DatagramChannel.open();
-
-			if (localPort == 0)
-			{
-				this.channel.bind(new InetSocketAddress("127.0.0.1", localPort));
-				this.localAddress = new InetSocketAddress("127.0.0.1", this.channel.socket().getLocalPort());
-			}
-			else
-			{
-				this.localAddress = new InetSocketAddress("127.0.0.1", localPort);
-				this.channel.bind(localAddress);
-			}
-
+			InetSocketAddress boundAddress = transport.bind(new InetSocketAddress("127.0.0.1", localPort));
+			this.localAddress = new InetSocketAddress("127.0.0.1", boundAddress.getPort());
 			this.serverAddress = new InetSocketAddress(serverHost, serverPort);
-
-//			Configure channel
-			this.channel.configureBlocking(false);
-			this.channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
-			this.channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
 		}
 		catch (IOException e)
 		{
-			throw new NetworkException("Failed to open datagram channel", e);
+			throw new NetworkException("Failed to bind the client transport", e);
 		}
+
+		this.protocol = new ClientProtocol(transport, localAddress, serverAddress, PACING, RESPONSE_TIMEOUT);
+		this.protocol.getMetrics().registerMBean(UDPChannelClient.class.getSimpleName(), localAddress);
 	}
 
 	/**
@@ -120,244 +127,238 @@ public class UDPChannelClient implements AutoCloseable
 	}
 
 	/**
-	 * This method allows you to send a request and receive a response for it
+	 * Datagram transport getter
 	 *
-	 * @param <T> means the expected type of response
-	 * @param request request to be sent
-	 * @return a response instance
-	 * @throws NetworkException if it failed to send the response to the server,
-	 * if the server response data was corrupted, if it failed to receive response from the server or
-	 * request mapping failed
-	 * @throws ServerNotAvailableException if server is not currently available
+	 * @return datagram transport instance
 	 */
-	public <T extends Response> T sendRequestAndWaitResponse(Request request) throws NetworkException, ServerNotAvailableException
+	public DatagramTransport getTransport()
 	{
-//		Requiring request to be non-null
-		Objects.requireNonNull(request, "Request cannot be null");
-
-//		Readjusting request addresses
-		request.setFrom(localAddress);
-		request.setTo(serverAddress);
+		return protocol.getTransport();
+	}
 
+	/**
+	 * This method requests the socket receive buffer size. The kernel may cap it,
+	 * the granted size is reported by the metrics
+	 *
+	 * @param size receive buffer size in bytes
+	 * @throws NetworkException if it's failed to set the buffer size
+	 */
+	public void setReceiveBufferSize(int size) throws NetworkException
+	{
 		try
 		{
-//			Map request instance to bytes array
-			byte[] requestBytes = RequestMapper.mapFromInstanceToBytes(request);
-
-//			If request size is more than default buffer size - send with overhead : else - send without overhead
-			if (requestBytes.length > NetworkUtils.REQUEST_BUFFER_SIZE)
-				sendRequestWithOverhead(requestBytes);
-			else
-				sendRequestNoOverhead(requestBytes);
-
-			return waitForResponse();
+			protocol.getTransport().setReceiveBufferSize(size);
 		}
-		catch (MappingException e)
+		catch (IOException e)
 		{
-			throw new NetworkException("Failed to map request from instance to bytes", e);
+			throw new NetworkException("Failed to set the receive buffer size", e);
 		}
 	}
 
 	/**
-	 * This method sends request with overhead after separation
+	 * This method requests the socket send buffer size. The kernel may cap it
 	 *
-	 * @param requestBytes raw request bytes
-	 * @throws NetworkException if it's failed to send a frame
-	 * @throws ServerNotAvailableException if server timeout exception was caught
+	 * @param size send buffer size in bytes
+	 * @throws NetworkException if it's failed to set the buffer size
 	 */
-	private void sendRequestWithOverhead(byte[] requestBytes) throws NetworkException, ServerNotAvailableException
+	public void setSendBufferSize(int size) throws NetworkException
 	{
-//		Require request bytes array to be non-null
-		Objects.requireNonNull(requestBytes, "Request bytes array cannot be null");
-
-//		Get response chunks from rew response bytes
-		List<byte[]> requestChunks = NetworkUtils.splitIntoChunks(requestBytes, NetworkUtils.RESPONSE_BUFFER_SIZE);
-
-//		Wrap chunks with UDPFrames
-		List<UDPFrame> udpFrames = NetworkUtils.wrapChunksWithUDPFrames(requestChunks);
-
-//		Map UDOFrames to bytes
-		List<byte[]> framesBytes = NetworkUtils.udpFramesToBytes(udpFrames);
-
-//		Sending all request frames to the server
 		try
 		{
-			long idx = 0;
-			for (byte[] frameBytes : framesBytes)
-			{
-				checkServerConnection();
-				channel.send(ByteBuffer.wrap(frameBytes), serverAddress);
-			}
-		}
-		catch (SocketTimeoutException e)
-		{
-			throw new ServerNotAvailableException("Server is not currently available", e);
+			protocol.getTransport().setSendBufferSize(size);
 		}
 		catch (IOException e)
 		{
-			throw new NetworkException("Failed to send response with an overhead", e);
+			throw new NetworkException("Failed to set the send buffer size", e);
 		}
 	}
 
 	/**
-	 * This method sends request without overhead
+	 * This method enables or disables the receive buffer auto-tuning: the buffer is grown
+	 * while the frames sequence gaps or the kernel drop counter show dropped datagrams
 	 *
-	 * @param requestBytes raw request bytes
-	 * @throws NetworkException if it's failed to send request
-	 * @throws ServerNotAvailableException if server timeout exception was caught
+	 * @param autoTuning auto-tuning state
 	 */
-	private void sendRequestNoOverhead(byte[] requestBytes) throws NetworkException, ServerNotAvailableException
+	public void setReceiveBufferAutoTuning(boolean autoTuning)
 	{
-//		Require request bytes array to be non-null
-		Objects.requireNonNull(requestBytes, "Request bytes array cannot be null");
-
-		try
-		{
-//			Wrap raw bytes with UDPFrame
-			UDPFrame udpFrame = new UDPFrame(requestBytes, true);
-
-//			Get UDPFrameBytes from UDPFrame instance
-			byte[] udpFrameBytes = FrameMapper.mapFromInstanceToBytes(udpFrame);
+		protocol.getReceiveBufferTuner().setEnabled(autoTuning);
+	}
 
-//			Trying to send the request
-			checkServerConnection();
-			channel.send(ByteBuffer.wrap(udpFrameBytes), serverAddress);
-		}
-		catch (SocketTimeoutException e)
-		{
-			throw new ServerNotAvailableException("Server is not currently available", e);
-		}
-		catch (MappingException e)
-		{
-			throw new NetworkException("Failed to map UDPFrame to raw bytes", e);
-		}
-		catch (IOException e)
-		{
-			throw new NetworkException("Failed to send request with no overhead", e);
-		}
+	/**
+	 * This method sets the frame size used for requests
+	 *
+	 * @param frameSize the whole datagram size in bytes, including frame overhead
+	 */
+	public void setFrameSize(int frameSize)
+	{
+		protocol.getFrameSizeResolver().setFrameSize(frameSize);
 	}
 
 	/**
-	 * Method checks the server availability
+	 * This method enables or disables path MTU discovery.
+	 * If enabled, requests are split into frames that fit the path MTU of the server
 	 *
-	 * @throws ServerNotAvailableException if server is not currently available
-	 * @throws NetworkException if something went wrong during sending or receiving something (but the server is ok)
+	 * @param pathMTUDiscovery true to enable path MTU discovery and false otherwise
 	 */
-	private void checkServerConnection() throws NetworkException, ServerNotAvailableException
+	public void setPathMTUDiscovery(boolean pathMTUDiscovery)
 	{
-		try
-		{
-//			Creating PING request
-			Request request = new PingRequest();
-			request.setFrom(localAddress);
-			request.setTo(serverAddress);
-
-//			Mapping PING request into bytes
-			byte[] pingRequestBytes = RequestMapper.mapFromInstanceToBytes(request);
-
-//			Wrapping request bytes with udp frame
-			UDPFrame frame = new UDPFrame(pingRequestBytes, true);
-
-//			Mapping pingFrame into bytes
-			byte[] pingFrameBytes = FrameMapper.mapFromInstanceToBytes(frame);
-
-//			Sending ping request
-			channel.send(ByteBuffer.wrap(pingFrameBytes), serverAddress);
-			ByteBuffer pingResponseBuffer = ByteBuffer.allocate(NetworkUtils.RESPONSE_BUFFER_SIZE * 2);
-
-			long startTime = System.currentTimeMillis();
-			int timeout = 5000;
-			while (true)
-			{
-				SocketAddress addr = channel.receive(pingResponseBuffer);
-
-				if (System.currentTimeMillis() > startTime + timeout)
-					throw new ServerNotAvailableException("Server is not available");
-
-				if (addr == null) continue;
-
-				byte[] currentFrameBytes = new byte[pingResponseBuffer.position()];
-				pingResponseBuffer.rewind();
-				pingResponseBuffer.get(currentFrameBytes);
-				UDPFrame responseFrame = FrameMapper.mapFromBytesToInstance(currentFrameBytes);
-				Response response = ResponseMapper.mapFromBytesToInstance(responseFrame.data());
-				if (!(response instanceof PongResponse)) throw new ServerNotAvailableException("Server is not available");
-				break;
-			}
-		} catch (IOException | MappingException e)
-		{
-			throw new NetworkException("Failed to send ping request", e);
-		}
+		protocol.getFrameSizeResolver().setPathMTUDiscovery(pathMTUDiscovery);
+	}
 
+	/**
+	 * This method sets the FEC scheme for multi-frame requests of the provided type
+	 *
+	 * @param requestType request type
+	 * @param scheme FEC scheme or null to disable FEC for the request type
+	 */
+	public void setFecScheme(Class<? extends Request> requestType, FecScheme scheme)
+	{
+		protocol.getFecPolicy().setScheme(requestType, scheme);
 	}
 
 	/**
-	 * Method waits for response
+	 * This method enables or disables requests compression.
+	 * Compressed responses are decompressed regardless of this setting
 	 *
-	 * @param <T> response type param
-	 * @return response instance
-	 * @throws NetworkException if it's failed to receive response from the server
-	 * @throws ServerNotAvailableException if server is not currently available
+	 * @param compression true to compress requests exceeding the compression threshold and false otherwise
 	 */
-	private <T extends Response> T waitForResponse() throws NetworkException, ServerNotAvailableException
+	public void setCompression(boolean compression)
 	{
-		ByteBuffer responseBuffer = ByteBuffer.allocate(NetworkUtils.RESPONSE_BUFFER_SIZE * 2);
+		protocol.getCompressor().setEnabled(compression);
+	}
 
-		try(ByteArrayOutputStream baos = new ByteArrayOutputStream())
-		{
-			boolean gotAll = false;
+	/**
+	 * This method sets the smallest request size to be compressed
+	 *
+	 * @param threshold compression threshold in bytes
+	 */
+	public void setCompressionThreshold(int threshold)
+	{
+		protocol.getCompressor().setThreshold(threshold);
+	}
 
-			do
-			{
-//				Receiving incoming byte buffer
-				responseBuffer.clear();
+	/**
+	 * This method sets the preset dictionary used for compression.
+	 * The peer has to know the same dictionary to decompress requests
+	 *
+	 * @param dictionary compression dictionary or null to compress without a dictionary
+	 */
+	public void setCompressionDictionary(CompressionDictionary dictionary)
+	{
+		protocol.getCompressor().setDictionary(dictionary);
+	}
 
-				SocketAddress addr = channel.receive(responseBuffer);
+	/**
+	 * This method enables or disables requests frames checksum.
+	 * Frames carrying a checksum are verified regardless of this setting
+	 *
+	 * @param frameChecksum true to protect every request frame with a CRC32C checksum and false otherwise
+	 */
+	public void setFrameChecksum(boolean frameChecksum)
+	{
+		protocol.setChecksum(frameChecksum);
+	}
 
-//				Skip current iteration if nothing was got in receive
-				if (addr == null) continue;
+	/**
+	 * This method sets the off-heap arena multi-frame responses are assembled in
+	 *
+	 * @param reassemblyArena reassembly arena or null to assemble responses on heap
+	 */
+	public void setReassemblyArena(ReassemblyArena reassemblyArena)
+	{
+		protocol.setReassemblyArena(reassemblyArena);
+	}
 
-//				Retrieving current frame bytes from incoming byte buffer
-				byte[] currentFrameBytes = new byte[responseBuffer.position()];
-				responseBuffer.rewind();
-				responseBuffer.get(currentFrameBytes);
+	/**
+	 * This method sets the server TCP port requests exceeding the TCP fallback threshold are streamed to.
+	 * Oversized responses are fetched over TCP regardless of this setting, if the server redirects to them
+	 *
+	 * @param port port the server TCP fallback listens on or 0 to send every request over UDP
+	 */
+	public void setTcpFallbackPort(int port)
+	{
+		protocol.setTcpFallbackPort(port);
+	}
 
-//				Mapping UDPFrame from raw bytes
-				UDPFrame currentFrame = FrameMapper.mapFromBytesToInstance(currentFrameBytes);
+	/**
+	 * This method sets the size of the smallest encoded request moved onto the TCP fallback connection
+	 *
+	 * @param threshold TCP fallback threshold in bytes
+	 */
+	public void setTcpFallbackThreshold(int threshold)
+	{
+		protocol.setTcpFallbackThreshold(threshold);
+	}
 
-//				Enriching response bytes with new bytes
-				baos.writeBytes(currentFrame.data());
+	/**
+	 * This method sets the size of the largest encoded response accepted from the TCP fallback connection
+	 *
+	 * @param limit TCP fallback limit in bytes
+	 */
+	public void setTcpFallbackLimit(int limit)
+	{
+		protocol.setTcpFallbackLimit(limit);
+	}
 
-//				Change gotAll state if got the last UDPFrame
-				if (currentFrame.last()) gotAll = true;
+	/**
+	 * Network metrics getter
+	 *
+	 * @return network metrics instance
+	 */
+	public NetworkMetrics getMetrics()
+	{
+		return protocol.getMetrics();
+	}
 
-			} while (!gotAll);
+	/**
+	 * This method allows you to send a request and receive a response for it
+	 *
+	 * @param <T> means the expected type of response
+	 * @param request request to be sent
+	 * @return a response instance
+	 * @throws NetworkException if it failed to send the request to the server,
+	 * if the server response data was corrupted, if it failed to receive response from the server or
+	 * request mapping failed
+	 * @throws ServerNotAvailableException if server is not currently available
+	 */
+	public <T extends Response> T sendRequestAndWaitResponse(Request request) throws NetworkException, ServerNotAvailableException
+	{
+		return protocol.exchange(request);
+	}
 
-//			Mapping request instance from raw request bytes
-			byte[] responseBytes = baos.toByteArray();
-			return ResponseMapper.mapFromBytesToInstance(responseBytes);
-		}
-		catch (MappingException e)
+	/**
+	 * This method opens the default transport of the client
+	 *
+	 * @return ChannelDatagramTransport instance
+	 * @throws NetworkException if it's failed to open a datagram channel
+	 */
+	private static DatagramTransport openUDPChannelTransport() throws NetworkException
+	{
+		try
 		{
-			throw new NetworkException("Failed to receive response: mapping failure detected", e);
+			return new ChannelDatagramTransport();
 		}
 		catch (IOException e)
 		{
-			throw new NetworkException("Failed to receive response from server", e);
+			throw new NetworkException("Failed to open datagram channel", e);
 		}
 	}
 
 	/**
 	 * Method forced by {@link AutoCloseable} interface.
 	 * Allows to use this class in the try-with-resources construction
-	 * Automatically closes datagram channel
+	 * Automatically closes the transport
+	 *
+	 * @throws NetworkException if it's failed to close the transport
 	 */
 	@Override
 	public void close() throws NetworkException
 	{
+		protocol.getMetrics().unregisterMBean();
+
 		try
 		{
-			channel.close();
+			protocol.close();
 		}
 		catch (IOException e)
 		{
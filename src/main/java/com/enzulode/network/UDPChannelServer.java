@@ -1,23 +1,23 @@
 package com.enzulode.network;
 
-import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.compression.CompressionDictionary;
+import com.enzulode.network.concurrent.structures.Pair;
+import com.enzulode.network.concurrent.structures.ReceivedRequest;
 import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.fec.FecScheme;
 import com.enzulode.network.handling.RequestHandler;
-import com.enzulode.network.mapper.FrameMapper;
-import com.enzulode.network.mapper.RequestMapper;
-import com.enzulode.network.mapper.ResponseMapper;
-import com.enzulode.network.model.interconnection.Request;
+import com.enzulode.network.metrics.NetworkMetrics;
 import com.enzulode.network.model.interconnection.Response;
-import com.enzulode.network.model.transport.UDPFrame;
-import com.enzulode.network.util.NetworkUtils;
+import com.enzulode.network.protocol.LocalEndpoint;
+import com.enzulode.network.protocol.ServerProtocol;
+import com.enzulode.network.transport.ChannelDatagramTransport;
+import com.enzulode.network.transport.DatagramTransport;
+import com.enzulode.network.util.ReassemblyArena;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.net.StandardSocketOptions;
-import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
-import java.util.List;
 import java.util.Objects;
 
 /**
@@ -33,10 +33,10 @@ public final class UDPChannelServer implements AutoCloseable
 	private static final int DEFAULT_PORT = 8080;
 
 	/**
-	 * Datagram channel instance
+	 * Pause between response frames in milliseconds
 	 *
 	 */
-	private final DatagramChannel channel;
+	private static final long PACING = 0;
 
 	/**
 	 * Server address instance
@@ -44,11 +44,23 @@ public final class UDPChannelServer implements AutoCloseable
 	 */
 	private final InetSocketAddress serverAddress;
 
+	/**
+	 * Server protocol instance
+	 *
+	 */
+	private final ServerProtocol protocol;
+
+	/**
+	 * In-process endpoint instance or null if the server is not bound to a local name
+	 *
+	 */
+	private volatile LocalEndpoint localEndpoint;
+
 	/**
 	 * Request handler instance
 	 * 
 	 */
-	private RequestHandler handler;
+	private volatile RequestHandler handler;
 
 	/**
 	 * UDPChannelServer constructor without port specified.
@@ -86,40 +98,66 @@ public final class UDPChannelServer implements AutoCloseable
 			InetSocketAddress address
 	) throws NetworkException
 	{
-//		Requiring socket address to be non-null
+		this(openChannelTransport(), address);
+	}
+
+	/**
+	 * UDPChannelServer constructor with the datagram transport specified.
+	 * The server takes the ownership of the transport and closes it
+	 *
+	 * @param transport unbound datagram transport instance
+	 * @param address an address to bind the transport
+	 * @throws NetworkException if it's failed to bind the transport
+	 */
+	public UDPChannelServer(
+			DatagramTransport transport,
+			InetSocketAddress address
+	) throws NetworkException
+	{
+//		Requiring transport and socket address to be non-null
+		Objects.requireNonNull(transport, "Transport instance cannot be null");
 		Objects.requireNonNull(address, "Socket binding address cannot be null");
 
 		try
 		{
-			this.channel = DatagramChannel.open();
-
-//			Channel configuration
-			channel.bind(address);
+			InetSocketAddress boundAddress = transport.bind(address);
 
 			if (address.getPort() == 0)
-				serverAddress = new InetSocketAddress("localhost", channel.socket().getLocalPort());
+				serverAddress = new InetSocketAddress("localhost", boundAddress.getPort());
 			else
 				serverAddress = address;
-
-			this.channel.configureBlocking(false);
-			this.channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
-			this.channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
 		}
 		catch (IOException e)
 		{
-			throw new NetworkException("Failed to open DatagramChannel", e);
+			throw new NetworkException("Failed to bind the server transport", e);
 		}
 
+//		Cached responses are resent right by the receiving thread
+		this.protocol = new ServerProtocol(transport, serverAddress, PACING, Runnable::run);
+		this.protocol.getMetrics().registerMBean(UDPChannelServer.class.getSimpleName(), serverAddress);
 	}
 
 	/**
 	 * UDPChannelServer channel getter
 	 *
-	 * @return server channel getter
+	 * @return server channel or null if the server runs over a transport of another kind
 	 */
 	public DatagramChannel getChannel()
 	{
-		return channel;
+		if (protocol.getTransport() instanceof ChannelDatagramTransport channelTransport)
+			return channelTransport.getChannel();
+
+		return null;
+	}
+
+	/**
+	 * Datagram transport getter
+	 *
+	 * @return datagram transport instance
+	 */
+	public DatagramTransport getTransport()
+	{
+		return protocol.getTransport();
 	}
 
 	/**
@@ -146,193 +184,305 @@ public final class UDPChannelServer implements AutoCloseable
 	}
 
 	/**
-	 * This method handles the request with provided {@link RequestHandler} and
-	 * sends response
+	 * This method binds the server to the name, so clients of the same JVM may call it with {@link LocalClient}.
+	 * Local calls are handed to the request handler as they are, without serialization and datagrams
 	 *
-	 * @throws NetworkException if it's failed to select a channel or send the response
+	 * @param name endpoint name unique within the JVM
+	 * @throws NetworkException if the server or the name is already bound
 	 */
-	public void handleRequest() throws NetworkException
+	public synchronized void bindLocal(String name) throws NetworkException
 	{
-		if (handler == null)
-			throw new NetworkException("Failed to handle the request: RequestHandler was not set");
-
-		Request request = waitRequest();
-		Response response = handler.handle(request);
+		if (localEndpoint != null)
+			throw new NetworkException("Server is already bound to the local endpoint " + localEndpoint.getName());
 
-		sendResponse(response, request.getFrom());
+		localEndpoint = LocalEndpoint.bind(name, protocol, () -> handler);
 	}
 
 	/**
-	 * Waiting request from clients
+	 * This method makes the server listen on the TCP port as well. Requests exceeding the client TCP fallback threshold
+	 * are streamed to this port and handled concurrently with the received ones. Encoded responses exceeding
+	 * the server TCP fallback threshold are fetched by the clients from this port, smaller ones stay on UDP
 	 *
-	 * @param <T> request type parameter
-	 * @return request instance
-	 * @throws NetworkException if it's failed to receive the request from client
+	 * @param port TCP port (0 - any available port)
+	 * @return the address the TCP fallback listens on
+	 * @throws NetworkException if the TCP fallback is already enabled or it's failed to bind the TCP port
 	 */
-	private <T extends Request> T waitRequest() throws NetworkException
+	public InetSocketAddress enableTcpFallback(int port) throws NetworkException
 	{
-		ByteBuffer incomingBuffer = ByteBuffer.allocate(NetworkUtils.REQUEST_BUFFER_SIZE * 2);
-
-		try
-		{
-			byte[] allRequestBytes = new byte[0];
-			boolean gotAll = false;
-
-			do
-			{
-//				Receiving incoming byte buffer
-				incomingBuffer.clear();
-				SocketAddress addr = channel.receive(incomingBuffer);
-//				Skip current iteration if nothing was got in receive
-				if (addr == null) continue;
-
-//				Retrieving current frame bytes from incoming byte buffer
-				byte[] currentFrameBytes = new byte[incomingBuffer.position()];
-				incomingBuffer.rewind();
-				incomingBuffer.get(currentFrameBytes);
+		return protocol.enableTcpFallback(port, () -> handler);
+	}
 
-//				Mapping UDPFrame from raw bytes
-				UDPFrame currentFrame = FrameMapper.mapFromBytesToInstance(currentFrameBytes);
+	/**
+	 * TCP fallback address getter
+	 *
+	 * @return the address the TCP fallback listens on or null if the TCP fallback is disabled
+	 */
+	public InetSocketAddress getTcpFallbackAddress()
+	{
+		return protocol.getTcpFallbackAddress();
+	}
 
-//				Enriching request bytes with new bytes
-				allRequestBytes = NetworkUtils.concatTwoByteArrays(allRequestBytes, currentFrame.data());
+	/**
+	 * This method sets the size of the smallest encoded response moved onto the TCP fallback connection
+	 *
+	 * @param threshold TCP fallback threshold in bytes
+	 */
+	public void setTcpFallbackThreshold(int threshold)
+	{
+		protocol.setTcpFallbackThreshold(threshold);
+	}
 
-//				Change gotAll state if got the last UDPFrame
-				if (currentFrame.last()) gotAll = true;
+	/**
+	 * This method sets the size of the largest encoded request accepted from the TCP fallback connection
+	 *
+	 * @param limit TCP fallback limit in bytes
+	 */
+	public void setTcpFallbackLimit(int limit)
+	{
+		protocol.setTcpFallbackLimit(limit);
+	}
 
-			} while (!gotAll);
+	/**
+	 * This method sets the receive budget shared by the clients sending multi-frame requests.
+	 * Every client is advertised its share of the budget and never has more unacknowledged frames in flight
+	 *
+	 * @param frames receive budget in frames
+	 */
+	public void setReceiveWindow(int frames)
+	{
+		protocol.getReceiveWindow().setBudget(frames);
+	}
 
-//			Mapping request instance from raw request bytes
-			return RequestMapper.mapFromBytesToInstance(allRequestBytes);
-		}
-		catch (MappingException e)
+	/**
+	 * This method requests the socket receive buffer size. The kernel may cap it,
+	 * the granted size is reported by the metrics
+	 *
+	 * @param size receive buffer size in bytes
+	 * @throws NetworkException if it's failed to set the buffer size
+	 */
+	public void setReceiveBufferSize(int size) throws NetworkException
+	{
+		try
 		{
-			throw new NetworkException("Failed to receive request: mapping failure detected", e);
+			protocol.getTransport().setReceiveBufferSize(size);
 		}
 		catch (IOException e)
 		{
-			throw new NetworkException("Failed to receive request from server", e);
+			throw new NetworkException("Failed to set the receive buffer size", e);
 		}
 	}
 
 	/**
-	 * This method sends response
+	 * This method requests the socket send buffer size. The kernel may cap it
 	 *
-	 * @param response response instance
-	 * @throws NetworkException if it's failed to send response with an overhead or
-	 * if it's failed to send response without an overhead
+	 * @param size send buffer size in bytes
+	 * @throws NetworkException if it's failed to set the buffer size
 	 */
-	private void sendResponse(Response response, InetSocketAddress destination) throws NetworkException
+	public void setSendBufferSize(int size) throws NetworkException
 	{
-//		Requiring response instance to be non-null
-		Objects.requireNonNull(response, "Response cannot be null");
-
-		response.setFrom(serverAddress);
-		response.setTo(destination);
-
 		try
 		{
-//			Mapping response to a byte array
-			byte[] responseBytes = ResponseMapper.mapFromInstanceToBytes(response);
-
-//			Check if response should be divided into separate chunks
-			if (responseBytes.length > NetworkUtils.RESPONSE_BUFFER_SIZE)
-				sendResponseWithOverhead(responseBytes, destination);
-			else
-				sendResponseNoOverhead(responseBytes, destination);
+			protocol.getTransport().setSendBufferSize(size);
 		}
-		catch (MappingException e)
+		catch (IOException e)
 		{
-			throw new NetworkException("Failed to map response instance to bytes", e);
+			throw new NetworkException("Failed to set the send buffer size", e);
 		}
 	}
 
 	/**
-	 * This method sends response with an overhead
+	 * This method enables or disables the receive buffer auto-tuning: the buffer is grown
+	 * while the frames sequence gaps or the kernel drop counter show dropped datagrams
 	 *
-	 * @param responseBytes raw response bytes
-	 * @param destination response destination
-	 * @throws NetworkException if it's failed to send response with an overhead
+	 * @param autoTuning auto-tuning state
 	 */
-	private void sendResponseWithOverhead(
-			byte[] responseBytes,
-			InetSocketAddress destination
-	) throws NetworkException
+	public void setReceiveBufferAutoTuning(boolean autoTuning)
 	{
-//		Requiring response bytes and destination address to be non-null
-		Objects.requireNonNull(responseBytes, "Response bytes array cannot be null");
-		Objects.requireNonNull(destination, "Destination address cannot be null");
+		protocol.getReceiveBufferTuner().setEnabled(autoTuning);
+	}
 
-//		Get response chunks from rew response bytes
-		List<byte[]> responseChunks = NetworkUtils.splitIntoChunks(responseBytes, NetworkUtils.RESPONSE_BUFFER_SIZE);
+	/**
+	 * This method sets the frame size used for every client
+	 *
+	 * @param frameSize the whole datagram size in bytes, including frame overhead
+	 */
+	public void setFrameSize(int frameSize)
+	{
+		protocol.getFrameSizeResolver().setFrameSize(frameSize);
+	}
 
-//		Wrap chunks with UDPFrames
-		List<UDPFrame> udpFrames = NetworkUtils.wrapChunksWithUDPFrames(responseChunks);
+	/**
+	 * This method enables or disables path MTU discovery.
+	 * If enabled, responses are split into frames that fit the path MTU of every specific client
+	 *
+	 * @param pathMTUDiscovery true to enable path MTU discovery and false otherwise
+	 */
+	public void setPathMTUDiscovery(boolean pathMTUDiscovery)
+	{
+		protocol.getFrameSizeResolver().setPathMTUDiscovery(pathMTUDiscovery);
+	}
+
+	/**
+	 * This method sets the FEC scheme for multi-frame responses of the provided type
+	 *
+	 * @param responseType response type
+	 * @param scheme FEC scheme or null to disable FEC for the response type
+	 */
+	public void setFecScheme(Class<? extends Response> responseType, FecScheme scheme)
+	{
+		protocol.getFecPolicy().setScheme(responseType, scheme);
+	}
+
+	/**
+	 * This method enables or disables responses compression.
+	 * Compressed requests are decompressed regardless of this setting
+	 *
+	 * @param compression true to compress responses exceeding the compression threshold and false otherwise
+	 */
+	public void setCompression(boolean compression)
+	{
+		protocol.getCompressor().setEnabled(compression);
+	}
 
-//		Map udpFrames to bytes
-		List<byte[]> framesBytes = NetworkUtils.udpFramesToBytes(udpFrames);
+	/**
+	 * This method sets the smallest response size to be compressed
+	 *
+	 * @param threshold compression threshold in bytes
+	 */
+	public void setCompressionThreshold(int threshold)
+	{
+		protocol.getCompressor().setThreshold(threshold);
+	}
 
-//		Sending all response frames to the client
+	/**
+	 * This method sets the preset dictionary used for compression.
+	 * The peer has to know the same dictionary to decompress responses
+	 *
+	 * @param dictionary compression dictionary or null to compress without a dictionary
+	 */
+	public void setCompressionDictionary(CompressionDictionary dictionary)
+	{
+		protocol.getCompressor().setDictionary(dictionary);
+	}
+
+	/**
+	 * This method enables or disables responses frames checksum.
+	 * Frames carrying a checksum are verified regardless of this setting
+	 *
+	 * @param frameChecksum true to protect every response frame with a CRC32C checksum and false otherwise
+	 */
+	public void setFrameChecksum(boolean frameChecksum)
+	{
+		protocol.setChecksum(frameChecksum);
+	}
+
+	/**
+	 * Network metrics getter
+	 *
+	 * @return network metrics instance
+	 */
+	public NetworkMetrics getMetrics()
+	{
+		return protocol.getMetrics();
+	}
+
+	/**
+	 * This method sets the period responses are kept for to be resent to the request duplicates.
+	 * Duplicates of a request are never handled twice while its response is kept
+	 *
+	 * @param window replay window in milliseconds or 0 to disable duplicate suppression
+	 */
+	public void setReplayWindow(long window)
+	{
+		protocol.getReplayCache().setWindow(window);
+	}
+
+	/**
+	 * This method sets the amount of response bytes kept for the request duplicates.
+	 * The least recently used responses are evicted first
+	 *
+	 * @param capacity replay cache capacity in bytes
+	 */
+	public void setReplayCacheCapacity(long capacity)
+	{
+		protocol.getReplayCache().setCapacity(capacity);
+	}
+
+	/**
+	 * This method sets the off-heap arena multi-frame requests are assembled in
+	 *
+	 * @param reassemblyArena reassembly arena or null to assemble requests on heap
+	 */
+	public void setReassemblyArena(ReassemblyArena reassemblyArena)
+	{
+		protocol.setReassemblyArena(reassemblyArena);
+	}
+
+	/**
+	 * This method handles the request with provided {@link RequestHandler} and
+	 * sends response. Requests whose clients stopped waiting for the response are dropped unanswered
+	 *
+	 * @throws NetworkException if it's failed to receive the request or send the response
+	 */
+	public void handleRequest() throws NetworkException
+	{
+		if (handler == null)
+			throw new NetworkException("Failed to handle the request: RequestHandler was not set");
+
+		Pair<Pair<SocketAddress, Integer>, ReceivedRequest> receivedRequest;
 		try
 		{
-			for (byte[] frameBytes : framesBytes)
-				channel.send(ByteBuffer.wrap(frameBytes), destination);
+			receivedRequest = protocol.receiveRequest(0);
 		}
 		catch (IOException e)
 		{
-			throw new NetworkException("Failed to send response with an overhead", e);
+			throw new NetworkException("Failed to receive request from client", e);
 		}
+
+//		Clients do not wait for the expired requests anymore
+		if (protocol.dropExpired(receivedRequest.value(), receivedRequest.key()))
+			return;
+
+		Response response = protocol.handle(receivedRequest.value(), receivedRequest.key(), handler);
+		protocol.respond(response, receivedRequest.value().request().getClass(), receivedRequest.key());
 	}
 
 	/**
-	 * This method sends response without an overhead
+	 * This method opens the default transport of the server
 	 *
-	 * @param responseBytes raw response bytes
-	 * @param destination response destination
-	 * @throws NetworkException if it's failed to send response without an overhead
+	 * @return {@link ChannelDatagramTransport} instance
+	 * @throws NetworkException if it's failed to open DatagramChannel
 	 */
-	private void sendResponseNoOverhead(
-			byte[] responseBytes,
-			InetSocketAddress destination
-	) throws NetworkException
+	private static DatagramTransport openChannelTransport() throws NetworkException
 	{
-//		Requiring response bytes and destination address to be non-null
-		Objects.requireNonNull(responseBytes, "Response bytes array cannot be null");
-		Objects.requireNonNull(destination, "Destination address cannot be null");
-
 		try
 		{
-//			Wrap raw response bytes with UDPFrame
-			UDPFrame udpFrame = new UDPFrame(responseBytes, true);
-
-//			Get UDPFrame bytes
-			byte[] udpFrameBytes = FrameMapper.mapFromInstanceToBytes(udpFrame);
-
-//			Sending response frame to the client
-			channel.send(ByteBuffer.wrap(udpFrameBytes), destination);
-		}
-		catch (MappingException e)
-		{
-			throw new NetworkException("Failed to map frame to bytes", e);
+			return new ChannelDatagramTransport();
 		}
 		catch (IOException e)
 		{
-			throw new NetworkException("Failed to send response without an overhead", e);
+			throw new NetworkException("Failed to open DatagramChannel", e);
 		}
 	}
 
 	/**
 	 * Method provided by {@link AutoCloseable} interface.
 	 * Allows to use this class in the try-with-resources construction.
-	 * Automatically closes selector and datagram channel
+	 * Automatically closes the transport
 	 *
 	 */
 	@Override
 	public void close() throws NetworkException
 	{
+		protocol.getMetrics().unregisterMBean();
+
+		LocalEndpoint endpoint = localEndpoint;
+		if (endpoint != null)
+			endpoint.unbind();
+
 		try
 		{
-			channel.close();
+			protocol.close();
 		}
 		catch (IOException e)
 		{
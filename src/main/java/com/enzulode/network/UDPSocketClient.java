@@ -1,21 +1,22 @@
 package com.enzulode.network;
 
-import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.compression.CompressionDictionary;
 import com.enzulode.network.exception.NetworkException;
 import com.enzulode.network.exception.ServerNotAvailableException;
-import com.enzulode.network.mapper.FrameMapper;
-import com.enzulode.network.mapper.RequestMapper;
-import com.enzulode.network.mapper.ResponseMapper;
+import com.enzulode.network.fec.FecScheme;
+import com.enzulode.network.metrics.NetworkMetrics;
 import com.enzulode.network.model.interconnection.Request;
 import com.enzulode.network.model.interconnection.Response;
-import com.enzulode.network.model.transport.UDPFrame;
-import com.enzulode.network.util.NetworkUtils;
+import com.enzulode.network.protocol.ClientProtocol;
+import com.enzulode.network.transport.SocketDatagramTransport;
+import com.enzulode.network.transport.DatagramTransport;
+import com.enzulode.network.util.ReassemblyArena;
 
 import java.io.IOException;
-import java.net.*;
-import java.util.List;
+import java.net.InetSocketAddress;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This class is a UDPSocket client implementation
@@ -24,10 +25,16 @@ import java.util.concurrent.TimeUnit;
 public final class UDPSocketClient implements AutoCloseable
 {
 	/**
-	 * Opened datagram socket
+	 * Pause between request frames in milliseconds
 	 *
 	 */
-	private final DatagramSocket socket;
+	private static final long PACING = 10;
+
+	/**
+	 * The longest wait for the next response frame in milliseconds
+	 *
+	 */
+	private static final long RESPONSE_TIMEOUT = 2000;
 
 	/**
 	 * Local address instance
@@ -37,13 +44,26 @@ public final class UDPSocketClient implements AutoCloseable
 
 	/**
 	 * Server address instance
+	 *
 	 */
 	private final InetSocketAddress serverAddress;
 
+	/**
+	 * Client protocol instance
+	 *
+	 */
+	private final ClientProtocol protocol;
+
+	/**
+	 * Logger instance
+	 *
+	 */
+	private final Logger logger;
+
 	/**
 	 * UDPSocket client constructor with default params
 	 *
-	 * @throws NetworkException if it's failed to open a socket and bind it to a concrete port
+	 * @throws NetworkException if it's failed to open a datagram socket
 	 */
 	public UDPSocketClient() throws NetworkException
 	{
@@ -53,35 +73,46 @@ public final class UDPSocketClient implements AutoCloseable
 	/**
 	 * UDPSocket client constructor.
 	 *
-	 * @param localPort the port, UDPSocket will be bind to (0 - any available port automatically / provide your own port)
+	 * @param localPort the port, the client will be bind to (0 - any available port automatically / provide your own port)
 	 * @param serverHost the remote server host
 	 * @param serverPort the remote server port
-	 * @throws NetworkException if it's failed to open a socket and bind it to a concrete port
+	 * @throws NetworkException if it's failed to open a datagram socket
 	 */
-	public UDPSocketClient(
-			int localPort,
-			String serverHost,
-			int serverPort
-	) throws NetworkException
+	public UDPSocketClient(int localPort, String serverHost, int serverPort) throws NetworkException
 	{
-//		Requiring server host to be non-null
+		this(openUDPSocketTransport(), localPort, serverHost, serverPort);
+	}
+
+	/**
+	 * UDPSocket client constructor with the datagram transport specified.
+	 * The client takes the ownership of the transport and closes it
+	 *
+	 * @param transport unbound datagram transport instance
+	 * @param localPort the port, the transport will be bind to (0 - any available port automatically / provide your own port)
+	 * @param serverHost the remote server host
+	 * @param serverPort the remote server port
+	 * @throws NetworkException if it's failed to bind the transport
+	 */
+	public UDPSocketClient(DatagramTransport transport, int localPort, String serverHost, int serverPort) throws NetworkException
+	{
+//		Requiring transport and server host to be non-null
+		Objects.requireNonNull(transport, "Transport instance cannot be null");
 		Objects.requireNonNull(serverHost, "Server host cannot be null");
 
 		try
 		{
-			this.socket = new DatagramSocket(localPort);
-
-			this.localAddress = new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+			InetSocketAddress boundAddress = transport.bind(new InetSocketAddress(localPort));
+			this.localAddress = new InetSocketAddress("127.0.0.1", boundAddress.getPort());
 			this.serverAddress = new InetSocketAddress(serverHost, serverPort);
-
-//			Socket configuration
-			this.socket.setReuseAddress(true);
-			this.socket.setSoTimeout(2000);
 		}
-		catch (SocketException e)
+		catch (IOException e)
 		{
-			throw new NetworkException("Unable to open datagram socket", e);
+			throw new NetworkException("Failed to bind the client transport", e);
 		}
+
+		this.protocol = new ClientProtocol(transport, localAddress, serverAddress, PACING, RESPONSE_TIMEOUT);
+		this.logger = Logger.getLogger(UDPSocketClient.class.getName());
+		this.protocol.getMetrics().registerMBean(UDPSocketClient.class.getSimpleName(), localAddress);
 	}
 
 	/**
@@ -105,195 +136,241 @@ public final class UDPSocketClient implements AutoCloseable
 	}
 
 	/**
-	 * This method allows you to send a request and receive a response for it
+	 * Datagram transport getter
 	 *
-	 * @param request request to be sent
-	 * @return a response instance
-	 * @param <T> means the expected type of response
-	 * @throws NetworkException if it failed to send the response to the server,
-	 * if the server response data was corrupted, if it failed to receive response from the server or
-	 * request mapping failed
-	 * @throws ServerNotAvailableException if server timeout exception was caught
+	 * @return datagram transport instance
 	 */
-	public <T extends Response> T sendRequestAndWaitResponse(Request request) throws NetworkException, ServerNotAvailableException
+	public DatagramTransport getTransport()
 	{
-//		Require request to be non-null
-		Objects.requireNonNull(request, "Request cannot be null");
-
-//		Readjusting request addresses
-		request.setFrom(localAddress);
-		request.setTo(serverAddress);
+		return protocol.getTransport();
+	}
 
+	/**
+	 * This method requests the socket receive buffer size. The kernel may cap it,
+	 * the granted size is reported by the metrics
+	 *
+	 * @param size receive buffer size in bytes
+	 * @throws NetworkException if it's failed to set the buffer size
+	 */
+	public void setReceiveBufferSize(int size) throws NetworkException
+	{
 		try
 		{
-//			First of all, we should get our request byte representation
-			byte[] requestBytes = RequestMapper.mapFromInstanceToBytes(request);
-
-//			If request size is more than default buffer size - send with overhead : else - send without overhead
-			if (requestBytes.length > NetworkUtils.REQUEST_BUFFER_SIZE)
-				sendRequestWithOverhead(requestBytes);
-			else
-				sendRequestNoOverhead(requestBytes);
-
-//			Waiting for response
-			return waitForResponse();
+			protocol.getTransport().setReceiveBufferSize(size);
 		}
-		catch (MappingException e)
+		catch (IOException e)
 		{
-			throw new NetworkException("Failed to map request from instance to bytes during request proceeding", e);
+			throw new NetworkException("Failed to set the receive buffer size", e);
 		}
 	}
 
 	/**
-	 * This method sends request with overhead after separation
+	 * This method requests the socket send buffer size. The kernel may cap it
 	 *
-	 * @param requestBytes raw request bytes
-	 * @throws NetworkException if it's failed to send some of DatagramPackets
-	 * @throws ServerNotAvailableException if server timeout exception was caught
+	 * @param size send buffer size in bytes
+	 * @throws NetworkException if it's failed to set the buffer size
 	 */
-	private void sendRequestWithOverhead(byte[] requestBytes) throws NetworkException, ServerNotAvailableException
+	public void setSendBufferSize(int size) throws NetworkException
 	{
-//		Require request bytes array to be non-null
-		Objects.requireNonNull(requestBytes, "Request bytes array cannot be null");
-
-//		Get request chunks from raw request bytes
-		List<byte[]> requestChunks = NetworkUtils.splitIntoChunks(requestBytes, NetworkUtils.REQUEST_BUFFER_SIZE);
-
-//		Wrap chunks with UDPFrames
-		List<UDPFrame> udpFrames = NetworkUtils.wrapChunksWithUDPFrames(requestChunks);
-
-//		Wrap UDPFrames with DatagramPackets
-		List<DatagramPacket> datagramPackets = NetworkUtils.wrapUDPFramesWithDatagramPackets(
-				udpFrames,
-				serverAddress
-		);
-
-//		Trying to send datagram packets
 		try
 		{
-			for (DatagramPacket packet : datagramPackets)
-			{
-				try
-				{
-					TimeUnit.MILLISECONDS.sleep(10);
-				}
-				catch (InterruptedException ignored) {}
-				socket.send(packet);
-			}
-		}
-		catch (SocketTimeoutException e)
-		{
-			throw new ServerNotAvailableException("Server is not currently available", e);
+			protocol.getTransport().setSendBufferSize(size);
 		}
 		catch (IOException e)
 		{
-			throw new NetworkException("Failed to send packets", e);
+			throw new NetworkException("Failed to set the send buffer size", e);
 		}
 	}
 
 	/**
-	 * This method sends request without overhead
+	 * This method enables or disables the receive buffer auto-tuning: the buffer is grown
+	 * while the frames sequence gaps or the kernel drop counter show dropped datagrams
 	 *
-	 * @param requestBytes raw request bytes
-	 * @throws NetworkException if it's failed to send DatagramPacket
-	 * @throws ServerNotAvailableException if server timeout exception was caught
+	 * @param autoTuning auto-tuning state
 	 */
-	private void sendRequestNoOverhead(byte[] requestBytes) throws NetworkException, ServerNotAvailableException
+	public void setReceiveBufferAutoTuning(boolean autoTuning)
 	{
-//		Require request bytes array to be non-null
-		Objects.requireNonNull(requestBytes, "Request bytes array cannot be null");
+		protocol.getReceiveBufferTuner().setEnabled(autoTuning);
+	}
 
-		try
-		{
-//			Wrap raw bytes with UDPFrame
-			UDPFrame udpFrame = new UDPFrame(requestBytes, true);
+	/**
+	 * This method sets the frame size used for requests
+	 *
+	 * @param frameSize the whole datagram size in bytes, including frame overhead
+	 */
+	public void setFrameSize(int frameSize)
+	{
+		protocol.getFrameSizeResolver().setFrameSize(frameSize);
+	}
 
-//			Get UDPFrameBytes from UDPFrame instance
-			byte[] udpFrameBytes = FrameMapper.mapFromInstanceToBytes(udpFrame);
+	/**
+	 * This method enables or disables path MTU discovery.
+	 * If enabled, requests are split into frames that fit the path MTU of the server
+	 *
+	 * @param pathMTUDiscovery true to enable path MTU discovery and false otherwise
+	 */
+	public void setPathMTUDiscovery(boolean pathMTUDiscovery)
+	{
+		protocol.getFrameSizeResolver().setPathMTUDiscovery(pathMTUDiscovery);
+	}
 
-//			Wrap UDPFrame with DatagramPacket
-			DatagramPacket requestPacket = new DatagramPacket(udpFrameBytes, udpFrameBytes.length, serverAddress);
-			
-//			Trying to send the request
-			socket.send(requestPacket);
-		}
-		catch (SocketTimeoutException e)
-		{
-			throw new ServerNotAvailableException("Server is not currently available", e);
-		}
-		catch (MappingException e)
-		{
-			throw new NetworkException("Failed to map UDPFrame to raw bytes", e);
-		}
-		catch (IOException e)
-		{
-			throw new NetworkException("Failed to send request with no overhead", e);
-		}
+	/**
+	 * This method sets the FEC scheme for multi-frame requests of the provided type
+	 *
+	 * @param requestType request type
+	 * @param scheme FEC scheme or null to disable FEC for the request type
+	 */
+	public void setFecScheme(Class<? extends Request> requestType, FecScheme scheme)
+	{
+		protocol.getFecPolicy().setScheme(requestType, scheme);
+	}
+
+	/**
+	 * This method enables or disables requests compression.
+	 * Compressed responses are decompressed regardless of this setting
+	 *
+	 * @param compression true to compress requests exceeding the compression threshold and false otherwise
+	 */
+	public void setCompression(boolean compression)
+	{
+		protocol.getCompressor().setEnabled(compression);
 	}
 
 	/**
-	 * Method waits for response
+	 * This method sets the smallest request size to be compressed
 	 *
-	 * @param <T> response type param
-	 * @return response instance
-	 * @throws NetworkException if it's failed to receive response from the server
+	 * @param threshold compression threshold in bytes
 	 */
-	private <T extends Response> T waitForResponse() throws NetworkException, ServerNotAvailableException
+	public void setCompressionThreshold(int threshold)
 	{
-//		Response byte buffer initiation
-		byte[] responseBytes = new byte[NetworkUtils.RESPONSE_BUFFER_SIZE];
+		protocol.getCompressor().setThreshold(threshold);
+	}
 
-//		After the request was sent we should prepare a datagram packet for response
-		DatagramPacket responsePacket = new DatagramPacket(responseBytes, responseBytes.length);
+	/**
+	 * This method sets the preset dictionary used for compression.
+	 * The peer has to know the same dictionary to decompress requests
+	 *
+	 * @param dictionary compression dictionary or null to compress without a dictionary
+	 */
+	public void setCompressionDictionary(CompressionDictionary dictionary)
+	{
+		protocol.getCompressor().setDictionary(dictionary);
+	}
 
-		try
-		{
-			byte[] allResponseBytes = new byte[0];
-			boolean gotAll = false;
-			do
-			{
-//				Receiving a response frame
-				socket.receive(responsePacket);
+	/**
+	 * This method enables or disables requests frames checksum.
+	 * Frames carrying a checksum are verified regardless of this setting
+	 *
+	 * @param frameChecksum true to protect every request frame with a CRC32C checksum and false otherwise
+	 */
+	public void setFrameChecksum(boolean frameChecksum)
+	{
+		protocol.setChecksum(frameChecksum);
+	}
 
-//				Retrieving response raw bytes
-				byte[] currentFrameBytes = responsePacket.getData();
+	/**
+	 * This method sets the off-heap arena multi-frame responses are assembled in
+	 *
+	 * @param reassemblyArena reassembly arena or null to assemble responses on heap
+	 */
+	public void setReassemblyArena(ReassemblyArena reassemblyArena)
+	{
+		protocol.setReassemblyArena(reassemblyArena);
+	}
 
-//				Mapping UDPFrame from raw bytes
-				UDPFrame udpFrame = FrameMapper.mapFromBytesToInstance(currentFrameBytes);
+	/**
+	 * This method sets the server TCP port requests exceeding the TCP fallback threshold are streamed to.
+	 * Oversized responses are fetched over TCP regardless of this setting, if the server redirects to them
+	 *
+	 * @param port port the server TCP fallback listens on or 0 to send every request over UDP
+	 */
+	public void setTcpFallbackPort(int port)
+	{
+		protocol.setTcpFallbackPort(port);
+	}
 
-//				Enriching response bytes with new bytes
-				allResponseBytes = NetworkUtils.concatTwoByteArrays(allResponseBytes, udpFrame.data());
+	/**
+	 * This method sets the size of the smallest encoded request moved onto the TCP fallback connection
+	 *
+	 * @param threshold TCP fallback threshold in bytes
+	 */
+	public void setTcpFallbackThreshold(int threshold)
+	{
+		protocol.setTcpFallbackThreshold(threshold);
+	}
 
-				if (udpFrame.last())
-					gotAll = true;
-			}
-			while (!gotAll);
+	/**
+	 * This method sets the size of the largest encoded response accepted from the TCP fallback connection
+	 *
+	 * @param limit TCP fallback limit in bytes
+	 */
+	public void setTcpFallbackLimit(int limit)
+	{
+		protocol.setTcpFallbackLimit(limit);
+	}
 
-//			Mapping response bytes into an instance
-			return ResponseMapper.mapFromBytesToInstance(allResponseBytes);
-		}
-		catch (SocketTimeoutException e)
-		{
-			throw new ServerNotAvailableException("Server is not currently available", e);
-		}
-		catch (MappingException e)
+	/**
+	 * Network metrics getter
+	 *
+	 * @return network metrics instance
+	 */
+	public NetworkMetrics getMetrics()
+	{
+		return protocol.getMetrics();
+	}
+
+	/**
+	 * This method allows you to send a request and receive a response for it
+	 *
+	 * @param <T> means the expected type of response
+	 * @param request request to be sent
+	 * @return a response instance
+	 * @throws NetworkException if it failed to send the request to the server,
+	 * if the server response data was corrupted, if it failed to receive response from the server or
+	 * request mapping failed
+	 * @throws ServerNotAvailableException if server is not currently available
+	 */
+	public <T extends Response> T sendRequestAndWaitResponse(Request request) throws NetworkException, ServerNotAvailableException
+	{
+		return protocol.exchange(request);
+	}
+
+	/**
+	 * This method opens the default transport of the client
+	 *
+	 * @return SocketDatagramTransport instance
+	 * @throws NetworkException if it's failed to open a datagram socket
+	 */
+	private static DatagramTransport openUDPSocketTransport() throws NetworkException
+	{
+		try
 		{
-			throw new NetworkException("Mapping operation failure detected", e);
+			return new SocketDatagramTransport();
 		}
 		catch (IOException e)
 		{
-			throw new NetworkException("Failed to receive response from the server", e);
+			throw new NetworkException("Failed to open datagram socket", e);
 		}
 	}
 
 	/**
 	 * Method forced by {@link AutoCloseable} interface.
 	 * Allows to use this class in the try-with-resources construction
-	 * Automatically closes datagram socket
+	 * Automatically closes the transport, a failure to close it is logged
+	 *
 	 */
 	@Override
 	public void close()
 	{
-		socket.close();
+		protocol.getMetrics().unregisterMBean();
+
+		try
+		{
+			protocol.close();
+		}
+		catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to close datagram socket", e);
+		}
 	}
 }
@@ -1,19 +1,34 @@
 package com.enzulode.network;
 
+import com.enzulode.network.compression.CompressionDictionary;
+import com.enzulode.network.concurrent.executors.LaneExecutor;
 import com.enzulode.network.concurrent.factories.ThreadNamingFactory;
+import com.enzulode.network.concurrent.structures.Pair;
+import com.enzulode.network.concurrent.structures.ReceivedRequest;
 import com.enzulode.network.concurrent.task.recursive.RecursiveRequestHandlingAction;
 import com.enzulode.network.concurrent.task.recursive.RecursiveRequestReceivingAction;
 import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.fec.FecScheme;
 import com.enzulode.network.handling.RequestHandler;
-import com.enzulode.network.model.interconnection.Request;
+import com.enzulode.network.metrics.NetworkMetrics;
+import com.enzulode.network.model.interconnection.Response;
+import com.enzulode.network.protocol.LocalEndpoint;
+import com.enzulode.network.protocol.ServerProtocol;
+import com.enzulode.network.transport.DatagramTransport;
+import com.enzulode.network.transport.SocketDatagramTransport;
+import com.enzulode.network.util.ReassemblyArena;
 
 import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This class is a UDPSocket server implementation
@@ -28,10 +43,10 @@ public final class UDPSocketServer implements AutoCloseable
 	public static final int DEFAULT_PORT = 8080;
 
 	/**
-	 * DatagramSocket instance
+	 * Pause between response frames in milliseconds
 	 *
 	 */
-	private final DatagramSocket socket;
+	private static final long PACING = 10;
 
 	/**
 	 * Server address instance
@@ -39,11 +54,23 @@ public final class UDPSocketServer implements AutoCloseable
 	 */
 	private final InetSocketAddress serverAddress;
 
+	/**
+	 * Server protocol instance
+	 *
+	 */
+	private final ServerProtocol protocol;
+
+	/**
+	 * In-process endpoint instance or null if the server is not bound to a local name
+	 *
+	 */
+	private volatile LocalEndpoint localEndpoint;
+
 	/**
 	 * Current request handler instance
 	 *
 	 */
-	private RequestHandler handler;
+	private volatile RequestHandler handler;
 
 	/**
 	 * Request receiving executors
@@ -64,10 +91,29 @@ public final class UDPSocketServer implements AutoCloseable
 	private final ExecutorService responseSendingExecutors;
 
 	/**
-	 * A concurrent map instance for resolved requests
+	 * A concurrent map instance for resolved requests. Requests are stored by sender address and
+	 * request message identifier
 	 *
 	 */
-	private final ConcurrentMap<SocketAddress, Request> requestsMap;
+	private final ConcurrentMap<Pair<SocketAddress, Integer>, ReceivedRequest> requestsMap;
+
+	/**
+	 * Requests waiting for the shared pool in the earliest deadline first order
+	 *
+	 */
+	private final PriorityBlockingQueue<RecursiveRequestHandlingAction> handlingQueue;
+
+	/**
+	 * Request handling lanes or null if requests are handled by the shared pool
+	 *
+	 */
+	private volatile LaneExecutor handlingLanes;
+
+	/**
+	 * Logger instance
+	 *
+	 */
+	private final Logger logger;
 
 	/**
 	 * UDPChannelServer constructor without port specified.
@@ -100,34 +146,57 @@ public final class UDPSocketServer implements AutoCloseable
 	 */
 	public UDPSocketServer(InetSocketAddress serverAddress) throws NetworkException
 	{
-//		Requiring server socket address to be non-null
+		this(openSocketTransport(), serverAddress);
+	}
+
+	/**
+	 * UDPSocketServer constructor with the datagram transport specified.
+	 * The server takes the ownership of the transport and closes it
+	 *
+	 * @param transport unbound datagram transport instance
+	 * @param serverAddress address to bind the transport
+	 * @throws NetworkException if it's failed to bind the transport
+	 */
+	public UDPSocketServer(DatagramTransport transport, InetSocketAddress serverAddress) throws NetworkException
+	{
+//		Requiring transport and server socket address to be non-null
+		Objects.requireNonNull(transport, "Transport instance cannot be null");
 		Objects.requireNonNull(serverAddress, "Socket binding address cannot be null");
 
 		try
 		{
-			this.socket = new DatagramSocket(serverAddress);
+			InetSocketAddress boundAddress = transport.bind(serverAddress);
 
 			if (serverAddress.getPort() == 0)
-				this.serverAddress = new InetSocketAddress("127.0.0.1", socket.getLocalPort());
+				this.serverAddress = new InetSocketAddress("127.0.0.1", boundAddress.getPort());
 			else
 				this.serverAddress = serverAddress;
-
-//			Configure socket
-			this.socket.setReuseAddress(true);
-
-			this.requestReceivingPool = new ForkJoinPool(1);
-			this.requestHandlingPool = new ForkJoinPool(4);
-
-			this.responseSendingExecutors = Executors.newCachedThreadPool(
-					new ThreadNamingFactory("responding", "thread")
-			);
-
-			this.requestsMap = new ConcurrentHashMap<>();
 		}
 		catch (IOException e)
 		{
-			throw new NetworkException("Failed to create a datagram socket", e);
+			throw new NetworkException("Failed to bind the server transport", e);
 		}
+
+		this.requestReceivingPool = new ForkJoinPool(1);
+		this.requestHandlingPool = new ForkJoinPool(4);
+
+		this.responseSendingExecutors = Executors.newCachedThreadPool(
+				new ThreadNamingFactory("responding", "thread")
+		);
+
+		this.requestsMap = new ConcurrentHashMap<>();
+		this.handlingQueue = new PriorityBlockingQueue<>(
+				64,
+				Comparator.comparing(RecursiveRequestHandlingAction::getReceivedRequest, ReceivedRequest.EARLIEST_DEADLINE_FIRST)
+		);
+		this.protocol = new ServerProtocol(transport, this.serverAddress, PACING, responseSendingExecutors);
+		this.logger = Logger.getLogger(UDPSocketServer.class.getName());
+
+		NetworkMetrics metrics = protocol.getMetrics();
+		metrics.setHandlerQueueDepthGauge(
+				() -> requestsMap.size() + handlingQueue.size() + queuedInLanes()
+		);
+		metrics.registerMBean(UDPSocketServer.class.getSimpleName(), this.serverAddress);
 	}
 
 	/**
@@ -140,6 +209,16 @@ public final class UDPSocketServer implements AutoCloseable
 		return serverAddress;
 	}
 
+	/**
+	 * Datagram transport getter
+	 *
+	 * @return datagram transport instance
+	 */
+	public DatagramTransport getTransport()
+	{
+		return protocol.getTransport();
+	}
+
 	/**
 	 * Current request handler getter
 	 *
@@ -163,9 +242,277 @@ public final class UDPSocketServer implements AutoCloseable
 		this.handler = handler;
 	}
 
+	/**
+	 * This method binds the server to the name, so clients of the same JVM may call it with {@link LocalClient}.
+	 * Local calls are handed to the request handler as they are, without serialization and datagrams
+	 *
+	 * @param name endpoint name unique within the JVM
+	 * @throws NetworkException if the server or the name is already bound
+	 */
+	public synchronized void bindLocal(String name) throws NetworkException
+	{
+		if (localEndpoint != null)
+			throw new NetworkException("Server is already bound to the local endpoint " + localEndpoint.getName());
+
+		localEndpoint = LocalEndpoint.bind(name, protocol, () -> handler);
+	}
+
+	/**
+	 * This method makes the server listen on the TCP port as well. Requests exceeding the client TCP fallback threshold
+	 * are streamed to this port and handled concurrently with the received ones. Encoded responses exceeding
+	 * the server TCP fallback threshold are fetched by the clients from this port, smaller ones stay on UDP
+	 *
+	 * @param port TCP port (0 - any available port)
+	 * @return the address the TCP fallback listens on
+	 * @throws NetworkException if the TCP fallback is already enabled or it's failed to bind the TCP port
+	 */
+	public InetSocketAddress enableTcpFallback(int port) throws NetworkException
+	{
+		return protocol.enableTcpFallback(port, () -> handler);
+	}
+
+	/**
+	 * TCP fallback address getter
+	 *
+	 * @return the address the TCP fallback listens on or null if the TCP fallback is disabled
+	 */
+	public InetSocketAddress getTcpFallbackAddress()
+	{
+		return protocol.getTcpFallbackAddress();
+	}
+
+	/**
+	 * This method sets the size of the smallest encoded response moved onto the TCP fallback connection
+	 *
+	 * @param threshold TCP fallback threshold in bytes
+	 */
+	public void setTcpFallbackThreshold(int threshold)
+	{
+		protocol.setTcpFallbackThreshold(threshold);
+	}
+
+	/**
+	 * This method sets the size of the largest encoded request accepted from the TCP fallback connection
+	 *
+	 * @param limit TCP fallback limit in bytes
+	 */
+	public void setTcpFallbackLimit(int limit)
+	{
+		protocol.setTcpFallbackLimit(limit);
+	}
+
+	/**
+	 * This method switches request handling between the shared pool and single-threaded lanes.
+	 * Lanes are chosen by the request affinity key or the client address, so requests of a client are handled
+	 * one by one in the order they were received, while different clients are handled in parallel.
+	 * Requests received before the switch are not ordered with the later ones
+	 *
+	 * @param lanes the amount of lanes or 0 to handle requests by the shared pool
+	 */
+	public synchronized void setHandlingLanes(int lanes)
+	{
+		if (lanes < 0)
+			throw new IllegalArgumentException("Lanes count cannot be negative");
+
+		LaneExecutor previous = handlingLanes;
+		handlingLanes = lanes == 0 ? null : new LaneExecutor(lanes, "handling");
+
+		if (previous != null)
+			previous.close();
+	}
+
+	/**
+	 * This method enables or disables requests coalescing. Concurrent requests of equal coalescing keys
+	 * (see the request coalescing key) invoke the request handler once: the response is encoded once
+	 * and sent to every waiting client
+	 *
+	 * @param coalescing requests coalescing state
+	 */
+	public void setRequestCoalescing(boolean coalescing)
+	{
+		protocol.setCoalescing(coalescing);
+	}
+
+	/**
+	 * This method sets the receive budget shared by the clients sending multi-frame requests.
+	 * Every client is advertised its share of the budget and never has more unacknowledged frames in flight
+	 *
+	 * @param frames receive budget in frames
+	 */
+	public void setReceiveWindow(int frames)
+	{
+		protocol.getReceiveWindow().setBudget(frames);
+	}
+
+	/**
+	 * This method requests the socket receive buffer size. The kernel may cap it,
+	 * the granted size is reported by the metrics
+	 *
+	 * @param size receive buffer size in bytes
+	 * @throws NetworkException if it's failed to set the buffer size
+	 */
+	public void setReceiveBufferSize(int size) throws NetworkException
+	{
+		try
+		{
+			protocol.getTransport().setReceiveBufferSize(size);
+		}
+		catch (IOException e)
+		{
+			throw new NetworkException("Failed to set the receive buffer size", e);
+		}
+	}
+
+	/**
+	 * This method requests the socket send buffer size. The kernel may cap it
+	 *
+	 * @param size send buffer size in bytes
+	 * @throws NetworkException if it's failed to set the buffer size
+	 */
+	public void setSendBufferSize(int size) throws NetworkException
+	{
+		try
+		{
+			protocol.getTransport().setSendBufferSize(size);
+		}
+		catch (IOException e)
+		{
+			throw new NetworkException("Failed to set the send buffer size", e);
+		}
+	}
+
+	/**
+	 * This method enables or disables the receive buffer auto-tuning: the buffer is grown
+	 * while the frames sequence gaps or the kernel drop counter show dropped datagrams
+	 *
+	 * @param autoTuning auto-tuning state
+	 */
+	public void setReceiveBufferAutoTuning(boolean autoTuning)
+	{
+		protocol.getReceiveBufferTuner().setEnabled(autoTuning);
+	}
+
+	/**
+	 * This method sets the frame size used for every client
+	 *
+	 * @param frameSize the whole datagram size in bytes, including frame overhead
+	 */
+	public void setFrameSize(int frameSize)
+	{
+		protocol.getFrameSizeResolver().setFrameSize(frameSize);
+	}
+
+	/**
+	 * This method enables or disables path MTU discovery.
+	 * If enabled, responses are split into frames that fit the path MTU of every specific client
+	 *
+	 * @param pathMTUDiscovery true to enable path MTU discovery and false otherwise
+	 */
+	public void setPathMTUDiscovery(boolean pathMTUDiscovery)
+	{
+		protocol.getFrameSizeResolver().setPathMTUDiscovery(pathMTUDiscovery);
+	}
+
+	/**
+	 * This method sets the FEC scheme for multi-frame responses of the provided type
+	 *
+	 * @param responseType response type
+	 * @param scheme FEC scheme or null to disable FEC for the response type
+	 */
+	public void setFecScheme(Class<? extends Response> responseType, FecScheme scheme)
+	{
+		protocol.getFecPolicy().setScheme(responseType, scheme);
+	}
+
+	/**
+	 * This method enables or disables responses compression.
+	 * Compressed requests are decompressed regardless of this setting
+	 *
+	 * @param compression true to compress responses exceeding the compression threshold and false otherwise
+	 */
+	public void setCompression(boolean compression)
+	{
+		protocol.getCompressor().setEnabled(compression);
+	}
+
+	/**
+	 * This method sets the smallest response size to be compressed
+	 *
+	 * @param threshold compression threshold in bytes
+	 */
+	public void setCompressionThreshold(int threshold)
+	{
+		protocol.getCompressor().setThreshold(threshold);
+	}
+
+	/**
+	 * This method sets the preset dictionary used for compression.
+	 * The peer has to know the same dictionary to decompress responses
+	 *
+	 * @param dictionary compression dictionary or null to compress without a dictionary
+	 */
+	public void setCompressionDictionary(CompressionDictionary dictionary)
+	{
+		protocol.getCompressor().setDictionary(dictionary);
+	}
+
+	/**
+	 * This method enables or disables responses frames checksum.
+	 * Frames carrying a checksum are verified regardless of this setting
+	 *
+	 * @param frameChecksum true to protect every response frame with a CRC32C checksum and false otherwise
+	 */
+	public void setFrameChecksum(boolean frameChecksum)
+	{
+		protocol.setChecksum(frameChecksum);
+	}
+
+	/**
+	 * Network metrics getter
+	 *
+	 * @return network metrics instance
+	 */
+	public NetworkMetrics getMetrics()
+	{
+		return protocol.getMetrics();
+	}
+
+	/**
+	 * This method sets the period responses are kept for to be resent to the request duplicates.
+	 * Duplicates of a request are never handled twice while its response is kept
+	 *
+	 * @param window replay window in milliseconds or 0 to disable duplicate suppression
+	 */
+	public void setReplayWindow(long window)
+	{
+		protocol.getReplayCache().setWindow(window);
+	}
+
+	/**
+	 * This method sets the amount of response bytes kept for the request duplicates.
+	 * The least recently used responses are evicted first
+	 *
+	 * @param capacity replay cache capacity in bytes
+	 */
+	public void setReplayCacheCapacity(long capacity)
+	{
+		protocol.getReplayCache().setCapacity(capacity);
+	}
+
+	/**
+	 * This method sets the off-heap arena multi-frame requests are assembled in
+	 *
+	 * @param reassemblyArena reassembly arena or null to assemble requests on heap
+	 */
+	public void setReassemblyArena(ReassemblyArena reassemblyArena)
+	{
+		protocol.setReassemblyArena(reassemblyArena);
+	}
+
 	/**
 	 * This method handles incoming requests with provided {@link RequestHandler} and
-	 * sends a specific response
+	 * sends a specific response. The shared pool takes requests in the earliest deadline first order,
+	 * requests whose clients stopped waiting for the response are dropped unanswered
 	 *
 	 * @throws NetworkException if it's failed to select a channel or send the response
 	 */
@@ -174,31 +521,124 @@ public final class UDPSocketServer implements AutoCloseable
 		if (handler == null)
 			throw new NetworkException("Request handler is not currently set");
 
-		requestReceivingPool.submit(new RecursiveRequestReceivingAction(socket, requestsMap));
+		requestReceivingPool.submit(new RecursiveRequestReceivingAction(protocol, this::dispatch));
 
-		while (true)
+		while (protocol.isOpen())
 		{
 			if (requestsMap.isEmpty()) continue;
 
-			for (Iterator<Request> i = requestsMap.values().iterator(); i.hasNext();)
+			for (Iterator<Map.Entry<Pair<SocketAddress, Integer>, ReceivedRequest>> i = requestsMap.entrySet().iterator(); i.hasNext();)
 			{
-				Request req = i.next();
+				Map.Entry<Pair<SocketAddress, Integer>, ReceivedRequest> entry = i.next();
 				i.remove();
 
-				var requestHandlingAction = new RecursiveRequestHandlingAction(socket, req, handler, responseSendingExecutors);
-				requestHandlingPool.submit(requestHandlingAction);
+				var requestHandlingAction = new RecursiveRequestHandlingAction(
+						protocol,
+						entry.getValue(),
+						entry.getKey(),
+						handler,
+						responseSendingExecutors
+				);
+
+//				Every pool task handles the most urgent request queued at the moment it runs
+				handlingQueue.add(requestHandlingAction);
+				requestHandlingPool.submit(this::handleMostUrgent);
 			}
 		}
 	}
 
+	/**
+	 * This method handles the queued request with the earliest deadline. Expired requests are dropped on the way
+	 *
+	 */
+	private void handleMostUrgent()
+	{
+		RecursiveRequestHandlingAction requestHandlingAction = handlingQueue.poll();
+		if (requestHandlingAction != null)
+			requestHandlingAction.invoke();
+	}
+
+	/**
+	 * This method passes the received request to its handling lane or to the shared pool queue
+	 *
+	 * @param requestKey request sender address and message identifier
+	 * @param receivedRequest received request
+	 */
+	private void dispatch(Pair<SocketAddress, Integer> requestKey, ReceivedRequest receivedRequest)
+	{
+		LaneExecutor lanes = handlingLanes;
+		if (lanes == null)
+		{
+			requestsMap.put(requestKey, receivedRequest);
+			return;
+		}
+
+		Object affinityKey = receivedRequest.request().getAffinityKey();
+		var requestHandlingAction = new RecursiveRequestHandlingAction(
+				protocol,
+				receivedRequest,
+				requestKey,
+				handler,
+				responseSendingExecutors
+		);
+		lanes.execute(affinityKey != null ? affinityKey : requestKey.key(), requestHandlingAction::invoke);
+	}
+
+	/**
+	 * This method counts the requests waiting in the handling lanes
+	 *
+	 * @return the amount of queued requests
+	 */
+	private long queuedInLanes()
+	{
+		LaneExecutor lanes = handlingLanes;
+		return lanes == null ? 0 : lanes.getQueuedTaskCount();
+	}
+
+	/**
+	 * This method opens the default transport of the server
+	 *
+	 * @return {@link SocketDatagramTransport} instance
+	 * @throws NetworkException if it's failed to create a datagram socket
+	 */
+	private static DatagramTransport openSocketTransport() throws NetworkException
+	{
+		try
+		{
+			return new SocketDatagramTransport();
+		}
+		catch (IOException e)
+		{
+			throw new NetworkException("Failed to create a datagram socket", e);
+		}
+	}
+
 	/**
 	 * Method forced by {@link AutoCloseable} interface.
-	 * Automatically closes socket in case of using inside try-with-resources code block
+	 * Automatically closes the transport in case of using inside try-with-resources code block,
+	 * a failure to close it is logged
 	 *
 	 */
 	@Override
 	public void close()
 	{
-		socket.close();
+		protocol.getMetrics().unregisterMBean();
+
+		LocalEndpoint endpoint = localEndpoint;
+		if (endpoint != null)
+			endpoint.unbind();
+
+		LaneExecutor lanes = handlingLanes;
+		if (lanes != null)
+			lanes.close();
+
+		try
+		{
+			protocol.close();
+		}
+		catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to close the server transport", e);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,227 @@
+package com.enzulode.network.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.zip.Adler32;
+
+/**
+ * Preset compression dictionary.
+ * Both sides have to use the same dictionary: the compressed stream refers to the dictionary by its Adler-32 checksum
+ *
+ */
+public final class CompressionDictionary
+{
+	/**
+	 * Default dictionary size: the size of the deflate window, longer dictionaries are not used by deflate
+	 *
+	 */
+	public static final int DEFAULT_SIZE = 32 * 1024;
+
+	/**
+	 * The length of byte sequences counted during training
+	 *
+	 */
+	private static final int GRAM_LENGTH = 8;
+
+	/**
+	 * Dictionary bytes
+	 *
+	 */
+	private final byte[] bytes;
+
+	/**
+	 * Dictionary identifier (Adler-32 checksum of dictionary bytes)
+	 *
+	 */
+	private final int id;
+
+	/**
+	 * Compression dictionary constructor
+	 *
+	 * @param bytes dictionary bytes. The most frequent sequences should be placed closer to the end
+	 */
+	public CompressionDictionary(byte[] bytes)
+	{
+		Objects.requireNonNull(bytes, "Dictionary bytes cannot be null");
+
+		if (bytes.length == 0)
+			throw new IllegalArgumentException("Dictionary cannot be empty");
+
+		this.bytes = bytes.clone();
+
+		Adler32 adler = new Adler32();
+		adler.update(this.bytes);
+		this.id = (int) adler.getValue();
+	}
+
+	/**
+	 * Dictionary bytes getter
+	 *
+	 * @return dictionary bytes
+	 */
+	byte[] bytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * Dictionary identifier getter
+	 *
+	 * @return dictionary identifier
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
+	/**
+	 * Dictionary size getter
+	 *
+	 * @return dictionary size in bytes
+	 */
+	public int size()
+	{
+		return bytes.length;
+	}
+
+	/**
+	 * This method trains a dictionary of the default size from sample messages
+	 *
+	 * @param samples sample messages bytes
+	 * @return trained dictionary
+	 */
+	public static CompressionDictionary train(List<byte[]> samples)
+	{
+		return train(samples, DEFAULT_SIZE);
+	}
+
+	/**
+	 * This method trains a dictionary from sample messages.
+	 * Byte sequences shared by several samples are collected and ranked by the amount of samples containing them.
+	 * The best sequences are placed at the end of the dictionary, where deflate references them the cheapest
+	 *
+	 * @param samples sample messages bytes
+	 * @param size maximal dictionary size
+	 * @return trained dictionary
+	 */
+	public static CompressionDictionary train(List<byte[]> samples, int size)
+	{
+		Objects.requireNonNull(samples, "Samples cannot be null");
+
+		if (samples.isEmpty())
+			throw new IllegalArgumentException("At least one sample is required");
+
+		if (size <= 0)
+			throw new IllegalArgumentException("Dictionary size has to be positive");
+
+//		A single sample has nothing to be compared with, so it is the dictionary itself
+		if (samples.size() == 1)
+		{
+			byte[] sample = samples.get(0);
+			return new CompressionDictionary(Arrays.copyOfRange(sample, Math.max(0, sample.length - size), sample.length));
+		}
+
+		Map<Long, Integer> frequencies = countGrams(samples);
+		Map<ByteBuffer, Long> segments = new HashMap<>();
+
+		for (byte[] sample : samples)
+		{
+			int start = -1;
+			long score = 0;
+
+			for (int i = 0; i <= sample.length - GRAM_LENGTH; i++)
+			{
+				int frequency = frequencies.getOrDefault(gram(sample, i), 0);
+
+				if (frequency > 1)
+				{
+					if (start < 0) start = i;
+					score += frequency;
+					continue;
+				}
+
+				if (start >= 0)
+					segments.merge(ByteBuffer.wrap(Arrays.copyOfRange(sample, start, i + GRAM_LENGTH - 1)), score, Math::max);
+
+				start = -1;
+				score = 0;
+			}
+
+			if (start >= 0)
+				segments.merge(ByteBuffer.wrap(Arrays.copyOfRange(sample, start, sample.length)), score, Math::max);
+		}
+
+		if (segments.isEmpty())
+			throw new IllegalArgumentException("Samples do not share any byte sequences");
+
+//		Selecting the best segments which fit the dictionary
+		List<Map.Entry<ByteBuffer, Long>> ranked = new ArrayList<>(segments.entrySet());
+		ranked.sort(Map.Entry.<ByteBuffer, Long>comparingByValue().reversed());
+
+		Deque<byte[]> selected = new ArrayDeque<>();
+		int total = 0;
+		for (Map.Entry<ByteBuffer, Long> segment : ranked)
+		{
+			byte[] segmentBytes = segment.getKey().array();
+			if (total + segmentBytes.length > size)
+				continue;
+
+			selected.addFirst(segmentBytes);
+			total += segmentBytes.length;
+		}
+
+		if (selected.isEmpty())
+		{
+			byte[] best = ranked.get(0).getKey().array();
+			selected.add(Arrays.copyOfRange(best, best.length - size, best.length));
+		}
+
+		ByteArrayOutputStream dictionary = new ByteArrayOutputStream(total);
+		for (byte[] segment : selected)
+			dictionary.writeBytes(segment);
+
+		return new CompressionDictionary(dictionary.toByteArray());
+	}
+
+	/**
+	 * This method counts the amount of samples every byte sequence occurs in
+	 *
+	 * @param samples sample messages bytes
+	 * @return sequence frequencies
+	 */
+	private static Map<Long, Integer> countGrams(List<byte[]> samples)
+	{
+		Map<Long, Integer> frequencies = new HashMap<>();
+
+		for (byte[] sample : samples)
+		{
+			Set<Long> seen = new HashSet<>();
+
+			for (int i = 0; i <= sample.length - GRAM_LENGTH; i++)
+			{
+				long gram = gram(sample, i);
+				if (seen.add(gram))
+					frequencies.merge(gram, 1, Integer::sum);
+			}
+		}
+
+		return frequencies;
+	}
+
+	/**
+	 * This method packs a byte sequence into a long value
+	 *
+	 * @param bytes source bytes
+	 * @param offset sequence offset
+	 * @return packed sequence
+	 */
+	private static long gram(byte[] bytes, int offset)
+	{
+		long gram = 0;
+		for (int i = 0; i < GRAM_LENGTH; i++)
+			gram = (gram << 8) | (bytes[offset + i] & 0xFF);
+
+		return gram;
+	}
+}
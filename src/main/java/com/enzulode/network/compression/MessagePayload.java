@@ -0,0 +1,24 @@
+package com.enzulode.network.compression;
+
+import java.util.Objects;
+
+/**
+ * This record represents message bytes prepared for framing
+ *
+ * @param bytes message bytes
+ * @param compressed This property defines are the message bytes compressed
+ */
+public record MessagePayload(byte[] bytes, boolean compressed)
+{
+	/**
+	 * This record represents message bytes prepared for framing
+	 *
+	 * @param bytes message bytes
+	 * @param compressed This property defines are the message bytes compressed
+	 */
+	public MessagePayload
+	{
+//		Requiring message bytes to be non-null
+		Objects.requireNonNull(bytes, "Message bytes cannot be null");
+	}
+}
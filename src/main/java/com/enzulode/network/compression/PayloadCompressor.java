@@ -0,0 +1,303 @@
+package com.enzulode.network.compression;
+
+import com.enzulode.network.exception.MappingException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class compresses message bytes before framing and decompresses them after assembling.
+ * Compressed payload is the original length followed by a zlib stream, so the stream refers to the preset dictionary
+ * by its checksum. Deflater and inflater instances are kept per thread and reused for every message
+ *
+ */
+public final class PayloadCompressor
+{
+	/**
+	 * Default compression threshold in bytes. Smaller messages are sent as is
+	 *
+	 */
+	public static final int DEFAULT_THRESHOLD = 256;
+
+	/**
+	 * The largest message that can be decompressed
+	 *
+	 */
+	public static final int MAX_DECOMPRESSED_SIZE = 128 * 1024 * 1024;
+
+	/**
+	 * Compressed payload header size: original message length
+	 *
+	 */
+	private static final int HEADER_SIZE = Integer.BYTES;
+
+	/**
+	 * The largest output buffer kept per thread between messages
+	 *
+	 */
+	private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * The smallest decompression output buffer
+	 *
+	 */
+	private static final int MIN_OUTPUT_BUFFER_SIZE = 4096;
+
+	/**
+	 * Compression ratio the decompression output buffer is sized for at first
+	 *
+	 */
+	private static final int EXPECTED_COMPRESSION_RATIO = 4;
+
+	/**
+	 * Per thread deflater instances
+	 *
+	 */
+	private final ThreadLocal<Deflater> deflaters;
+
+	/**
+	 * Per thread inflater instances
+	 *
+	 */
+	private final ThreadLocal<Inflater> inflaters;
+
+	/**
+	 * Per thread compression output buffers
+	 *
+	 */
+	private final ThreadLocal<byte[]> buffers;
+
+	/**
+	 * Known dictionaries by their identifiers
+	 *
+	 */
+	private final ConcurrentMap<Integer, CompressionDictionary> dictionaries;
+
+	/**
+	 * Compression state
+	 *
+	 */
+	private volatile boolean enabled;
+
+	/**
+	 * Compression threshold in bytes
+	 *
+	 */
+	private volatile int threshold;
+
+	/**
+	 * Dictionary used for compression
+	 *
+	 */
+	private volatile CompressionDictionary dictionary;
+
+	/**
+	 * Payload compressor constructor. Compression is disabled until it is explicitly enabled,
+	 * but compressed payloads are decompressed anyway
+	 *
+	 */
+	public PayloadCompressor()
+	{
+		this.deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+		this.inflaters = ThreadLocal.withInitial(Inflater::new);
+		this.buffers = ThreadLocal.withInitial(() -> new byte[0]);
+		this.dictionaries = new ConcurrentHashMap<>();
+		this.threshold = DEFAULT_THRESHOLD;
+	}
+
+	/**
+	 * Compression state setter
+	 *
+	 * @param enabled true to compress messages exceeding the threshold and false otherwise
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Compression threshold setter
+	 *
+	 * @param threshold the smallest message size in bytes to be compressed
+	 */
+	public void setThreshold(int threshold)
+	{
+		if (threshold < 0)
+			throw new IllegalArgumentException("Compression threshold cannot be negative");
+
+		this.threshold = threshold;
+	}
+
+	/**
+	 * This method sets the dictionary used for compression.
+	 * The dictionary is remembered, so messages compressed with it are decompressed even after it was replaced
+	 *
+	 * @param dictionary compression dictionary or null to compress without a dictionary
+	 */
+	public void setDictionary(CompressionDictionary dictionary)
+	{
+		if (dictionary != null)
+			registerDictionary(dictionary);
+
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * This method registers a dictionary used for decompression only
+	 *
+	 * @param dictionary compression dictionary
+	 */
+	public void registerDictionary(CompressionDictionary dictionary)
+	{
+		Objects.requireNonNull(dictionary, "Dictionary cannot be null");
+
+		dictionaries.put(dictionary.getId(), dictionary);
+	}
+
+	/**
+	 * This method compresses message bytes if compression is enabled, the message exceeds the threshold
+	 * and compressed bytes are shorter than the original ones
+	 *
+	 * @param bytes message bytes
+	 * @return payload to be framed
+	 */
+	public MessagePayload compress(byte[] bytes)
+	{
+		Objects.requireNonNull(bytes, "Message bytes cannot be null");
+
+		if (!enabled || bytes.length < threshold)
+			return new MessagePayload(bytes, false);
+
+		Deflater deflater = deflaters.get();
+		deflater.reset();
+
+		CompressionDictionary currentDictionary = dictionary;
+		if (currentDictionary != null)
+			deflater.setDictionary(currentDictionary.bytes());
+
+		deflater.setInput(bytes);
+		deflater.finish();
+
+//		Compressed payload is useful only if it is shorter than the original one
+		byte[] output = outputBuffer(bytes.length);
+		ByteBuffer.wrap(output).putInt(bytes.length);
+
+		int length = HEADER_SIZE;
+		while (!deflater.finished() && length < bytes.length)
+			length += deflater.deflate(output, length, bytes.length - length);
+
+		if (!deflater.finished())
+			return new MessagePayload(bytes, false);
+
+		return new MessagePayload(Arrays.copyOf(output, length), true);
+	}
+
+	/**
+	 * This method decompresses compressed payload
+	 *
+	 * @param bytes compressed payload
+	 * @return original message bytes
+	 * @throws MappingException if the payload is corrupted or was compressed with an unknown dictionary
+	 */
+	public byte[] decompress(byte[] bytes) throws MappingException
+	{
+		Objects.requireNonNull(bytes, "Compressed payload cannot be null");
+
+		return decompress(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * This method decompresses compressed payload reading it right from the buffer, e.g. an off-heap one
+	 *
+	 * @param payload buffer with compressed payload between its position and limit
+	 * @return original message bytes
+	 * @throws MappingException if the payload is corrupted or was compressed with an unknown dictionary
+	 */
+	public byte[] decompress(ByteBuffer payload) throws MappingException
+	{
+		Objects.requireNonNull(payload, "Compressed payload cannot be null");
+
+		if (payload.remaining() < HEADER_SIZE)
+			throw new MappingException("Failed to decompress payload: payload is too short");
+
+		ByteBuffer input = payload.slice();
+		int length = input.getInt();
+		if (length < 0 || length > MAX_DECOMPRESSED_SIZE)
+			throw new MappingException("Failed to decompress payload: illegal message length");
+
+		Inflater inflater = inflaters.get();
+		inflater.reset();
+		inflater.setInput(input);
+
+//		The declared length is not trusted: the output grows with the inflated bytes, so a forged header
+//		costs no more memory than the stream actually inflates to
+		int capacity = (int) Math.min(
+				length,
+				Math.max(MIN_OUTPUT_BUFFER_SIZE, (long) input.remaining() * EXPECTED_COMPRESSION_RATIO)
+		);
+		byte[] output = new byte[capacity];
+		int position = 0;
+
+		try
+		{
+			while (position < length)
+			{
+				if (position == output.length)
+					output = Arrays.copyOf(output, (int) Math.min(length, 2L * output.length));
+
+				int inflated = inflater.inflate(output, position, output.length - position);
+				position += inflated;
+
+				if (inflated > 0)
+					continue;
+
+				if (inflater.needsDictionary())
+				{
+					CompressionDictionary required = dictionaries.get(inflater.getAdler());
+					if (required == null)
+						throw new MappingException("Failed to decompress payload: unknown dictionary");
+
+					inflater.setDictionary(required.bytes());
+					continue;
+				}
+
+				if (inflater.finished() || inflater.needsInput())
+					break;
+			}
+		}
+		catch (DataFormatException e)
+		{
+			throw new MappingException("Failed to decompress payload: corrupted stream", e);
+		}
+
+		if (position != length)
+			throw new MappingException("Failed to decompress payload: message is truncated");
+
+		return output;
+	}
+
+	/**
+	 * This method provides the current thread output buffer
+	 *
+	 * @param size required buffer size
+	 * @return output buffer
+	 */
+	private byte[] outputBuffer(int size)
+	{
+		byte[] buffer = buffers.get();
+		if (buffer.length >= size)
+			return buffer;
+
+		buffer = new byte[size];
+		if (size <= MAX_RETAINED_BUFFER_SIZE)
+			buffers.set(buffer);
+
+		return buffer;
+	}
+}
@@ -0,0 +1,107 @@
+package com.enzulode.network.concurrent.executors;
+
+import com.enzulode.network.concurrent.factories.ThreadNamingFactory;
+
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor of single-threaded lanes. Tasks are routed to a lane by their affinity key, so tasks of the same key
+ * run one by one in submission order, while tasks of different keys run in parallel on different lanes.
+ * State touched by the tasks of a single key is confined to a single thread and needs no locking
+ *
+ */
+public final class LaneExecutor implements AutoCloseable
+{
+	/**
+	 * Single-threaded lanes
+	 *
+	 */
+	private final ThreadPoolExecutor[] lanes;
+
+	/**
+	 * Lane executor constructor
+	 *
+	 * @param lanesCount the amount of lanes
+	 * @param threadGroupName lane threads group name
+	 */
+	public LaneExecutor(int lanesCount, String threadGroupName)
+	{
+		if (lanesCount < 1)
+			throw new IllegalArgumentException("Lanes count cannot be less than 1");
+
+		ThreadNamingFactory threadFactory = new ThreadNamingFactory(threadGroupName, "lane");
+
+		this.lanes = new ThreadPoolExecutor[lanesCount];
+		for (int i = 0; i < lanesCount; i++)
+			lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+	}
+
+	/**
+	 * This method submits the task to the lane of the affinity key
+	 *
+	 * @param affinityKey key the lane is chosen by
+	 * @param task task to be executed
+	 */
+	public void execute(Object affinityKey, Runnable task)
+	{
+//		Requiring affinity key to be non-null
+		Objects.requireNonNull(affinityKey, "Affinity key cannot be null");
+
+		lanes[laneOf(affinityKey)].execute(task);
+	}
+
+	/**
+	 * Lanes count getter
+	 *
+	 * @return the amount of lanes
+	 */
+	public int getLanesCount()
+	{
+		return lanes.length;
+	}
+
+	/**
+	 * This method counts the tasks waiting in all lanes
+	 *
+	 * @return the amount of queued tasks
+	 */
+	public long getQueuedTaskCount()
+	{
+		long queued = 0;
+		for (ThreadPoolExecutor lane : lanes)
+			queued += lane.getQueue().size();
+
+		return queued;
+	}
+
+	/**
+	 * This method resolves the lane of the affinity key
+	 *
+	 * @param affinityKey key the lane is chosen by
+	 * @return lane index
+	 */
+	private int laneOf(Object affinityKey)
+	{
+//		Spreading the hash bits, so keys differing in the high bits only do not share a lane
+		int hash = affinityKey.hashCode();
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		return Math.floorMod(hash, lanes.length);
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Stops accepting tasks, the queued ones are still executed
+	 *
+	 */
+	@Override
+	public void close()
+	{
+		for (ThreadPoolExecutor lane : lanes)
+			lane.shutdown();
+	}
+}
@@ -1,31 +1,79 @@
 package com.enzulode.network.concurrent.structures;
 
+import com.enzulode.network.jfr.MessageAssembledEvent;
+import com.enzulode.network.jfr.MessageExpiredEvent;
+import com.enzulode.network.metrics.NetworkMetrics;
 import com.enzulode.network.model.transport.UDPFrame;
+import com.enzulode.network.util.AssembledMessage;
+import com.enzulode.network.util.MessageAssembler;
+import com.enzulode.network.util.ReassemblyArena;
 
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeUnit;
 
 /**
- * This map is designed for udp frame receiving
+ * This map is designed for udp frame receiving.
+ * Frames are grouped by sender {@link SocketAddress} and message identifier.
+ * Messages are kept in a striped open addressing table: the sender is packed into a primitive key
+ * (IPv4 address and port), so concurrent receivers only contend for the same segment and no key objects
+ * are created per frame
  *
  */
 public class ConcurrentFrameReceivingMap
 {
 	/**
-	 * Concurrent map instance
+	 * The amount of table segments. Has to be a power of two
 	 *
 	 */
-	private final ConcurrentMap<SocketAddress, List<UDPFrame>> map;
+	private static final int SEGMENTS = 16;
 
 	/**
-	 * Map lock instance
+	 * Initial capacity of a segment. Has to be a power of two
 	 *
 	 */
-	private final Lock lock;
+	private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+	/**
+	 * Peer key flag of the senders which cannot be packed (e.g. IPv6 ones). Such keys are address hashes,
+	 * so the sender address is compared as well
+	 *
+	 */
+	private static final long HASHED_PEER = 1L << 63;
+
+	/**
+	 * Period between expired messages sweeps in nanoseconds
+	 *
+	 */
+	private static final long EXPIRATION_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Table segments
+	 *
+	 */
+	private final Segment[] segments;
+
+	/**
+	 * Network metrics instance
+	 *
+	 */
+	private final NetworkMetrics metrics;
+
+	/**
+	 * Arena the messages are assembled in or null if messages are assembled on heap
+	 *
+	 */
+	private volatile ReassemblyArena arena;
+
+	/**
+	 * {@link System#nanoTime()} value of the next expired messages sweep
+	 *
+	 */
+	private volatile long nextExpirationCheck;
 
 	/**
 	 * Concurrent frame receiving map constructor
@@ -33,47 +81,87 @@ public class ConcurrentFrameReceivingMap
 	 */
 	public ConcurrentFrameReceivingMap()
 	{
-		map = new ConcurrentHashMap<>();
-		lock = new ReentrantLock();
+		this(new NetworkMetrics());
 	}
 
 	/**
-	 * This method puts a new udp frame into the map using sender {@link SocketAddress} as key
+	 * Concurrent frame receiving map constructor
+	 *
+	 * @param metrics network metrics instance assembled and expired messages are counted with
+	 */
+	public ConcurrentFrameReceivingMap(NetworkMetrics metrics)
+	{
+		Objects.requireNonNull(metrics, "Network metrics instance cannot be null");
+
+		this.segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++)
+			segments[i] = new Segment();
+
+		this.metrics = metrics;
+		this.nextExpirationCheck = System.nanoTime() + EXPIRATION_CHECK_INTERVAL;
+	}
+
+	/**
+	 * Reassembly arena setter. Affects messages which first frame is received after the arena was set
+	 *
+	 * @param arena reassembly arena or null to assemble messages on heap
+	 */
+	public void setArena(ReassemblyArena arena)
+	{
+		this.arena = arena;
+	}
+
+	/**
+	 * This method puts a new udp frame into the map using sender {@link SocketAddress} and
+	 * frame message identifier as key. Only the frame message is looked at, while expired messages
+	 * are swept at most once per second
 	 *
 	 * @param address sender address
 	 * @param frame frame to be added into the map
+	 * @return the message completed by the frame or null if the message is not complete yet or was delivered already.
+	 * Returned message has to be closed after decoding, so its arena slab is reused
 	 */
-	public void add(SocketAddress address, UDPFrame frame)
+	public AssembledMessage add(SocketAddress address, UDPFrame frame)
 	{
-		if (map.containsKey(address) && map.get(address) != null)
+		long peer = peerKey(address);
+		long hash = hash(peer, frame.messageId());
+
+		AssembledMessage completed = segmentFor(hash).add(hash, peer, address, frame);
+
+		long now = System.nanoTime();
+		if (now - nextExpirationCheck >= 0)
 		{
-			map.get(address).add(frame);
-			return;
+			nextExpirationCheck = now + EXPIRATION_CHECK_INTERVAL;
+			for (Segment segment : segments)
+				if (segment.size > 0)
+					segment.collectCompleted(now, null);
 		}
 
-		lock.lock();
-		List<UDPFrame> frames = new LinkedList<>();
-		frames.add(frame);
-		map.put(address, frames);
-		lock.unlock();
+		return completed;
 	}
 
 	/**
 	 * This method finds a list of udp frames for a specific socket address
 	 *
 	 * @param address requested frames address
-	 * @return unmodifiable list of udp frames
+	 * @return unmodifiable list of udp frames of completed messages
 	 */
 	public List<UDPFrame> findFramesByAddress(SocketAddress address)
 	{
-		return (map.containsKey(address) && map.get(address) != null)
-				? Collections.unmodifiableList(map.get(address))
-				: Collections.emptyList();
+		long peer = peerKey(address);
+		List<UDPFrame> frames = new ArrayList<>();
+
+		for (Segment segment : segments)
+			segment.collectFrames(peer, address, frames);
+
+		return Collections.unmodifiableList(frames);
 	}
 
 	/**
 	 * This method returns a list of {@link Pair}. Each pair contains a frames sender address and
-	 * the list of frame referring to it
+	 * the list of frame referring to it. Every message is returned once: messages protected with FEC
+	 * are kept as delivered until expiration to absorb late parity frames, expired messages are dropped.
+	 * Message payload is copied on heap and returned as a single frame
 	 *
 	 * @return a list of pairs of socket address and list frames referring to this specific address
 	 */
@@ -81,16 +169,11 @@ public class ConcurrentFrameReceivingMap
 	{
 		List<Pair<SocketAddress, List<UDPFrame>>> completedRequestsFramesList = new ArrayList<>();
 
-		for (Iterator<Map.Entry<SocketAddress, List<UDPFrame>>> i = map.entrySet().iterator(); i.hasNext();)
+		for (Pair<SocketAddress, AssembledMessage> completedMessage : findCompletedMessages())
 		{
-			Map.Entry<SocketAddress, List<UDPFrame>> entry = i.next();
-
-			if (validateFrameListCompleted(entry.getValue()))
+			try (AssembledMessage message = completedMessage.value())
 			{
-				lock.lock();
-				completedRequestsFramesList.add(new Pair<>(entry.getKey(), entry.getValue()));
-				i.remove();
-				lock.unlock();
+				completedRequestsFramesList.add(new Pair<>(completedMessage.key(), toFrames(message)));
 			}
 		}
 
@@ -98,14 +181,408 @@ public class ConcurrentFrameReceivingMap
 	}
 
 	/**
-	 * This method validates a list of frames for completion
+	 * This method returns a list of {@link Pair}. Each pair contains a sender address and the assembled message.
+	 * Every message is returned once: messages protected with FEC are kept as delivered until expiration
+	 * to absorb late parity frames, expired messages are dropped. Returned messages have to be closed
+	 * after decoding, so their arena slabs are reused
 	 *
-	 * @param frames list of frames to be validated
-	 * @return validation result. True if the last frame of the request contains frame that is marked as last
-	 * and false otherwise
+	 * @return a list of pairs of socket address and assembled message
 	 */
-	private boolean validateFrameListCompleted(List<UDPFrame> frames)
+	public List<Pair<SocketAddress, AssembledMessage>> findCompletedMessages()
 	{
-		return frames.get(frames.size() - 1).last();
+		List<Pair<SocketAddress, AssembledMessage>> completedMessages = new ArrayList<>();
+		long now = System.nanoTime();
+
+		for (Segment segment : segments)
+			if (segment.size > 0)
+				segment.collectCompleted(now, completedMessages);
+
+		return Collections.unmodifiableList(completedMessages);
+	}
+
+	/**
+	 * This method returns the amount of messages being assembled, including the delivered ones
+	 * which are kept to absorb their late frames
+	 *
+	 * @return the amount of messages in the map
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (Segment segment : segments)
+			size += segment.size;
+
+		return size;
+	}
+
+	/**
+	 * This method wraps the message payload with a single frame
+	 *
+	 * @param message assembled message
+	 * @return single frame list
+	 */
+	private static List<UDPFrame> toFrames(AssembledMessage message)
+	{
+		ByteBuffer payload = message.getPayload();
+		byte[] data = new byte[payload.remaining()];
+		payload.get(data);
+
+		return List.of(new UDPFrame(data, true, message.getMessageId(), 0, 1, data.length, 0, 0, false, message.isCompressed()));
+	}
+
+	/**
+	 * This method packs the sender address into a primitive key.
+	 * IPv4 senders take 48 bits (address and port), other senders are hashed and flagged with {@link #HASHED_PEER}
+	 *
+	 * @param address sender address
+	 * @return peer key
+	 */
+	static long peerKey(SocketAddress address)
+	{
+		if (address instanceof InetSocketAddress inetAddress)
+		{
+			InetAddress ip = inetAddress.getAddress();
+			if (ip instanceof Inet4Address)
+			{
+//				IPv4 address hash code is the address itself, so the address bytes are not copied for every frame
+				long packedIp = ip.hashCode() & 0xFFFFFFFFL;
+
+				return (packedIp << 16) | inetAddress.getPort();
+			}
+		}
+
+		return HASHED_PEER | (address.hashCode() & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * This method mixes the peer key and the message identifier into the table hash
+	 *
+	 * @param peer peer key
+	 * @param messageId message identifier
+	 * @return table hash
+	 */
+	private static long hash(long peer, int messageId)
+	{
+		long hash = peer * 0x9E3779B97F4A7C15L + messageId;
+		hash = (hash ^ (hash >>> 32)) * 0xD6E8FEB86659FD93L;
+		hash = (hash ^ (hash >>> 32)) * 0xD6E8FEB86659FD93L;
+		return hash ^ (hash >>> 32);
+	}
+
+	/**
+	 * This method selects the segment by the high bits of the hash, low bits select the slot
+	 *
+	 * @param hash table hash
+	 * @return segment instance
+	 */
+	private Segment segmentFor(long hash)
+	{
+		return segments[(int) (hash >>> 60) & (SEGMENTS - 1)];
+	}
+
+	/**
+	 * Open addressing segment of the table with linear probing.
+	 * Keys and assemblers are kept in parallel arrays, removal shifts the following entries back,
+	 * so lookups never need tombstones
+	 *
+	 */
+	private final class Segment
+	{
+		/**
+		 * Peer keys
+		 *
+		 */
+		private long[] peers;
+
+		/**
+		 * Message identifiers
+		 *
+		 */
+		private int[] messageIds;
+
+		/**
+		 * Sender addresses
+		 *
+		 */
+		private SocketAddress[] addresses;
+
+		/**
+		 * Message assemblers, null marks a free slot
+		 *
+		 */
+		private MessageAssembler[] assemblers;
+
+		/**
+		 * The amount of messages in the segment
+		 *
+		 */
+		private volatile int size;
+
+		/**
+		 * Segment constructor
+		 *
+		 */
+		Segment()
+		{
+			allocate(INITIAL_SEGMENT_CAPACITY);
+		}
+
+		/**
+		 * This method adds the frame to the assembler of its message, the assembler is created on the first frame
+		 *
+		 * @param hash table hash
+		 * @param peer peer key
+		 * @param address sender address
+		 * @param frame received frame
+		 * @return the message completed by the frame or null
+		 */
+		synchronized AssembledMessage add(long hash, long peer, SocketAddress address, UDPFrame frame)
+		{
+			int mask = assemblers.length - 1;
+			int slot = (int) hash & mask;
+
+			while (assemblers[slot] != null)
+			{
+				if (matches(slot, peer, frame.messageId(), address))
+				{
+					MessageAssembler assembler = assemblers[slot];
+					addFrame(assembler, frame);
+					return assembler.isComplete() && !assembler.isDelivered() ? deliver(slot) : null;
+				}
+
+				slot = (slot + 1) & mask;
+			}
+
+			MessageAssembler assembler = new MessageAssembler(frame, arena);
+			addFrame(assembler, frame);
+
+			peers[slot] = peer;
+			messageIds[slot] = frame.messageId();
+			addresses[slot] = address;
+			assemblers[slot] = assembler;
+			size++;
+
+			AssembledMessage completed = assembler.isComplete() ? deliver(slot) : null;
+
+//			Load factor is kept under a half, so probe sequences stay short
+			if (size * 2 > assemblers.length)
+				resize();
+
+			return completed;
+		}
+
+		/**
+		 * This method adds the frame to the message counting the frames its index skipped
+		 *
+		 * @param assembler message assembler
+		 * @param frame received frame
+		 */
+		private void addFrame(MessageAssembler assembler, UDPFrame frame)
+		{
+			int skipped = assembler.getSkippedFrameCount();
+			assembler.add(frame);
+
+			if (assembler.getSkippedFrameCount() != skipped)
+				metrics.framesLost(assembler.getSkippedFrameCount() - skipped);
+		}
+
+		/**
+		 * This method hands the complete message of the slot over. Messages protected with FEC are kept
+		 * as delivered until expiration to absorb late parity frames, the other ones are removed
+		 *
+		 * @param slot slot of the complete and not delivered message
+		 * @return assembled message
+		 */
+		private AssembledMessage deliver(int slot)
+		{
+			MessageAssembler assembler = assemblers[slot];
+			SocketAddress address = addresses[slot];
+
+			metrics.messageAssembled();
+			metrics.framesLost(assembler.getTrailingFrameCount());
+			MessageAssembledEvent.emit(address, assembler);
+			AssembledMessage message = assembler.message();
+
+			if (!assembler.isProtected())
+				remove(slot);
+
+			return message;
+		}
+
+		/**
+		 * This method collects frames of the completed and not delivered messages of the sender
+		 *
+		 * @param peer peer key
+		 * @param address sender address
+		 * @param frames frames list to be filled
+		 */
+		synchronized void collectFrames(long peer, SocketAddress address, List<UDPFrame> frames)
+		{
+			for (int slot = 0; slot < assemblers.length; slot++)
+			{
+				MessageAssembler assembler = assemblers[slot];
+				if (assembler == null || peers[slot] != peer)
+					continue;
+
+				if ((peer & HASHED_PEER) != 0 && !addresses[slot].equals(address))
+					continue;
+
+				if (assembler.isComplete() && !assembler.isDelivered())
+					frames.addAll(assembler.frames());
+			}
+		}
+
+		/**
+		 * This method collects completed messages and drops the expired ones
+		 *
+		 * @param now current {@link System#nanoTime()} value
+		 * @param completed completed messages list to be filled or null to drop the expired messages only
+		 */
+		synchronized void collectCompleted(long now, List<Pair<SocketAddress, AssembledMessage>> completed)
+		{
+			int slot = 0;
+			while (slot < assemblers.length)
+			{
+				MessageAssembler assembler = assemblers[slot];
+				if (assembler == null)
+				{
+					slot++;
+					continue;
+				}
+
+				SocketAddress address = addresses[slot];
+				if (assembler.isExpired(now))
+				{
+					remove(slot);
+					assembler.release();
+
+					if (!assembler.isComplete())
+					{
+						metrics.messageExpired();
+						metrics.framesLost(assembler.getTrailingFrameCount());
+						MessageExpiredEvent.emit(address, assembler);
+					}
+
+//					The slot is taken by the shifted entry now, so it is checked again
+					continue;
+				}
+
+				if (completed != null && assembler.isComplete() && !assembler.isDelivered())
+				{
+					completed.add(new Pair<>(address, deliver(slot)));
+
+//					The slot is taken by the shifted entry now if the message was removed
+					if (assemblers[slot] != assembler)
+						continue;
+				}
+
+				slot++;
+			}
+		}
+
+		/**
+		 * This method checks if the slot keeps the message
+		 *
+		 * @param slot slot index
+		 * @param peer peer key
+		 * @param messageId message identifier
+		 * @param address sender address, compared only if the peer key is a hash
+		 * @return true if the slot keeps the message
+		 */
+		private boolean matches(int slot, long peer, int messageId, SocketAddress address)
+		{
+			return peers[slot] == peer
+					&& messageIds[slot] == messageId
+					&& ((peer & HASHED_PEER) == 0 || addresses[slot].equals(address));
+		}
+
+		/**
+		 * This method frees the slot and shifts back the entries of the same probe sequence.
+		 * Entries wrapped around the end of the segment may be shifted to the slots already iterated over,
+		 * iteration tolerates it since completed entries are either removed or marked delivered
+		 *
+		 * @param slot slot to be freed
+		 */
+		private void remove(int slot)
+		{
+			int mask = assemblers.length - 1;
+			int free = slot;
+			int next = (free + 1) & mask;
+
+			while (assemblers[next] != null)
+			{
+				int home = (int) hash(peers[next], messageIds[next]) & mask;
+
+//				The entry may be shifted to the free slot if the free slot lies between its home slot and it
+				if (((next - home) & mask) >= ((next - free) & mask))
+				{
+					move(next, free);
+					free = next;
+				}
+
+				next = (next + 1) & mask;
+			}
+
+			addresses[free] = null;
+			assemblers[free] = null;
+			size--;
+		}
+
+		/**
+		 * This method moves the entry to another slot
+		 *
+		 * @param from source slot
+		 * @param to destination slot
+		 */
+		private void move(int from, int to)
+		{
+			peers[to] = peers[from];
+			messageIds[to] = messageIds[from];
+			addresses[to] = addresses[from];
+			assemblers[to] = assemblers[from];
+		}
+
+		/**
+		 * This method doubles the segment capacity
+		 *
+		 */
+		private void resize()
+		{
+			long[] oldPeers = peers;
+			int[] oldMessageIds = messageIds;
+			SocketAddress[] oldAddresses = addresses;
+			MessageAssembler[] oldAssemblers = assemblers;
+
+			allocate(oldAssemblers.length * 2);
+			int mask = assemblers.length - 1;
+
+			for (int i = 0; i < oldAssemblers.length; i++)
+			{
+				if (oldAssemblers[i] == null)
+					continue;
+
+				int slot = (int) hash(oldPeers[i], oldMessageIds[i]) & mask;
+				while (assemblers[slot] != null)
+					slot = (slot + 1) & mask;
+
+				peers[slot] = oldPeers[i];
+				messageIds[slot] = oldMessageIds[i];
+				addresses[slot] = oldAddresses[i];
+				assemblers[slot] = oldAssemblers[i];
+			}
+		}
+
+		/**
+		 * This method allocates empty segment arrays
+		 *
+		 * @param capacity segment capacity
+		 */
+		private void allocate(int capacity)
+		{
+			this.peers = new long[capacity];
+			this.messageIds = new int[capacity];
+			this.addresses = new SocketAddress[capacity];
+			this.assemblers = new MessageAssembler[capacity];
+		}
 	}
 }
@@ -0,0 +1,71 @@
+package com.enzulode.network.concurrent.structures;
+
+import com.enzulode.network.model.interconnection.Request;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Special record for assembled requests waiting for the handler
+ *
+ * @param request request instance
+ * @param assembledAt {@link System#nanoTime()} value the request was assembled at
+ */
+public record ReceivedRequest(Request request, long assembledAt)
+{
+	/**
+	 * Period requests without deadline are ordered by as if their clients waited for the response that long, in nanoseconds.
+	 * Such requests age like the other ones, so a steady flow of requests with deadlines never starves them
+	 *
+	 */
+	public static final long NO_DEADLINE_PRIORITY = TimeUnit.SECONDS.toNanos(2);
+
+	/**
+	 * Earliest deadline first order. Requests without deadline are ordered by the deadline {@link #NO_DEADLINE_PRIORITY}
+	 * after they were assembled, but they are never expired
+	 *
+	 */
+	public static final Comparator<ReceivedRequest> EARLIEST_DEADLINE_FIRST =
+			(first, second) -> Long.signum(first.priorityDeadline() - second.priorityDeadline());
+
+	/**
+	 * This method checks if the request has a deadline
+	 *
+	 * @return true if the client has set the request time budget
+	 */
+	public boolean hasDeadline()
+	{
+		return request.getTimeBudget() > 0;
+	}
+
+	/**
+	 * Deadline getter
+	 *
+	 * @return {@link System#nanoTime()} value the client stops waiting for the response at
+	 */
+	public long deadline()
+	{
+		return assembledAt + TimeUnit.MILLISECONDS.toNanos(request.getTimeBudget());
+	}
+
+	/**
+	 * Priority deadline getter
+	 *
+	 * @return {@link System#nanoTime()} value the request is ordered by
+	 */
+	public long priorityDeadline()
+	{
+		return hasDeadline() ? deadline() : assembledAt + NO_DEADLINE_PRIORITY;
+	}
+
+	/**
+	 * This method checks if the client stopped waiting for the response
+	 *
+	 * @param now current {@link System#nanoTime()} value
+	 * @return true if the request has a deadline and it has passed
+	 */
+	public boolean isExpired(long now)
+	{
+		return hasDeadline() && now - deadline() > 0;
+	}
+}
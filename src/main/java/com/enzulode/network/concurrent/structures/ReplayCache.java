@@ -0,0 +1,232 @@
+package com.enzulode.network.concurrent.structures;
+
+import java.net.SocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This cache keeps encoded response frames by client address and request message identifier.
+ * A request is reserved as soon as it is assembled, so its duplicates are never handled again:
+ * duplicates of a request being handled are dropped and duplicates of a responded one get the cached frames.
+ * Responses are kept for the replay window, the least recently used ones are evicted if the cache exceeds its capacity
+ *
+ */
+public final class ReplayCache
+{
+	/**
+	 * Default replay window in milliseconds
+	 *
+	 */
+	public static final long DEFAULT_WINDOW = TimeUnit.SECONDS.toMillis(30);
+
+	/**
+	 * Default cache capacity in bytes
+	 *
+	 */
+	public static final long DEFAULT_CAPACITY = 8 * 1024 * 1024;
+
+	/**
+	 * Cached entries in access order
+	 *
+	 */
+	private final LinkedHashMap<Pair<SocketAddress, Integer>, Entry> entries;
+
+	/**
+	 * Replay window in nanoseconds
+	 *
+	 */
+	private long windowNanos;
+
+	/**
+	 * Cache capacity in bytes
+	 *
+	 */
+	private long capacity;
+
+	/**
+	 * The amount of cached response bytes
+	 *
+	 */
+	private long size;
+
+	/**
+	 * Replay cache constructor with default window and capacity
+	 *
+	 */
+	public ReplayCache()
+	{
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_WINDOW);
+		this.capacity = DEFAULT_CAPACITY;
+	}
+
+	/**
+	 * Replay window setter
+	 *
+	 * @param window replay window in milliseconds or 0 to disable the cache
+	 */
+	public synchronized void setWindow(long window)
+	{
+		if (window < 0)
+			throw new IllegalArgumentException("Replay window cannot be negative");
+
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(window);
+
+		if (window == 0)
+		{
+			entries.clear();
+			size = 0;
+		}
+	}
+
+	/**
+	 * Cache capacity setter
+	 *
+	 * @param capacity the amount of response bytes the cache may keep
+	 */
+	public synchronized void setCapacity(long capacity)
+	{
+		if (capacity < 0)
+			throw new IllegalArgumentException("Replay cache capacity cannot be negative");
+
+		this.capacity = capacity;
+		evict(System.nanoTime());
+	}
+
+	/**
+	 * This method reserves an assembled request
+	 *
+	 * @param key client address and request message identifier
+	 * @return true if the request has to be handled and false if it is a duplicate
+	 */
+	public synchronized boolean reserve(Pair<SocketAddress, Integer> key)
+	{
+		Objects.requireNonNull(key, "Request key cannot be null");
+
+		if (windowNanos == 0)
+			return true;
+
+		evict(System.nanoTime());
+		return entries.putIfAbsent(key, new Entry(null, 0, 0)) == null;
+	}
+
+	/**
+	 * This method checks if the request was already assembled
+	 *
+	 * @param key client address and request message identifier
+	 * @return true if the request is being handled or was already responded and false otherwise
+	 */
+	public synchronized boolean contains(Pair<SocketAddress, Integer> key)
+	{
+		Entry entry = entries.get(key);
+		return entry != null && !entry.isExpired(System.nanoTime());
+	}
+
+	/**
+	 * This method finds encoded response frames for the request
+	 *
+	 * @param key client address and request message identifier
+	 * @return response frames or null if the request is being handled or unknown
+	 */
+	public synchronized List<byte[]> find(Pair<SocketAddress, Integer> key)
+	{
+		Entry entry = entries.get(key);
+		if (entry == null || entry.isExpired(System.nanoTime()))
+			return null;
+
+		return entry.frames();
+	}
+
+	/**
+	 * This method stores encoded response frames of the reserved request.
+	 * Responses exceeding the cache capacity are not stored: their duplicates are handled again
+	 *
+	 * @param key client address and request message identifier
+	 * @param frames encoded response frames
+	 */
+	public synchronized void complete(Pair<SocketAddress, Integer> key, List<byte[]> frames)
+	{
+		Objects.requireNonNull(key, "Request key cannot be null");
+		Objects.requireNonNull(frames, "Response frames cannot be null");
+
+		if (windowNanos == 0)
+			return;
+
+		long bytes = 0;
+		for (byte[] frame : frames)
+			bytes += frame.length;
+
+		Entry previous = entries.remove(key);
+		if (previous != null)
+			size -= previous.bytes();
+
+		if (bytes > capacity)
+			return;
+
+		long now = System.nanoTime();
+		entries.put(key, new Entry(List.copyOf(frames), bytes, now + windowNanos));
+		size += bytes;
+
+		evict(now);
+	}
+
+	/**
+	 * This method releases the reserved request if it was not responded
+	 *
+	 * @param key client address and request message identifier
+	 */
+	public synchronized void release(Pair<SocketAddress, Integer> key)
+	{
+		Entry entry = entries.get(key);
+		if (entry != null && entry.frames() == null)
+			entries.remove(key);
+	}
+
+	/**
+	 * This method removes expired and the least recently used responses while the cache exceeds its capacity.
+	 * Reserved requests are kept until they are responded or released
+	 *
+	 * @param now current {@link System#nanoTime()} value
+	 */
+	private void evict(long now)
+	{
+		for (Iterator<Map.Entry<Pair<SocketAddress, Integer>, Entry>> i = entries.entrySet().iterator(); i.hasNext();)
+		{
+			Entry entry = i.next().getValue();
+			if (entry.frames() == null)
+				continue;
+
+//			Entries are iterated from the least recently used one, so the rest of them are fresh enough
+			if (!entry.isExpired(now) && size <= capacity)
+				break;
+
+			i.remove();
+			size -= entry.bytes();
+		}
+	}
+
+	/**
+	 * Cache entry
+	 *
+	 * @param frames encoded response frames or null if the request is being handled
+	 * @param bytes the amount of response bytes
+	 * @param expiresAt expiration {@link System#nanoTime()} value
+	 */
+	private record Entry(List<byte[]> frames, long bytes, long expiresAt)
+	{
+		/**
+		 * This method checks the entry expiration
+		 *
+		 * @param now current {@link System#nanoTime()} value
+		 * @return true if the response is cached for too long
+		 */
+		boolean isExpired(long now)
+		{
+			return frames != null && now - expiresAt > 0;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.enzulode.network.concurrent.task;
+
+import com.enzulode.network.protocol.FrameSender;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cached response resending task.
+ * Response frames are already encoded, so they are sent as is
+ *
+ */
+public class ReplayingTask implements Runnable
+{
+	/**
+	 * Logger instance
+	 *
+	 */
+	private final Logger logger;
+
+	/**
+	 * Frame sender instance
+	 *
+	 */
+	private final FrameSender sender;
+
+	/**
+	 * Encoded response frames
+	 *
+	 */
+	private final List<byte[]> frames;
+
+	/**
+	 * Response destination
+	 *
+	 */
+	private final SocketAddress destination;
+
+	/**
+	 * Response resending task constructor
+	 *
+	 * @param sender frame sender instance
+	 * @param frames encoded response frames
+	 * @param destination response destination
+	 */
+	public ReplayingTask(FrameSender sender, List<byte[]> frames, SocketAddress destination)
+	{
+		Objects.requireNonNull(sender, "Frame sender instance cannot be null");
+		Objects.requireNonNull(frames, "Response frames cannot be null");
+		Objects.requireNonNull(destination, "Response destination cannot be null");
+
+		this.logger = Logger.getLogger(ReplayingTask.class.getName());
+		this.sender = sender;
+		this.frames = frames;
+		this.destination = destination;
+	}
+
+	/**
+	 * The task body
+	 *
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			sender.send(frames, destination, true);
+		}
+		catch (IOException e)
+		{
+			logger.log(Level.SEVERE, "Something went wrong during response replaying", e);
+		}
+	}
+}
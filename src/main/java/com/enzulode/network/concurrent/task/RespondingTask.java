@@ -1,21 +1,14 @@
 package com.enzulode.network.concurrent.task;
 
-import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.concurrent.structures.Pair;
 import com.enzulode.network.exception.NetworkException;
-import com.enzulode.network.mapper.FrameMapper;
-import com.enzulode.network.mapper.ResponseMapper;
+import com.enzulode.network.model.interconnection.Request;
 import com.enzulode.network.model.interconnection.Response;
-import com.enzulode.network.model.transport.UDPFrame;
-import com.enzulode.network.util.NetworkUtils;
+import com.enzulode.network.protocol.EncodedResponse;
+import com.enzulode.network.protocol.ServerProtocol;
 
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetSocketAddress;
-import java.util.List;
+import java.net.SocketAddress;
 import java.util.Objects;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,129 +25,108 @@ public class RespondingTask implements Runnable
 	private final Logger logger;
 
 	/**
-	 * Task lock instance
+	 * Server protocol instance
 	 *
 	 */
-	private final Lock lock;
+	private final ServerProtocol protocol;
 
 	/**
-	 * Datagram socket instance
+	 * Response instance or null if the response was encoded already
 	 *
 	 */
-	private final DatagramSocket socket;
+	private final Response response;
 
 	/**
-	 * Response instance
+	 * Encoded response instance or null if the response has to be encoded
 	 *
 	 */
-	private final Response response;
+	private final EncodedResponse encodedResponse;
 
 	/**
-	 * Response-sending task constructor
+	 * Type of the responded request
 	 *
-	 * @param socket datagram socket instance
-	 * @param response response instance
 	 */
-	public RespondingTask(DatagramSocket socket, Response response)
-	{
-		Objects.requireNonNull(socket, "Socket instance cannot be null");
-		Objects.requireNonNull(response, "Response instance cannot be null");
+	private final Class<? extends Request> requestType;
 
-		this.logger = Logger.getLogger(RespondingTask.class.getName());
-		this.lock = new ReentrantLock();
-		this.socket = socket;
-		this.response = response;
-	}
+	/**
+	 * Request sender address and message identifier. Response is sent with the same message identifier
+	 *
+	 */
+	private final Pair<SocketAddress, Integer> requestKey;
 
 	/**
-	 * The task body
+	 * Response-sending task constructor
 	 *
+	 * @param protocol server protocol instance
+	 * @param response response instance
+	 * @param requestType type of the responded request
+	 * @param requestKey request sender address and message identifier
 	 */
-	@Override
-	public void run()
+	public RespondingTask(
+			ServerProtocol protocol,
+			Response response,
+			Class<? extends Request> requestType,
+			Pair<SocketAddress, Integer> requestKey
+	)
 	{
-		try
-		{
-			byte[] responseBytes = ResponseMapper.mapFromInstanceToBytes(response);
+		Objects.requireNonNull(protocol, "Server protocol instance cannot be null");
+		Objects.requireNonNull(response, "Response instance cannot be null");
+		Objects.requireNonNull(requestType, "Request type cannot be null");
+		Objects.requireNonNull(requestKey, "Request key cannot be null");
 
-			if (responseBytes.length > NetworkUtils.RESPONSE_BUFFER_SIZE)
-				sendResponseWithOverhead(responseBytes, response.getTo());
-			else
-				sendResponseNoOverhead(responseBytes, response.getTo());
-		}
-		catch (MappingException | NetworkException e)
-		{
-			logger.log(Level.SEVERE, "Something went wrong during responding", e);
-		}
+		this.logger = Logger.getLogger(RespondingTask.class.getName());
+		this.protocol = protocol;
+		this.response = response;
+		this.encodedResponse = null;
+		this.requestType = requestType;
+		this.requestKey = requestKey;
 	}
 
 	/**
-	 * Method for sending response without an overhead
+	 * Response-sending task constructor for the responses encoded in advance (e.g. shared by coalesced requests)
 	 *
-	 * @param responseBytes response bytes array
-	 * @param destination response destination
-	 * @throws NetworkException if it's failed to send the response
+	 * @param protocol server protocol instance
+	 * @param encodedResponse encoded response instance
+	 * @param requestType type of the responded request
+	 * @param requestKey request sender address and message identifier
 	 */
-	private void sendResponseNoOverhead(byte[] responseBytes, InetSocketAddress destination) throws NetworkException
+	public RespondingTask(
+			ServerProtocol protocol,
+			EncodedResponse encodedResponse,
+			Class<? extends Request> requestType,
+			Pair<SocketAddress, Integer> requestKey
+	)
 	{
-//		Check that response bytes and response destination are not null
-		Objects.requireNonNull(responseBytes, "Response bytes cannot be null");
-		Objects.requireNonNull(destination, "Response destination cannot be null");
-
-//		Wrap raw response bytes with UDPFrame
-		UDPFrame udpFrame = new UDPFrame(responseBytes, true);
+		Objects.requireNonNull(protocol, "Server protocol instance cannot be null");
+		Objects.requireNonNull(encodedResponse, "Encoded response instance cannot be null");
+		Objects.requireNonNull(requestType, "Request type cannot be null");
+		Objects.requireNonNull(requestKey, "Request key cannot be null");
 
-		try
-		{
-//			Map UDPFrame to bytes
-			byte[] udpFrameBytes = FrameMapper.mapFromInstanceToBytes(udpFrame);
-
-//			Wrap UDPFrame bytes with DatagramPacket
-			DatagramPacket responsePacket = new DatagramPacket(udpFrameBytes, udpFrameBytes.length, destination);
-
-//			Sending response to the client
-			lock.lock();
-			socket.send(responsePacket);
-			lock.unlock();
-		}
-		catch (MappingException e)
-		{
-			throw new NetworkException("Failed to map frame to bytes", e);
-		}
-		catch (IOException e)
-		{
-			throw new NetworkException("Failed to send response to the client", e);
-		}
+		this.logger = Logger.getLogger(RespondingTask.class.getName());
+		this.protocol = protocol;
+		this.response = null;
+		this.encodedResponse = encodedResponse;
+		this.requestType = requestType;
+		this.requestKey = requestKey;
 	}
 
 	/**
-	 * Method for sending the response with an overhead
+	 * The task body
 	 *
-	 * @param responseBytes response byte array
-	 * @param destination response destination
-	 * @throws NetworkException if it's failed to send the response
 	 */
-	private void sendResponseWithOverhead(byte[] responseBytes, InetSocketAddress destination) throws NetworkException
+	@Override
+	public void run()
 	{
-//		Check that response bytes and response destination are not null
-		Objects.requireNonNull(responseBytes, "Response bytes cannot be null");
-		Objects.requireNonNull(destination, "Response destination cannot be null");
-
-		List<DatagramPacket> responsePackets = NetworkUtils.getPacketsForOverheadedResponseBytes(responseBytes, destination);
-
 		try
 		{
-			for (DatagramPacket packet : responsePackets)
-			{
-				NetworkUtils.timeout(10);
-				lock.lock();
-				socket.send(packet);
-				lock.unlock();
-			}
+			if (encodedResponse != null)
+				protocol.respond(encodedResponse, requestType, requestKey);
+			else
+				protocol.respond(response, requestType, requestKey);
 		}
-		catch (IOException e)
+		catch (NetworkException e)
 		{
-			throw new NetworkException("Failed to send the overheaded response", e);
+			logger.log(Level.SEVERE, "Something went wrong during responding", e);
 		}
 	}
 }
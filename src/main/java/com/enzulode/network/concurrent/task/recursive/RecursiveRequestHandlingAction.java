@@ -1,30 +1,43 @@
 package com.enzulode.network.concurrent.task.recursive;
 
+import com.enzulode.network.concurrent.structures.Pair;
+import com.enzulode.network.concurrent.structures.ReceivedRequest;
 import com.enzulode.network.concurrent.task.RespondingTask;
 import com.enzulode.network.handling.RequestHandler;
-import com.enzulode.network.model.interconnection.Request;
 import com.enzulode.network.model.interconnection.Response;
-import com.enzulode.network.model.interconnection.impl.PingRequest;
-import com.enzulode.network.model.interconnection.impl.PongResponse;
-import com.enzulode.network.model.interconnection.util.ResponseCode;
+import com.enzulode.network.protocol.ServerProtocol;
 
-import java.net.DatagramSocket;
+import java.net.SocketAddress;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class RecursiveRequestHandlingAction extends RecursiveAction
 {
 	/**
-	 * Datagram socket instance
+	 * Logger instance
 	 *
 	 */
-	private final DatagramSocket socket;
+	private final Logger logger;
+
+	/**
+	 * Server protocol instance
+	 *
+	 */
+	private final ServerProtocol protocol;
 
 	/**
 	 * Request to be handled
 	 *
 	 */
-	private final Request request;
+	private final ReceivedRequest receivedRequest;
+
+	/**
+	 * Request sender address and message identifier. Response is sent with the same message identifier
+	 *
+	 */
+	private final Pair<SocketAddress, Integer> requestKey;
 
 	/**
 	 * Request handler instance
@@ -39,35 +52,70 @@ public class RecursiveRequestHandlingAction extends RecursiveAction
 	private final ExecutorService responseSendingThreadPool;
 
 	public RecursiveRequestHandlingAction(
-			DatagramSocket socket,
-			Request request,
+			ServerProtocol protocol,
+			ReceivedRequest receivedRequest,
+			Pair<SocketAddress, Integer> requestKey,
 			RequestHandler handler,
 			ExecutorService responseSendingThreadPool
 	)
 	{
 		super();
 
-		this.socket = socket;
-		this.request = request;
+		this.logger = Logger.getLogger(RecursiveRequestHandlingAction.class.getName());
+		this.protocol = protocol;
+		this.receivedRequest = receivedRequest;
+		this.requestKey = requestKey;
 		this.handler = handler;
 		this.responseSendingThreadPool = responseSendingThreadPool;
 	}
 
+	/**
+	 * Received request getter
+	 *
+	 * @return request to be handled
+	 */
+	public ReceivedRequest getReceivedRequest()
+	{
+		return receivedRequest;
+	}
+
 	/**
 	 * The main computation performed by this task.
 	 */
 	@Override
 	protected void compute()
 	{
-		Response response;
-		if (request instanceof PingRequest)
-			response = new PongResponse(ResponseCode.SUCCEED);
-		else
-			response = handler.handle(request);
+//		Clients do not wait for the expired requests anymore
+		if (protocol.dropExpired(receivedRequest, requestKey))
+			return;
+
+		if (protocol.coalesces(receivedRequest.request()))
+		{
+//			Waiters of an in-flight request are responded by the thread completing it
+			protocol.handleCoalesced(receivedRequest, requestKey, handler).whenComplete((encoded, failure) -> {
+				if (failure != null)
+				{
+					logger.log(Level.SEVERE, "Something went wrong during handling", failure);
+					return;
+				}
+
+				responseSendingThreadPool.submit(new RespondingTask(
+						protocol,
+						encoded,
+						receivedRequest.request().getClass(),
+						requestKey
+				));
+			});
+			return;
+		}
 
-		response.setFrom(request.getTo());
-		response.setTo(request.getFrom());
+		Response response = protocol.handle(receivedRequest, requestKey, handler);
 
-		responseSendingThreadPool.submit(new RespondingTask(socket, response));
+		responseSendingThreadPool.submit(new RespondingTask(
+				protocol,
+				response,
+				receivedRequest.request().getClass(),
+				requestKey
+		));
 	}
 }
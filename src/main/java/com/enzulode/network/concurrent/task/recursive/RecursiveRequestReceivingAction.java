@@ -1,23 +1,13 @@
 package com.enzulode.network.concurrent.task.recursive;
 
-import com.enzulode.network.concurrent.structures.ConcurrentFrameReceivingMap;
 import com.enzulode.network.concurrent.structures.Pair;
-import com.enzulode.network.exception.MappingException;
-import com.enzulode.network.exception.NetworkException;
-import com.enzulode.network.mapper.FrameMapper;
-import com.enzulode.network.model.interconnection.Request;
-import com.enzulode.network.model.transport.UDPFrame;
-import com.enzulode.network.util.NetworkUtils;
+import com.enzulode.network.concurrent.structures.ReceivedRequest;
+import com.enzulode.network.protocol.ServerProtocol;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.SocketAddress;
-import java.util.List;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.RecursiveAction;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,38 +24,34 @@ public class RecursiveRequestReceivingAction extends RecursiveAction
 	private final Logger logger;
 
 	/**
-	 * Lock instance
+	 * Server protocol instance
 	 *
 	 */
-	private final Lock lock;
+	private final ServerProtocol protocol;
 
 	/**
-	 * Datagram socket instance
+	 * Received requests consumer. Requests are passed with their sender address and message identifier
+	 * in the order they were received
 	 *
 	 */
-	private final DatagramSocket socket;
+	private final BiConsumer<Pair<SocketAddress, Integer>, ReceivedRequest> requestConsumer;
 
 	/**
-	 * Concurrent frame receiving map instance
+	 * Request receiving task constructor
 	 *
+	 * @param protocol server protocol instance
+	 * @param requestConsumer consumer received requests are passed to
 	 */
-	private final ConcurrentFrameReceivingMap map;
-
-	/**
-	 * Request-storing concurrent map instance
-	 *
-	 */
-	private final ConcurrentMap<SocketAddress, Request> requestMap;
-
-	public RecursiveRequestReceivingAction(DatagramSocket socket, ConcurrentMap<SocketAddress, Request> requestMap)
+	public RecursiveRequestReceivingAction(
+			ServerProtocol protocol,
+			BiConsumer<Pair<SocketAddress, Integer>, ReceivedRequest> requestConsumer
+	)
 	{
 		super();
 
 		this.logger = Logger.getLogger(RecursiveRequestReceivingAction.class.getName());
-		this.lock = new ReentrantLock();
-		this.socket = socket;
-		this.map = new ConcurrentFrameReceivingMap();
-		this.requestMap = requestMap;
+		this.protocol = protocol;
+		this.requestConsumer = requestConsumer;
 	}
 
 	/**
@@ -74,41 +60,29 @@ public class RecursiveRequestReceivingAction extends RecursiveAction
 	@Override
 	protected void compute()
 	{
-
-//		Declaring incoming request bytes buffer
-		byte[] incomingFrameBytes = new byte[NetworkUtils.REQUEST_BUFFER_SIZE * 2];
-		DatagramPacket incomingRequestPacket = new DatagramPacket(incomingFrameBytes, incomingFrameBytes.length);
-
-		while (true)
+		while (protocol.isOpen())
 		{
 			try
 			{
-				lock.lock();
-				if (!socket.isClosed())
-				{
-					socket.receive(incomingRequestPacket);
-				}
-				lock.unlock();
+				Pair<Pair<SocketAddress, Integer>, ReceivedRequest> receivedRequest = protocol.receiveRequest(0);
 
-	//			Mapping a current frame to instance from bytes
-				UDPFrame currentFrame = FrameMapper.mapFromBytesToInstance(incomingRequestPacket.getData());
-
-	//			Adding a frame into the frames map
-				map.add(incomingRequestPacket.getSocketAddress(), currentFrame);
-
-				for (Pair<SocketAddress, List<UDPFrame>> completedRequestFrameList : map.findCompletedRequestsFrameLists())
-				{
-					Request request = NetworkUtils.requestFromFrames(completedRequestFrameList.value());
-
-	//				Put complete request into the completed requests map
-					requestMap.put(completedRequestFrameList.key(), request);
-				}
+//				Pass complete request to the consumer
+				if (receivedRequest != null)
+					requestConsumer.accept(receivedRequest.key(), receivedRequest.value());
 			}
-			catch (IOException | MappingException | NetworkException e)
+			catch (IOException e)
 			{
+//				Closing the server transport interrupts the receiving: this is not an error
+				if (!protocol.isOpen())
+					return;
+
 				logger.log(Level.SEVERE, "Something went wrong during receiving", e);
 			}
+			catch (RuntimeException | Error e)
+			{
+//				A frame the protocol failed on is dropped, so the receiving goes on with the next one
+				logger.log(Level.SEVERE, "Dropped a frame that failed to be received", e);
+			}
 		}
-
 	}
 }
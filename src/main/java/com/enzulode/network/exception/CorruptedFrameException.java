@@ -0,0 +1,19 @@
+package com.enzulode.network.exception;
+
+/**
+ * Exception represents a frame that was corrupted or truncated on its way.
+ * Corrupted frames are expected to be dropped silently, so the exception does not fill its stack trace
+ *
+ */
+public class CorruptedFrameException extends MappingException
+{
+	/**
+	 * Corrupted frame exception constructor
+	 *
+	 * @param message exception message
+	 */
+	public CorruptedFrameException(String message)
+	{
+		super(message, null, false);
+	}
+}
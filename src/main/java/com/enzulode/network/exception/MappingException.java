@@ -26,4 +26,16 @@ public class MappingException extends Exception
 	{
 		super(message, cause);
 	}
+
+	/**
+	 * Mapper Exception constructor with stack trace writing control
+	 *
+	 * @param message exception message
+	 * @param cause exception cause
+	 * @param writableStackTrace true if the stack trace should be filled and false otherwise
+	 */
+	protected MappingException(String message, Throwable cause, boolean writableStackTrace)
+	{
+		super(message, cause, false, writableStackTrace);
+	}
 }
@@ -0,0 +1,57 @@
+package com.enzulode.network.fec;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class defines which FEC scheme is applied to the messages of a specific type
+ *
+ */
+public final class FecPolicy
+{
+	/**
+	 * Message type schemes
+	 *
+	 */
+	private final ConcurrentMap<Class<?>, FecScheme> schemes;
+
+	/**
+	 * FEC policy constructor. No FEC is applied until a scheme is registered
+	 *
+	 */
+	public FecPolicy()
+	{
+		schemes = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * This method sets the FEC scheme for the provided message type
+	 *
+	 * @param messageType message type
+	 * @param scheme FEC scheme or null to disable FEC for the message type
+	 */
+	public void setScheme(Class<?> messageType, FecScheme scheme)
+	{
+		Objects.requireNonNull(messageType, "Message type cannot be null");
+
+		if (scheme == null)
+			schemes.remove(messageType);
+		else
+			schemes.put(messageType, scheme);
+	}
+
+	/**
+	 * This method resolves the FEC scheme for the provided message type
+	 *
+	 * @param messageType message type
+	 * @return FEC scheme or null if FEC is disabled for the message type
+	 */
+	public FecScheme resolve(Class<?> messageType)
+	{
+		if (schemes.isEmpty())
+			return null;
+
+		return schemes.get(messageType);
+	}
+}
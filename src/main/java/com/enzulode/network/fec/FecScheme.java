@@ -0,0 +1,28 @@
+package com.enzulode.network.fec;
+
+import com.enzulode.network.model.transport.UDPFrame;
+
+/**
+ * Forward error correction scheme: every group of data frames is followed by the parity frames,
+ * so the receiver is able to reconstruct up to the parity frames count of lost data frames in each group
+ *
+ * @param dataFrames the amount of data frames in a group (k)
+ * @param parityFrames the amount of parity frames for a group (m)
+ */
+public record FecScheme(int dataFrames, int parityFrames)
+{
+	/**
+	 * Forward error correction scheme
+	 *
+	 * @param dataFrames the amount of data frames in a group (k)
+	 * @param parityFrames the amount of parity frames for a group (m)
+	 */
+	public FecScheme
+	{
+		if (dataFrames < 1 || parityFrames < 1)
+			throw new IllegalArgumentException("FEC scheme requires at least one data frame and one parity frame");
+
+		if (dataFrames + parityFrames > UDPFrame.MAX_FEC_GROUP_SIZE)
+			throw new IllegalArgumentException("FEC group cannot exceed " + UDPFrame.MAX_FEC_GROUP_SIZE + " frames");
+	}
+}
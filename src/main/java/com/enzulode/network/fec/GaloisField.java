@@ -0,0 +1,108 @@
+package com.enzulode.network.fec;
+
+/**
+ * GF(2^8) arithmetic used by the Reed-Solomon codec
+ *
+ */
+final class GaloisField
+{
+	/**
+	 * Field generating polynomial: x^8 + x^4 + x^3 + x^2 + 1
+	 *
+	 */
+	private static final int GENERATING_POLYNOMIAL = 0x11D;
+
+	/**
+	 * Exponent table. Doubled to avoid modulo operation during multiplication
+	 *
+	 */
+	private static final int[] EXP = new int[512];
+
+	/**
+	 * Logarithm table
+	 *
+	 */
+	private static final int[] LOG = new int[256];
+
+	/**
+	 * Full multiplication table, so multiplying a byte is a single array lookup
+	 *
+	 */
+	private static final byte[][] MULTIPLICATION = new byte[256][256];
+
+	static
+	{
+		int value = 1;
+		for (int i = 0; i < 255; i++)
+		{
+			EXP[i] = value;
+			LOG[value] = i;
+
+			value <<= 1;
+			if (value > 0xFF)
+				value ^= GENERATING_POLYNOMIAL;
+		}
+
+		for (int i = 255; i < EXP.length; i++)
+			EXP[i] = EXP[i - 255];
+
+		for (int a = 1; a < 256; a++)
+			for (int b = 1; b < 256; b++)
+				MULTIPLICATION[a][b] = (byte) EXP[LOG[a] + LOG[b]];
+	}
+
+	private GaloisField()
+	{
+	}
+
+	/**
+	 * This method multiplies two field elements
+	 *
+	 * @param a first element
+	 * @param b second element
+	 * @return multiplication result
+	 */
+	static int multiply(int a, int b)
+	{
+		return MULTIPLICATION[a][b] & 0xFF;
+	}
+
+	/**
+	 * This method finds the multiplicative inverse of a field element
+	 *
+	 * @param a non-zero element
+	 * @return inverse element
+	 */
+	static int inverse(int a)
+	{
+		if (a == 0)
+			throw new ArithmeticException("Zero has no inverse");
+
+		return EXP[255 - LOG[a]];
+	}
+
+	/**
+	 * This method multiplies the source bytes by the coefficient and adds the result to the target bytes
+	 *
+	 * @param coefficient field element
+	 * @param source source bytes
+	 * @param target target bytes, at least as long as the source is
+	 */
+	static void multiplyAndAdd(int coefficient, byte[] source, byte[] target)
+	{
+		if (coefficient == 0)
+			return;
+
+		if (coefficient == 1)
+		{
+			for (int i = 0; i < source.length; i++)
+				target[i] ^= source[i];
+
+			return;
+		}
+
+		byte[] row = MULTIPLICATION[coefficient];
+		for (int i = 0; i < source.length; i++)
+			target[i] ^= row[source[i] & 0xFF];
+	}
+}
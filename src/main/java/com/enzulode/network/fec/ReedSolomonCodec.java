@@ -0,0 +1,170 @@
+package com.enzulode.network.fec;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Systematic Reed-Solomon erasure codec over GF(2^8).
+ * Parity frames are built with a Cauchy matrix normalized so the first parity row consists of ones:
+ * a single parity frame is a plain XOR of the group, and any m parity frames recover any m lost data frames
+ *
+ */
+public final class ReedSolomonCodec
+{
+	private ReedSolomonCodec()
+	{
+	}
+
+	/**
+	 * This method calculates parity chunks for a group of data chunks
+	 *
+	 * @param group data chunks of a single group. Shorter chunks are treated as padded with zeros
+	 * @param parityCount the amount of parity chunks
+	 * @return parity chunks, each one is as long as the longest data chunk
+	 */
+	public static byte[][] encode(List<byte[]> group, int parityCount)
+	{
+		Objects.requireNonNull(group, "Data chunks group cannot be null");
+
+		int length = 0;
+		for (byte[] chunk : group)
+			length = Math.max(length, chunk.length);
+
+		byte[][] parity = new byte[parityCount][length];
+
+		for (int j = 0; j < parityCount; j++)
+			for (int i = 0; i < group.size(); i++)
+				GaloisField.multiplyAndAdd(coefficient(j, i, parityCount), group.get(i), parity[j]);
+
+		return parity;
+	}
+
+	/**
+	 * This method reconstructs lost data chunks of a group in place.
+	 * Reconstructed chunks are as long as parity chunks, so the caller has to truncate the shorter ones
+	 *
+	 * @param data group data chunks, lost chunks are null
+	 * @param parity group parity chunks, lost chunks are null
+	 * @return true if every lost data chunk was reconstructed and false if there are not enough parity chunks
+	 */
+	public static boolean reconstruct(byte[][] data, byte[][] parity)
+	{
+		Objects.requireNonNull(data, "Data chunks cannot be null");
+		Objects.requireNonNull(parity, "Parity chunks cannot be null");
+
+		int[] lost = new int[data.length];
+		int lostCount = 0;
+		for (int i = 0; i < data.length; i++)
+			if (data[i] == null)
+				lost[lostCount++] = i;
+
+		if (lostCount == 0)
+			return true;
+
+		int[] rows = new int[lostCount];
+		int rowsCount = 0;
+		for (int j = 0; j < parity.length && rowsCount < lostCount; j++)
+			if (parity[j] != null)
+				rows[rowsCount++] = j;
+
+		if (rowsCount < lostCount)
+			return false;
+
+		int length = parity[rows[0]].length;
+
+//		Removing received data chunks contribution from parity chunks
+		byte[][] syndromes = new byte[lostCount][];
+		for (int r = 0; r < lostCount; r++)
+		{
+			syndromes[r] = parity[rows[r]].clone();
+
+			for (int i = 0; i < data.length; i++)
+				if (data[i] != null)
+					GaloisField.multiplyAndAdd(coefficient(rows[r], i, parity.length), data[i], syndromes[r]);
+		}
+
+//		Solving the system for lost data chunks
+		int[][] matrix = new int[lostCount][lostCount];
+		for (int r = 0; r < lostCount; r++)
+			for (int c = 0; c < lostCount; c++)
+				matrix[r][c] = coefficient(rows[r], lost[c], parity.length);
+
+		int[][] inverse = invert(matrix);
+
+		for (int c = 0; c < lostCount; c++)
+		{
+			byte[] chunk = new byte[length];
+			for (int r = 0; r < lostCount; r++)
+				GaloisField.multiplyAndAdd(inverse[c][r], syndromes[r], chunk);
+
+			data[lost[c]] = chunk;
+		}
+
+		return true;
+	}
+
+	/**
+	 * This method calculates the coding matrix coefficient
+	 *
+	 * @param row parity chunk index
+	 * @param column data chunk index
+	 * @param parityCount the amount of parity chunks
+	 * @return coding matrix coefficient
+	 */
+	private static int coefficient(int row, int column, int parityCount)
+	{
+		int y = parityCount + column;
+		return GaloisField.multiply(GaloisField.inverse(row ^ y), y);
+	}
+
+	/**
+	 * This method inverts a square matrix with Gauss-Jordan elimination
+	 *
+	 * @param matrix matrix to be inverted. Contents are destroyed
+	 * @return inverted matrix
+	 */
+	private static int[][] invert(int[][] matrix)
+	{
+		int size = matrix.length;
+		int[][] inverse = new int[size][size];
+		for (int i = 0; i < size; i++)
+			inverse[i][i] = 1;
+
+		for (int column = 0; column < size; column++)
+		{
+			int pivot = column;
+			while (matrix[pivot][column] == 0)
+				pivot++;
+
+			int[] swap = matrix[pivot];
+			matrix[pivot] = matrix[column];
+			matrix[column] = swap;
+
+			swap = inverse[pivot];
+			inverse[pivot] = inverse[column];
+			inverse[column] = swap;
+
+			int scale = GaloisField.inverse(matrix[column][column]);
+			for (int c = 0; c < size; c++)
+			{
+				matrix[column][c] = GaloisField.multiply(matrix[column][c], scale);
+				inverse[column][c] = GaloisField.multiply(inverse[column][c], scale);
+			}
+
+			for (int r = 0; r < size; r++)
+			{
+				int factor = matrix[r][column];
+				if (r == column || factor == 0)
+					continue;
+
+				for (int c = 0; c < size; c++)
+				{
+					matrix[r][c] ^= GaloisField.multiply(factor, matrix[column][c]);
+					inverse[r][c] ^= GaloisField.multiply(factor, inverse[column][c]);
+				}
+			}
+		}
+
+		return inverse;
+	}
+}
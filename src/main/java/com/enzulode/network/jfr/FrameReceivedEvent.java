@@ -0,0 +1,112 @@
+package com.enzulode.network.jfr;
+
+import com.enzulode.network.model.transport.FrameHeader;
+import com.enzulode.network.model.transport.UDPFrame;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.net.SocketAddress;
+
+/**
+ * Flight recorder event of a received and decoded frame
+ *
+ */
+@Name("com.enzulode.network.FrameReceived")
+@Label("Frame Received")
+@Category("Networking Library")
+@Enabled(false)
+@StackTrace(false)
+public final class FrameReceivedEvent extends Event
+{
+	/**
+	 * Frame sender address
+	 *
+	 */
+	@Label("Peer")
+	String peer;
+
+	/**
+	 * Frame size
+	 *
+	 */
+	@Label("Size")
+	@DataAmount
+	int size;
+
+	/**
+	 * Frame message identifier
+	 *
+	 */
+	@Label("Message Id")
+	int messageId;
+
+	/**
+	 * Frame index
+	 *
+	 */
+	@Label("Frame Index")
+	int index;
+
+	/**
+	 * Message data frames count
+	 *
+	 */
+	@Label("Frame Count")
+	int count;
+
+	/**
+	 * Parity frame state
+	 *
+	 */
+	@Label("Parity")
+	boolean parity;
+
+	/**
+	 * This method emits the event if it is enabled
+	 *
+	 * @param peer frame sender address
+	 * @param size frame size in bytes
+	 * @param frame decoded frame
+	 */
+	public static void emit(SocketAddress peer, int size, UDPFrame frame)
+	{
+		FrameReceivedEvent event = new FrameReceivedEvent();
+		if (!event.isEnabled())
+			return;
+
+		event.peer = String.valueOf(peer);
+		event.size = size;
+		event.messageId = frame.messageId();
+		event.index = frame.index();
+		event.count = frame.count();
+		event.parity = frame.parity();
+		event.commit();
+	}
+
+	/**
+	 * This method emits the event if it is enabled
+	 *
+	 * @param peer frame sender address
+	 * @param size frame size in bytes
+	 * @param header decoded frame header
+	 */
+	public static void emit(SocketAddress peer, int size, FrameHeader header)
+	{
+		FrameReceivedEvent event = new FrameReceivedEvent();
+		if (!event.isEnabled())
+			return;
+
+		event.peer = String.valueOf(peer);
+		event.size = size;
+		event.messageId = header.messageId();
+		event.index = header.index();
+		event.count = header.count();
+		event.parity = header.parity();
+		event.commit();
+	}
+}
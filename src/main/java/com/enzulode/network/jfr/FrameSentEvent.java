@@ -0,0 +1,64 @@
+package com.enzulode.network.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.net.SocketAddress;
+
+/**
+ * Flight recorder event of a sent frame
+ *
+ */
+@Name("com.enzulode.network.FrameSent")
+@Label("Frame Sent")
+@Category("Networking Library")
+@Enabled(false)
+@StackTrace(false)
+public final class FrameSentEvent extends Event
+{
+	/**
+	 * Frame destination address
+	 *
+	 */
+	@Label("Peer")
+	String peer;
+
+	/**
+	 * Frame size
+	 *
+	 */
+	@Label("Size")
+	@DataAmount
+	int size;
+
+	/**
+	 * Replayed frame state
+	 *
+	 */
+	@Label("Replayed")
+	boolean replayed;
+
+	/**
+	 * This method emits the event if it is enabled
+	 *
+	 * @param peer frame destination address
+	 * @param size frame size in bytes
+	 * @param replayed true if the frame was resent from the replay cache
+	 */
+	public static void emit(SocketAddress peer, int size, boolean replayed)
+	{
+		FrameSentEvent event = new FrameSentEvent();
+		if (!event.isEnabled())
+			return;
+
+		event.peer = String.valueOf(peer);
+		event.size = size;
+		event.replayed = replayed;
+		event.commit();
+	}
+}
@@ -0,0 +1,111 @@
+package com.enzulode.network.jfr;
+
+import com.enzulode.network.model.transport.FrameHeader;
+import com.enzulode.network.util.MessageAssembler;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.net.SocketAddress;
+
+/**
+ * Flight recorder event of a message reassembly completion
+ *
+ */
+@Name("com.enzulode.network.MessageAssembled")
+@Label("Message Assembled")
+@Category("Networking Library")
+@Enabled(false)
+@StackTrace(false)
+public final class MessageAssembledEvent extends Event
+{
+	/**
+	 * Message sender address
+	 *
+	 */
+	@Label("Peer")
+	String peer;
+
+	/**
+	 * Message identifier
+	 *
+	 */
+	@Label("Message Id")
+	int messageId;
+
+	/**
+	 * Message length
+	 *
+	 */
+	@Label("Size")
+	@DataAmount
+	int size;
+
+	/**
+	 * Message data frames count
+	 *
+	 */
+	@Label("Frame Count")
+	int frames;
+
+	/**
+	 * Compressed message state
+	 *
+	 */
+	@Label("Compressed")
+	boolean compressed;
+
+	/**
+	 * Time from the first received frame to the message completion
+	 *
+	 */
+	@Label("Reassembly Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long reassemblyTime;
+
+	/**
+	 * This method emits the event if it is enabled
+	 *
+	 * @param peer message sender address
+	 * @param assembler complete message assembler
+	 */
+	public static void emit(SocketAddress peer, MessageAssembler assembler)
+	{
+		MessageAssembledEvent event = new MessageAssembledEvent();
+		if (!event.isEnabled())
+			return;
+
+		event.peer = String.valueOf(peer);
+		event.messageId = assembler.getMessageId();
+		event.size = assembler.getMessageLength();
+		event.frames = assembler.getFrameCount();
+		event.compressed = assembler.isCompressed();
+		event.reassemblyTime = System.nanoTime() - assembler.getCreatedAt();
+		event.commit();
+	}
+
+	/**
+	 * This method emits the event of a single frame message if it is enabled
+	 *
+	 * @param peer message sender address
+	 * @param header the only frame header of the message
+	 */
+	public static void emit(SocketAddress peer, FrameHeader header)
+	{
+		MessageAssembledEvent event = new MessageAssembledEvent();
+		if (!event.isEnabled())
+			return;
+
+		event.peer = String.valueOf(peer);
+		event.messageId = header.messageId();
+		event.size = header.messageLength();
+		event.frames = 1;
+		event.compressed = header.compressed();
+		event.commit();
+	}
+}
@@ -0,0 +1,83 @@
+package com.enzulode.network.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.net.SocketAddress;
+
+/**
+ * Flight recorder event of a request or response encoding: mapping to bytes and compression
+ *
+ */
+@Name("com.enzulode.network.MessageEncoding")
+@Label("Message Encoding")
+@Category("Networking Library")
+@Enabled(false)
+@StackTrace(false)
+public final class MessageEncodingEvent extends Event
+{
+	/**
+	 * Message destination address
+	 *
+	 */
+	@Label("Peer")
+	String peer;
+
+	/**
+	 * Message identifier
+	 *
+	 */
+	@Label("Message Id")
+	int messageId;
+
+	/**
+	 * Request or response type
+	 *
+	 */
+	@Label("Message Type")
+	Class<?> messageType;
+
+	/**
+	 * Mapped message size
+	 *
+	 */
+	@Label("Size")
+	@DataAmount
+	int size;
+
+	/**
+	 * Message payload size after compression
+	 *
+	 */
+	@Label("Encoded Size")
+	@DataAmount
+	int encodedSize;
+
+	/**
+	 * This method ends the event and commits it if it is enabled
+	 *
+	 * @param peer message destination address
+	 * @param messageId message identifier
+	 * @param messageType request or response type
+	 * @param size mapped message size in bytes
+	 * @param encodedSize message payload size after compression in bytes
+	 */
+	public void complete(SocketAddress peer, int messageId, Class<?> messageType, int size, int encodedSize)
+	{
+		end();
+		if (!shouldCommit())
+			return;
+
+		this.peer = String.valueOf(peer);
+		this.messageId = messageId;
+		this.messageType = messageType;
+		this.size = size;
+		this.encodedSize = encodedSize;
+		commit();
+	}
+}
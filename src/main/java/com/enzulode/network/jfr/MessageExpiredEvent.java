@@ -0,0 +1,80 @@
+package com.enzulode.network.jfr;
+
+import com.enzulode.network.util.MessageAssembler;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.net.SocketAddress;
+
+/**
+ * Flight recorder event of an incomplete message dropped after expiration
+ *
+ */
+@Name("com.enzulode.network.MessageExpired")
+@Label("Message Expired")
+@Category("Networking Library")
+@Enabled(false)
+@StackTrace(false)
+public final class MessageExpiredEvent extends Event
+{
+	/**
+	 * Message sender address
+	 *
+	 */
+	@Label("Peer")
+	String peer;
+
+	/**
+	 * Message identifier
+	 *
+	 */
+	@Label("Message Id")
+	int messageId;
+
+	/**
+	 * Message length
+	 *
+	 */
+	@Label("Size")
+	@DataAmount
+	int size;
+
+	/**
+	 * Message data frames count
+	 *
+	 */
+	@Label("Frame Count")
+	int frames;
+
+	/**
+	 * Received or reconstructed data frames count
+	 *
+	 */
+	@Label("Received Frames")
+	int receivedFrames;
+
+	/**
+	 * This method emits the event if it is enabled
+	 *
+	 * @param peer message sender address
+	 * @param assembler expired message assembler
+	 */
+	public static void emit(SocketAddress peer, MessageAssembler assembler)
+	{
+		MessageExpiredEvent event = new MessageExpiredEvent();
+		if (!event.isEnabled())
+			return;
+
+		event.peer = String.valueOf(peer);
+		event.messageId = assembler.getMessageId();
+		event.size = assembler.getMessageLength();
+		event.frames = assembler.getFrameCount();
+		event.receivedFrames = assembler.getReceivedFrameCount();
+		event.commit();
+	}
+}
@@ -0,0 +1,72 @@
+package com.enzulode.network.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.net.SocketAddress;
+
+/**
+ * Flight recorder event of a request handler execution.
+ * The event starts with the handler start and ends with the handler end
+ *
+ */
+@Name("com.enzulode.network.RequestHandling")
+@Label("Request Handling")
+@Category("Networking Library")
+@Enabled(false)
+@StackTrace(false)
+public final class RequestHandlingEvent extends Event
+{
+	/**
+	 * Request sender address
+	 *
+	 */
+	@Label("Peer")
+	String peer;
+
+	/**
+	 * Request message identifier
+	 *
+	 */
+	@Label("Message Id")
+	int messageId;
+
+	/**
+	 * Request type
+	 *
+	 */
+	@Label("Request Type")
+	Class<?> requestType;
+
+	/**
+	 * Response type or null if the handler failed
+	 *
+	 */
+	@Label("Response Type")
+	Class<?> responseType;
+
+	/**
+	 * This method ends the event and commits it if it is enabled
+	 *
+	 * @param peer request sender address
+	 * @param messageId request message identifier
+	 * @param requestType request type
+	 * @param responseType response type or null if the handler failed
+	 */
+	public void complete(SocketAddress peer, int messageId, Class<?> requestType, Class<?> responseType)
+	{
+		end();
+		if (!shouldCommit())
+			return;
+
+		this.peer = String.valueOf(peer);
+		this.messageId = messageId;
+		this.requestType = requestType;
+		this.responseType = responseType;
+		commit();
+	}
+}
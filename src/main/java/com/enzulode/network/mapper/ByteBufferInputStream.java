@@ -0,0 +1,53 @@
+package com.enzulode.network.mapper;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream reading the remaining bytes of a buffer, so direct buffers are deserialized without copying them on heap
+ *
+ */
+final class ByteBufferInputStream extends InputStream
+{
+	/**
+	 * Source buffer
+	 *
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Byte buffer input stream constructor
+	 *
+	 * @param buffer source buffer, its position is advanced while reading
+	 */
+	ByteBufferInputStream(ByteBuffer buffer)
+	{
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read()
+	{
+		return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length)
+	{
+		if (length == 0)
+			return 0;
+
+		if (!buffer.hasRemaining())
+			return -1;
+
+		int read = Math.min(length, buffer.remaining());
+		buffer.get(bytes, offset, read);
+		return read;
+	}
+
+	@Override
+	public int available()
+	{
+		return buffer.remaining();
+	}
+}
@@ -1,18 +1,80 @@
 package com.enzulode.network.mapper;
 
+import com.enzulode.network.exception.CorruptedFrameException;
 import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.model.transport.FrameHeader;
 import com.enzulode.network.model.transport.UDPFrame;
-import org.apache.commons.lang3.SerializationException;
-import org.apache.commons.lang3.SerializationUtils;
+import com.enzulode.network.util.NetworkUtils;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Objects;
+import java.util.zip.CRC32C;
 
 /**
- * This class converts UDPFrame instance into a byte array and in an opposite way
+ * This class converts UDPFrame instance into a byte array and in an opposite way.
+ * Every frame is written as a fixed size binary header followed by the frame payload.
+ * A frame may carry a CRC32C checksum of its flags, the rest of the header and the payload,
+ * which is verified before anything else is decoded
  *
  */
 public final class FrameMapper
 {
+	/**
+	 * Frame format version
+	 *
+	 */
+	private static final byte VERSION = 5;
+
+	/**
+	 * Last frame flag
+	 *
+	 */
+	private static final byte FLAG_LAST = 0x01;
+
+	/**
+	 * Parity frame flag
+	 *
+	 */
+	private static final byte FLAG_PARITY = 0x02;
+
+	/**
+	 * Compressed message flag
+	 *
+	 */
+	private static final byte FLAG_COMPRESSED = 0x04;
+
+	/**
+	 * Checksum presence flag
+	 *
+	 */
+	private static final byte FLAG_CHECKSUM = 0x08;
+
+	/**
+	 * Flow control acknowledgement flag
+	 *
+	 */
+	private static final byte FLAG_ACK = 0x10;
+
+	/**
+	 * Checksum position inside the frame: right after version and flags
+	 *
+	 */
+	private static final int CHECKSUM_OFFSET = 2;
+
+	/**
+	 * Receive window position inside the frame: right after FEC parameters
+	 *
+	 */
+	private static final int WINDOW_OFFSET = 24;
+
+	/**
+	 * Frame header size in bytes: version, flags, checksum, message id, index, count, message length,
+	 * FEC group size, FEC parity count, receive window and payload length
+	 *
+	 */
+	public static final int HEADER_SIZE = 1 + 1 + 4 + 4 + 4 + 4 + 4 + 1 + 1 + 4 + 4;
+
 	/**
 	 * This method maps {@link UDPFrame} instance into raw response bytes
 	 *
@@ -21,22 +83,105 @@ public final class FrameMapper
 	 * @throws MappingException if serialization not succeed
 	 */
 	public static byte[] mapFromInstanceToBytes(UDPFrame udpFrame) throws MappingException
+	{
+		return mapFromInstanceToBytes(udpFrame, false);
+	}
+
+	/**
+	 * This method maps {@link UDPFrame} instance into raw response bytes
+	 *
+	 * @param udpFrame {@link UDPFrame} instance
+	 * @param checksum true to protect the frame with a checksum and false otherwise
+	 * @return frame raw bytes
+	 * @throws MappingException if serialization not succeed
+	 */
+	public static byte[] mapFromInstanceToBytes(UDPFrame udpFrame, boolean checksum) throws MappingException
 	{
 //		Requiring non-null UDPFrame instance
 		Objects.requireNonNull(udpFrame, "UDPFrame instance cannot be null");
 
-		try
-		{
-			return SerializationUtils.serialize(udpFrame);
-		}
-		catch (SerializationException e)
-		{
-			throw new MappingException("Failed to map UDPFrame to bytes", e);
-		}
+		byte flags = 0;
+		if (udpFrame.last()) flags |= FLAG_LAST;
+		if (udpFrame.parity()) flags |= FLAG_PARITY;
+		if (udpFrame.compressed()) flags |= FLAG_COMPRESSED;
+		if (checksum) flags |= FLAG_CHECKSUM;
+
+		byte[] data = udpFrame.data();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + data.length);
+
+		buffer.put(VERSION)
+				.put(flags)
+				.putInt(0)
+				.putInt(udpFrame.messageId())
+				.putInt(udpFrame.index())
+				.putInt(udpFrame.count())
+				.putInt(udpFrame.messageLength())
+				.put((byte) udpFrame.groupSize())
+				.put((byte) udpFrame.parityCount())
+				.putInt(0)
+				.putInt(data.length)
+				.put(data);
+
+		if (checksum)
+			buffer.putInt(CHECKSUM_OFFSET, checksum(buffer.array(), 0, buffer.capacity()));
+
+		return buffer.array();
+	}
+
+	/**
+	 * This method creates the flow control acknowledgement frame
+	 *
+	 * @param messageId identifier of the acknowledged message
+	 * @param received the amount of frames of the message received so far, parity frames included
+	 * @param window receive window in frames advertised to the message sender
+	 * @param checksum true to protect the frame with a checksum and false otherwise
+	 * @return frame raw bytes
+	 */
+	public static byte[] mapAckToBytes(int messageId, int received, int window, boolean checksum)
+	{
+		byte flags = FLAG_LAST | FLAG_ACK;
+		if (checksum) flags |= FLAG_CHECKSUM;
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+
+		buffer.put(VERSION)
+				.put(flags)
+				.putInt(0)
+				.putInt(messageId)
+				.putInt(received)
+				.putInt(1)
+				.putInt(0)
+				.put((byte) 0)
+				.put((byte) 0)
+				.putInt(window)
+				.putInt(0);
+
+		if (checksum)
+			buffer.putInt(CHECKSUM_OFFSET, checksum(buffer.array(), 0, buffer.capacity()));
+
+		return buffer.array();
 	}
 
 	/**
+	 * This method writes the receive window into the encoded frame, updating its checksum if the frame carries one
 	 *
+	 * @param frameBytes raw frame bytes created by this mapper
+	 * @param window receive window in frames advertised to the frame receiver
+	 */
+	public static void writeWindow(byte[] frameBytes, int window)
+	{
+//		Requiring non-null frame bytes array
+		Objects.requireNonNull(frameBytes, "Frame bytes array cannot be null");
+
+		ByteBuffer buffer = ByteBuffer.wrap(frameBytes);
+		buffer.putInt(WINDOW_OFFSET, window);
+
+		if ((buffer.get(1) & FLAG_CHECKSUM) != 0)
+			buffer.putInt(CHECKSUM_OFFSET, checksum(frameBytes, 0, frameBytes.length));
+	}
+
+	/**
+	 * This method maps raw {@link UDPFrame} bytes into an instance
 	 *
 	 * @param udpFrameBytes raw {@link UDPFrame} bytes
 	 * @return {@link UDPFrame} instance
@@ -47,13 +192,132 @@ public final class FrameMapper
 //		Requiring non-null UDPFrame bytes array
 		Objects.requireNonNull(udpFrameBytes, "UDPFrame bytes array cannot be null");
 
+		return mapFromBytesToInstance(udpFrameBytes, 0, udpFrameBytes.length);
+	}
+
+	/**
+	 * This method maps raw {@link UDPFrame} bytes stored in a part of the array into an instance
+	 *
+	 * @param udpFrameBytes array containing raw {@link UDPFrame} bytes
+	 * @param offset frame bytes offset
+	 * @param length frame bytes length
+	 * @return {@link UDPFrame} instance
+	 * @throws MappingException if deserialization not succeed
+	 */
+	public static UDPFrame mapFromBytesToInstance(byte[] udpFrameBytes, int offset, int length) throws MappingException
+	{
+		return mapHeader(udpFrameBytes, offset, length).toFrame(udpFrameBytes);
+	}
+
+	/**
+	 * This method decodes the frame header stored in a part of the array without copying the payload.
+	 * The frame checksum is verified and the payload bounds are checked, so the payload may be read right from the array
+	 *
+	 * @param udpFrameBytes array containing raw {@link UDPFrame} bytes
+	 * @param offset frame bytes offset
+	 * @param length frame bytes length
+	 * @return {@link FrameHeader} instance
+	 * @throws MappingException if the frame is corrupted or has an unsupported version
+	 */
+	public static FrameHeader mapHeader(byte[] udpFrameBytes, int offset, int length) throws MappingException
+	{
+//		Requiring non-null UDPFrame bytes array
+		Objects.requireNonNull(udpFrameBytes, "UDPFrame bytes array cannot be null");
+
+		if (length < HEADER_SIZE)
+			throw new CorruptedFrameException("Failed to map UDPFrame bytes to instance: frame is too short");
+
 		try
 		{
-			return SerializationUtils.deserialize(udpFrameBytes);
+			ByteBuffer buffer = ByteBuffer.wrap(udpFrameBytes, offset, length);
+
+			if (buffer.get() != VERSION)
+				throw new MappingException("Failed to map UDPFrame bytes to instance: unsupported frame version");
+
+			byte flags = buffer.get();
+			int checksum = buffer.getInt();
+
+//			Checksum is verified before decoding anything else
+			if ((flags & FLAG_CHECKSUM) != 0 && checksum != checksum(udpFrameBytes, offset, length))
+				throw new CorruptedFrameException("Failed to map UDPFrame bytes to instance: checksum mismatch");
+
+			int messageId = buffer.getInt();
+			int index = buffer.getInt();
+			int count = buffer.getInt();
+			int messageLength = buffer.getInt();
+			int groupSize = Byte.toUnsignedInt(buffer.get());
+			int parityCount = Byte.toUnsignedInt(buffer.get());
+			int window = buffer.getInt();
+			int dataLength = buffer.getInt();
+
+			if (dataLength < 0 || dataLength > buffer.remaining())
+				throw new CorruptedFrameException("Failed to map UDPFrame bytes to instance: frame is truncated");
+
+			if (index < 0 || count < 1 || messageLength < 0 || groupSize + parityCount > UDPFrame.MAX_FEC_GROUP_SIZE)
+				throw new MappingException("Failed to map UDPFrame bytes to instance: illegal frame position");
+
+//			Message length and frames count size the assembling buffers, so they are checked before anything is allocated
+			if (messageLength > NetworkUtils.MAX_MESSAGE_SIZE)
+				throw new MappingException("Failed to map UDPFrame bytes to instance: message is too large");
+
+			if (count > maxFramesCount(messageLength))
+				throw new MappingException("Failed to map UDPFrame bytes to instance: frames count does not fit the message length");
+
+//			Acknowledgements carry the amount of received frames in place of the index
+			if ((flags & (FLAG_ACK | FLAG_PARITY)) == 0 && index >= count)
+				throw new MappingException("Failed to map UDPFrame bytes to instance: illegal frame position");
+
+			if (window < 0)
+				throw new MappingException("Failed to map UDPFrame bytes to instance: illegal receive window");
+
+			return new FrameHeader(
+					(flags & FLAG_LAST) != 0,
+					messageId,
+					index,
+					count,
+					messageLength,
+					groupSize,
+					parityCount,
+					(flags & FLAG_PARITY) != 0,
+					(flags & FLAG_COMPRESSED) != 0,
+					(flags & FLAG_ACK) != 0,
+					window,
+					buffer.position(),
+					dataLength
+			);
 		}
-		catch (SerializationException e)
+		catch (BufferUnderflowException | IllegalArgumentException e)
 		{
 			throw new MappingException("Failed to map UDPFrame bytes to instance", e);
 		}
 	}
+
+	/**
+	 * This method calculates the largest amount of frames a message of the provided length may be split into.
+	 * Every frame except the last one carries at least the payload of the minimal frame size
+	 *
+	 * @param messageLength message length in bytes
+	 * @return the largest amount of message frames
+	 */
+	private static int maxFramesCount(int messageLength)
+	{
+		int minPayloadSize = NetworkUtils.payloadSize(NetworkUtils.MIN_FRAME_SIZE);
+		return Math.max(1, (int) (((long) messageLength + minPayloadSize - 1) / minPayloadSize));
+	}
+
+	/**
+	 * This method calculates the frame checksum. Frame version and the checksum itself are not covered
+	 *
+	 * @param frameBytes array containing raw frame bytes
+	 * @param offset frame bytes offset
+	 * @param length frame bytes length
+	 * @return CRC32C checksum
+	 */
+	private static int checksum(byte[] frameBytes, int offset, int length)
+	{
+		CRC32C crc = new CRC32C();
+		crc.update(frameBytes, offset + 1, 1);
+		crc.update(frameBytes, offset + CHECKSUM_OFFSET + Integer.BYTES, length - CHECKSUM_OFFSET - Integer.BYTES);
+		return (int) crc.getValue();
+	}
 }
@@ -5,6 +5,7 @@ import com.enzulode.network.model.interconnection.Request;
 import org.apache.commons.lang3.SerializationException;
 import org.apache.commons.lang3.SerializationUtils;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /**
@@ -57,4 +58,27 @@ public final class RequestMapper
 			throw new MappingException("Failed to map Request bytes to instance", e);
 		}
 	}
+
+	/**
+	 * This method maps raw request bytes into request instance reading them right from the buffer
+	 *
+	 * @param buffer buffer with raw request bytes between its position and limit
+	 * @param <T> request type param
+	 * @return request instance
+	 * @throws MappingException if deserialization not succeed
+	 */
+	public static <T extends Request> T mapFromBufferToInstance(ByteBuffer buffer) throws MappingException
+	{
+//		Requiring request buffer to be non-null
+		Objects.requireNonNull(buffer, "Request buffer cannot be null");
+
+		try
+		{
+			return SerializationUtils.deserialize(new ByteBufferInputStream(buffer));
+		}
+		catch (SerializationException e)
+		{
+			throw new MappingException("Failed to map Request bytes to instance", e);
+		}
+	}
 }
@@ -5,6 +5,7 @@ import com.enzulode.network.model.interconnection.Response;
 import org.apache.commons.lang3.SerializationException;
 import org.apache.commons.lang3.SerializationUtils;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 /**
@@ -56,4 +57,27 @@ public final class ResponseMapper
 			throw new MappingException("Failed to map Response bytes to instance", e);
 		}
 	}
+
+	/**
+	 * This method maps raw response bytes into response instance reading them right from the buffer
+	 *
+	 * @param buffer buffer with raw response bytes between its position and limit
+	 * @param <T> response type param
+	 * @return response instance
+	 * @throws MappingException if deserialization not succeed
+	 */
+	public static <T extends Response> T mapFromBufferToInstance(ByteBuffer buffer) throws MappingException
+	{
+//		Requiring response buffer to be non-null
+		Objects.requireNonNull(buffer, "Response buffer cannot be null");
+
+		try
+		{
+			return SerializationUtils.deserialize(new ByteBufferInputStream(buffer));
+		}
+		catch (SerializationException e)
+		{
+			throw new MappingException("Failed to map Response bytes to instance", e);
+		}
+	}
 }
@@ -0,0 +1,185 @@
+package com.enzulode.network.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed memory latency histogram with log-linear buckets.
+ * Every power of two range is split into {@value #SUB_BUCKETS} linear sub-buckets, so recorded values are kept
+ * with about 3% precision from a nanosecond up to {@link Long#MAX_VALUE}.
+ * Recording neither allocates nor locks, so it is safe to be used on the hot path by several threads
+ *
+ */
+public final class LatencyHistogram
+{
+	/**
+	 * The amount of bits of the sub-bucket index
+	 *
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * The amount of linear sub-buckets of every power of two range
+	 *
+	 */
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The amount of buckets: values below {@code 2 * SUB_BUCKETS} have their own buckets,
+	 * every next power of two range has {@link #SUB_BUCKETS} buckets
+	 *
+	 */
+	static final int BUCKETS = (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+	/**
+	 * Bucket counters
+	 *
+	 */
+	private final AtomicLongArray buckets;
+
+	/**
+	 * Recorded values sum in nanoseconds
+	 *
+	 */
+	private final LongAdder sum;
+
+	/**
+	 * The last interval snapshot or null if interval snapshot was never taken
+	 *
+	 */
+	private LatencySnapshot lastInterval;
+
+	/**
+	 * Latency histogram constructor
+	 *
+	 */
+	public LatencyHistogram()
+	{
+		this.buckets = new AtomicLongArray(BUCKETS);
+		this.sum = new LongAdder();
+	}
+
+	/**
+	 * This method records a latency value
+	 *
+	 * @param nanos latency in nanoseconds
+	 */
+	public void record(long nanos)
+	{
+		long value = Math.max(nanos, 0);
+
+		buckets.incrementAndGet(bucketIndex(value));
+		sum.add(value);
+	}
+
+	/**
+	 * This method adds recorded values of the snapshot to the histogram
+	 *
+	 * @param snapshot latency snapshot
+	 */
+	public void add(LatencySnapshot snapshot)
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			long count = snapshot.getBucketCount(i);
+			if (count != 0)
+				buckets.addAndGet(i, count);
+		}
+
+		sum.add(snapshot.getSum());
+	}
+
+	/**
+	 * Recorded values count getter
+	 *
+	 * @return the amount of recorded values
+	 */
+	public long getCount()
+	{
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			count += buckets.get(i);
+
+		return count;
+	}
+
+	/**
+	 * Recorded values sum getter
+	 *
+	 * @return recorded values sum in nanoseconds
+	 */
+	public long getSum()
+	{
+		return sum.sum();
+	}
+
+	/**
+	 * This method estimates the value at the provided percentile
+	 *
+	 * @param percentile percentile in range from 0 to 100
+	 * @return latency in nanoseconds or 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		return snapshot().getValueAtPercentile(percentile);
+	}
+
+	/**
+	 * This method takes a snapshot of all the values recorded since the histogram creation
+	 *
+	 * @return latency snapshot
+	 */
+	public LatencySnapshot snapshot()
+	{
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			counts[i] = buckets.get(i);
+
+		return new LatencySnapshot(counts, sum.sum());
+	}
+
+	/**
+	 * This method takes a snapshot of the values recorded since the previous interval snapshot
+	 *
+	 * @return latency snapshot of the interval
+	 */
+	public synchronized LatencySnapshot intervalSnapshot()
+	{
+		LatencySnapshot current = snapshot();
+		LatencySnapshot interval = lastInterval == null ? current : current.subtract(lastInterval);
+
+		lastInterval = current;
+		return interval;
+	}
+
+	/**
+	 * This method resolves the bucket of the value
+	 *
+	 * @param value non-negative value
+	 * @return bucket index
+	 */
+	static int bucketIndex(long value)
+	{
+		int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		if (magnitude <= SUB_BUCKET_BITS)
+			return (int) value;
+
+//		The value is shifted, so its sub-bucket is in range from SUB_BUCKETS to 2 * SUB_BUCKETS - 1
+		int shift = magnitude - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * This method resolves the highest value the bucket keeps
+	 *
+	 * @param index bucket index
+	 * @return the highest bucket value
+	 */
+	static long bucketUpperBound(int index)
+	{
+		int shift = Math.max(0, index / SUB_BUCKETS - 1);
+		long subBucket = index - (long) shift * SUB_BUCKETS;
+
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,167 @@
+package com.enzulode.network.metrics;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Immutable snapshot of a {@link LatencyHistogram}.
+ * Snapshots of several histograms (e.g. the same request type on several servers) are aggregated with {@link #merge}
+ *
+ */
+public final class LatencySnapshot
+{
+	/**
+	 * Empty snapshot
+	 *
+	 */
+	public static final LatencySnapshot EMPTY = new LatencySnapshot(new long[LatencyHistogram.BUCKETS], 0);
+
+	/**
+	 * Bucket counts
+	 *
+	 */
+	private final long[] counts;
+
+	/**
+	 * Recorded values count
+	 *
+	 */
+	private final long count;
+
+	/**
+	 * Recorded values sum in nanoseconds
+	 *
+	 */
+	private final long sum;
+
+	/**
+	 * Latency snapshot constructor
+	 *
+	 * @param counts bucket counts
+	 * @param sum recorded values sum in nanoseconds
+	 */
+	LatencySnapshot(long[] counts, long sum)
+	{
+		long count = 0;
+		for (long bucketCount : counts)
+			count += bucketCount;
+
+		this.counts = counts;
+		this.count = count;
+		this.sum = sum;
+	}
+
+	/**
+	 * Recorded values count getter
+	 *
+	 * @return the amount of recorded values
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Recorded values sum getter
+	 *
+	 * @return recorded values sum in nanoseconds
+	 */
+	public long getSum()
+	{
+		return sum;
+	}
+
+	/**
+	 * Recorded values mean getter
+	 *
+	 * @return mean value in nanoseconds or 0 if nothing was recorded
+	 */
+	public double getMean()
+	{
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * Recorded values maximum getter
+	 *
+	 * @return the highest value of the highest non-empty bucket or 0 if nothing was recorded
+	 */
+	public long getMax()
+	{
+		for (int i = counts.length - 1; i >= 0; i--)
+			if (counts[i] != 0)
+				return LatencyHistogram.bucketUpperBound(i);
+
+		return 0;
+	}
+
+	/**
+	 * This method estimates the value at the provided percentile.
+	 * The estimation is the highest value of the bucket the percentile falls into
+	 *
+	 * @param percentile percentile in range from 0 to 100
+	 * @return latency in nanoseconds or 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Percentile has to be in range from 0 to 100");
+
+		if (count == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+				return LatencyHistogram.bucketUpperBound(i);
+		}
+
+		return getMax();
+	}
+
+	/**
+	 * This method merges two snapshots
+	 *
+	 * @param other another snapshot
+	 * @return snapshot of the values recorded by both snapshots
+	 */
+	public LatencySnapshot merge(LatencySnapshot other)
+	{
+		Objects.requireNonNull(other, "Snapshot cannot be null");
+
+		long[] merged = Arrays.copyOf(counts, counts.length);
+		for (int i = 0; i < merged.length; i++)
+			merged[i] += other.counts[i];
+
+		return new LatencySnapshot(merged, sum + other.sum);
+	}
+
+	/**
+	 * This method subtracts an earlier snapshot of the same histogram
+	 *
+	 * @param earlier an earlier snapshot
+	 * @return snapshot of the values recorded between two snapshots
+	 */
+	LatencySnapshot subtract(LatencySnapshot earlier)
+	{
+		long[] difference = Arrays.copyOf(counts, counts.length);
+		for (int i = 0; i < difference.length; i++)
+			difference[i] -= earlier.counts[i];
+
+		return new LatencySnapshot(difference, sum - earlier.sum);
+	}
+
+	/**
+	 * Bucket count getter
+	 *
+	 * @param index bucket index
+	 * @return the amount of values in the bucket
+	 */
+	long getBucketCount(int index)
+	{
+		return counts[index];
+	}
+}
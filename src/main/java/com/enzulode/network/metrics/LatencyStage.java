@@ -0,0 +1,32 @@
+package com.enzulode.network.metrics;
+
+/**
+ * Measured stages of a request processing
+ *
+ */
+public enum LatencyStage
+{
+	/**
+	 * From the request assembled to the handler start (server side)
+	 *
+	 */
+	QUEUE,
+
+	/**
+	 * Request handler execution (server side)
+	 *
+	 */
+	HANDLE,
+
+	/**
+	 * From the response encoding start to the last response frame sent (server side)
+	 *
+	 */
+	SEND,
+
+	/**
+	 * From the first request frame sent to the response assembled (client side)
+	 *
+	 */
+	ROUND_TRIP
+}
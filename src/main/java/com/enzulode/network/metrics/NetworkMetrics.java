@@ -0,0 +1,862 @@
+package com.enzulode.network.metrics;
+
+import com.enzulode.network.util.ReassemblyArena;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.SocketAddress;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class collects network metrics of a single client or server.
+ * Counters are updated concurrently by receiving and sending threads, gauges are sampled when metrics are read.
+ * Metrics are exported as a JMX MBean and may be rendered in Prometheus text format
+ *
+ */
+public final class NetworkMetrics implements NetworkMetricsMXBean
+{
+	/**
+	 * JMX domain of the metrics MBeans
+	 *
+	 */
+	public static final String JMX_DOMAIN = "com.enzulode.network";
+
+	/**
+	 * Logger instance
+	 *
+	 */
+	private static final Logger logger = Logger.getLogger(NetworkMetrics.class.getName());
+
+	/**
+	 * The amount of received frames
+	 *
+	 */
+	private final LongAdder framesReceived;
+
+	/**
+	 * The amount of received bytes
+	 *
+	 */
+	private final LongAdder bytesReceived;
+
+	/**
+	 * The amount of sent frames
+	 *
+	 */
+	private final LongAdder framesSent;
+
+	/**
+	 * The amount of sent bytes
+	 *
+	 */
+	private final LongAdder bytesSent;
+
+	/**
+	 * The amount of failed sends
+	 *
+	 */
+	private final LongAdder sendFailures;
+
+	/**
+	 * The amount of frames rejected as corrupted or truncated
+	 *
+	 */
+	private final LongAdder corruptedFrames;
+
+	/**
+	 * The amount of assembled messages
+	 *
+	 */
+	private final LongAdder messagesAssembled;
+
+	/**
+	 * The amount of incomplete messages dropped after expiration
+	 *
+	 */
+	private final LongAdder messagesExpired;
+
+	/**
+	 * The amount of suppressed duplicate requests
+	 *
+	 */
+	private final LongAdder duplicateRequests;
+
+	/**
+	 * The amount of handled requests
+	 *
+	 */
+	private final LongAdder requestsHandled;
+
+	/**
+	 * The amount of requests the handler failed on
+	 *
+	 */
+	private final LongAdder handlerFailures;
+
+	/**
+	 * Expired requests counter
+	 *
+	 */
+	private final LongAdder requestsExpired;
+
+	/**
+	 * Coalesced requests counter
+	 *
+	 */
+	private final LongAdder requestsCoalesced;
+
+	/**
+	 * The amount of messages sent over the TCP fallback connections
+	 *
+	 */
+	private final LongAdder messagesStreamed;
+
+	/**
+	 * Lost frames counter
+	 *
+	 */
+	private final LongAdder framesLost;
+
+	/**
+	 * Latency histograms by stage and request type
+	 *
+	 */
+	private final Map<LatencyStage, ConcurrentMap<Class<?>, LatencyHistogram>> latencies;
+
+	/**
+	 * Reassembly backlog gauge
+	 *
+	 */
+	private volatile LongSupplier reassemblyBacklog;
+
+	/**
+	 * Handler queue depth gauge
+	 *
+	 */
+	private volatile LongSupplier handlerQueueDepth;
+
+	/**
+	 * Kernel drops gauge
+	 *
+	 */
+	private volatile LongSupplier kernelDrops;
+
+	/**
+	 * Receive buffer size gauge
+	 *
+	 */
+	private volatile LongSupplier receiveBufferSize;
+
+	/**
+	 * Reassembly arena or null if messages are assembled on heap
+	 *
+	 */
+	private volatile ReassemblyArena reassemblyArena;
+
+	/**
+	 * Endpoint labels: endpoint type and address
+	 *
+	 */
+	private volatile String labels;
+
+	/**
+	 * Registered MBean name
+	 *
+	 */
+	private volatile ObjectName objectName;
+
+	/**
+	 * Network metrics constructor
+	 *
+	 */
+	public NetworkMetrics()
+	{
+		this.framesReceived = new LongAdder();
+		this.bytesReceived = new LongAdder();
+		this.framesSent = new LongAdder();
+		this.bytesSent = new LongAdder();
+		this.sendFailures = new LongAdder();
+		this.corruptedFrames = new LongAdder();
+		this.messagesAssembled = new LongAdder();
+		this.messagesExpired = new LongAdder();
+		this.duplicateRequests = new LongAdder();
+		this.requestsHandled = new LongAdder();
+		this.handlerFailures = new LongAdder();
+		this.requestsExpired = new LongAdder();
+		this.requestsCoalesced = new LongAdder();
+		this.messagesStreamed = new LongAdder();
+		this.framesLost = new LongAdder();
+
+		this.latencies = new EnumMap<>(LatencyStage.class);
+		for (LatencyStage stage : LatencyStage.values())
+			latencies.put(stage, new ConcurrentHashMap<>());
+
+		this.reassemblyBacklog = () -> 0;
+		this.handlerQueueDepth = () -> 0;
+		this.kernelDrops = () -> -1;
+		this.receiveBufferSize = () -> 0;
+		this.labels = "";
+	}
+
+	/**
+	 * This method registers a received frame
+	 *
+	 * @param bytes frame size in bytes
+	 */
+	public void frameReceived(int bytes)
+	{
+		framesReceived.increment();
+		bytesReceived.add(bytes);
+	}
+
+	/**
+	 * This method registers a sent frame
+	 *
+	 * @param bytes frame size in bytes
+	 */
+	public void frameSent(int bytes)
+	{
+		framesSent.increment();
+		bytesSent.add(bytes);
+	}
+
+	/**
+	 * This method registers a failed send
+	 *
+	 */
+	public void sendFailed()
+	{
+		sendFailures.increment();
+	}
+
+	/**
+	 * This method registers a rejected corrupted frame
+	 *
+	 */
+	public void frameCorrupted()
+	{
+		corruptedFrames.increment();
+	}
+
+	/**
+	 * This method registers an assembled message
+	 *
+	 */
+	public void messageAssembled()
+	{
+		messagesAssembled.increment();
+	}
+
+	/**
+	 * This method registers an incomplete message dropped after expiration
+	 *
+	 */
+	public void messageExpired()
+	{
+		messagesExpired.increment();
+	}
+
+	/**
+	 * This method registers a suppressed duplicate request
+	 *
+	 */
+	public void duplicateRequest()
+	{
+		duplicateRequests.increment();
+	}
+
+	/**
+	 * This method registers a handled request
+	 *
+	 * @param requestType request type
+	 * @param nanos handler latency in nanoseconds
+	 */
+	public void requestHandled(Class<?> requestType, long nanos)
+	{
+		requestsHandled.increment();
+		recordLatency(LatencyStage.HANDLE, requestType, nanos);
+	}
+
+	/**
+	 * This method registers a request the handler failed on
+	 *
+	 */
+	public void handlerFailed()
+	{
+		handlerFailures.increment();
+	}
+
+	/**
+	 * This method registers a request dropped before handling because its deadline has passed
+	 *
+	 */
+	public void requestExpired()
+	{
+		requestsExpired.increment();
+	}
+
+	/**
+	 * This method registers a request answered with the response of an equal in-flight request
+	 *
+	 */
+	public void requestCoalesced()
+	{
+		requestsCoalesced.increment();
+	}
+
+	/**
+	 * This method registers a message sent over a TCP fallback connection
+	 *
+	 */
+	public void messageStreamed()
+	{
+		messagesStreamed.increment();
+	}
+
+	/**
+	 * This method registers frames skipped by the sequence of the arrived ones.
+	 * Frames are sent in sequence, so the skipped ones are considered lost until they arrive out of order
+	 *
+	 * @param frames the amount of skipped frames, negative for the skipped frames arrived out of order
+	 */
+	public void framesLost(int frames)
+	{
+		framesLost.add(frames);
+	}
+
+	/**
+	 * This method records a stage latency of the request
+	 *
+	 * @param stage measured stage
+	 * @param requestType request type
+	 * @param nanos stage latency in nanoseconds
+	 */
+	public void recordLatency(LatencyStage stage, Class<?> requestType, long nanos)
+	{
+		ConcurrentMap<Class<?>, LatencyHistogram> histograms = latencies.get(stage);
+
+//		Histogram is created only for the first request of the type
+		LatencyHistogram histogram = histograms.get(requestType);
+		if (histogram == null)
+			histogram = histograms.computeIfAbsent(requestType, type -> new LatencyHistogram());
+
+		histogram.record(nanos);
+	}
+
+	/**
+	 * This method provides the latency histogram of the stage and request type
+	 *
+	 * @param stage measured stage
+	 * @param requestType request type
+	 * @return latency histogram or null if nothing was recorded
+	 */
+	public LatencyHistogram getLatencyHistogram(LatencyStage stage, Class<?> requestType)
+	{
+		return latencies.get(stage).get(requestType);
+	}
+
+	/**
+	 * This method takes snapshots of all the stage latencies recorded since the metrics creation
+	 *
+	 * @param stage measured stage
+	 * @return latency snapshots by request type
+	 */
+	public Map<Class<?>, LatencySnapshot> getLatencySnapshots(LatencyStage stage)
+	{
+		Map<Class<?>, LatencySnapshot> snapshots = new HashMap<>();
+		for (Map.Entry<Class<?>, LatencyHistogram> entry : latencies.get(stage).entrySet())
+			snapshots.put(entry.getKey(), entry.getValue().snapshot());
+
+		return snapshots;
+	}
+
+	/**
+	 * This method takes snapshots of the stage latencies recorded since the previous interval snapshot.
+	 * Interval snapshots of several endpoints may be merged with {@link LatencySnapshot#merge}
+	 *
+	 * @param stage measured stage
+	 * @return latency snapshots of the interval by request type
+	 */
+	public Map<Class<?>, LatencySnapshot> getIntervalLatencySnapshots(LatencyStage stage)
+	{
+		Map<Class<?>, LatencySnapshot> snapshots = new HashMap<>();
+		for (Map.Entry<Class<?>, LatencyHistogram> entry : latencies.get(stage).entrySet())
+			snapshots.put(entry.getKey(), entry.getValue().intervalSnapshot());
+
+		return snapshots;
+	}
+
+	/**
+	 * Reassembly backlog gauge setter
+	 *
+	 * @param reassemblyBacklog supplier of the amount of messages being assembled
+	 */
+	public void setReassemblyBacklogGauge(LongSupplier reassemblyBacklog)
+	{
+		this.reassemblyBacklog = Objects.requireNonNull(reassemblyBacklog, "Gauge cannot be null");
+	}
+
+	/**
+	 * Handler queue depth gauge setter
+	 *
+	 * @param handlerQueueDepth supplier of the amount of requests waiting for the handler
+	 */
+	public void setHandlerQueueDepthGauge(LongSupplier handlerQueueDepth)
+	{
+		this.handlerQueueDepth = Objects.requireNonNull(handlerQueueDepth, "Gauge cannot be null");
+	}
+
+	/**
+	 * Kernel drops gauge setter
+	 *
+	 * @param kernelDrops supplier of the amount of datagrams the kernel dropped or -1 if it is unknown
+	 */
+	public void setKernelDropsGauge(LongSupplier kernelDrops)
+	{
+		this.kernelDrops = Objects.requireNonNull(kernelDrops, "Gauge cannot be null");
+	}
+
+	/**
+	 * Receive buffer size gauge setter
+	 *
+	 * @param receiveBufferSize supplier of the receive buffer size in bytes
+	 */
+	public void setReceiveBufferSizeGauge(LongSupplier receiveBufferSize)
+	{
+		this.receiveBufferSize = Objects.requireNonNull(receiveBufferSize, "Gauge cannot be null");
+	}
+
+	@Override
+	public long getFramesReceived()
+	{
+		return framesReceived.sum();
+	}
+
+	@Override
+	public long getBytesReceived()
+	{
+		return bytesReceived.sum();
+	}
+
+	@Override
+	public long getFramesSent()
+	{
+		return framesSent.sum();
+	}
+
+	@Override
+	public long getBytesSent()
+	{
+		return bytesSent.sum();
+	}
+
+	@Override
+	public long getSendFailures()
+	{
+		return sendFailures.sum();
+	}
+
+	@Override
+	public long getCorruptedFrames()
+	{
+		return corruptedFrames.sum();
+	}
+
+	@Override
+	public long getMessagesAssembled()
+	{
+		return messagesAssembled.sum();
+	}
+
+	@Override
+	public long getMessagesExpired()
+	{
+		return messagesExpired.sum();
+	}
+
+	@Override
+	public long getDuplicateRequests()
+	{
+		return duplicateRequests.sum();
+	}
+
+	@Override
+	public long getRequestsHandled()
+	{
+		return requestsHandled.sum();
+	}
+
+	@Override
+	public long getHandlerFailures()
+	{
+		return handlerFailures.sum();
+	}
+
+	@Override
+	public long getRequestsExpired()
+	{
+		return requestsExpired.sum();
+	}
+
+	@Override
+	public long getRequestsCoalesced()
+	{
+		return requestsCoalesced.sum();
+	}
+
+	@Override
+	public long getMessagesStreamed()
+	{
+		return messagesStreamed.sum();
+	}
+
+	@Override
+	public long getFramesLost()
+	{
+		return framesLost.sum();
+	}
+
+	@Override
+	public double getFrameLossRatio()
+	{
+		long lost = getFramesLost();
+		long total = lost + getFramesReceived();
+		return total == 0 ? 0 : (double) lost / total;
+	}
+
+	@Override
+	public long getKernelDrops()
+	{
+		return kernelDrops.getAsLong();
+	}
+
+	@Override
+	public long getReceiveBufferSize()
+	{
+		return receiveBufferSize.getAsLong();
+	}
+
+	/**
+	 * Reassembly arena setter. Arena occupancy is reported with the endpoint metrics
+	 *
+	 * @param reassemblyArena reassembly arena or null if messages are assembled on heap
+	 */
+	public void setReassemblyArena(ReassemblyArena reassemblyArena)
+	{
+		this.reassemblyArena = reassemblyArena;
+	}
+
+	@Override
+	public long getArenaReservedBytes()
+	{
+		ReassemblyArena arena = reassemblyArena;
+		return arena == null ? 0 : arena.getReservedBytes();
+	}
+
+	@Override
+	public long getArenaUsedBytes()
+	{
+		ReassemblyArena arena = reassemblyArena;
+		return arena == null ? 0 : arena.getUsedBytes();
+	}
+
+	@Override
+	public long getArenaFallbacks()
+	{
+		ReassemblyArena arena = reassemblyArena;
+		return arena == null ? 0 : arena.getFallbacks();
+	}
+
+	@Override
+	public long getReassemblyBacklog()
+	{
+		return reassemblyBacklog.getAsLong();
+	}
+
+	@Override
+	public long getHandlerQueueDepth()
+	{
+		return handlerQueueDepth.getAsLong();
+	}
+
+	@Override
+	public Map<String, Long> getHandlerLatencyP50()
+	{
+		return percentiles(LatencyStage.HANDLE, 50);
+	}
+
+	@Override
+	public Map<String, Long> getHandlerLatencyP99()
+	{
+		return percentiles(LatencyStage.HANDLE, 99);
+	}
+
+	@Override
+	public Map<String, Long> getRoundTripLatencyP50()
+	{
+		return percentiles(LatencyStage.ROUND_TRIP, 50);
+	}
+
+	@Override
+	public Map<String, Long> getRoundTripLatencyP99()
+	{
+		return percentiles(LatencyStage.ROUND_TRIP, 99);
+	}
+
+	@Override
+	public Map<String, Long> getQueueLatencyP99()
+	{
+		return percentiles(LatencyStage.QUEUE, 99);
+	}
+
+	@Override
+	public Map<String, Long> getQueueLatencyP999()
+	{
+		return percentiles(LatencyStage.QUEUE, 99.9);
+	}
+
+	@Override
+	public Map<String, Long> getHandlerLatencyP999()
+	{
+		return percentiles(LatencyStage.HANDLE, 99.9);
+	}
+
+	@Override
+	public Map<String, Long> getSendLatencyP99()
+	{
+		return percentiles(LatencyStage.SEND, 99);
+	}
+
+	@Override
+	public Map<String, Long> getSendLatencyP999()
+	{
+		return percentiles(LatencyStage.SEND, 99.9);
+	}
+
+	@Override
+	public Map<String, Long> getRoundTripLatencyP999()
+	{
+		return percentiles(LatencyStage.ROUND_TRIP, 99.9);
+	}
+
+	/**
+	 * This method registers metrics as a platform MBean.
+	 * Registration failures are logged, so metrics are still available with {@link #toPrometheusText()}
+	 *
+	 * @param type endpoint type
+	 * @param address endpoint address
+	 */
+	public void registerMBean(String type, SocketAddress address)
+	{
+		Objects.requireNonNull(type, "Endpoint type cannot be null");
+
+		labels = "endpoint=\"" + escape(type) + "\",address=\"" + escape(String.valueOf(address)) + "\"";
+
+		try
+		{
+			ObjectName name = new ObjectName(
+					JMX_DOMAIN + ":type=" + type + ",address=" + ObjectName.quote(String.valueOf(address))
+			);
+
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			objectName = name;
+		}
+		catch (JMException e)
+		{
+			logger.log(Level.WARNING, "Failed to register network metrics MBean", e);
+		}
+	}
+
+	/**
+	 * This method unregisters metrics MBean if it was registered
+	 *
+	 */
+	public void unregisterMBean()
+	{
+		ObjectName name = objectName;
+		if (name == null)
+			return;
+
+		objectName = null;
+
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+		}
+		catch (JMException e)
+		{
+			logger.log(Level.WARNING, "Failed to unregister network metrics MBean", e);
+		}
+	}
+
+	/**
+	 * This method renders metrics snapshot in Prometheus text exposition format
+	 *
+	 * @return metrics snapshot
+	 */
+	public String toPrometheusText()
+	{
+		String labels = this.labels;
+		StringBuilder text = new StringBuilder();
+
+		counter(text, "frames_received_total", "Received frames", labels, getFramesReceived());
+		counter(text, "bytes_received_total", "Received bytes", labels, getBytesReceived());
+		counter(text, "frames_sent_total", "Sent frames", labels, getFramesSent());
+		counter(text, "bytes_sent_total", "Sent bytes", labels, getBytesSent());
+		counter(text, "send_failures_total", "Failed sends", labels, getSendFailures());
+		counter(text, "corrupted_frames_total", "Frames rejected as corrupted or truncated", labels, getCorruptedFrames());
+		counter(text, "messages_assembled_total", "Assembled messages", labels, getMessagesAssembled());
+		counter(text, "messages_expired_total", "Incomplete messages dropped after expiration", labels, getMessagesExpired());
+		counter(text, "duplicate_requests_total", "Suppressed duplicate requests", labels, getDuplicateRequests());
+		counter(text, "requests_handled_total", "Handled requests", labels, getRequestsHandled());
+		counter(text, "handler_failures_total", "Requests the handler failed on", labels, getHandlerFailures());
+		counter(text, "requests_expired_total", "Requests dropped before handling because their deadline has passed", labels, getRequestsExpired());
+		counter(text, "requests_coalesced_total", "Requests answered with the response of an equal in-flight request", labels, getRequestsCoalesced());
+		counter(text, "messages_streamed_total", "Messages sent over TCP fallback connections", labels, getMessagesStreamed());
+		counter(text, "frames_lost_total", "Frames skipped by the sequence of the arrived ones", labels, getFramesLost());
+
+		long drops = getKernelDrops();
+		if (drops >= 0)
+			counter(text, "kernel_drops_total", "Datagrams dropped by the kernel before they were received", labels, drops);
+
+		gauge(text, "receive_buffer_bytes", "Receive buffer size granted by the kernel", labels, getReceiveBufferSize());
+		gauge(text, "reassembly_backlog", "Messages being assembled", labels, getReassemblyBacklog());
+		gauge(text, "handler_queue_depth", "Requests waiting for the handler", labels, getHandlerQueueDepth());
+		gauge(text, "arena_reserved_bytes", "Direct memory reserved by the reassembly arena", labels, getArenaReservedBytes());
+		gauge(text, "arena_used_bytes", "Reassembly arena memory held by messages being assembled", labels, getArenaUsedBytes());
+		counter(text, "arena_fallbacks_total", "Messages assembled on heap because the arena was exhausted", labels, getArenaFallbacks());
+
+		for (LatencyStage stage : LatencyStage.values())
+		{
+			String name = "enzulode_network_" + stage.name().toLowerCase(Locale.ROOT) + "_latency_seconds";
+			text.append("# HELP ").append(name).append(' ').append(stage.name().toLowerCase(Locale.ROOT)).append(" stage latency\n");
+			text.append("# TYPE ").append(name).append(" summary\n");
+
+			for (Map.Entry<Class<?>, LatencyHistogram> entry : latencies.get(stage).entrySet())
+			{
+				String typeLabels = (labels.isEmpty() ? "" : labels + ",")
+						+ "request_type=\"" + escape(entry.getKey().getName()) + "\"";
+				LatencySnapshot snapshot = entry.getValue().snapshot();
+
+				for (double quantile : new double[] {0.5, 0.99, 0.999})
+					text.append(name).append('{').append(typeLabels).append(",quantile=\"").append(quantile).append("\"} ")
+							.append(seconds(snapshot.getValueAtPercentile(quantile * 100))).append('\n');
+
+				text.append(name).append("_sum{").append(typeLabels).append("} ")
+						.append(seconds(snapshot.getSum())).append('\n');
+				text.append(name).append("_count{").append(typeLabels).append("} ")
+						.append(snapshot.getCount()).append('\n');
+			}
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * This method collects the stage latency percentile by request type name
+	 *
+	 * @param stage measured stage
+	 * @param percentile percentile in range from 0 to 100
+	 * @return latencies in microseconds by request type name
+	 */
+	private Map<String, Long> percentiles(LatencyStage stage, double percentile)
+	{
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<Class<?>, LatencyHistogram> entry : latencies.get(stage).entrySet())
+			result.put(
+					entry.getKey().getName(),
+					TimeUnit.NANOSECONDS.toMicros(entry.getValue().getValueAtPercentile(percentile))
+			);
+
+		return result;
+	}
+
+	/**
+	 * This method renders a counter
+	 *
+	 * @param text output text
+	 * @param name metric name without prefix
+	 * @param help metric description
+	 * @param labels metric labels
+	 * @param value metric value
+	 */
+	private static void counter(StringBuilder text, String name, String help, String labels, long value)
+	{
+		metric(text, name, "counter", help, labels, value);
+	}
+
+	/**
+	 * This method renders a gauge
+	 *
+	 * @param text output text
+	 * @param name metric name without prefix
+	 * @param help metric description
+	 * @param labels metric labels
+	 * @param value metric value
+	 */
+	private static void gauge(StringBuilder text, String name, String help, String labels, long value)
+	{
+		metric(text, name, "gauge", help, labels, value);
+	}
+
+	/**
+	 * This method renders a single value metric
+	 *
+	 * @param text output text
+	 * @param name metric name without prefix
+	 * @param type metric type
+	 * @param help metric description
+	 * @param labels metric labels
+	 * @param value metric value
+	 */
+	private static void metric(StringBuilder text, String name, String type, String help, String labels, long value)
+	{
+		String fullName = "enzulode_network_" + name;
+
+		text.append("# HELP ").append(fullName).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(fullName).append(' ').append(type).append('\n');
+		text.append(fullName);
+		if (!labels.isEmpty())
+			text.append('{').append(labels).append('}');
+
+		text.append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * This method converts nanoseconds to seconds
+	 *
+	 * @param nanos value in nanoseconds
+	 * @return value in seconds
+	 */
+	private static double seconds(long nanos)
+	{
+		return nanos / 1e9;
+	}
+
+	/**
+	 * This method escapes a label value
+	 *
+	 * @param value label value
+	 * @return escaped label value
+	 */
+	private static String escape(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
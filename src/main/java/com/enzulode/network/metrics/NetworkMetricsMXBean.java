@@ -0,0 +1,242 @@
+package com.enzulode.network.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the network metrics of a single client or server.
+ * Latencies are reported in microseconds by request type name
+ *
+ */
+public interface NetworkMetricsMXBean
+{
+	/**
+	 * Received frames counter getter
+	 *
+	 * @return the amount of received frames
+	 */
+	long getFramesReceived();
+
+	/**
+	 * Received bytes counter getter
+	 *
+	 * @return the amount of received bytes
+	 */
+	long getBytesReceived();
+
+	/**
+	 * Sent frames counter getter
+	 *
+	 * @return the amount of sent frames
+	 */
+	long getFramesSent();
+
+	/**
+	 * Sent bytes counter getter
+	 *
+	 * @return the amount of sent bytes
+	 */
+	long getBytesSent();
+
+	/**
+	 * Send failures counter getter
+	 *
+	 * @return the amount of failed sends
+	 */
+	long getSendFailures();
+
+	/**
+	 * Corrupted frames counter getter
+	 *
+	 * @return the amount of frames rejected as corrupted or truncated
+	 */
+	long getCorruptedFrames();
+
+	/**
+	 * Assembled messages counter getter
+	 *
+	 * @return the amount of assembled messages
+	 */
+	long getMessagesAssembled();
+
+	/**
+	 * Expired messages counter getter
+	 *
+	 * @return the amount of incomplete messages dropped after expiration
+	 */
+	long getMessagesExpired();
+
+	/**
+	 * Duplicate requests counter getter
+	 *
+	 * @return the amount of suppressed duplicate requests
+	 */
+	long getDuplicateRequests();
+
+	/**
+	 * Handled requests counter getter
+	 *
+	 * @return the amount of handled requests
+	 */
+	long getRequestsHandled();
+
+	/**
+	 * Handler failures counter getter
+	 *
+	 * @return the amount of requests the handler failed on
+	 */
+	long getHandlerFailures();
+
+	/**
+	 * Expired requests counter getter
+	 *
+	 * @return the amount of requests dropped before handling because their deadline has passed
+	 */
+	long getRequestsExpired();
+
+	/**
+	 * Coalesced requests counter getter
+	 *
+	 * @return the amount of requests answered with the response of an equal in-flight request
+	 */
+	long getRequestsCoalesced();
+
+	/**
+	 * Streamed messages counter getter
+	 *
+	 * @return the amount of messages sent over TCP fallback connections
+	 */
+	long getMessagesStreamed();
+
+	/**
+	 * Lost frames counter getter
+	 *
+	 * @return the amount of frames skipped by the sequence of the arrived ones
+	 */
+	long getFramesLost();
+
+	/**
+	 * Frame loss ratio getter
+	 *
+	 * @return the share of lost frames among received and lost ones
+	 */
+	double getFrameLossRatio();
+
+	/**
+	 * Kernel drops counter getter
+	 *
+	 * @return the amount of datagrams the kernel dropped for the endpoint or -1 if the transport cannot tell it
+	 */
+	long getKernelDrops();
+
+	/**
+	 * Receive buffer size gauge getter
+	 *
+	 * @return the receive buffer size granted by the kernel in bytes
+	 */
+	long getReceiveBufferSize();
+
+	/**
+	 * Reassembly backlog gauge getter
+	 *
+	 * @return the amount of messages being assembled
+	 */
+	long getReassemblyBacklog();
+
+	/**
+	 * Handler queue depth gauge getter
+	 *
+	 * @return the amount of assembled requests waiting for the handler
+	 */
+	long getHandlerQueueDepth();
+
+	/**
+	 * Reassembly arena reserved memory gauge getter
+	 *
+	 * @return the amount of direct memory reserved by the reassembly arena in bytes
+	 */
+	long getArenaReservedBytes();
+
+	/**
+	 * Reassembly arena used memory gauge getter
+	 *
+	 * @return the amount of arena bytes held by messages being assembled
+	 */
+	long getArenaUsedBytes();
+
+	/**
+	 * Reassembly arena fallbacks counter getter
+	 *
+	 * @return the amount of messages assembled on heap because the arena was exhausted
+	 */
+	long getArenaFallbacks();
+
+	/**
+	 * Median handler latency getter
+	 *
+	 * @return median handler latency in microseconds by request type
+	 */
+	Map<String, Long> getHandlerLatencyP50();
+
+	/**
+	 * Handler latency 99th percentile getter
+	 *
+	 * @return 99th percentile of handler latency in microseconds by request type
+	 */
+	Map<String, Long> getHandlerLatencyP99();
+
+	/**
+	 * Median round trip latency getter
+	 *
+	 * @return median round trip latency in microseconds by request type
+	 */
+	Map<String, Long> getRoundTripLatencyP50();
+
+	/**
+	 * Round trip latency 99th percentile getter
+	 *
+	 * @return 99th percentile of round trip latency in microseconds by request type
+	 */
+	Map<String, Long> getRoundTripLatencyP99();
+
+	/**
+	 * Queue latency 99th percentile getter
+	 *
+	 * @return 99th percentile of the time requests wait for the handler in microseconds by request type
+	 */
+	Map<String, Long> getQueueLatencyP99();
+
+	/**
+	 * Queue latency 99.9th percentile getter
+	 *
+	 * @return 99.9th percentile of the time requests wait for the handler in microseconds by request type
+	 */
+	Map<String, Long> getQueueLatencyP999();
+
+	/**
+	 * Handler latency 99.9th percentile getter
+	 *
+	 * @return 99.9th percentile of handler latency in microseconds by request type
+	 */
+	Map<String, Long> getHandlerLatencyP999();
+
+	/**
+	 * Send latency 99th percentile getter
+	 *
+	 * @return 99th percentile of the time from response encoding start to the last frame sent in microseconds by request type
+	 */
+	Map<String, Long> getSendLatencyP99();
+
+	/**
+	 * Send latency 99.9th percentile getter
+	 *
+	 * @return 99.9th percentile of the time from response encoding start to the last frame sent in microseconds by request type
+	 */
+	Map<String, Long> getSendLatencyP999();
+
+	/**
+	 * Round trip latency 99.9th percentile getter
+	 *
+	 * @return 99.9th percentile of round trip latency in microseconds by request type
+	 */
+	Map<String, Long> getRoundTripLatencyP999();
+}
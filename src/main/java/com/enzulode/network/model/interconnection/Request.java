@@ -9,7 +9,7 @@ import java.util.Objects;
  * An abstract request entity
  *
  */
-public abstract class Request implements Serializable
+public abstract class Request implements Serializable, Cloneable
 {
     /**
      * Request serial version uid
@@ -30,6 +30,12 @@ public abstract class Request implements Serializable
 	 */
 	private InetSocketAddress to;
 
+	/**
+	 * Time the client waits for the response in milliseconds
+	 *
+	 */
+	private long timeBudget;
+
 	/**
 	 * Empty request constructor
 	 *
@@ -74,6 +80,75 @@ public abstract class Request implements Serializable
 		return to;
 	}
 
+	/**
+	 * Time budget getter
+	 *
+	 * @return time the client waits for the response in milliseconds or 0 if the request has no deadline
+	 */
+	public long getTimeBudget()
+	{
+		return timeBudget;
+	}
+
+	/**
+	 * Time budget setter. Servers drop the requests their clients stopped waiting for before they are handled
+	 *
+	 * @param timeBudget time the client waits for the response in milliseconds or 0 if the request has no deadline
+	 */
+	public void setTimeBudget(long timeBudget)
+	{
+		if (timeBudget < 0)
+			throw new IllegalArgumentException("Request time budget cannot be negative");
+
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * This method creates a shallow copy of the request with the time budget set, the request itself is not modified
+	 *
+	 * @param timeBudget time the client waits for the response in milliseconds or 0 if the request has no deadline
+	 * @return request copy sharing the field values of this request
+	 */
+	public Request withTimeBudget(long timeBudget)
+	{
+		if (timeBudget < 0)
+			throw new IllegalArgumentException("Request time budget cannot be negative");
+
+		try
+		{
+			Request copy = (Request) super.clone();
+			copy.timeBudget = timeBudget;
+			return copy;
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException("Request cannot be copied", e);
+		}
+	}
+
+	/**
+	 * Affinity key getter. Servers scheduling requests by lanes handle the requests of the same key
+	 * in order on a single lane. Requests without the key are scheduled by the client address
+	 *
+	 * @return affinity key or null if the request is scheduled by the client address
+	 */
+	public Object getAffinityKey()
+	{
+		return null;
+	}
+
+	/**
+	 * Coalescing key getter. Servers coalescing requests invoke the handler once for the concurrent requests
+	 * of equal keys and answer all of them with the same response, so the key has to identify the response
+	 * completely (e.g. the requested entity identifier)
+	 *
+	 * @return coalescing key or null if the request is always handled alone
+	 */
+	public Object getCoalescingKey()
+	{
+		return null;
+	}
+
 	/**
 	 * Request source address setter
 	 *
@@ -0,0 +1,67 @@
+package com.enzulode.network.model.interconnection.impl;
+
+import com.enzulode.network.model.interconnection.Response;
+import com.enzulode.network.model.interconnection.util.ResponseCode;
+
+import java.io.Serial;
+
+/**
+ * The purpose of this response is in moving an oversized response onto the TCP fallback connection.
+ * The client fetches the actual response from the server TCP port by the token
+ *
+ */
+public final class StreamRedirectResponse extends Response
+{
+	/**
+	 * Serial UID
+	 *
+	 */
+	@Serial
+	private static final long serialVersionUID = -2247385201364875139L;
+
+	/**
+	 * Server TCP port
+	 *
+	 */
+	private final int port;
+
+	/**
+	 * Token the actual response is fetched by
+	 *
+	 */
+	private final long token;
+
+	/**
+	 * Response constructor without source and destination address provided
+	 *
+	 * @param port server TCP port
+	 * @param token token the actual response is fetched by
+	 */
+	public StreamRedirectResponse(int port, long token)
+	{
+		super(ResponseCode.SUCCEED);
+
+		this.port = port;
+		this.token = token;
+	}
+
+	/**
+	 * Server TCP port getter
+	 *
+	 * @return server TCP port
+	 */
+	public int getPort()
+	{
+		return port;
+	}
+
+	/**
+	 * Token getter
+	 *
+	 * @return token the actual response is fetched by
+	 */
+	public long getToken()
+	{
+		return token;
+	}
+}
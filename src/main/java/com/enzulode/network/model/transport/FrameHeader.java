@@ -0,0 +1,72 @@
+package com.enzulode.network.model.transport;
+
+import java.util.Arrays;
+
+/**
+ * This record represents a decoded frame header. The payload is not copied:
+ * it is referred by its position inside the received frame bytes
+ *
+ * @param last This property defines is the frame last
+ * @param messageId The identifier of the message this frame belongs to
+ * @param index Data frame index inside the message or parity frame index if the frame is a parity one
+ * @param count The amount of data frames in the message
+ * @param messageLength The whole message length in bytes
+ * @param groupSize The amount of data frames protected by the same parity frames (0 if FEC is disabled)
+ * @param parityCount The amount of parity frames for every group of data frames (0 if FEC is disabled)
+ * @param parity This property defines is the frame a parity one
+ * @param compressed This property defines is the message payload compressed
+ * @param ack This property defines is the frame a flow control acknowledgement: its index is the amount of frames
+ * of the message received by the peer
+ * @param window Receive window in frames the peer advertises to the frame receiver (0 if the frame does not advertise it)
+ * @param payloadOffset Payload offset inside the frame bytes array
+ * @param payloadLength Payload length in bytes
+ */
+public record FrameHeader(
+		boolean last,
+		int messageId,
+		int index,
+		int count,
+		int messageLength,
+		int groupSize,
+		int parityCount,
+		boolean parity,
+		boolean compressed,
+		boolean ack,
+		int window,
+		int payloadOffset,
+		int payloadLength
+)
+{
+	/**
+	 * This method checks if the frame carries a whole message, so it does not need reassembly.
+	 * Messages protected by parity frames are not single frame ones: their parity frames still go through the reassembly
+	 *
+	 * @return true if the frame is the only frame of its message
+	 */
+	public boolean singleFrame()
+	{
+		return count == 1 && groupSize == 0 && !parity && !ack;
+	}
+
+	/**
+	 * This method copies the payload out of the frame bytes and creates the frame instance
+	 *
+	 * @param frameBytes array the header was decoded from
+	 * @return {@link UDPFrame} instance
+	 */
+	public UDPFrame toFrame(byte[] frameBytes)
+	{
+		return new UDPFrame(
+				Arrays.copyOfRange(frameBytes, payloadOffset, payloadOffset + payloadLength),
+				last,
+				messageId,
+				index,
+				count,
+				messageLength,
+				groupSize,
+				parityCount,
+				parity,
+				compressed
+		);
+	}
+}
@@ -9,26 +9,76 @@ import java.util.Objects;
  *
  * @param data The data stored in UDPFrame
  * @param last This property defines is the frame last
+ * @param messageId The identifier of the message this frame belongs to
+ * @param index Data frame index inside the message or parity frame index if the frame is a parity one
+ * @param count The amount of data frames in the message
+ * @param messageLength The whole message length in bytes
+ * @param groupSize The amount of data frames protected by the same parity frames (0 if FEC is disabled)
+ * @param parityCount The amount of parity frames for every group of data frames (0 if FEC is disabled)
+ * @param parity This property defines is the frame a parity one
+ * @param compressed This property defines is the message payload compressed
  */
-public record UDPFrame(byte[] data, boolean last) implements Serializable
+public record UDPFrame(
+		byte[] data,
+		boolean last,
+		int messageId,
+		int index,
+		int count,
+		int messageLength,
+		int groupSize,
+		int parityCount,
+		boolean parity,
+		boolean compressed
+) implements Serializable
 {
 	/**
 	 * UDPFrame serial version uid
 	 *
 	 */
 	@Serial
-	private static final long serialVersionUID = -2423240935234456363L;
+	private static final long serialVersionUID = -2423240935234456364L;
+
+	/**
+	 * The maximal amount of data and parity frames in a single FEC group
+	 *
+	 */
+	public static final int MAX_FEC_GROUP_SIZE = 255;
 
 	/**
 	 * This record represents a piece of data sent over the UPD proto
 	 *
 	 * @param data The data stored in UDPFrame
 	 * @param last This property defines is the frame last
+	 * @param messageId The identifier of the message this frame belongs to
+	 * @param index Data frame index inside the message or parity frame index if the frame is a parity one
+	 * @param count The amount of data frames in the message
+	 * @param messageLength The whole message length in bytes
+	 * @param groupSize The amount of data frames protected by the same parity frames (0 if FEC is disabled)
+	 * @param parityCount The amount of parity frames for every group of data frames (0 if FEC is disabled)
+	 * @param parity This property defines is the frame a parity one
+	 * @param compressed This property defines is the message payload compressed
 	 */
 	public UDPFrame
 	{
 //		Requiring UDPFrame stored data to be non-null
 		Objects.requireNonNull(data, "UDPFrame stored data cannot be null");
+
+		if (index < 0 || count < 1 || messageLength < 0)
+			throw new IllegalArgumentException("UDPFrame position cannot be negative");
+
+		if (groupSize < 0 || parityCount < 0 || groupSize + parityCount > MAX_FEC_GROUP_SIZE)
+			throw new IllegalArgumentException("UDPFrame FEC group cannot exceed " + MAX_FEC_GROUP_SIZE + " frames");
+	}
+
+	/**
+	 * This constructor creates a frame of a message that consists of a single frame
+	 *
+	 * @param data The data stored in UDPFrame
+	 * @param last This property defines is the frame last
+	 */
+	public UDPFrame(byte[] data, boolean last)
+	{
+		this(data, last, 0, 0, 1, data.length, 0, 0, false, false);
 	}
 
 	/**
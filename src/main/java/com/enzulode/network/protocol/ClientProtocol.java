@@ -0,0 +1,716 @@
+package com.enzulode.network.protocol;
+
+import com.enzulode.network.compression.MessagePayload;
+import com.enzulode.network.compression.PayloadCompressor;
+import com.enzulode.network.exception.CorruptedFrameException;
+import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.exception.ServerNotAvailableException;
+import com.enzulode.network.fec.FecPolicy;
+import com.enzulode.network.jfr.FrameReceivedEvent;
+import com.enzulode.network.jfr.MessageAssembledEvent;
+import com.enzulode.network.jfr.MessageEncodingEvent;
+import com.enzulode.network.mapper.RequestMapper;
+import com.enzulode.network.mapper.ResponseMapper;
+import com.enzulode.network.metrics.LatencyStage;
+import com.enzulode.network.metrics.NetworkMetrics;
+import com.enzulode.network.model.interconnection.Request;
+import com.enzulode.network.model.interconnection.Response;
+import com.enzulode.network.model.interconnection.impl.StreamRedirectResponse;
+import com.enzulode.network.model.transport.FrameHeader;
+import com.enzulode.network.model.transport.UDPFrame;
+import com.enzulode.network.transport.DatagramTransport;
+import com.enzulode.network.util.AssembledMessage;
+import com.enzulode.network.util.FrameSizeResolver;
+import com.enzulode.network.util.MessageAssembler;
+import com.enzulode.network.util.NetworkUtils;
+import com.enzulode.network.util.ReassemblyArena;
+import com.enzulode.network.util.ReceiveBufferTuner;
+import com.enzulode.network.util.ReceiveWindow;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client side of the protocol: requests encoding, responses reassembly and correlation of responses with requests.
+ * Every client is built on this class, so the protocol does not depend on the datagram transport it runs over
+ *
+ */
+public final class ClientProtocol implements AutoCloseable
+{
+	/**
+	 * Datagram transport instance
+	 *
+	 */
+	private final DatagramTransport transport;
+
+	/**
+	 * Local address instance
+	 *
+	 */
+	private final InetSocketAddress localAddress;
+
+	/**
+	 * Server address instance
+	 *
+	 */
+	private final InetSocketAddress serverAddress;
+
+	/**
+	 * Frame size resolver instance
+	 *
+	 */
+	private final FrameSizeResolver frameSizeResolver;
+
+	/**
+	 * FEC policy instance
+	 *
+	 */
+	private final FecPolicy fecPolicy;
+
+	/**
+	 * Payload compressor instance
+	 *
+	 */
+	private final PayloadCompressor compressor;
+
+	/**
+	 * Network metrics instance
+	 *
+	 */
+	private final NetworkMetrics metrics;
+
+	/**
+	 * Datagram receiver instance
+	 *
+	 */
+	private final DatagramReceiver receiver;
+
+	/**
+	 * Frame sender instance
+	 *
+	 */
+	private final FrameSender sender;
+
+	/**
+	 * The longest wait for the next response frame in milliseconds
+	 *
+	 */
+	private final long responseTimeout;
+
+	/**
+	 * Receive buffer tuner instance
+	 *
+	 */
+	private final ReceiveBufferTuner receiveBufferTuner;
+
+	/**
+	 * Reassembly arena instance or null if responses are assembled on heap
+	 *
+	 */
+	private volatile ReassemblyArena reassemblyArena;
+
+	/**
+	 * TCP connection pools by server TCP port
+	 *
+	 */
+	private final Map<Integer, TcpConnectionPool> tcpPools;
+
+	/**
+	 * Server TCP port oversized requests are streamed to or 0 if requests are always sent over the transport
+	 *
+	 */
+	private volatile int tcpFallbackPort;
+
+	/**
+	 * Size of the smallest encoded request moved onto the TCP fallback connection
+	 *
+	 */
+	private volatile int tcpFallbackThreshold;
+
+	/**
+	 * Size of the largest encoded response accepted from the TCP fallback connection
+	 *
+	 */
+	private volatile int tcpFallbackLimit;
+
+	/**
+	 * Receive window in frames the server granted last
+	 *
+	 */
+	private volatile int window;
+
+	/**
+	 * {@link System#nanoTime()} value the granted window expires at
+	 *
+	 */
+	private volatile long windowExpiresAt;
+
+	/**
+	 * Client protocol constructor
+	 *
+	 * @param transport bound datagram transport instance
+	 * @param localAddress local address requests are sent from
+	 * @param serverAddress server address requests are sent to
+	 * @param pacing pause between request frames in milliseconds
+	 * @param responseTimeout the longest wait for the next response frame in milliseconds
+	 */
+	public ClientProtocol(
+			DatagramTransport transport,
+			InetSocketAddress localAddress,
+			InetSocketAddress serverAddress,
+			long pacing,
+			long responseTimeout
+	)
+	{
+		Objects.requireNonNull(transport, "Transport instance cannot be null");
+		Objects.requireNonNull(localAddress, "Local address cannot be null");
+		Objects.requireNonNull(serverAddress, "Server address cannot be null");
+
+		if (responseTimeout <= 0)
+			throw new IllegalArgumentException("Response timeout has to be positive");
+
+		this.transport = transport;
+		this.localAddress = localAddress;
+		this.serverAddress = serverAddress;
+		this.frameSizeResolver = new FrameSizeResolver();
+		this.fecPolicy = new FecPolicy();
+		this.compressor = new PayloadCompressor();
+		this.metrics = new NetworkMetrics();
+		this.receiver = new DatagramReceiver(transport, metrics);
+		this.sender = new FrameSender(transport, frameSizeResolver, metrics, pacing);
+		this.responseTimeout = responseTimeout;
+		this.receiveBufferTuner = new ReceiveBufferTuner(transport, metrics);
+		this.tcpPools = new ConcurrentHashMap<>();
+		this.tcpFallbackThreshold = NetworkUtils.DEFAULT_TCP_FALLBACK_THRESHOLD;
+		this.tcpFallbackLimit = NetworkUtils.DEFAULT_TCP_FALLBACK_LIMIT;
+		this.window = ReceiveWindow.INITIAL_WINDOW;
+		this.windowExpiresAt = System.nanoTime();
+
+		this.metrics.setKernelDropsGauge(transport::getDroppedDatagrams);
+		this.metrics.setReceiveBufferSizeGauge(receiveBufferTuner::getReceiveBufferSize);
+	}
+
+	/**
+	 * Datagram transport getter
+	 *
+	 * @return datagram transport instance
+	 */
+	public DatagramTransport getTransport()
+	{
+		return transport;
+	}
+
+	/**
+	 * Frame size resolver getter
+	 *
+	 * @return frame size resolver instance
+	 */
+	public FrameSizeResolver getFrameSizeResolver()
+	{
+		return frameSizeResolver;
+	}
+
+	/**
+	 * FEC policy getter
+	 *
+	 * @return FEC policy instance
+	 */
+	public FecPolicy getFecPolicy()
+	{
+		return fecPolicy;
+	}
+
+	/**
+	 * Payload compressor getter
+	 *
+	 * @return payload compressor instance
+	 */
+	public PayloadCompressor getCompressor()
+	{
+		return compressor;
+	}
+
+	/**
+	 * Network metrics getter
+	 *
+	 * @return network metrics instance
+	 */
+	public NetworkMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Receive buffer tuner getter
+	 *
+	 * @return receive buffer tuner instance
+	 */
+	public ReceiveBufferTuner getReceiveBufferTuner()
+	{
+		return receiveBufferTuner;
+	}
+
+	/**
+	 * This method enables or disables requests frames checksum
+	 *
+	 * @param checksum true to protect every request frame with a CRC32C checksum and false otherwise
+	 */
+	public void setChecksum(boolean checksum)
+	{
+		sender.setChecksum(checksum);
+	}
+
+	/**
+	 * This method sets the off-heap arena multi-frame responses are assembled in
+	 *
+	 * @param reassemblyArena reassembly arena or null to assemble responses on heap
+	 */
+	public void setReassemblyArena(ReassemblyArena reassemblyArena)
+	{
+		this.reassemblyArena = reassemblyArena;
+		metrics.setReassemblyArena(reassemblyArena);
+	}
+
+	/**
+	 * This method sets the server TCP port oversized requests are streamed to.
+	 * Oversized responses are fetched over TCP regardless of this setting, if the server redirects to them
+	 *
+	 * @param port server TCP fallback port or 0 to send every request over the transport
+	 */
+	public void setTcpFallbackPort(int port)
+	{
+		if (port < 0 || port > 0xFFFF)
+			throw new IllegalArgumentException("TCP fallback port is out of range: " + port);
+
+		this.tcpFallbackPort = port;
+	}
+
+	/**
+	 * This method sets the size of the smallest encoded request moved onto the TCP fallback connection
+	 *
+	 * @param threshold TCP fallback threshold in bytes
+	 */
+	public void setTcpFallbackThreshold(int threshold)
+	{
+		if (threshold <= 0)
+			throw new IllegalArgumentException("TCP fallback threshold has to be positive");
+
+		this.tcpFallbackThreshold = threshold;
+	}
+
+	/**
+	 * This method sets the size of the largest encoded response accepted from the TCP fallback connection.
+	 * Connections declaring larger messages are closed before the payload is read
+	 *
+	 * @param limit TCP fallback limit in bytes
+	 */
+	public void setTcpFallbackLimit(int limit)
+	{
+		if (limit <= 0 || limit > StreamRecord.MAX_PAYLOAD_SIZE)
+			throw new IllegalArgumentException("TCP fallback limit has to be positive and cannot exceed " + StreamRecord.MAX_PAYLOAD_SIZE + " bytes");
+
+		this.tcpFallbackLimit = limit;
+	}
+
+	/**
+	 * TCP fallback limit getter
+	 *
+	 * @return the size of the largest encoded response accepted from the TCP fallback connection in bytes
+	 */
+	public int getTcpFallbackLimit()
+	{
+		return tcpFallbackLimit;
+	}
+
+	/**
+	 * This method sends the request and waits for its response.
+	 * Requests exceeding the TCP fallback threshold are streamed over a pooled TCP connection if the fallback port is set
+	 *
+	 * @param <T> means the expected type of response
+	 * @param request request to be sent
+	 * @return a response instance
+	 * @throws NetworkException if it failed to send the request to the server,
+	 * if it failed to receive response from the server or mapping failed
+	 * @throws ServerNotAvailableException if no response frame was received within the response timeout
+	 */
+	public <T extends Response> T exchange(Request request) throws NetworkException, ServerNotAvailableException
+	{
+//		Requiring request to be non-null
+		Objects.requireNonNull(request, "Request cannot be null");
+
+//		Readjusting request addresses
+		request.setFrom(localAddress);
+		request.setTo(serverAddress);
+
+//		Requests without time budget are dropped by the server once the client stops waiting for them,
+//		the budget is set on a copy, so the caller's request is not modified
+		Request sentRequest = request.getTimeBudget() == 0 ? request.withTimeBudget(responseTimeout) : request;
+
+//		Response is sent with the same message identifier
+		int messageId = NetworkUtils.nextMessageId();
+		long sendingStart = System.nanoTime();
+
+		MessagePayload requestPayload;
+		try
+		{
+//			Map request instance to bytes array and compress it if required
+			MessageEncodingEvent encodingEvent = new MessageEncodingEvent();
+			encodingEvent.begin();
+
+			byte[] requestBytes = RequestMapper.mapFromInstanceToBytes(sentRequest);
+			requestPayload = compressor.compress(requestBytes);
+
+			encodingEvent.complete(
+					serverAddress,
+					messageId,
+					request.getClass(),
+					requestBytes.length,
+					requestPayload.bytes().length
+			);
+		}
+		catch (MappingException e)
+		{
+			throw new NetworkException("Failed to map request from instance to bytes", e);
+		}
+
+		Response response;
+		int fallbackPort = tcpFallbackPort;
+		if (fallbackPort > 0 && requestPayload.bytes().length > tcpFallbackThreshold)
+		{
+			metrics.messageStreamed();
+			response = streamExchange(fallbackPort, new StreamRecord(StreamRecord.REQUEST, messageId, requestPayload));
+		}
+		else
+		{
+			List<byte[]> frames = sender.encode(requestPayload, messageId, serverAddress, fecPolicy.resolve(request.getClass()));
+			response = waitForResponse(messageId, frames);
+		}
+
+//		Oversized responses are fetched over TCP
+		if (response instanceof StreamRedirectResponse redirect)
+			response = streamExchange(redirect.getPort(), StreamRecord.empty(StreamRecord.FETCH, redirect.getToken()));
+
+//		Coalesced responses are shared by several clients, so the server does not address them
+		if (response.getTo() == null)
+			response.setTo(localAddress);
+
+		metrics.recordLatency(LatencyStage.ROUND_TRIP, request.getClass(), System.nanoTime() - sendingStart);
+		@SuppressWarnings("unchecked")
+		T typedResponse = (T) response;
+		return typedResponse;
+	}
+
+	/**
+	 * This method writes the record into a pooled TCP connection and reads the response from it
+	 *
+	 * @param port server TCP port
+	 * @param record request or fetch record
+	 * @return response instance
+	 * @throws NetworkException if it's failed to exchange the records, to map the response or the fetched response
+	 * was not found
+	 * @throws ServerNotAvailableException if it's failed to connect or no response was received within the response timeout
+	 */
+	private Response streamExchange(int port, StreamRecord record) throws NetworkException, ServerNotAvailableException
+	{
+		TcpConnectionPool pool = tcpPools.computeIfAbsent(
+				port,
+				key -> new TcpConnectionPool(
+						new InetSocketAddress(serverAddress.getAddress(), key),
+						(int) Math.min(responseTimeout, Integer.MAX_VALUE)
+				)
+		);
+
+		StreamRecord answer;
+		try
+		{
+			TcpConnection connection = pool.acquire();
+			try
+			{
+				connection.write(record);
+				answer = connection.read(tcpFallbackLimit);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				connection.close();
+				throw e;
+			}
+
+//			The server keeps the fetched response for a retry until it is acknowledged
+			if (record.type() == StreamRecord.FETCH && answer.type() == StreamRecord.RESPONSE)
+				acknowledgeFetch(connection, record.id());
+
+			if (connection.isOpen())
+				pool.release(connection);
+		}
+		catch (ConnectException | SocketTimeoutException e)
+		{
+			throw new ServerNotAvailableException("Server is not currently available", e);
+		}
+		catch (IOException e)
+		{
+			throw new NetworkException("Failed to exchange messages over the TCP fallback connection", e);
+		}
+
+		if (answer.type() == StreamRecord.MISSING)
+			throw new NetworkException("Failed to fetch the response: it was expired on the server");
+		if (answer.type() != StreamRecord.RESPONSE)
+			throw new NetworkException("Failed to receive response: unexpected stream record type " + answer.type());
+
+		try
+		{
+			return responseFromPayload(ByteBuffer.wrap(answer.payload().bytes()), answer.payload().compressed());
+		}
+		catch (MappingException e)
+		{
+			throw new NetworkException("Failed to receive response: mapping failure detected", e);
+		}
+	}
+
+	/**
+	 * This method acknowledges the fetched response, so the server drops it before it expires.
+	 * The connection failed to carry the acknowledgement is closed: the response is dropped by the server once it expires
+	 *
+	 * @param connection connection the response was fetched over
+	 * @param token token the response was parked with
+	 */
+	private static void acknowledgeFetch(TcpConnection connection, long token)
+	{
+		try
+		{
+			connection.write(StreamRecord.empty(StreamRecord.ACKNOWLEDGEMENT, token));
+		}
+		catch (IOException e)
+		{
+			try
+			{
+				connection.close();
+			}
+			catch (IOException closeException)
+			{
+//				The connection is dropped anyway
+			}
+		}
+	}
+
+	/**
+	 * Method sends the request frames and waits for response.
+	 * Frames are never sent beyond the server receive window: the rest of them is sent as the server acknowledges
+	 * the received ones. If nothing is acknowledged within the stall timeout, a half of the window is sent
+	 * as a probe and the timeout is doubled, so the lost acknowledgements delay the request instead of blocking it.
+	 * The server is considered unavailable once a stall lasts the response timeout
+	 *
+	 * @param <T> response type param
+	 * @param messageId request message identifier, the response is sent with
+	 * @param frames encoded request frames
+	 * @return response instance
+	 * @throws NetworkException if it's failed to send the request or to receive response from the server
+	 * @throws ServerNotAvailableException if no response frame was received within the response timeout
+	 */
+	private <T extends Response> T waitForResponse(int messageId, List<byte[]> frames) throws NetworkException, ServerNotAvailableException
+	{
+		MessageAssembler assembler = null;
+		int sent = 0;
+		int acknowledged = 0;
+
+//		The server returns expired grants to its budget, so they are replaced with the initial window
+		int credit = System.nanoTime() - windowExpiresAt < 0 ? window : ReceiveWindow.INITIAL_WINDOW;
+		long stallTimeout = Math.min(ReceiveWindow.STALL_TIMEOUT, responseTimeout);
+
+		try
+		{
+			while (true)
+			{
+//				Sending the frames the server has credit for
+				if (sent < frames.size())
+				{
+					int limit = Math.min(frames.size(), acknowledged + credit);
+					if (limit > sent)
+					{
+						sendFrames(frames.subList(sent, limit));
+						sent = limit;
+					}
+				}
+
+				boolean stalled = sent < frames.size();
+				SocketAddress addr = receiver.receive(stalled ? stallTimeout : responseTimeout);
+				if (addr == null)
+				{
+					if (!stalled || stallTimeout >= responseTimeout)
+						throw new ServerNotAvailableException("Server is not currently available");
+
+//					Acknowledgements may be lost: probe frames make the server acknowledge again, while a slow server
+//					is not flooded with the whole window and is waited for longer every time
+					acknowledged = Math.min(sent, acknowledged + ReceiveWindow.ackInterval(credit));
+					stallTimeout = Math.min(2 * stallTimeout, responseTimeout);
+					continue;
+				}
+
+				receiveBufferTuner.check();
+
+//				Datagrams of other senders never belong to the response
+				if (!serverAddress.equals(addr))
+					continue;
+
+//				Decoding the frame header only: the payload stays inside the received datagram
+				FrameHeader header;
+				try
+				{
+					header = receiver.header();
+				}
+				catch (CorruptedFrameException e)
+				{
+//					Corrupted frames are dropped like the lost ones
+					metrics.frameCorrupted();
+					continue;
+				}
+				catch (MappingException e)
+				{
+//					Frames of other protocol versions or with illegal fields are dropped as stray ones
+					continue;
+				}
+
+				FrameReceivedEvent.emit(addr, receiver.length(), header);
+
+//				Skipping frames of previous responses
+				if (header.messageId() != messageId) continue;
+
+//				Acknowledgements return the credit of the received frames
+				if (header.ack())
+				{
+					acknowledged = Math.max(acknowledged, Math.min(header.index(), sent));
+					credit = Math.max(1, header.window());
+					grant(credit);
+					stallTimeout = Math.min(ReceiveWindow.STALL_TIMEOUT, responseTimeout);
+					continue;
+				}
+
+//				The first response frame grants the window for the next requests
+				if (header.window() > 0)
+					grant(header.window());
+
+//				Single frame responses are decoded right from the received datagram
+				if (header.singleFrame())
+				{
+					MessageAssembledEvent.emit(addr, header);
+					return responseFromPayload(
+							ByteBuffer.wrap(receiver.bytes(), header.payloadOffset(), header.payloadLength()),
+							header.compressed()
+					);
+				}
+
+				UDPFrame frame = header.toFrame(receiver.bytes());
+				if (assembler == null)
+					assembler = new MessageAssembler(frame, reassemblyArena);
+
+				int skipped = assembler.getSkippedFrameCount();
+				boolean complete = assembler.add(frame);
+				if (assembler.getSkippedFrameCount() != skipped)
+					metrics.framesLost(assembler.getSkippedFrameCount() - skipped);
+
+				if (!complete)
+					continue;
+
+				metrics.framesLost(assembler.getTrailingFrameCount());
+				MessageAssembledEvent.emit(addr, assembler);
+
+				try (AssembledMessage message = assembler.message())
+				{
+					return responseFromPayload(message.getPayload(), message.isCompressed());
+				}
+			}
+		}
+		catch (MappingException e)
+		{
+			throw new NetworkException("Failed to receive response: mapping failure detected", e);
+		}
+		catch (IOException e)
+		{
+			throw new NetworkException("Failed to receive response from server", e);
+		}
+		finally
+		{
+//			Arena slab of the incomplete response is returned on timeout or failure
+			if (assembler != null)
+			{
+				if (!assembler.isComplete())
+					metrics.framesLost(assembler.getTrailingFrameCount());
+
+				assembler.release();
+			}
+		}
+	}
+
+	/**
+	 * This method keeps the window granted by the server for a half of the grant lease
+	 *
+	 * @param window granted window in frames
+	 */
+	private void grant(int window)
+	{
+		this.window = window;
+		this.windowExpiresAt = System.nanoTime() + ReceiveWindow.GRANT_LEASE / 2;
+	}
+
+	/**
+	 * This method sends the request frames to the server
+	 *
+	 * @param frames request frames
+	 * @throws NetworkException if it's failed to send the frames
+	 */
+	private void sendFrames(List<byte[]> frames) throws NetworkException
+	{
+		try
+		{
+			sender.send(frames, serverAddress, false);
+		}
+		catch (IOException e)
+		{
+			throw new NetworkException("Failed to send request to the server", e);
+		}
+	}
+
+	/**
+	 * This method maps the response from its payload decompressing it if required
+	 *
+	 * @param <T> response type param
+	 * @param payload buffer with the response payload between its position and limit
+	 * @param compressed true if the payload is compressed
+	 * @return response instance
+	 * @throws MappingException if mapping or decompression failed
+	 */
+	private <T extends Response> T responseFromPayload(ByteBuffer payload, boolean compressed) throws MappingException
+	{
+		if (compressed)
+			return ResponseMapper.mapFromBytesToInstance(compressor.decompress(payload));
+
+		return ResponseMapper.mapFromBufferToInstance(payload);
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Closes the transport and the pooled TCP connections
+	 *
+	 * @throws IOException if it's failed to close the transport
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			transport.close();
+		}
+		finally
+		{
+			tcpPools.values().forEach(TcpConnectionPool::close);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.enzulode.network.protocol;
+
+import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.mapper.FrameMapper;
+import com.enzulode.network.metrics.NetworkMetrics;
+import com.enzulode.network.model.transport.FrameHeader;
+import com.enzulode.network.transport.DatagramBatch;
+import com.enzulode.network.transport.DatagramBatchIO;
+import com.enzulode.network.transport.DatagramTransport;
+import com.enzulode.network.util.NetworkUtils;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * This class hands received datagrams out one by one, while the transport receives them by batches.
+ * Datagrams of heap batches are decoded in place, datagrams of direct batches are copied into a reused array first
+ *
+ */
+final class DatagramReceiver
+{
+	/**
+	 * Datagram transport instance
+	 *
+	 */
+	private final DatagramTransport transport;
+
+	/**
+	 * Network metrics instance
+	 *
+	 */
+	private final NetworkMetrics metrics;
+
+	/**
+	 * Received datagrams batch
+	 *
+	 */
+	private final DatagramBatch batch;
+
+	/**
+	 * Array the datagrams of direct batches are copied into
+	 *
+	 */
+	private final byte[] incomingBytes;
+
+	/**
+	 * Index of the next received datagram to hand out
+	 *
+	 */
+	private int position;
+
+	/**
+	 * Current datagram bytes array
+	 *
+	 */
+	private byte[] bytes;
+
+	/**
+	 * Current datagram offset inside the bytes array
+	 *
+	 */
+	private int offset;
+
+	/**
+	 * Current datagram length
+	 *
+	 */
+	private int length;
+
+	/**
+	 * Datagram receiver constructor
+	 *
+	 * @param transport datagram transport instance
+	 * @param metrics network metrics instance
+	 */
+	DatagramReceiver(DatagramTransport transport, NetworkMetrics metrics)
+	{
+		this.transport = transport;
+		this.metrics = metrics;
+		this.batch = transport.newBatch(DatagramBatchIO.DEFAULT_BATCH_SIZE);
+		this.incomingBytes = new byte[NetworkUtils.MAX_DATAGRAM_SIZE];
+	}
+
+	/**
+	 * This method takes the next received datagram, waiting for the next batch if the current one is handed out
+	 *
+	 * @param timeout the longest wait in milliseconds or 0 to wait until a datagram is received
+	 * @return datagram sender address or null if the timeout expired
+	 * @throws IOException if it's failed to receive datagrams or the transport was closed
+	 */
+	SocketAddress receive(long timeout) throws IOException
+	{
+		if (position == batch.size())
+		{
+			position = 0;
+			batch.clear();
+			if (transport.receive(batch, timeout) == 0)
+				return null;
+		}
+
+		ByteBuffer datagram = batch.buffer(position);
+		length = datagram.remaining();
+		if (datagram.hasArray())
+		{
+			bytes = datagram.array();
+			offset = datagram.arrayOffset() + datagram.position();
+		}
+		else
+		{
+			datagram.get(datagram.position(), incomingBytes, 0, length);
+			bytes = incomingBytes;
+			offset = 0;
+		}
+
+		metrics.frameReceived(length);
+		return batch.address(position++);
+	}
+
+	/**
+	 * This method decodes the current datagram frame header. The payload stays inside the datagram bytes
+	 *
+	 * @return frame header instance
+	 * @throws MappingException if the frame is corrupted or has an unsupported version
+	 */
+	FrameHeader header() throws MappingException
+	{
+		return FrameMapper.mapHeader(bytes, offset, length);
+	}
+
+	/**
+	 * Current datagram bytes getter
+	 *
+	 * @return array the current datagram and its payload are placed in
+	 */
+	byte[] bytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * Current datagram length getter
+	 *
+	 * @return current datagram length
+	 */
+	int length()
+	{
+		return length;
+	}
+}
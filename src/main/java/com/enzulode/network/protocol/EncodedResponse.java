@@ -0,0 +1,29 @@
+package com.enzulode.network.protocol;
+
+import com.enzulode.network.compression.MessagePayload;
+import com.enzulode.network.model.interconnection.Response;
+
+import java.util.Objects;
+
+/**
+ * This record represents a handled response prepared for framing. Coalesced requests share a single instance,
+ * so the response is mapped and compressed once whatever the amount of clients waiting for it
+ *
+ * @param response handled response
+ * @param payload mapped and compressed response bytes
+ */
+public record EncodedResponse(Response response, MessagePayload payload)
+{
+	/**
+	 * This record represents a handled response prepared for framing
+	 *
+	 * @param response handled response
+	 * @param payload mapped and compressed response bytes
+	 */
+	public EncodedResponse
+	{
+//		Requiring response and its payload to be non-null
+		Objects.requireNonNull(response, "Response cannot be null");
+		Objects.requireNonNull(payload, "Response payload cannot be null");
+	}
+}
@@ -0,0 +1,241 @@
+package com.enzulode.network.protocol;
+
+import com.enzulode.network.compression.MessagePayload;
+import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.fec.FecScheme;
+import com.enzulode.network.jfr.FrameSentEvent;
+import com.enzulode.network.mapper.FrameMapper;
+import com.enzulode.network.metrics.NetworkMetrics;
+import com.enzulode.network.model.transport.UDPFrame;
+import com.enzulode.network.transport.DatagramBatch;
+import com.enzulode.network.transport.DatagramBatchIO;
+import com.enzulode.network.transport.DatagramTransport;
+import com.enzulode.network.util.FrameSizeResolver;
+import com.enzulode.network.util.NetworkUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This class splits message payloads into frames and sends frames through the transport by batches.
+ * Batches are pooled, so several threads send their messages at the same time without allocating batches
+ *
+ */
+public final class FrameSender
+{
+	/**
+	 * Datagram transport instance
+	 *
+	 */
+	private final DatagramTransport transport;
+
+	/**
+	 * Frame size resolver instance
+	 *
+	 */
+	private final FrameSizeResolver frameSizeResolver;
+
+	/**
+	 * Network metrics instance
+	 *
+	 */
+	private final NetworkMetrics metrics;
+
+	/**
+	 * Pause between frames of the same message in milliseconds (0 - frames are sent by batches without pauses)
+	 *
+	 */
+	private final long pacing;
+
+	/**
+	 * Released batches
+	 *
+	 */
+	private final Deque<DatagramBatch> batches;
+
+	/**
+	 * Frame checksum state
+	 *
+	 */
+	private volatile boolean checksum;
+
+	/**
+	 * Frame sender constructor
+	 *
+	 * @param transport datagram transport instance
+	 * @param frameSizeResolver frame size resolver instance
+	 * @param metrics network metrics instance
+	 * @param pacing pause between frames of the same message in milliseconds
+	 */
+	public FrameSender(DatagramTransport transport, FrameSizeResolver frameSizeResolver, NetworkMetrics metrics, long pacing)
+	{
+		Objects.requireNonNull(transport, "Transport instance cannot be null");
+		Objects.requireNonNull(frameSizeResolver, "Frame size resolver instance cannot be null");
+		Objects.requireNonNull(metrics, "Network metrics instance cannot be null");
+
+		if (pacing < 0)
+			throw new IllegalArgumentException("Pacing cannot be negative");
+
+		this.transport = transport;
+		this.frameSizeResolver = frameSizeResolver;
+		this.metrics = metrics;
+		this.pacing = pacing;
+		this.batches = new ArrayDeque<>();
+	}
+
+	/**
+	 * Frame size resolver getter
+	 *
+	 * @return frame size resolver instance
+	 */
+	public FrameSizeResolver getFrameSizeResolver()
+	{
+		return frameSizeResolver;
+	}
+
+	/**
+	 * This method enables or disables frames checksum
+	 *
+	 * @param checksum true to protect every frame with a CRC32C checksum and false otherwise
+	 */
+	public void setChecksum(boolean checksum)
+	{
+		this.checksum = checksum;
+	}
+
+	/**
+	 * This method splits the message payload into encoded frames fitting the destination frame size
+	 *
+	 * @param payload message payload
+	 * @param messageId message identifier
+	 * @param destination message destination
+	 * @param fec FEC scheme of multi-frame messages or null if FEC is disabled
+	 * @return encoded frames
+	 * @throws NetworkException if it's failed to map frames to bytes
+	 */
+	public List<byte[]> encode(MessagePayload payload, int messageId, InetSocketAddress destination, FecScheme fec) throws NetworkException
+	{
+		Objects.requireNonNull(payload, "Message payload cannot be null");
+		Objects.requireNonNull(destination, "Destination address cannot be null");
+
+		int payloadSize = frameSizeResolver.resolvePayloadSize(destination);
+		if (payload.bytes().length > payloadSize)
+		{
+			List<UDPFrame> frames = NetworkUtils.wrapChunksWithUDPFrames(
+					NetworkUtils.splitIntoChunks(payload.bytes(), payloadSize),
+					messageId,
+					fec,
+					payload.compressed()
+			);
+
+			return NetworkUtils.udpFramesToBytes(frames, checksum);
+		}
+
+		try
+		{
+			UDPFrame frame = NetworkUtils.wrapBytesWithUDPFrame(payload.bytes(), messageId, payload.compressed());
+			return List.of(FrameMapper.mapFromInstanceToBytes(frame, checksum));
+		}
+		catch (MappingException e)
+		{
+			throw new NetworkException("Failed to map frame to bytes", e);
+		}
+	}
+
+	/**
+	 * This method sends encoded frames to the destination
+	 *
+	 * @param frames encoded frames
+	 * @param destination frames destination
+	 * @param replayed true if frames are resent from the replay cache
+	 * @throws IOException if it's failed to send a frame
+	 */
+	public void send(List<byte[]> frames, SocketAddress destination, boolean replayed) throws IOException
+	{
+		DatagramBatch batch = acquireBatch();
+		try
+		{
+			for (int i = 0; i < frames.size(); i++)
+			{
+				if (i > 0 && pacing > 0)
+					NetworkUtils.timeout(pacing);
+
+				batch.add(frames.get(i), destination);
+				if (batch.isFull() || i == frames.size() - 1)
+				{
+					transport.send(batch);
+					batch.clear();
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			metrics.sendFailed();
+			throw e;
+		}
+		finally
+		{
+			releaseBatch(batch);
+		}
+
+		for (byte[] frame : frames)
+		{
+			metrics.frameSent(frame.length);
+			FrameSentEvent.emit(destination, frame.length, replayed);
+		}
+	}
+
+	/**
+	 * This method sends the flow control acknowledgement of the message being received
+	 *
+	 * @param messageId identifier of the acknowledged message
+	 * @param received the amount of frames of the message received so far
+	 * @param window receive window in frames advertised to the message sender
+	 * @param destination message sender
+	 * @throws IOException if it's failed to send the acknowledgement
+	 */
+	public void sendAck(int messageId, int received, int window, SocketAddress destination) throws IOException
+	{
+		send(List.of(FrameMapper.mapAckToBytes(messageId, received, window, checksum)), destination, false);
+	}
+
+	/**
+	 * This method takes a released batch or creates a new one.
+	 * Paced frames are sent one by one, so their batches hold a single frame
+	 *
+	 * @return empty batch
+	 */
+	private DatagramBatch acquireBatch()
+	{
+		DatagramBatch batch;
+		synchronized (batches)
+		{
+			batch = batches.poll();
+		}
+
+		if (batch == null)
+			batch = transport.newBatch(pacing > 0 ? 1 : DatagramBatchIO.DEFAULT_BATCH_SIZE);
+
+		batch.clear();
+		return batch;
+	}
+
+	/**
+	 * This method returns the batch to the pool
+	 *
+	 * @param batch batch taken with {@link #acquireBatch()}
+	 */
+	private void releaseBatch(DatagramBatch batch)
+	{
+		synchronized (batches)
+		{
+			batches.push(batch);
+		}
+	}
+}
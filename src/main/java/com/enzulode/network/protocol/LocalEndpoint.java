@@ -0,0 +1,246 @@
+package com.enzulode.network.protocol;
+
+import com.enzulode.network.concurrent.structures.Pair;
+import com.enzulode.network.concurrent.structures.ReceivedRequest;
+import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.handling.RequestHandler;
+import com.enzulode.network.model.interconnection.Request;
+import com.enzulode.network.model.interconnection.Response;
+import com.enzulode.network.util.NetworkUtils;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Named in-process endpoint of a server. Clients of the same JVM hand request instances to the server
+ * request handler through a lock-free queue: requests and responses are never serialized, framed or sent over loopback.
+ * Calls are executed by the calling threads draining the queue, so a call never waits for a thread handoff:
+ * a caller blocks only when the queue is empty and its own call is being executed by another caller.
+ * Requests are still dispatched by {@link ServerProtocol}, so they are answered and measured like the received ones
+ *
+ */
+public final class LocalEndpoint
+{
+	/**
+	 * Bound endpoints by name
+	 *
+	 */
+	private static final Map<String, LocalEndpoint> ENDPOINTS = new ConcurrentHashMap<>();
+
+	/**
+	 * Endpoint name
+	 *
+	 */
+	private final String name;
+
+	/**
+	 * Server protocol instance
+	 *
+	 */
+	private final ServerProtocol protocol;
+
+	/**
+	 * Current request handler supplier
+	 *
+	 */
+	private final Supplier<RequestHandler> handler;
+
+	/**
+	 * Calls waiting to be executed
+	 *
+	 */
+	private final Queue<Call> calls;
+
+	/**
+	 * Local endpoint constructor
+	 *
+	 * @param name endpoint name
+	 * @param protocol server protocol instance
+	 * @param handler current request handler supplier
+	 */
+	private LocalEndpoint(String name, ServerProtocol protocol, Supplier<RequestHandler> handler)
+	{
+		this.name = name;
+		this.protocol = protocol;
+		this.handler = handler;
+		this.calls = new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * This method binds the server to the endpoint name
+	 *
+	 * @param name endpoint name unique within the JVM
+	 * @param protocol server protocol instance
+	 * @param handler current request handler supplier
+	 * @return bound endpoint
+	 * @throws NetworkException if the name is already bound
+	 */
+	public static LocalEndpoint bind(String name, ServerProtocol protocol, Supplier<RequestHandler> handler) throws NetworkException
+	{
+		Objects.requireNonNull(name, "Endpoint name cannot be null");
+		Objects.requireNonNull(protocol, "Server protocol instance cannot be null");
+		Objects.requireNonNull(handler, "Request handler supplier cannot be null");
+
+		LocalEndpoint endpoint = new LocalEndpoint(name, protocol, handler);
+		if (ENDPOINTS.putIfAbsent(name, endpoint) != null)
+			throw new NetworkException("Local endpoint name is already bound: " + name);
+
+		return endpoint;
+	}
+
+	/**
+	 * This method finds the endpoint bound to the name
+	 *
+	 * @param name endpoint name
+	 * @return bound endpoint or null if the name is not bound
+	 */
+	public static LocalEndpoint lookup(String name)
+	{
+		return ENDPOINTS.get(name);
+	}
+
+	/**
+	 * Endpoint name getter
+	 *
+	 * @return endpoint name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Server address getter
+	 *
+	 * @return address of the server bound to the endpoint
+	 */
+	public InetSocketAddress getServerAddress()
+	{
+		return protocol.getServerAddress();
+	}
+
+	/**
+	 * This method handles the request with the server request handler
+	 *
+	 * @param request request instance, it is handed to the handler as is
+	 * @param from client address
+	 * @return response instance returned by the handler
+	 * @throws NetworkException if the server request handler is not set or the handler failed with a checked exception
+	 */
+	public Response call(Request request, InetSocketAddress from) throws NetworkException
+	{
+		Call call = new Call(request, new Pair<>(from, NetworkUtils.nextMessageId()), System.nanoTime());
+		calls.offer(call);
+
+//		Calls of the other clients queued before this one are executed first
+		while (!call.result.isDone())
+		{
+			Call next = calls.poll();
+			if (next == null)
+				break;
+
+			next.execute();
+		}
+
+//		The queue is empty, so the call is either done or being executed by another caller
+		try
+		{
+			return call.result.join();
+		}
+		catch (CompletionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof NetworkException networkException)
+				throw networkException;
+			if (cause instanceof RuntimeException runtimeException)
+				throw runtimeException;
+			if (cause instanceof Error error)
+				throw error;
+
+			throw new NetworkException("Failed to handle the request", cause);
+		}
+	}
+
+	/**
+	 * This method unbinds the endpoint, so new calls do not find it
+	 *
+	 */
+	public void unbind()
+	{
+		ENDPOINTS.remove(name, this);
+	}
+
+	/**
+	 * Special class for the queued calls
+	 *
+	 */
+	private final class Call
+	{
+		/**
+		 * Request instance
+		 *
+		 */
+		private final Request request;
+
+		/**
+		 * Client address and request identifier
+		 *
+		 */
+		private final Pair<SocketAddress, Integer> requestKey;
+
+		/**
+		 * {@link System#nanoTime()} value the call was queued at
+		 *
+		 */
+		private final long queuedAt;
+
+		/**
+		 * Response instance or handling failure
+		 *
+		 */
+		private final CompletableFuture<Response> result;
+
+		/**
+		 * Call constructor
+		 *
+		 * @param request request instance
+		 * @param requestKey client address and request identifier
+		 * @param queuedAt {@link System#nanoTime()} value the call was queued at
+		 */
+		private Call(Request request, Pair<SocketAddress, Integer> requestKey, long queuedAt)
+		{
+			this.request = request;
+			this.requestKey = requestKey;
+			this.queuedAt = queuedAt;
+			this.result = new CompletableFuture<>();
+		}
+
+		/**
+		 * This method handles the request and completes the call. Any failure of the handler is handed to the caller
+		 *
+		 */
+		private void execute()
+		{
+			try
+			{
+				RequestHandler currentHandler = handler.get();
+				if (currentHandler == null)
+					throw new NetworkException("Failed to handle the request: RequestHandler was not set");
+
+				result.complete(protocol.handle(new ReceivedRequest(request, queuedAt), requestKey, currentHandler));
+			}
+			catch (Throwable e)
+			{
+				result.completeExceptionally(e);
+			}
+		}
+	}
+}
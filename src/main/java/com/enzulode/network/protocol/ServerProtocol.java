@@ -0,0 +1,934 @@
+package com.enzulode.network.protocol;
+
+import com.enzulode.network.compression.MessagePayload;
+import com.enzulode.network.compression.PayloadCompressor;
+import com.enzulode.network.concurrent.structures.ConcurrentFrameReceivingMap;
+import com.enzulode.network.concurrent.structures.Pair;
+import com.enzulode.network.concurrent.structures.ReceivedRequest;
+import com.enzulode.network.concurrent.structures.ReplayCache;
+import com.enzulode.network.concurrent.task.ReplayingTask;
+import com.enzulode.network.exception.CorruptedFrameException;
+import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.fec.FecPolicy;
+import com.enzulode.network.handling.RequestHandler;
+import com.enzulode.network.jfr.FrameReceivedEvent;
+import com.enzulode.network.jfr.MessageAssembledEvent;
+import com.enzulode.network.jfr.MessageEncodingEvent;
+import com.enzulode.network.jfr.RequestHandlingEvent;
+import com.enzulode.network.mapper.FrameMapper;
+import com.enzulode.network.mapper.ResponseMapper;
+import com.enzulode.network.metrics.LatencyStage;
+import com.enzulode.network.metrics.NetworkMetrics;
+import com.enzulode.network.model.interconnection.Request;
+import com.enzulode.network.model.interconnection.Response;
+import com.enzulode.network.model.interconnection.impl.PingRequest;
+import com.enzulode.network.model.interconnection.impl.PongResponse;
+import com.enzulode.network.model.interconnection.impl.StreamRedirectResponse;
+import com.enzulode.network.model.interconnection.util.ResponseCode;
+import com.enzulode.network.model.transport.FrameHeader;
+import com.enzulode.network.transport.DatagramTransport;
+import com.enzulode.network.util.AssembledMessage;
+import com.enzulode.network.util.FrameSizeResolver;
+import com.enzulode.network.util.NetworkUtils;
+import com.enzulode.network.util.ReassemblyArena;
+import com.enzulode.network.util.ReceiveBufferTuner;
+import com.enzulode.network.util.ReceiveWindow;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Server side of the protocol: frames decoding, requests reassembly, duplicates suppression, dispatching to the
+ * request handler and responses encoding. Every server is built on this class, so the protocol does not depend
+ * on the datagram transport it runs over.
+ * Requests are received by a single thread, while handling and responding may be performed concurrently
+ *
+ */
+public final class ServerProtocol implements AutoCloseable
+{
+	/**
+	 * Logger instance
+	 *
+	 */
+	private final Logger logger;
+
+	/**
+	 * Datagram transport instance
+	 *
+	 */
+	private final DatagramTransport transport;
+
+	/**
+	 * Server address instance
+	 *
+	 */
+	private final InetSocketAddress serverAddress;
+
+	/**
+	 * Frame size resolver instance
+	 *
+	 */
+	private final FrameSizeResolver frameSizeResolver;
+
+	/**
+	 * FEC policy instance
+	 *
+	 */
+	private final FecPolicy fecPolicy;
+
+	/**
+	 * Payload compressor instance
+	 *
+	 */
+	private final PayloadCompressor compressor;
+
+	/**
+	 * Network metrics instance
+	 *
+	 */
+	private final NetworkMetrics metrics;
+
+	/**
+	 * Replay cache instance
+	 *
+	 */
+	private final ReplayCache replayCache;
+
+	/**
+	 * Receive window instance
+	 *
+	 */
+	private final ReceiveWindow receiveWindow;
+
+	/**
+	 * Receive buffer tuner instance
+	 *
+	 */
+	private final ReceiveBufferTuner receiveBufferTuner;
+
+	/**
+	 * Concurrent frame receiving map instance
+	 *
+	 */
+	private final ConcurrentFrameReceivingMap frameReceivingMap;
+
+	/**
+	 * Completed messages waiting to be decoded
+	 *
+	 */
+	private final Queue<Pair<SocketAddress, AssembledMessage>> completedMessages;
+
+	/**
+	 * Datagram receiver instance
+	 *
+	 */
+	private final DatagramReceiver receiver;
+
+	/**
+	 * Frame sender instance
+	 *
+	 */
+	private final FrameSender sender;
+
+	/**
+	 * Executor cached responses are resent with
+	 *
+	 */
+	private final Executor replayExecutor;
+
+	/**
+	 * TCP fallback server instance or null if the TCP fallback is disabled
+	 *
+	 */
+	private volatile TcpFallbackServer tcpFallback;
+
+	/**
+	 * Size of the smallest encoded response moved onto the TCP fallback connection
+	 *
+	 */
+	private volatile int tcpFallbackThreshold;
+
+	/**
+	 * Size of the largest encoded request accepted from the TCP fallback connection
+	 *
+	 */
+	private volatile int tcpFallbackLimit;
+
+	/**
+	 * In-flight coalesced requests by coalescing key
+	 *
+	 */
+	private final ConcurrentMap<Object, CompletableFuture<EncodedResponse>> inFlightRequests;
+
+	/**
+	 * Requests coalescing state
+	 *
+	 */
+	private volatile boolean coalescing;
+
+	/**
+	 * Server protocol constructor
+	 *
+	 * @param transport bound datagram transport instance
+	 * @param serverAddress server address responses are sent from
+	 * @param pacing pause between response frames in milliseconds
+	 * @param replayExecutor executor cached responses are resent with
+	 */
+	public ServerProtocol(DatagramTransport transport, InetSocketAddress serverAddress, long pacing, Executor replayExecutor)
+	{
+		Objects.requireNonNull(transport, "Transport instance cannot be null");
+		Objects.requireNonNull(serverAddress, "Server address cannot be null");
+		Objects.requireNonNull(replayExecutor, "Replay executor instance cannot be null");
+
+		this.logger = Logger.getLogger(ServerProtocol.class.getName());
+		this.transport = transport;
+		this.serverAddress = serverAddress;
+		this.frameSizeResolver = new FrameSizeResolver();
+		this.fecPolicy = new FecPolicy();
+		this.compressor = new PayloadCompressor();
+		this.metrics = new NetworkMetrics();
+		this.replayCache = new ReplayCache();
+		this.receiveWindow = new ReceiveWindow();
+		this.receiveBufferTuner = new ReceiveBufferTuner(transport, metrics);
+		this.frameReceivingMap = new ConcurrentFrameReceivingMap(metrics);
+		this.completedMessages = new ArrayDeque<>();
+		this.receiver = new DatagramReceiver(transport, metrics);
+		this.sender = new FrameSender(transport, frameSizeResolver, metrics, pacing);
+		this.replayExecutor = replayExecutor;
+		this.tcpFallbackThreshold = NetworkUtils.DEFAULT_TCP_FALLBACK_THRESHOLD;
+		this.tcpFallbackLimit = NetworkUtils.DEFAULT_TCP_FALLBACK_LIMIT;
+		this.inFlightRequests = new ConcurrentHashMap<>();
+
+		this.metrics.setReassemblyBacklogGauge(frameReceivingMap::size);
+		this.metrics.setKernelDropsGauge(transport::getDroppedDatagrams);
+		this.metrics.setReceiveBufferSizeGauge(receiveBufferTuner::getReceiveBufferSize);
+	}
+
+	/**
+	 * Datagram transport getter
+	 *
+	 * @return datagram transport instance
+	 */
+	public DatagramTransport getTransport()
+	{
+		return transport;
+	}
+
+	/**
+	 * Server address getter
+	 *
+	 * @return server address responses are sent from
+	 */
+	public InetSocketAddress getServerAddress()
+	{
+		return serverAddress;
+	}
+
+	/**
+	 * Frame size resolver getter
+	 *
+	 * @return frame size resolver instance
+	 */
+	public FrameSizeResolver getFrameSizeResolver()
+	{
+		return frameSizeResolver;
+	}
+
+	/**
+	 * FEC policy getter
+	 *
+	 * @return FEC policy instance
+	 */
+	public FecPolicy getFecPolicy()
+	{
+		return fecPolicy;
+	}
+
+	/**
+	 * Payload compressor getter
+	 *
+	 * @return payload compressor instance
+	 */
+	public PayloadCompressor getCompressor()
+	{
+		return compressor;
+	}
+
+	/**
+	 * Network metrics getter
+	 *
+	 * @return network metrics instance
+	 */
+	public NetworkMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Replay cache getter
+	 *
+	 * @return replay cache instance
+	 */
+	public ReplayCache getReplayCache()
+	{
+		return replayCache;
+	}
+
+	/**
+	 * Receive window getter
+	 *
+	 * @return receive window instance
+	 */
+	public ReceiveWindow getReceiveWindow()
+	{
+		return receiveWindow;
+	}
+
+	/**
+	 * Receive buffer tuner getter
+	 *
+	 * @return receive buffer tuner instance
+	 */
+	public ReceiveBufferTuner getReceiveBufferTuner()
+	{
+		return receiveBufferTuner;
+	}
+
+	/**
+	 * This method enables or disables responses frames checksum
+	 *
+	 * @param checksum true to protect every response frame with a CRC32C checksum and false otherwise
+	 */
+	public void setChecksum(boolean checksum)
+	{
+		sender.setChecksum(checksum);
+	}
+
+	/**
+	 * This method sets the off-heap arena multi-frame requests are assembled in
+	 *
+	 * @param reassemblyArena reassembly arena or null to assemble requests on heap
+	 */
+	public void setReassemblyArena(ReassemblyArena reassemblyArena)
+	{
+		frameReceivingMap.setArena(reassemblyArena);
+		metrics.setReassemblyArena(reassemblyArena);
+	}
+
+	/**
+	 * This method starts listening on the TCP port of the server host. Requests streamed by clients are handled
+	 * on the connection threads, concurrently with the received ones. Encoded responses exceeding the threshold
+	 * are parked and the clients are redirected to fetch them over TCP
+	 *
+	 * @param port TCP port (0 - any available port)
+	 * @param handler current request handler supplier
+	 * @return the address the TCP fallback listens on
+	 * @throws NetworkException if the TCP fallback is already enabled or it's failed to bind the listening socket
+	 */
+	public synchronized InetSocketAddress enableTcpFallback(int port, Supplier<RequestHandler> handler) throws NetworkException
+	{
+		Objects.requireNonNull(handler, "Request handler supplier cannot be null");
+
+		if (tcpFallback != null)
+			throw new NetworkException("TCP fallback is already enabled on " + tcpFallback.getAddress());
+
+		try
+		{
+			tcpFallback = new TcpFallbackServer(this, handler, new InetSocketAddress(serverAddress.getAddress(), port));
+			return tcpFallback.getAddress();
+		}
+		catch (IOException e)
+		{
+			throw new NetworkException("Failed to bind the TCP fallback socket", e);
+		}
+	}
+
+	/**
+	 * TCP fallback address getter
+	 *
+	 * @return the address the TCP fallback listens on or null if the TCP fallback is disabled
+	 */
+	public InetSocketAddress getTcpFallbackAddress()
+	{
+		TcpFallbackServer fallback = tcpFallback;
+		return fallback != null ? fallback.getAddress() : null;
+	}
+
+	/**
+	 * This method sets the size of the smallest encoded response moved onto the TCP fallback connection
+	 *
+	 * @param threshold TCP fallback threshold in bytes
+	 */
+	public void setTcpFallbackThreshold(int threshold)
+	{
+		if (threshold <= 0)
+			throw new IllegalArgumentException("TCP fallback threshold has to be positive");
+
+		this.tcpFallbackThreshold = threshold;
+	}
+
+	/**
+	 * This method sets the size of the largest encoded request accepted from the TCP fallback connection.
+	 * Connections declaring larger messages are closed before the payload is read
+	 *
+	 * @param limit TCP fallback limit in bytes
+	 */
+	public void setTcpFallbackLimit(int limit)
+	{
+		if (limit <= 0 || limit > StreamRecord.MAX_PAYLOAD_SIZE)
+			throw new IllegalArgumentException("TCP fallback limit has to be positive and cannot exceed " + StreamRecord.MAX_PAYLOAD_SIZE + " bytes");
+
+		this.tcpFallbackLimit = limit;
+	}
+
+	/**
+	 * TCP fallback limit getter
+	 *
+	 * @return the size of the largest encoded request accepted from the TCP fallback connection in bytes
+	 */
+	public int getTcpFallbackLimit()
+	{
+		return tcpFallbackLimit;
+	}
+
+	/**
+	 * This method checks if the transport is open
+	 *
+	 * @return true if the transport was not closed
+	 */
+	public boolean isOpen()
+	{
+		return transport.isOpen();
+	}
+
+	/**
+	 * This method receives frames until the next request is assembled.
+	 * Corrupted frames, frames of unknown versions and undecodable requests are dropped like the lost ones.
+	 * Frames of multi-frame requests are acknowledged with the sender receive window, so senders never overrun
+	 * the socket receive buffer
+	 *
+	 * @param timeout the longest wait for a frame in milliseconds or 0 to wait until a request is received
+	 * @return pair of request key (sender address and message identifier) and received request or null
+	 * if the timeout expired
+	 * @throws IOException if it's failed to receive frames or the transport was closed
+	 */
+	public Pair<Pair<SocketAddress, Integer>, ReceivedRequest> receiveRequest(long timeout) throws IOException
+	{
+		while (true)
+		{
+//			Messages completed along with the previously returned one are decoded first
+			Pair<Pair<SocketAddress, Integer>, ReceivedRequest> completedRequest = pollCompletedRequest();
+			if (completedRequest != null)
+				return completedRequest;
+
+			SocketAddress addr = receiver.receive(timeout);
+			if (addr == null)
+				return null;
+
+			receiveBufferTuner.check();
+
+//			Decoding the frame header only: the payload stays inside the received datagram
+			FrameHeader header;
+			try
+			{
+				header = receiver.header();
+			}
+			catch (CorruptedFrameException e)
+			{
+//				Corrupted frames are dropped like the lost ones
+				metrics.frameCorrupted();
+				continue;
+			}
+			catch (MappingException e)
+			{
+				logger.log(Level.WARNING, "Dropped an undecodable frame", e);
+				continue;
+			}
+
+			FrameReceivedEvent.emit(addr, receiver.length(), header);
+
+//			Clients never grant credit to the server
+			if (header.ack())
+				continue;
+
+//			Duplicates of assembled requests never reach the handler: the cached response is resent once per duplicate
+			Pair<SocketAddress, Integer> frameKey = new Pair<>(addr, header.messageId());
+			if (replayCache.contains(frameKey))
+			{
+				List<byte[]> responseFrames = replayCache.find(frameKey);
+				if (header.index() == 0 && !header.parity())
+				{
+					metrics.duplicateRequest();
+
+					if (responseFrames != null)
+						replayExecutor.execute(new ReplayingTask(sender, responseFrames, addr));
+				}
+
+				continue;
+			}
+
+//			Single frame requests are decoded right from the received datagram and never touch the frames map
+			if (header.singleFrame())
+			{
+				if (!replayCache.reserve(frameKey))
+				{
+					metrics.duplicateRequest();
+					continue;
+				}
+
+				metrics.messageAssembled();
+				MessageAssembledEvent.emit(addr, header);
+
+				Request request = decode(
+						frameKey,
+						ByteBuffer.wrap(receiver.bytes(), header.payloadOffset(), header.payloadLength()),
+						header.compressed()
+				);
+
+				if (request != null)
+					return new Pair<>(frameKey, new ReceivedRequest(request, System.nanoTime()));
+
+				continue;
+			}
+
+//			Adding a frame into the frames map
+			AssembledMessage completedMessage = frameReceivingMap.add(addr, header.toFrame(receiver.bytes()));
+
+//			The frame left the socket receive buffer, so the sender gets its credit back
+			ReceiveWindow.Acknowledgement acknowledgement = receiveWindow.frameArrived(addr, header.messageId());
+			if (acknowledgement != null)
+				acknowledge(header.messageId(), acknowledgement.arrived(), acknowledgement.window(), addr);
+
+			if (completedMessage != null)
+				completedMessages.add(new Pair<>(addr, completedMessage));
+		}
+	}
+
+	/**
+	 * This method drops the request if its client stopped waiting for the response, so the handler capacity
+	 * goes to the requests which can still succeed. The request is not responded and its duplicate is handled again
+	 *
+	 * @param receivedRequest received request
+	 * @param requestKey request sender address and message identifier
+	 * @return true if the request was dropped
+	 */
+	public boolean dropExpired(ReceivedRequest receivedRequest, Pair<SocketAddress, Integer> requestKey)
+	{
+		if (!receivedRequest.isExpired(System.nanoTime()))
+			return false;
+
+		replayCache.release(requestKey);
+		metrics.requestExpired();
+		return true;
+	}
+
+	/**
+	 * This method handles the request with the provided handler. Availability checks of the clients
+	 * are answered by the server itself
+	 *
+	 * @param receivedRequest received request
+	 * @param requestKey request sender address and message identifier
+	 * @param handler request handler instance
+	 * @return response addressed to the request sender
+	 */
+	public Response handle(ReceivedRequest receivedRequest, Pair<SocketAddress, Integer> requestKey, RequestHandler handler)
+	{
+		Response response = handleUnaddressed(receivedRequest, requestKey, handler);
+		response.setTo((InetSocketAddress) requestKey.key());
+		return response;
+	}
+
+	/**
+	 * This method handles the request with the provided handler without addressing the response to the request sender
+	 *
+	 * @param receivedRequest received request
+	 * @param requestKey request sender address and message identifier
+	 * @param handler request handler instance
+	 * @return response sent from the server address
+	 */
+	private Response handleUnaddressed(
+			ReceivedRequest receivedRequest,
+			Pair<SocketAddress, Integer> requestKey,
+			RequestHandler handler
+	)
+	{
+		Request request = receivedRequest.request();
+
+		Response response;
+		long handlingStart = System.nanoTime();
+		metrics.recordLatency(LatencyStage.QUEUE, request.getClass(), handlingStart - receivedRequest.assembledAt());
+
+		RequestHandlingEvent handlingEvent = new RequestHandlingEvent();
+		handlingEvent.begin();
+
+		try
+		{
+			if (request instanceof PingRequest)
+				response = new PongResponse(ResponseCode.SUCCEED);
+			else
+				response = handler.handle(request);
+		}
+		catch (RuntimeException | Error e)
+		{
+//			The request was not responded, so its duplicate is handled again
+			handlingEvent.complete(requestKey.key(), requestKey.value(), request.getClass(), null);
+			metrics.handlerFailed();
+			replayCache.release(requestKey);
+			throw e;
+		}
+
+		handlingEvent.complete(requestKey.key(), requestKey.value(), request.getClass(), response.getClass());
+
+		metrics.requestHandled(request.getClass(), System.nanoTime() - handlingStart);
+
+//		Response is sent to the datagram sender, so it takes the same route as the request (e.g. through a proxy)
+		response.setFrom(serverAddress);
+		return response;
+	}
+
+	/**
+	 * This method enables or disables requests coalescing. Concurrent requests of equal coalescing keys
+	 * are handled once and answered with the same encoded response
+	 *
+	 * @param coalescing requests coalescing state
+	 */
+	public void setCoalescing(boolean coalescing)
+	{
+		this.coalescing = coalescing;
+	}
+
+	/**
+	 * This method checks if the request is coalesced with the equal in-flight ones
+	 *
+	 * @param request received request
+	 * @return true if coalescing is enabled and the request has a coalescing key
+	 */
+	public boolean coalesces(Request request)
+	{
+		return coalescing && request.getCoalescingKey() != null;
+	}
+
+	/**
+	 * This method handles the request once for all the concurrent requests of the same coalescing key.
+	 * The first request runs the handler and encodes the response in the calling thread, the requests arriving
+	 * meanwhile wait for its result without occupying a thread. Requests arriving after the completion
+	 * are handled again, so responses are never served stale. The shared response is not addressed to any of the clients,
+	 * so the address of one client never reaches the others
+	 *
+	 * @param receivedRequest received request
+	 * @param requestKey request sender address and message identifier
+	 * @param handler request handler instance
+	 * @return encoded response future, completed exceptionally if it's failed to handle the request
+	 */
+	public CompletableFuture<EncodedResponse> handleCoalesced(
+			ReceivedRequest receivedRequest,
+			Pair<SocketAddress, Integer> requestKey,
+			RequestHandler handler
+	)
+	{
+		Object coalescingKey = receivedRequest.request().getCoalescingKey();
+		CompletableFuture<EncodedResponse> flight = new CompletableFuture<>();
+		CompletableFuture<EncodedResponse> inFlight = coalescingKey == null
+				? null
+				: inFlightRequests.putIfAbsent(coalescingKey, flight);
+
+		if (inFlight != null)
+		{
+			metrics.requestCoalesced();
+
+//			The request was not responded, so its duplicate is handled again
+			return inFlight.whenComplete((encoded, failure) -> {
+				if (failure != null)
+					replayCache.release(requestKey);
+			});
+		}
+
+		EncodedResponse encoded = null;
+		Throwable failure = null;
+		try
+		{
+			encoded = encode(handleUnaddressed(receivedRequest, requestKey, handler), requestKey);
+		}
+		catch (MappingException e)
+		{
+			replayCache.release(requestKey);
+			failure = new NetworkException("Failed to map response instance to bytes", e);
+		}
+		catch (RuntimeException | Error e)
+		{
+//			Errors complete the flight as well, so the requests joining it do not wait for the response forever
+			failure = e;
+		}
+
+//		The flight is closed before the completion, so no request joins it after the waiters are notified
+		if (coalescingKey != null)
+			inFlightRequests.remove(coalescingKey, flight);
+
+		if (failure == null)
+			flight.complete(encoded);
+		else
+			flight.completeExceptionally(failure);
+
+		return flight;
+	}
+
+	/**
+	 * This method encodes the response, keeps it for the request duplicates and sends it.
+	 * If the TCP fallback is enabled, the oversized response is parked and the client is redirected to fetch it
+	 *
+	 * @param response response returned by {@link #handle(ReceivedRequest, Pair, RequestHandler)}
+	 * @param requestType type of the responded request
+	 * @param requestKey request sender address and message identifier. Response is sent with the same message identifier
+	 * @throws NetworkException if it's failed to map or send the response
+	 */
+	public void respond(
+			Response response,
+			Class<? extends Request> requestType,
+			Pair<SocketAddress, Integer> requestKey
+	) throws NetworkException
+	{
+//		Requiring response instance to be non-null
+		Objects.requireNonNull(response, "Response cannot be null");
+
+		long encodingStart = System.nanoTime();
+
+		EncodedResponse encoded;
+		try
+		{
+			encoded = encode(response, requestKey);
+		}
+		catch (MappingException e)
+		{
+			replayCache.release(requestKey);
+			throw new NetworkException("Failed to map response instance to bytes", e);
+		}
+
+		send(encoded, requestKey);
+
+		metrics.recordLatency(LatencyStage.SEND, requestType, System.nanoTime() - encodingStart);
+	}
+
+	/**
+	 * This method keeps the encoded response for the request duplicates and sends it.
+	 * If the TCP fallback is enabled, the oversized response is parked and the client is redirected to fetch it
+	 *
+	 * @param encoded response returned by {@link #handleCoalesced(ReceivedRequest, Pair, RequestHandler)}
+	 * @param requestType type of the responded request
+	 * @param requestKey request sender address and message identifier. Response is sent with the same message identifier
+	 * @throws NetworkException if it's failed to frame or send the response
+	 */
+	public void respond(
+			EncodedResponse encoded,
+			Class<? extends Request> requestType,
+			Pair<SocketAddress, Integer> requestKey
+	) throws NetworkException
+	{
+//		Requiring encoded response instance to be non-null
+		Objects.requireNonNull(encoded, "Encoded response cannot be null");
+
+		long sendingStart = System.nanoTime();
+
+		send(encoded, requestKey);
+
+		metrics.recordLatency(LatencyStage.SEND, requestType, System.nanoTime() - sendingStart);
+	}
+
+	/**
+	 * This method maps the response to bytes and compresses them if required
+	 *
+	 * @param response handled response
+	 * @param requestKey request sender address and message identifier
+	 * @return encoded response
+	 * @throws MappingException if it's failed to map the response
+	 */
+	private EncodedResponse encode(Response response, Pair<SocketAddress, Integer> requestKey) throws MappingException
+	{
+		MessageEncodingEvent encodingEvent = new MessageEncodingEvent();
+		encodingEvent.begin();
+
+		byte[] responseBytes = ResponseMapper.mapFromInstanceToBytes(response);
+		MessagePayload responsePayload = compressor.compress(responseBytes);
+
+		encodingEvent.complete(
+				requestKey.key(),
+				requestKey.value(),
+				response.getClass(),
+				responseBytes.length,
+				responsePayload.bytes().length
+		);
+
+		return new EncodedResponse(response, responsePayload);
+	}
+
+	/**
+	 * This method frames the encoded response, keeps the frames for the request duplicates and sends them
+	 *
+	 * @param encoded encoded response
+	 * @param requestKey request sender address and message identifier. Response is sent with the same message identifier
+	 * @throws NetworkException if it's failed to frame or send the response
+	 */
+	private void send(EncodedResponse encoded, Pair<SocketAddress, Integer> requestKey) throws NetworkException
+	{
+		InetSocketAddress client = (InetSocketAddress) requestKey.key();
+
+		List<byte[]> frames;
+		try
+		{
+			MessagePayload responsePayload = encoded.payload();
+
+			TcpFallbackServer fallback = tcpFallback;
+			if (fallback != null && responsePayload.bytes().length > tcpFallbackThreshold
+					&& TcpFallbackServer.canPark(responsePayload.bytes().length))
+			{
+				StreamRedirectResponse redirect = new StreamRedirectResponse(
+						fallback.getAddress().getPort(),
+						fallback.park(responsePayload, requestKey.value())
+				);
+				redirect.setFrom(serverAddress);
+				redirect.setTo(client);
+
+				responsePayload = new MessagePayload(ResponseMapper.mapFromInstanceToBytes(redirect), false);
+			}
+
+			frames = sender.encode(
+					responsePayload,
+					requestKey.value(),
+					client,
+					fecPolicy.resolve(encoded.response().getClass())
+			);
+		}
+		catch (MappingException e)
+		{
+			replayCache.release(requestKey);
+			throw new NetworkException("Failed to map response instance to bytes", e);
+		}
+		catch (NetworkException e)
+		{
+			replayCache.release(requestKey);
+			throw e;
+		}
+
+//		The first frame grants the client its receive window for the next requests
+		FrameMapper.writeWindow(frames.get(0), receiveWindow.grant(requestKey.key()));
+
+//		Keep encoded response for the request duplicates
+		replayCache.complete(requestKey, frames);
+
+		try
+		{
+			sender.send(frames, requestKey.key(), false);
+		}
+		catch (IOException e)
+		{
+			throw new NetworkException("Failed to send response to the client", e);
+		}
+	}
+
+	/**
+	 * This method sends the flow control acknowledgement. Lost acknowledgements are covered by the later ones
+	 * and the sender stall timeout, so send failures are only logged
+	 *
+	 * @param messageId identifier of the acknowledged message
+	 * @param arrived the amount of frames of the message arrived so far
+	 * @param window receive window advertised to the sender
+	 * @param sender message sender address
+	 */
+	private void acknowledge(int messageId, int arrived, int window, SocketAddress sender)
+	{
+		try
+		{
+			this.sender.sendAck(messageId, arrived, window, sender);
+		}
+		catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to acknowledge frames", e);
+		}
+	}
+
+	/**
+	 * This method maps the request from the next completed message
+	 *
+	 * @return pair of request key (sender address and message identifier) and received request or null if
+	 * there are no completed messages
+	 */
+	private Pair<Pair<SocketAddress, Integer>, ReceivedRequest> pollCompletedRequest()
+	{
+		Pair<SocketAddress, AssembledMessage> completedMessage;
+		while ((completedMessage = completedMessages.poll()) != null)
+		{
+			try (AssembledMessage message = completedMessage.value())
+			{
+				Pair<SocketAddress, Integer> requestKey = new Pair<>(completedMessage.key(), message.getMessageId());
+				if (!replayCache.reserve(requestKey))
+				{
+					metrics.duplicateRequest();
+					continue;
+				}
+
+				Request request = decode(requestKey, message.getPayload(), message.isCompressed());
+				if (request != null)
+					return new Pair<>(requestKey, new ReceivedRequest(request, System.nanoTime()));
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * This method maps the reserved request from its payload. The reservation is released if the request
+	 * cannot be decoded, so its duplicate is decoded again
+	 *
+	 * @param requestKey request sender address and message identifier
+	 * @param payload buffer with the request payload between its position and limit
+	 * @param compressed true if the payload is compressed
+	 * @return request instance or null if it's failed to map the request
+	 */
+	private Request decode(Pair<SocketAddress, Integer> requestKey, ByteBuffer payload, boolean compressed)
+	{
+		try
+		{
+			return NetworkUtils.requestFromPayload(payload, compressed, compressor);
+		}
+		catch (NetworkException e)
+		{
+			replayCache.release(requestKey);
+			logger.log(Level.SEVERE, "Failed to map the request", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Closes the transport, so the receiving thread is interrupted, and the TCP fallback
+	 *
+	 * @throws IOException if it's failed to close the transport or the TCP fallback
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			transport.close();
+		}
+		finally
+		{
+			TcpFallbackServer fallback = tcpFallback;
+			if (fallback != null)
+				fallback.close();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.enzulode.network.protocol;
+
+import com.enzulode.network.compression.MessagePayload;
+
+import java.util.Objects;
+
+/**
+ * This record represents a message sent over a TCP fallback connection.
+ * Records are written as type, identifier, compression flag, payload length and payload
+ *
+ * @param type record type
+ * @param id message identifier of requests and responses or token of fetches and acknowledgements
+ * @param payload message payload, empty for fetches, acknowledgements and missing responses
+ */
+record StreamRecord(byte type, long id, MessagePayload payload)
+{
+	/**
+	 * Request sent by the client, the response is returned over the same connection
+	 *
+	 */
+	static final byte REQUEST = 1;
+
+	/**
+	 * Fetch of the oversized response the server redirected the client to
+	 *
+	 */
+	static final byte FETCH = 2;
+
+	/**
+	 * Response sent by the server
+	 *
+	 */
+	static final byte RESPONSE = 3;
+
+	/**
+	 * Answer to the fetch of an unknown or expired response
+	 *
+	 */
+	static final byte MISSING = 4;
+
+	/**
+	 * Acknowledgement of the fetched response sent by the client, the server drops the response without an answer
+	 *
+	 */
+	static final byte ACKNOWLEDGEMENT = 5;
+
+	/**
+	 * The largest TCP fallback limit
+	 *
+	 */
+	static final int MAX_PAYLOAD_SIZE = 512 * 1024 * 1024;
+
+	/**
+	 * Empty payload of fetches, acknowledgements and missing responses
+	 *
+	 */
+	private static final MessagePayload EMPTY = new MessagePayload(new byte[0], false);
+
+	/**
+	 * This record represents a message sent over a TCP fallback connection
+	 *
+	 * @param type record type
+	 * @param id message identifier of requests and responses or token of fetches and acknowledgements
+	 * @param payload message payload, empty for fetches, acknowledgements and missing responses
+	 */
+	StreamRecord
+	{
+//		Requiring payload to be non-null
+		Objects.requireNonNull(payload, "Payload cannot be null");
+	}
+
+	/**
+	 * This method creates the record without payload
+	 *
+	 * @param type record type
+	 * @param id token of the fetched or acknowledged response
+	 * @return record without payload
+	 */
+	static StreamRecord empty(byte type, long id)
+	{
+		return new StreamRecord(type, id, EMPTY);
+	}
+}
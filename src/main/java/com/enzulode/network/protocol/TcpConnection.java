@@ -0,0 +1,188 @@
+package com.enzulode.network.protocol;
+
+import com.enzulode.network.compression.MessagePayload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.Arrays;
+
+/**
+ * TCP fallback connection exchanging {@link StreamRecord}s
+ *
+ */
+final class TcpConnection implements AutoCloseable
+{
+	/**
+	 * Period the server keeps an idle or stalled connection open for in milliseconds.
+	 * Pooled connections are dropped after a half of it, so clients never write into a connection the server has closed
+	 *
+	 */
+	static final int IDLE_TIMEOUT = 30_000;
+
+	/**
+	 * Initial payload buffer size in bytes: the buffer grows with the received bytes instead of the declared length
+	 *
+	 */
+	private static final int INITIAL_READ_SIZE = 64 * 1024;
+
+	/**
+	 * Connection socket
+	 *
+	 */
+	private final Socket socket;
+
+	/**
+	 * Buffered socket input
+	 *
+	 */
+	private final DataInputStream input;
+
+	/**
+	 * Buffered socket output
+	 *
+	 */
+	private final DataOutputStream output;
+
+	/**
+	 * TCP connection constructor
+	 *
+	 * @param socket connected socket
+	 * @throws IOException if it's failed to configure the socket
+	 */
+	TcpConnection(Socket socket) throws IOException
+	{
+		this.socket = socket;
+
+		try
+		{
+			this.socket.setTcpNoDelay(true);
+			this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+		catch (IOException e)
+		{
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * This method opens the connection
+	 *
+	 * @param address server TCP address
+	 * @param timeout connect and read timeout in milliseconds
+	 * @return opened connection
+	 * @throws IOException if it's failed to connect
+	 */
+	static TcpConnection connect(InetSocketAddress address, int timeout) throws IOException
+	{
+		Socket socket = new Socket();
+		try
+		{
+			socket.connect(address, timeout);
+			socket.setSoTimeout(timeout);
+		}
+		catch (IOException e)
+		{
+			socket.close();
+			throw e;
+		}
+
+		return new TcpConnection(socket);
+	}
+
+	/**
+	 * Remote address getter
+	 *
+	 * @return the address of the other side
+	 */
+	SocketAddress getRemoteAddress()
+	{
+		return socket.getRemoteSocketAddress();
+	}
+
+	/**
+	 * This method writes and flushes the record
+	 *
+	 * @param record record to write
+	 * @throws IOException if it's failed to write the record
+	 */
+	void write(StreamRecord record) throws IOException
+	{
+		byte[] payload = record.payload().bytes();
+
+		output.writeByte(record.type());
+		output.writeLong(record.id());
+		output.writeBoolean(record.payload().compressed());
+		output.writeInt(payload.length);
+		output.write(payload);
+		output.flush();
+	}
+
+	/**
+	 * This method reads the next record
+	 *
+	 * @param limit the largest payload accepted in bytes
+	 * @return read record
+	 * @throws IOException if it's failed to read the record, the record is malformed, exceeds the limit
+	 * or the connection was closed
+	 */
+	StreamRecord read(int limit) throws IOException
+	{
+		byte type = input.readByte();
+		long id = input.readLong();
+		boolean compressed = input.readBoolean();
+		int length = input.readInt();
+
+		if (length < 0)
+			throw new IOException("Malformed stream record: payload length " + length);
+		if (length > limit)
+			throw new IOException("Stream record payload of " + length + " bytes exceeds the limit of " + limit + " bytes");
+
+//		The declared length is not trusted: the buffer is doubled only when the received bytes fill it
+		byte[] payload = new byte[Math.min(length, INITIAL_READ_SIZE)];
+		int received = 0;
+		while (received < length)
+		{
+			if (received == payload.length)
+				payload = Arrays.copyOf(payload, (int) Math.min(length, 2L * payload.length));
+
+			int read = input.read(payload, received, payload.length - received);
+			if (read < 0)
+				throw new EOFException("Connection was closed in the middle of the stream record");
+
+			received += read;
+		}
+
+		return new StreamRecord(type, id, new MessagePayload(payload, compressed));
+	}
+
+	/**
+	 * This method checks if the connection is open
+	 *
+	 * @return true if the socket was not closed
+	 */
+	boolean isOpen()
+	{
+		return !socket.isClosed();
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Closes the socket
+	 *
+	 * @throws IOException if it's failed to close the socket
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		socket.close();
+	}
+}
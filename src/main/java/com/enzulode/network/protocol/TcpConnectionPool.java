@@ -0,0 +1,159 @@
+package com.enzulode.network.protocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of the TCP fallback connections to a single server.
+ * A connection serves one exchange at a time and is returned to the pool after it.
+ * Connections idle for a half of {@link TcpConnection#IDLE_TIMEOUT} are closed instead of being reused
+ *
+ */
+final class TcpConnectionPool implements AutoCloseable
+{
+	/**
+	 * Period a connection is reused for since it was released in nanoseconds
+	 *
+	 */
+	private static final long MAX_IDLE = TimeUnit.MILLISECONDS.toNanos(TcpConnection.IDLE_TIMEOUT / 2);
+
+	/**
+	 * Server TCP address
+	 *
+	 */
+	private final InetSocketAddress address;
+
+	/**
+	 * Connect and read timeout in milliseconds
+	 *
+	 */
+	private final int timeout;
+
+	/**
+	 * Idle connections, the most recently released first
+	 *
+	 */
+	private final Deque<IdleConnection> idle;
+
+	/**
+	 * Pool state
+	 *
+	 */
+	private boolean closed;
+
+	/**
+	 * TCP connection pool constructor
+	 *
+	 * @param address server TCP address
+	 * @param timeout connect and read timeout in milliseconds
+	 */
+	TcpConnectionPool(InetSocketAddress address, int timeout)
+	{
+		this.address = address;
+		this.timeout = timeout;
+		this.idle = new ArrayDeque<>();
+	}
+
+	/**
+	 * This method takes an idle connection or opens a new one
+	 *
+	 * @return connection owned by the caller until it is released or closed
+	 * @throws IOException if the pool was closed or it's failed to connect
+	 */
+	TcpConnection acquire() throws IOException
+	{
+		long now = System.nanoTime();
+		synchronized (idle)
+		{
+			if (closed)
+				throw new IOException("TCP connection pool was closed");
+
+			IdleConnection entry;
+			while ((entry = idle.poll()) != null)
+			{
+				if (now - entry.releasedAt() >= MAX_IDLE)
+				{
+//					The rest of the connections were released even earlier
+					closeQuietly(entry.connection());
+					idle.forEach(older -> closeQuietly(older.connection()));
+					idle.clear();
+					break;
+				}
+
+				if (entry.connection().isOpen())
+					return entry.connection();
+			}
+		}
+
+		return TcpConnection.connect(address, timeout);
+	}
+
+	/**
+	 * This method returns the connection to the pool after a completed exchange.
+	 * Connections failed during the exchange have to be closed instead
+	 *
+	 * @param connection connection taken with {@link #acquire()}
+	 * @throws IOException if the pool was closed and it's failed to close the connection
+	 */
+	void release(TcpConnection connection) throws IOException
+	{
+		synchronized (idle)
+		{
+			if (!closed)
+			{
+				idle.push(new IdleConnection(connection, System.nanoTime()));
+				return;
+			}
+		}
+
+		connection.close();
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Closes the idle connections, the acquired ones are closed once they are released
+	 *
+	 */
+	@Override
+	public void close()
+	{
+		synchronized (idle)
+		{
+			closed = true;
+
+			IdleConnection entry;
+			while ((entry = idle.poll()) != null)
+				closeQuietly(entry.connection());
+		}
+	}
+
+	/**
+	 * This method closes the connection dropped by the pool
+	 *
+	 * @param connection connection to close
+	 */
+	private static void closeQuietly(TcpConnection connection)
+	{
+		try
+		{
+			connection.close();
+		}
+		catch (IOException e)
+		{
+//			The connection is dropped anyway
+		}
+	}
+
+	/**
+	 * This record represents a connection waiting in the pool
+	 *
+	 * @param connection idle connection
+	 * @param releasedAt {@link System#nanoTime()} value the connection was released at
+	 */
+	private record IdleConnection(TcpConnection connection, long releasedAt)
+	{
+	}
+}
@@ -0,0 +1,428 @@
+package com.enzulode.network.protocol;
+
+import com.enzulode.network.compression.MessagePayload;
+import com.enzulode.network.concurrent.factories.ThreadNamingFactory;
+import com.enzulode.network.concurrent.structures.Pair;
+import com.enzulode.network.concurrent.structures.ReceivedRequest;
+import com.enzulode.network.exception.MappingException;
+import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.handling.RequestHandler;
+import com.enzulode.network.mapper.ResponseMapper;
+import com.enzulode.network.metrics.LatencyStage;
+import com.enzulode.network.model.interconnection.Request;
+import com.enzulode.network.model.interconnection.Response;
+import com.enzulode.network.util.NetworkUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TCP listener of the server carrying oversized messages. Every connection is served by its own thread:
+ * requests are handled and answered over the same connection, fetches are answered with the oversized responses
+ * parked by {@link ServerProtocol}. A parked response is kept until the client acknowledges it or it expires, so a client
+ * retrying the fetch gets it again; the oldest responses are dropped first once {@link #PARKING_CAPACITY} is reached. Connections beyond {@link #MAX_CONNECTIONS}
+ * are closed right after they are accepted, connections idle or stalled for {@link TcpConnection#IDLE_TIMEOUT} are closed
+ *
+ */
+final class TcpFallbackServer implements AutoCloseable
+{
+	/**
+	 * The largest amount of connections served at once
+	 *
+	 */
+	private static final int MAX_CONNECTIONS = 64;
+
+	/**
+	 * Period parked responses are kept for in nanoseconds
+	 *
+	 */
+	private static final long PARKING_WINDOW = TimeUnit.SECONDS.toNanos(30);
+
+	/**
+	 * The largest amount of parked response bytes
+	 *
+	 */
+	private static final long PARKING_CAPACITY = 64L * 1024 * 1024;
+
+	/**
+	 * Logger instance
+	 *
+	 */
+	private final Logger logger;
+
+	/**
+	 * Server protocol instance
+	 *
+	 */
+	private final ServerProtocol protocol;
+
+	/**
+	 * Current request handler supplier
+	 *
+	 */
+	private final Supplier<RequestHandler> handler;
+
+	/**
+	 * Listening socket
+	 *
+	 */
+	private final ServerSocket serverSocket;
+
+	/**
+	 * Accepting thread and connection serving threads
+	 *
+	 */
+	private final ExecutorService connectionExecutor;
+
+	/**
+	 * Open connections
+	 *
+	 */
+	private final Set<TcpConnection> connections;
+
+	/**
+	 * Parked responses by token in the parking order, which is the expiration order as well
+	 *
+	 */
+	private final Map<Long, ParkedResponse> parkedResponses;
+
+	/**
+	 * The amount of parked response bytes
+	 *
+	 */
+	private long parkedBytes;
+
+	/**
+	 * Token generator
+	 *
+	 */
+	private final Random tokens;
+
+	/**
+	 * TCP fallback server constructor. Connections are accepted right away
+	 *
+	 * @param protocol server protocol instance
+	 * @param handler current request handler supplier
+	 * @param address address to listen on (port 0 - any available port)
+	 * @throws IOException if it's failed to bind the listening socket
+	 */
+	TcpFallbackServer(ServerProtocol protocol, Supplier<RequestHandler> handler, InetSocketAddress address) throws IOException
+	{
+		this.logger = Logger.getLogger(TcpFallbackServer.class.getName());
+		this.protocol = protocol;
+		this.handler = handler;
+		this.serverSocket = new ServerSocket();
+		this.serverSocket.setReuseAddress(true);
+		this.serverSocket.bind(address);
+		this.connectionExecutor = new ThreadPoolExecutor(
+				0,
+				MAX_CONNECTIONS + 1,
+				60,
+				TimeUnit.SECONDS,
+				new SynchronousQueue<>(),
+				new ThreadNamingFactory("tcp-fallback", "connection")
+		);
+		this.connections = ConcurrentHashMap.newKeySet();
+		this.parkedResponses = new LinkedHashMap<>();
+		this.tokens = new SecureRandom();
+
+		this.connectionExecutor.execute(this::acceptConnections);
+	}
+
+	/**
+	 * Listening address getter
+	 *
+	 * @return the address the listening socket is bound to
+	 */
+	InetSocketAddress getAddress()
+	{
+		return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+	}
+
+	/**
+	 * This method checks if the response fits into the parking at all
+	 *
+	 * @param size encoded response size in bytes
+	 * @return true if the response may be parked
+	 */
+	static boolean canPark(int size)
+	{
+		return size <= PARKING_CAPACITY;
+	}
+
+	/**
+	 * This method keeps the oversized response until the client acknowledges it or the parking window expires.
+	 * Expired responses are dropped first, then the oldest ones until the response fits into the parking capacity
+	 *
+	 * @param payload encoded response payload, it has to fit into the parking capacity
+	 * @param messageId identifier of the responded request
+	 * @return token the response is fetched by
+	 */
+	synchronized long park(MessagePayload payload, int messageId)
+	{
+		long now = System.nanoTime();
+		int size = payload.bytes().length;
+
+		Iterator<ParkedResponse> iterator = parkedResponses.values().iterator();
+		while (iterator.hasNext())
+		{
+			ParkedResponse parked = iterator.next();
+			if (now - parked.expiresAt() < 0 && parkedBytes + size <= PARKING_CAPACITY)
+				break;
+
+			parkedBytes -= parked.payload().bytes().length;
+			iterator.remove();
+		}
+
+		long token;
+		do
+		{
+			token = tokens.nextLong();
+		}
+		while (parkedResponses.containsKey(token));
+
+		parkedResponses.put(token, new ParkedResponse(payload, messageId, now + PARKING_WINDOW));
+		parkedBytes += size;
+		return token;
+	}
+
+	/**
+	 * This method accepts connections until the listening socket is closed
+	 *
+	 */
+	private void acceptConnections()
+	{
+		while (!serverSocket.isClosed())
+		{
+			try
+			{
+				Socket socket = serverSocket.accept();
+				try
+				{
+					socket.setSoTimeout(TcpConnection.IDLE_TIMEOUT);
+				}
+				catch (IOException e)
+				{
+					socket.close();
+					throw e;
+				}
+
+				TcpConnection connection = new TcpConnection(socket);
+				connections.add(connection);
+
+//				Connections accepted while closing are not reached by close
+				if (serverSocket.isClosed())
+				{
+					connections.remove(connection);
+					connection.close();
+					continue;
+				}
+
+				try
+				{
+					connectionExecutor.execute(() -> serve(connection));
+				}
+				catch (RejectedExecutionException e)
+				{
+					connections.remove(connection);
+					connection.close();
+					logger.log(Level.WARNING, "TCP fallback connection was rejected: {0} connections are served already", MAX_CONNECTIONS);
+				}
+			}
+			catch (IOException e)
+			{
+				if (!serverSocket.isClosed())
+					logger.log(Level.WARNING, "Failed to accept a TCP fallback connection", e);
+			}
+		}
+	}
+
+	/**
+	 * This method answers the records of the connection until it is closed
+	 *
+	 * @param connection accepted connection
+	 */
+	private void serve(TcpConnection connection)
+	{
+		try (connection)
+		{
+			while (true)
+			{
+				StreamRecord record;
+				try
+				{
+					record = connection.read(protocol.getTcpFallbackLimit());
+				}
+				catch (EOFException e)
+				{
+//					The client closed the connection
+					return;
+				}
+				catch (SocketTimeoutException e)
+				{
+//					The connection was idle or stalled for the idle timeout
+					return;
+				}
+
+				if (record.type() == StreamRecord.REQUEST)
+					connection.write(handleRequest(record, connection.getRemoteAddress()));
+				else if (record.type() == StreamRecord.FETCH)
+					connection.write(fetch(record.id()));
+				else if (record.type() == StreamRecord.ACKNOWLEDGEMENT)
+					release(record.id());
+				else
+					throw new IOException("Unexpected stream record type " + record.type());
+			}
+		}
+		catch (IOException | NetworkException | RuntimeException e)
+		{
+			if (!serverSocket.isClosed())
+				logger.log(Level.WARNING, "TCP fallback connection was closed", e);
+		}
+		finally
+		{
+			connections.remove(connection);
+		}
+	}
+
+	/**
+	 * This method handles the streamed request and encodes its response
+	 *
+	 * @param record request record
+	 * @param client client TCP address
+	 * @return response record
+	 * @throws NetworkException if the request handler is not set or it's failed to map the request or the response
+	 */
+	private StreamRecord handleRequest(StreamRecord record, SocketAddress client) throws NetworkException
+	{
+		RequestHandler currentHandler = handler.get();
+		if (currentHandler == null)
+			throw new NetworkException("Failed to handle the request: RequestHandler was not set");
+
+		MessagePayload requestPayload = record.payload();
+		Request request = NetworkUtils.requestFromPayload(
+				ByteBuffer.wrap(requestPayload.bytes()),
+				requestPayload.compressed(),
+				protocol.getCompressor()
+		);
+
+		Pair<SocketAddress, Integer> requestKey = new Pair<>(client, (int) record.id());
+		Response response = protocol.handle(new ReceivedRequest(request, System.nanoTime()), requestKey, currentHandler);
+
+		long encodingStart = System.nanoTime();
+		try
+		{
+			MessagePayload responsePayload = protocol.getCompressor().compress(ResponseMapper.mapFromInstanceToBytes(response));
+			protocol.getMetrics().messageStreamed();
+			protocol.getMetrics().recordLatency(LatencyStage.SEND, request.getClass(), System.nanoTime() - encodingStart);
+			return new StreamRecord(StreamRecord.RESPONSE, record.id(), responsePayload);
+		}
+		catch (MappingException e)
+		{
+			throw new NetworkException("Failed to map response instance to bytes", e);
+		}
+	}
+
+	/**
+	 * This method finds the parked response. The response is kept until it is acknowledged,
+	 * so the fetch may be retried
+	 *
+	 * @param token token the response was parked with
+	 * @return response record or missing record if the response is unknown or expired
+	 */
+	private StreamRecord fetch(long token)
+	{
+		ParkedResponse parked;
+		synchronized (this)
+		{
+			parked = parkedResponses.get(token);
+		}
+
+		if (parked == null || System.nanoTime() - parked.expiresAt() >= 0)
+			return StreamRecord.empty(StreamRecord.MISSING, token);
+
+		protocol.getMetrics().messageStreamed();
+		return new StreamRecord(StreamRecord.RESPONSE, parked.messageId(), parked.payload());
+	}
+
+	/**
+	 * This method drops the parked response acknowledged by the client
+	 *
+	 * @param token token the response was parked with
+	 */
+	private synchronized void release(long token)
+	{
+		ParkedResponse parked = parkedResponses.remove(token);
+		if (parked != null)
+			parkedBytes -= parked.payload().bytes().length;
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Closes the listening socket and every open connection
+	 *
+	 * @throws IOException if it's failed to close the listening socket
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			serverSocket.close();
+		}
+		finally
+		{
+			for (TcpConnection connection : connections)
+			{
+				try
+				{
+					connection.close();
+				}
+				catch (IOException e)
+				{
+//					The connection is dropped anyway
+				}
+			}
+
+			connectionExecutor.shutdown();
+
+			synchronized (this)
+			{
+				parkedResponses.clear();
+				parkedBytes = 0;
+			}
+		}
+	}
+
+	/**
+	 * This record represents an oversized response waiting to be fetched
+	 *
+	 * @param payload encoded response payload
+	 * @param messageId identifier of the responded request
+	 * @param expiresAt {@link System#nanoTime()} value the response is dropped at
+	 */
+	private record ParkedResponse(MessagePayload payload, int messageId, long expiresAt)
+	{
+	}
+}
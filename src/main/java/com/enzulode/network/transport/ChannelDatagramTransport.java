@@ -0,0 +1,291 @@
+package com.enzulode.network.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link DatagramChannel} based transport. The channel is non-blocking: the receiving thread waits on a selector
+ * and then receives every queued datagram with {@link DatagramBatchIO}, so batches are received and sent
+ * with a single syscall if the native batched I/O is available
+ *
+ */
+public final class ChannelDatagramTransport implements DatagramTransport
+{
+	/**
+	 * Datagram channel instance
+	 *
+	 */
+	private final DatagramChannel channel;
+
+	/**
+	 * Selector the receiving thread waits on
+	 *
+	 */
+	private final Selector selector;
+
+	/**
+	 * Batched datagram I/O instance
+	 *
+	 */
+	private final DatagramBatchIO batchIO;
+
+	/**
+	 * Sending lock: batched I/O sends a single batch at a time
+	 *
+	 */
+	private final Lock sendLock;
+
+	/**
+	 * Channel transport constructor
+	 *
+	 * @throws IOException if it's failed to open the channel or the selector
+	 */
+	public ChannelDatagramTransport() throws IOException
+	{
+		this.channel = DatagramChannel.open();
+
+		try
+		{
+			this.channel.configureBlocking(false);
+			this.channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			this.channel.setOption(StandardSocketOptions.SO_RCVBUF, DEFAULT_RECEIVE_BUFFER_SIZE);
+			if (channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT))
+				this.channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+
+			this.selector = Selector.open();
+			this.channel.register(selector, SelectionKey.OP_READ);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+
+		this.batchIO = DatagramBatchIO.open(channel);
+		this.sendLock = new ReentrantLock();
+	}
+
+	/**
+	 * Datagram channel getter
+	 *
+	 * @return datagram channel instance
+	 */
+	public DatagramChannel getChannel()
+	{
+		return channel;
+	}
+
+	/**
+	 * This method binds the transport to the local address
+	 *
+	 * @param address local address (port 0 - any available port)
+	 * @return the address the transport was bound to
+	 * @throws IOException if it's failed to bind the channel
+	 */
+	@Override
+	public InetSocketAddress bind(InetSocketAddress address) throws IOException
+	{
+		channel.bind(address);
+		return getLocalAddress();
+	}
+
+	/**
+	 * This method creates the batch laid out for this transport
+	 *
+	 * @param capacity the largest amount of datagrams in the batch
+	 * @return direct datagram batch
+	 */
+	@Override
+	public DatagramBatch newBatch(int capacity)
+	{
+		return new DatagramBatch(capacity);
+	}
+
+	/**
+	 * This method waits for datagrams and receives the ones already queued into the batch
+	 *
+	 * @param batch batch created by {@link #newBatch(int)} to fill from the first slot
+	 * @param timeout the longest wait in milliseconds or 0 to wait until a datagram is received
+	 * @return the amount of received datagrams, 0 if the timeout expired
+	 * @throws IOException if it's failed to receive datagrams or the channel was closed
+	 */
+	@Override
+	public int receive(DatagramBatch batch, long timeout) throws IOException
+	{
+		int received = batchIO.receive(batch);
+		if (received > 0)
+			return received;
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		try
+		{
+			while (true)
+			{
+				long wait = 0;
+				if (timeout > 0)
+				{
+					wait = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					if (wait <= 0)
+						return 0;
+				}
+
+				selector.select(wait);
+				selector.selectedKeys().clear();
+
+				if (!channel.isOpen())
+					throw new ClosedChannelException();
+
+				received = batchIO.receive(batch);
+				if (received > 0)
+					return received;
+			}
+		}
+		catch (ClosedSelectorException e)
+		{
+			throw new ClosedChannelException();
+		}
+	}
+
+	/**
+	 * This method sends all datagrams of the batch
+	 *
+	 * @param batch batch created by {@link #newBatch(int)}
+	 * @throws IOException if it's failed to send datagrams
+	 */
+	@Override
+	public void send(DatagramBatch batch) throws IOException
+	{
+		sendLock.lock();
+		try
+		{
+			batchIO.send(batch);
+		}
+		finally
+		{
+			sendLock.unlock();
+		}
+	}
+
+	/**
+	 * This method requests the channel receive buffer size
+	 *
+	 * @param size receive buffer size in bytes
+	 * @throws IOException if it's failed to set the buffer size
+	 */
+	@Override
+	public void setReceiveBufferSize(int size) throws IOException
+	{
+		channel.setOption(StandardSocketOptions.SO_RCVBUF, size);
+	}
+
+	/**
+	 * Receive buffer size getter
+	 *
+	 * @return receive buffer size in bytes granted by the kernel
+	 * @throws IOException if it's failed to get the buffer size
+	 */
+	@Override
+	public int getReceiveBufferSize() throws IOException
+	{
+		return channel.getOption(StandardSocketOptions.SO_RCVBUF);
+	}
+
+	/**
+	 * This method requests the channel send buffer size
+	 *
+	 * @param size send buffer size in bytes
+	 * @throws IOException if it's failed to set the buffer size
+	 */
+	@Override
+	public void setSendBufferSize(int size) throws IOException
+	{
+		channel.setOption(StandardSocketOptions.SO_SNDBUF, size);
+	}
+
+	/**
+	 * Send buffer size getter
+	 *
+	 * @return send buffer size in bytes granted by the kernel
+	 * @throws IOException if it's failed to get the buffer size
+	 */
+	@Override
+	public int getSendBufferSize() throws IOException
+	{
+		return channel.getOption(StandardSocketOptions.SO_SNDBUF);
+	}
+
+	/**
+	 * This method returns the amount of datagrams the kernel dropped for the bound port.
+	 * Channels sharing the port with {@code SO_REUSEPORT} report their drops together
+	 *
+	 * @return the amount of dropped datagrams or -1 if the channel is not bound or the host is not Linux
+	 */
+	@Override
+	public long getDroppedDatagrams()
+	{
+		InetSocketAddress address = getLocalAddress();
+		return address != null ? UdpDropCounter.read(address.getPort()) : -1;
+	}
+
+	/**
+	 * Local address getter
+	 *
+	 * @return the address the channel is bound to or null if it is not bound
+	 */
+	@Override
+	public InetSocketAddress getLocalAddress()
+	{
+		return (InetSocketAddress) channel.socket().getLocalSocketAddress();
+	}
+
+	/**
+	 * This method checks if the transport is open
+	 *
+	 * @return true if the channel was not closed
+	 */
+	@Override
+	public boolean isOpen()
+	{
+		return channel.isOpen();
+	}
+
+	/**
+	 * Transport name getter
+	 *
+	 * @return transport name with the batched I/O backend name
+	 */
+	@Override
+	public String getName()
+	{
+		return "channel/" + batchIO.getName();
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Closes the channel and wakes the receiving thread up
+	 *
+	 * @throws IOException if it's failed to close the channel
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			channel.close();
+		}
+		finally
+		{
+			selector.close();
+			batchIO.close();
+		}
+	}
+}
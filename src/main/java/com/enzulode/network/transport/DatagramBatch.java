@@ -0,0 +1,182 @@
+package com.enzulode.network.transport;
+
+import com.enzulode.network.util.NetworkUtils;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * A batch of datagrams received or sent with a single {@link DatagramTransport} or {@link DatagramBatchIO} call.
+ * Every datagram slot is a slice of one buffer allocated once, so batches are reused without allocations.
+ * Slots of direct batches are passed to the kernel by native backends as they are, slots of heap batches
+ * are backed by arrays for the {@link java.net.DatagramSocket} based transport
+ *
+ */
+public final class DatagramBatch
+{
+	/**
+	 * Datagram slot buffers
+	 *
+	 */
+	private final ByteBuffer[] buffers;
+
+	/**
+	 * Datagram peer addresses: senders of the received datagrams or destinations of the datagrams to send
+	 *
+	 */
+	private final SocketAddress[] addresses;
+
+	/**
+	 * The amount of datagrams in the batch
+	 *
+	 */
+	private int size;
+
+	/**
+	 * Direct datagram batch constructor
+	 *
+	 * @param capacity the largest amount of datagrams in the batch
+	 */
+	public DatagramBatch(int capacity)
+	{
+		this(capacity, true);
+	}
+
+	/**
+	 * Datagram batch constructor
+	 *
+	 * @param capacity the largest amount of datagrams in the batch
+	 * @param direct true to keep datagrams in direct memory and false to keep them on heap
+	 */
+	public DatagramBatch(int capacity, boolean direct)
+	{
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Batch capacity has to be positive");
+
+		ByteBuffer memory = direct
+				? ByteBuffer.allocateDirect(capacity * NetworkUtils.MAX_DATAGRAM_SIZE)
+				: ByteBuffer.allocate(capacity * NetworkUtils.MAX_DATAGRAM_SIZE);
+
+		this.buffers = new ByteBuffer[capacity];
+		for (int i = 0; i < capacity; i++)
+			buffers[i] = memory.slice(i * NetworkUtils.MAX_DATAGRAM_SIZE, NetworkUtils.MAX_DATAGRAM_SIZE);
+
+		this.addresses = new SocketAddress[capacity];
+	}
+
+	/**
+	 * Batch capacity getter
+	 *
+	 * @return the largest amount of datagrams in the batch
+	 */
+	public int capacity()
+	{
+		return buffers.length;
+	}
+
+	/**
+	 * Batch size getter
+	 *
+	 * @return the amount of datagrams in the batch
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * This method checks if the batch is full
+	 *
+	 * @return true if no more datagrams may be added
+	 */
+	public boolean isFull()
+	{
+		return size == buffers.length;
+	}
+
+	/**
+	 * Datagram buffer getter.
+	 * The datagram bytes are placed between the buffer position and limit
+	 *
+	 * @param index datagram index
+	 * @return datagram buffer
+	 */
+	public ByteBuffer buffer(int index)
+	{
+		Objects.checkIndex(index, size);
+		return buffers[index];
+	}
+
+	/**
+	 * Datagram peer address getter
+	 *
+	 * @param index datagram index
+	 * @return sender address of the received datagram or destination address of the datagram to send
+	 */
+	public SocketAddress address(int index)
+	{
+		Objects.checkIndex(index, size);
+		return addresses[index];
+	}
+
+	/**
+	 * This method copies the datagram into the next batch slot
+	 *
+	 * @param bytes datagram bytes
+	 * @param destination datagram destination
+	 */
+	public void add(byte[] bytes, SocketAddress destination)
+	{
+		Objects.requireNonNull(bytes, "Datagram bytes cannot be null");
+		Objects.requireNonNull(destination, "Destination address cannot be null");
+
+		if (isFull())
+			throw new IllegalStateException("Datagram batch is full");
+
+		buffers[size].clear().put(bytes).flip();
+		addresses[size] = destination;
+		size++;
+	}
+
+	/**
+	 * This method removes all datagrams from the batch
+	 *
+	 */
+	public void clear()
+	{
+		size = 0;
+	}
+
+	/**
+	 * Slot buffer getter for the backends filling the batch
+	 *
+	 * @param index slot index
+	 * @return slot buffer
+	 */
+	ByteBuffer slot(int index)
+	{
+		return buffers[index];
+	}
+
+	/**
+	 * This method sets the sender address of the received datagram for the backends filling the batch
+	 *
+	 * @param index slot index
+	 * @param address datagram sender address
+	 */
+	void setAddress(int index, SocketAddress address)
+	{
+		addresses[index] = address;
+	}
+
+	/**
+	 * This method sets the amount of received datagrams for the backends filling the batch
+	 *
+	 * @param size the amount of received datagrams
+	 */
+	void setSize(int size)
+	{
+		this.size = size;
+	}
+}
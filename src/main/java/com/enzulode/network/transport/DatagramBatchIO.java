@@ -0,0 +1,98 @@
+package com.enzulode.network.transport;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.DatagramChannel;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Batched datagram I/O over a non-blocking {@link DatagramChannel}.
+ * The native Linux backend receives and sends the whole batch with a single {@code recvmmsg}/{@code sendmmsg}
+ * syscall. It is available on Java 22+ if the JVM is started with
+ * {@code --enable-native-access=ALL-UNNAMED --add-exports java.base/sun.nio.ch=ALL-UNNAMED},
+ * otherwise the batch is received and sent by plain NIO calls, one datagram per syscall
+ *
+ */
+public interface DatagramBatchIO extends AutoCloseable
+{
+	/**
+	 * The default amount of datagrams per batch
+	 *
+	 */
+	int DEFAULT_BATCH_SIZE = 16;
+
+	/**
+	 * System property disabling the native backend
+	 *
+	 */
+	String NATIVE_PROPERTY = "com.enzulode.network.nativeBatchIO";
+
+	/**
+	 * This method receives the datagrams already queued by the kernel without blocking
+	 *
+	 * @param batch batch to fill from the first slot
+	 * @return the amount of received datagrams, 0 if there are none
+	 * @throws IOException if it's failed to receive datagrams
+	 */
+	int receive(DatagramBatch batch) throws IOException;
+
+	/**
+	 * This method sends all datagrams of the batch
+	 *
+	 * @param batch batch to send
+	 * @throws IOException if it's failed to send datagrams
+	 */
+	void send(DatagramBatch batch) throws IOException;
+
+	/**
+	 * Backend name getter
+	 *
+	 * @return backend name
+	 */
+	String getName();
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Releases the backend resources, the channel is not closed
+	 *
+	 */
+	@Override
+	void close();
+
+	/**
+	 * This method opens the fastest backend available for the channel
+	 *
+	 * @param channel non-blocking datagram channel
+	 * @return native backend if it is available and NIO backend otherwise
+	 */
+	static DatagramBatchIO open(DatagramChannel channel)
+	{
+		Objects.requireNonNull(channel, "Channel cannot be null");
+
+		if (channel.isBlocking())
+			throw new IllegalArgumentException("Channel has to be in non-blocking mode");
+
+		if (!Boolean.parseBoolean(System.getProperty(NATIVE_PROPERTY, "true"))
+				|| !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("linux"))
+			return new NioDatagramBatchIO(channel);
+
+		try
+		{
+//			The native backend is compiled for Java 22+, so it is looked up in runtime
+			return (DatagramBatchIO) Class.forName("com.enzulode.network.transport.MmsgDatagramBatchIO")
+					.getConstructor(DatagramChannel.class)
+					.newInstance(channel);
+		}
+		catch (ReflectiveOperationException | LinkageError e)
+		{
+			Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+			Logger.getLogger(DatagramBatchIO.class.getName())
+					.log(Level.FINE, "Native batched datagram I/O is not available, NIO is used", cause);
+
+			return new NioDatagramBatchIO(channel);
+		}
+	}
+}
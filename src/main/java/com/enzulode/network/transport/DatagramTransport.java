@@ -0,0 +1,128 @@
+package com.enzulode.network.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Datagram transport servers and clients are built on.
+ * The transport only moves datagrams: it binds the local address, receives datagrams by batches and sends them
+ * by batches. Framing, reassembly, dispatch and response correlation are implemented once above the transport,
+ * so a new backend is plugged into every endpoint without changes of the protocol code.
+ * Datagrams are received by a single thread, while sending may be called concurrently
+ *
+ */
+public interface DatagramTransport extends AutoCloseable
+{
+	/**
+	 * Receive buffer size the transports request from the kernel, so bursts of unpaced frames are not dropped
+	 *
+	 */
+	int DEFAULT_RECEIVE_BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * This method binds the transport to the local address
+	 *
+	 * @param address local address (port 0 - any available port)
+	 * @return the address the transport was bound to
+	 * @throws IOException if it's failed to bind the transport
+	 */
+	InetSocketAddress bind(InetSocketAddress address) throws IOException;
+
+	/**
+	 * This method creates the batch laid out for this transport
+	 *
+	 * @param capacity the largest amount of datagrams in the batch
+	 * @return datagram batch
+	 */
+	DatagramBatch newBatch(int capacity);
+
+	/**
+	 * This method waits for datagrams and receives the ones already queued into the batch
+	 *
+	 * @param batch batch created by {@link #newBatch(int)} to fill from the first slot
+	 * @param timeout the longest wait in milliseconds or 0 to wait until a datagram is received
+	 * @return the amount of received datagrams, 0 if the timeout expired
+	 * @throws IOException if it's failed to receive datagrams or the transport was closed
+	 */
+	int receive(DatagramBatch batch, long timeout) throws IOException;
+
+	/**
+	 * This method sends all datagrams of the batch
+	 *
+	 * @param batch batch created by {@link #newBatch(int)}
+	 * @throws IOException if it's failed to send datagrams
+	 */
+	void send(DatagramBatch batch) throws IOException;
+
+	/**
+	 * This method requests the kernel receive buffer size. The kernel may cap the size,
+	 * so the granted one is returned by {@link #getReceiveBufferSize()}
+	 *
+	 * @param size receive buffer size in bytes
+	 * @throws IOException if it's failed to set the buffer size
+	 */
+	void setReceiveBufferSize(int size) throws IOException;
+
+	/**
+	 * Receive buffer size getter
+	 *
+	 * @return receive buffer size in bytes granted by the kernel
+	 * @throws IOException if it's failed to get the buffer size
+	 */
+	int getReceiveBufferSize() throws IOException;
+
+	/**
+	 * This method requests the kernel send buffer size. The kernel may cap the size,
+	 * so the granted one is returned by {@link #getSendBufferSize()}
+	 *
+	 * @param size send buffer size in bytes
+	 * @throws IOException if it's failed to set the buffer size
+	 */
+	void setSendBufferSize(int size) throws IOException;
+
+	/**
+	 * Send buffer size getter
+	 *
+	 * @return send buffer size in bytes granted by the kernel
+	 * @throws IOException if it's failed to get the buffer size
+	 */
+	int getSendBufferSize() throws IOException;
+
+	/**
+	 * This method returns the amount of datagrams addressed to the transport and dropped before they were received,
+	 * e.g. because the receive buffer was full
+	 *
+	 * @return the amount of dropped datagrams or -1 if the transport cannot tell it
+	 */
+	long getDroppedDatagrams();
+
+	/**
+	 * Local address getter
+	 *
+	 * @return the address the transport is bound to or null if it is not bound
+	 */
+	InetSocketAddress getLocalAddress();
+
+	/**
+	 * This method checks if the transport is open
+	 *
+	 * @return true if the transport was not closed
+	 */
+	boolean isOpen();
+
+	/**
+	 * Transport name getter
+	 *
+	 * @return transport name
+	 */
+	String getName();
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Closes the transport, the thread waiting for datagrams gets an exception
+	 *
+	 * @throws IOException if it's failed to close the transport
+	 */
+	@Override
+	void close() throws IOException;
+}
@@ -0,0 +1,97 @@
+package com.enzulode.network.transport;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Objects;
+
+/**
+ * Batched datagram I/O backend on plain NIO calls: one syscall per datagram
+ *
+ */
+public final class NioDatagramBatchIO implements DatagramBatchIO
+{
+	/**
+	 * Datagram channel instance
+	 *
+	 */
+	private final DatagramChannel channel;
+
+	/**
+	 * NIO backend constructor
+	 *
+	 * @param channel non-blocking datagram channel
+	 */
+	public NioDatagramBatchIO(DatagramChannel channel)
+	{
+		this.channel = Objects.requireNonNull(channel, "Channel cannot be null");
+	}
+
+	/**
+	 * This method receives the datagrams already queued by the kernel without blocking
+	 *
+	 * @param batch batch to fill from the first slot
+	 * @return the amount of received datagrams, 0 if there are none
+	 * @throws IOException if it's failed to receive datagrams
+	 */
+	@Override
+	public int receive(DatagramBatch batch) throws IOException
+	{
+		int received = 0;
+		while (received < batch.capacity())
+		{
+			ByteBuffer buffer = batch.slot(received).clear();
+			SocketAddress sender = channel.receive(buffer);
+			if (sender == null)
+				break;
+
+			buffer.flip();
+			batch.setAddress(received, sender);
+			received++;
+		}
+
+		batch.setSize(received);
+		return received;
+	}
+
+	/**
+	 * This method sends all datagrams of the batch
+	 *
+	 * @param batch batch to send
+	 * @throws IOException if it's failed to send datagrams
+	 */
+	@Override
+	public void send(DatagramBatch batch) throws IOException
+	{
+		for (int i = 0; i < batch.size(); i++)
+		{
+			ByteBuffer buffer = batch.buffer(i);
+
+//			Socket send buffer is full: the datagram is not dropped, the kernel drains the buffer soon
+			while (channel.send(buffer, batch.address(i)) == 0 && buffer.hasRemaining())
+				Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Backend name getter
+	 *
+	 * @return backend name
+	 */
+	@Override
+	public String getName()
+	{
+		return "nio";
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * NIO backend holds no resources
+	 *
+	 */
+	@Override
+	public void close()
+	{
+	}
+}
@@ -0,0 +1,712 @@
+package com.enzulode.network.transport;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AlreadyBoundException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shared memory transport for processes of the same host. Every bound port owns a directory of memory-mapped
+ * single-producer/single-consumer rings: a ring per sending port. Datagrams are exchanged without syscalls,
+ * the receiving thread spins on its rings and then parks with a growing pause, so no futex is shared between processes.
+ * Only ports matter: peers are addressed by the loopback address and the port they are bound to.
+ * Datagrams sent to an unbound port or to a ring staying full for {@link #SEND_TIMEOUT} are dropped, like UDP does.
+ * A closed transport deletes the rings it writes into as well, their receivers unmap them once they are drained
+ *
+ */
+public final class SharedMemoryDatagramTransport implements DatagramTransport
+{
+	/**
+	 * Default directory of the bound ports
+	 *
+	 */
+	public static final Path DEFAULT_DIRECTORY = Path.of("/dev/shm", "enzulode-network");
+
+	/**
+	 * The lowest port chosen for the transports bound to port 0
+	 *
+	 */
+	private static final int EPHEMERAL_PORT_MIN = 49152;
+
+	/**
+	 * The highest port chosen for the transports bound to port 0
+	 *
+	 */
+	private static final int EPHEMERAL_PORT_MAX = 65535;
+
+	/**
+	 * The largest amount of attempts to choose a free port
+	 *
+	 */
+	private static final int BIND_ATTEMPTS = 64;
+
+	/**
+	 * Lock file name: the port is bound while the lock is held
+	 *
+	 */
+	private static final String LOCK_FILE = "lock";
+
+	/**
+	 * Ring file name suffix
+	 *
+	 */
+	private static final String RING_SUFFIX = ".ring";
+
+	/**
+	 * Idle iterations spent spinning before yielding. A uniprocessor never spins: the peer cannot run meanwhile
+	 *
+	 */
+	private static final int SPIN_ITERATIONS = Runtime.getRuntime().availableProcessors() > 1 ? 20_000 : 0;
+
+	/**
+	 * Idle iterations spent yielding before parking
+	 *
+	 */
+	private static final int YIELD_ITERATIONS = 50;
+
+	/**
+	 * The shortest park in nanoseconds
+	 *
+	 */
+	private static final long MIN_PARK = TimeUnit.MICROSECONDS.toNanos(1);
+
+	/**
+	 * The longest park in nanoseconds
+	 *
+	 */
+	private static final long MAX_PARK = TimeUnit.MICROSECONDS.toNanos(100);
+
+	/**
+	 * Period the port directory is checked for the rings of new senders in nanoseconds
+	 *
+	 */
+	private static final long DISCOVERY_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * The longest wait for the free space of a full ring in nanoseconds
+	 *
+	 */
+	private static final long SEND_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/**
+	 * Directory of the bound ports
+	 *
+	 */
+	private final Path directory;
+
+	/**
+	 * Sending lock: every outgoing ring has a single producer
+	 *
+	 */
+	private final Lock sendLock;
+
+	/**
+	 * Outgoing rings by destination port
+	 *
+	 */
+	private final Map<Integer, SharedMemoryRing> outgoing;
+
+	/**
+	 * Incoming rings. Used by the receiving thread only
+	 *
+	 */
+	private final List<IncomingRing> incoming;
+
+	/**
+	 * Paths of the incoming rings. Used by the receiving thread only
+	 *
+	 */
+	private final Set<Path> incomingPaths;
+
+	/**
+	 * Index of the incoming ring polled first by the next receive
+	 *
+	 */
+	private int cursor;
+
+	/**
+	 * {@link System#nanoTime()} value the port directory is checked at next time
+	 *
+	 */
+	private long nextDiscovery;
+
+	/**
+	 * Directory of the bound port
+	 *
+	 */
+	private Path portDirectory;
+
+	/**
+	 * Lock file channel
+	 *
+	 */
+	private FileChannel lockChannel;
+
+	/**
+	 * Local address or null if the transport is not bound
+	 *
+	 */
+	private volatile InetSocketAddress localAddress;
+
+	/**
+	 * Transport state
+	 *
+	 */
+	private volatile boolean open;
+
+	/**
+	 * Shared memory transport constructor. Ports are bound in {@link #DEFAULT_DIRECTORY}
+	 *
+	 * @throws IOException if it's failed to create the directory
+	 */
+	public SharedMemoryDatagramTransport() throws IOException
+	{
+		this(DEFAULT_DIRECTORY);
+	}
+
+	/**
+	 * Shared memory transport constructor with the directory specified.
+	 * Peers have to use the same directory, placed on tmpfs to keep rings off the disk
+	 *
+	 * @param directory directory of the bound ports
+	 * @throws IOException if it's failed to create the directory
+	 */
+	public SharedMemoryDatagramTransport(Path directory) throws IOException
+	{
+//		Requiring directory to be non-null
+		Objects.requireNonNull(directory, "Directory cannot be null");
+
+		this.directory = Files.createDirectories(directory);
+		this.sendLock = new ReentrantLock();
+		this.outgoing = new HashMap<>();
+		this.incoming = new ArrayList<>();
+		this.incomingPaths = new HashSet<>();
+		this.open = true;
+	}
+
+	/**
+	 * This method binds the transport to the port. The host is ignored
+	 *
+	 * @param address local address (port 0 - any available port)
+	 * @return the loopback address with the bound port
+	 * @throws IOException if the port is already bound or it's failed to create the port directory
+	 */
+	@Override
+	public synchronized InetSocketAddress bind(InetSocketAddress address) throws IOException
+	{
+		if (!open)
+			throw new ClosedChannelException();
+		if (localAddress != null)
+			throw new AlreadyBoundException();
+
+		if (address.getPort() != 0)
+		{
+			if (!tryBind(address.getPort()))
+				throw new BindException("Address already in use: " + address.getPort());
+
+			return localAddress;
+		}
+
+		for (int i = 0; i < BIND_ATTEMPTS; i++)
+			if (tryBind(ThreadLocalRandom.current().nextInt(EPHEMERAL_PORT_MIN, EPHEMERAL_PORT_MAX + 1)))
+				return localAddress;
+
+		throw new BindException("Failed to find a free port");
+	}
+
+	/**
+	 * This method creates the batch laid out for this transport
+	 *
+	 * @param capacity the largest amount of datagrams in the batch
+	 * @return heap datagram batch
+	 */
+	@Override
+	public DatagramBatch newBatch(int capacity)
+	{
+		return new DatagramBatch(capacity, false);
+	}
+
+	/**
+	 * This method waits for datagrams and receives the ones already written into the rings
+	 *
+	 * @param batch batch created by {@link #newBatch(int)} to fill from the first slot
+	 * @param timeout the longest wait in milliseconds or 0 to wait until a datagram is received
+	 * @return the amount of received datagrams, 0 if the timeout expired
+	 * @throws IOException if the transport was closed
+	 */
+	@Override
+	public int receive(DatagramBatch batch, long timeout) throws IOException
+	{
+		if (localAddress == null)
+			throw new IllegalStateException("Transport is not bound");
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		int idleIterations = 0;
+		while (true)
+		{
+			if (!open)
+				throw new ClosedChannelException();
+
+			long now = System.nanoTime();
+			if (now - nextDiscovery >= 0)
+			{
+				discoverRings();
+				nextDiscovery = now + DISCOVERY_INTERVAL;
+			}
+
+			int received = poll(batch);
+			if (received > 0)
+				return received;
+
+			if (timeout > 0 && now - deadline >= 0)
+				return 0;
+
+			idle(idleIterations++);
+		}
+	}
+
+	/**
+	 * This method writes all datagrams of the batch into the rings of their destinations.
+	 * The transport is bound to any available port if it is not bound yet
+	 *
+	 * @param batch batch created by {@link #newBatch(int)}
+	 * @throws IOException if the transport was closed or it's failed to map a ring
+	 */
+	@Override
+	public void send(DatagramBatch batch) throws IOException
+	{
+		if (localAddress == null)
+			bind(new InetSocketAddress(0));
+
+		sendLock.lock();
+		try
+		{
+			for (int i = 0; i < batch.size(); i++)
+			{
+				if (!open)
+					throw new ClosedChannelException();
+
+				ByteBuffer datagram = batch.buffer(i);
+				SharedMemoryRing ring = outgoingRing(((InetSocketAddress) batch.address(i)).getPort());
+				if (ring != null)
+					offer(ring, datagram);
+
+//				Dropped datagrams are consumed as the sent ones
+				datagram.position(datagram.limit());
+			}
+		}
+		finally
+		{
+			sendLock.unlock();
+		}
+	}
+
+	/**
+	 * This method is ignored: every ring has the fixed capacity
+	 *
+	 * @param size receive buffer size in bytes
+	 */
+	@Override
+	public void setReceiveBufferSize(int size)
+	{
+	}
+
+	/**
+	 * Receive buffer size getter
+	 *
+	 * @return capacity of every incoming ring in bytes
+	 */
+	@Override
+	public int getReceiveBufferSize()
+	{
+		return SharedMemoryRing.CAPACITY;
+	}
+
+	/**
+	 * This method is ignored: every ring has the fixed capacity
+	 *
+	 * @param size send buffer size in bytes
+	 */
+	@Override
+	public void setSendBufferSize(int size)
+	{
+	}
+
+	/**
+	 * Send buffer size getter
+	 *
+	 * @return capacity of every outgoing ring in bytes
+	 */
+	@Override
+	public int getSendBufferSize()
+	{
+		return SharedMemoryRing.CAPACITY;
+	}
+
+	/**
+	 * This method cannot tell the dropped datagrams: senders drop them without notifying the receiver
+	 *
+	 * @return always -1
+	 */
+	@Override
+	public long getDroppedDatagrams()
+	{
+		return -1;
+	}
+
+	/**
+	 * Local address getter
+	 *
+	 * @return the loopback address with the bound port or null if the transport is not bound
+	 */
+	@Override
+	public InetSocketAddress getLocalAddress()
+	{
+		return localAddress;
+	}
+
+	/**
+	 * This method checks if the transport is open
+	 *
+	 * @return true if the transport was not closed
+	 */
+	@Override
+	public boolean isOpen()
+	{
+		return open;
+	}
+
+	/**
+	 * Transport name getter
+	 *
+	 * @return transport name
+	 */
+	@Override
+	public String getName()
+	{
+		return "shm";
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Closes and deletes the outgoing rings, closes the incoming rings, so the senders stop writing into them,
+	 * and removes the port directory. The receiving thread notices it after the current park
+	 *
+	 * @throws IOException if it's failed to release the port
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if (!open)
+			return;
+
+		open = false;
+
+		sendLock.lock();
+		try
+		{
+			for (SharedMemoryRing ring : outgoing.values())
+			{
+//				Rings closed by their receivers were deleted by them already
+				if (ring.isClosed())
+					continue;
+
+				ring.markClosed();
+				try
+				{
+					Files.deleteIfExists(ring.getPath());
+				}
+				catch (IOException e)
+				{
+//					The receiver unmaps the closed ring anyway, its file is deleted when the receiver port is bound again
+				}
+			}
+
+			outgoing.clear();
+		}
+		finally
+		{
+			sendLock.unlock();
+		}
+
+		if (lockChannel == null)
+			return;
+
+		try
+		{
+			closeRings(portDirectory);
+			Files.deleteIfExists(portDirectory.resolve(LOCK_FILE));
+		}
+		finally
+		{
+			lockChannel.close();
+		}
+
+		try
+		{
+			Files.deleteIfExists(portDirectory);
+		}
+		catch (IOException e)
+		{
+//			A sender created its ring meanwhile: the next transport bound to the port cleans the directory up
+		}
+	}
+
+	/**
+	 * This method binds the transport to the port if no other transport holds it
+	 *
+	 * @param port port to bind
+	 * @return true if the port was bound and false if it is held by another transport
+	 * @throws IOException if it's failed to create the port directory or the lock file
+	 */
+	private boolean tryBind(int port) throws IOException
+	{
+		Path candidate = Files.createDirectories(directory.resolve(String.valueOf(port)));
+		FileChannel channel = FileChannel.open(
+				candidate.resolve(LOCK_FILE),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE
+		);
+
+		FileLock lock;
+		try
+		{
+			lock = channel.tryLock();
+		}
+		catch (OverlappingFileLockException e)
+		{
+			lock = null;
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+
+		if (lock == null)
+		{
+			channel.close();
+			return false;
+		}
+
+//		Rings left by a crashed transport may still be mapped by senders
+		closeRings(candidate);
+
+		portDirectory = candidate;
+		lockChannel = channel;
+		localAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+		return true;
+	}
+
+	/**
+	 * This method closes and deletes every ring of the port directory
+	 *
+	 * @param portDirectory port directory
+	 * @throws IOException if it's failed to list the directory
+	 */
+	private static void closeRings(Path portDirectory) throws IOException
+	{
+		try (DirectoryStream<Path> rings = Files.newDirectoryStream(portDirectory, "*" + RING_SUFFIX))
+		{
+			for (Path ring : rings)
+			{
+				try
+				{
+					new SharedMemoryRing(ring, false).markClosed();
+					Files.deleteIfExists(ring);
+				}
+				catch (IOException e)
+				{
+//					Another transport already deleted the ring
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method unmaps the drained rings closed by their senders and maps the rings created by new senders
+	 *
+	 * @throws IOException if it's failed to list the port directory
+	 */
+	private void discoverRings() throws IOException
+	{
+//		Senders delete their rings on close, so a sender bound to the same port later creates a new ring
+		Iterator<IncomingRing> iterator = incoming.iterator();
+		while (iterator.hasNext())
+		{
+			SharedMemoryRing ring = iterator.next().ring();
+			if (!ring.isClosed() || !ring.isEmpty())
+				continue;
+
+			iterator.remove();
+			incomingPaths.remove(ring.getPath());
+		}
+
+		try (DirectoryStream<Path> rings = Files.newDirectoryStream(portDirectory, "*" + RING_SUFFIX))
+		{
+			for (Path ring : rings)
+			{
+				if (incomingPaths.contains(ring))
+					continue;
+
+				String fileName = ring.getFileName().toString();
+				int senderPort;
+				try
+				{
+					senderPort = Integer.parseInt(fileName.substring(0, fileName.length() - RING_SUFFIX.length()));
+				}
+				catch (NumberFormatException e)
+				{
+					continue;
+				}
+
+				SharedMemoryRing incomingRing;
+				try
+				{
+					incomingRing = new SharedMemoryRing(ring, false);
+				}
+				catch (NoSuchFileException e)
+				{
+//					The sender was closed meanwhile
+					continue;
+				}
+
+				incoming.add(new IncomingRing(
+						incomingRing,
+						new InetSocketAddress(InetAddress.getLoopbackAddress(), senderPort)
+				));
+				incomingPaths.add(ring);
+			}
+		}
+		catch (NoSuchFileException e)
+		{
+			throw new ClosedChannelException();
+		}
+	}
+
+	/**
+	 * This method reads the datagrams written into the incoming rings.
+	 * Rings are polled round-robin starting from the next one every time
+	 *
+	 * @param batch batch to fill from the first slot
+	 * @return the amount of received datagrams
+	 */
+	private int poll(DatagramBatch batch)
+	{
+		int size = 0;
+		int rings = incoming.size();
+		for (int i = 0; i < rings && size < batch.capacity(); i++)
+		{
+			IncomingRing ring = incoming.get((cursor + i) % rings);
+			while (size < batch.capacity() && ring.ring().poll(batch.slot(size)))
+				batch.setAddress(size++, ring.sender());
+		}
+
+		if (rings > 0)
+			cursor = (cursor + 1) % rings;
+
+		batch.setSize(size);
+		return size;
+	}
+
+	/**
+	 * This method finds the ring the datagrams for the destination port are written into
+	 *
+	 * @param port destination port
+	 * @return outgoing ring or null if the destination port is not bound
+	 * @throws IOException if it's failed to map the ring
+	 */
+	private SharedMemoryRing outgoingRing(int port) throws IOException
+	{
+		SharedMemoryRing ring = outgoing.get(port);
+		if (ring != null && !ring.isClosed())
+			return ring;
+
+		outgoing.remove(port);
+
+		Path destination = directory.resolve(String.valueOf(port));
+		if (!Files.isDirectory(destination))
+			return null;
+
+		try
+		{
+			ring = new SharedMemoryRing(destination.resolve(localAddress.getPort() + RING_SUFFIX), true);
+		}
+		catch (NoSuchFileException e)
+		{
+//			The destination was closed meanwhile
+			return null;
+		}
+
+		outgoing.put(port, ring);
+		return ring;
+	}
+
+	/**
+	 * This method writes the datagram into the ring, waiting for the free space up to {@link #SEND_TIMEOUT}
+	 *
+	 * @param ring outgoing ring
+	 * @param datagram datagram buffer
+	 */
+	private static void offer(SharedMemoryRing ring, ByteBuffer datagram)
+	{
+		long deadline = System.nanoTime() + SEND_TIMEOUT;
+		int idleIterations = 0;
+		while (!ring.offer(datagram))
+		{
+			if (ring.isClosed() || System.nanoTime() - deadline >= 0)
+				return;
+
+			idle(idleIterations++);
+		}
+	}
+
+	/**
+	 * This method waits a bit: spins first, then yields and then parks with a doubling pause
+	 *
+	 * @param idleIterations the amount of idle iterations in a row
+	 */
+	private static void idle(int idleIterations)
+	{
+		if (idleIterations < SPIN_ITERATIONS)
+			Thread.onSpinWait();
+		else if (idleIterations < SPIN_ITERATIONS + YIELD_ITERATIONS)
+			Thread.yield();
+		else
+			LockSupport.parkNanos(Math.min(MAX_PARK, MIN_PARK << Math.min(idleIterations - SPIN_ITERATIONS - YIELD_ITERATIONS, 20)));
+	}
+
+	/**
+	 * This record represents an incoming ring and the sender writing into it
+	 *
+	 * @param ring incoming ring
+	 * @param sender sender address
+	 */
+	private record IncomingRing(SharedMemoryRing ring, InetSocketAddress sender)
+	{
+	}
+}
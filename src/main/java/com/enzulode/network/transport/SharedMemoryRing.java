@@ -0,0 +1,232 @@
+package com.enzulode.network.transport;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Single-producer/single-consumer ring of datagrams placed in a memory-mapped file.
+ * The file starts with the consumer position, the producer position and the closed flag, every one on its own cache line.
+ * Datagrams are written as records of a length prefix and the datagram bytes aligned to 8 bytes. A record never wraps:
+ * if it does not fit into the rest of the ring, a padding record is written and the datagram is placed at the ring start.
+ * The producer publishes records with a release store of its position and the consumer frees them with a release store
+ * of its own one, so processes exchange datagrams without locks and syscalls
+ *
+ */
+final class SharedMemoryRing
+{
+	/**
+	 * Ring data capacity in bytes
+	 *
+	 */
+	static final int CAPACITY = 4 * 1024 * 1024;
+
+	/**
+	 * Consumer position offset
+	 *
+	 */
+	private static final int HEAD_OFFSET = 0;
+
+	/**
+	 * Producer position offset
+	 *
+	 */
+	private static final int TAIL_OFFSET = 64;
+
+	/**
+	 * Closed flag offset
+	 *
+	 */
+	private static final int CLOSED_OFFSET = 128;
+
+	/**
+	 * Records offset
+	 *
+	 */
+	private static final int DATA_OFFSET = 192;
+
+	/**
+	 * Record header size: datagram length and alignment
+	 *
+	 */
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	/**
+	 * Length of the padding record filling the rest of the ring
+	 *
+	 */
+	private static final int PADDING = -1;
+
+	/**
+	 * Ordered access to the ring positions
+	 *
+	 */
+	private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	/**
+	 * Mapped ring file
+	 *
+	 */
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * Ring file path
+	 *
+	 */
+	private final Path path;
+
+	/**
+	 * The last consumer position seen by the producer
+	 *
+	 */
+	private long cachedHead;
+
+	/**
+	 * Shared memory ring constructor
+	 *
+	 * @param path ring file path
+	 * @param create true to create the file if it does not exist and false to map the existing one only
+	 * @throws IOException if it's failed to create or map the file
+	 */
+	SharedMemoryRing(Path path, boolean create) throws IOException
+	{
+		this.path = path;
+
+		OpenOption[] options = create
+				? new OpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE}
+				: new OpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE};
+
+		try (FileChannel file = FileChannel.open(path, options))
+		{
+			this.buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET + CAPACITY);
+		}
+
+		this.buffer.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Ring file path getter
+	 *
+	 * @return ring file path
+	 */
+	Path getPath()
+	{
+		return path;
+	}
+
+	/**
+	 * This method checks if the ring was closed by the consumer or by the producer
+	 *
+	 * @return true if the ring was closed
+	 */
+	boolean isClosed()
+	{
+		return (long) LONG.getAcquire(buffer, CLOSED_OFFSET) != 0;
+	}
+
+	/**
+	 * This method marks the ring closed: the producer stops writing into the ring closed by the consumer
+	 * and the consumer unmaps the ring closed by the producer once it is drained
+	 *
+	 */
+	void markClosed()
+	{
+		LONG.setRelease(buffer, CLOSED_OFFSET, 1L);
+	}
+
+	/**
+	 * This method checks if every written datagram was read
+	 *
+	 * @return true if the ring is empty
+	 */
+	boolean isEmpty()
+	{
+		return (long) LONG.getAcquire(buffer, HEAD_OFFSET) == (long) LONG.getAcquire(buffer, TAIL_OFFSET);
+	}
+
+	/**
+	 * This method writes the datagram if there is enough free space. Called by the producer only
+	 *
+	 * @param datagram buffer with the datagram bytes between its position and limit
+	 * @return true if the datagram was written and false if the ring is full
+	 */
+	boolean offer(ByteBuffer datagram)
+	{
+		int length = datagram.remaining();
+		int recordSize = align(RECORD_HEADER_SIZE + length);
+
+		long tail = (long) LONG.getOpaque(buffer, TAIL_OFFSET);
+		int index = (int) (tail & (CAPACITY - 1));
+		int padding = CAPACITY - index < recordSize ? CAPACITY - index : 0;
+
+		if (tail + padding + recordSize - cachedHead > CAPACITY)
+		{
+			cachedHead = (long) LONG.getAcquire(buffer, HEAD_OFFSET);
+			if (tail + padding + recordSize - cachedHead > CAPACITY)
+				return false;
+		}
+
+		if (padding > 0)
+		{
+			buffer.putInt(DATA_OFFSET + index, PADDING);
+			index = 0;
+		}
+
+		buffer.putInt(DATA_OFFSET + index, length);
+		buffer.put(DATA_OFFSET + index + RECORD_HEADER_SIZE, datagram, datagram.position(), length);
+		datagram.position(datagram.limit());
+
+		LONG.setRelease(buffer, TAIL_OFFSET, tail + padding + recordSize);
+		return true;
+	}
+
+	/**
+	 * This method reads the next datagram. Called by the consumer only.
+	 * Datagrams exceeding the slot capacity are truncated
+	 *
+	 * @param slot buffer to copy the datagram into from its start
+	 * @return true if a datagram was read and false if the ring is empty
+	 */
+	boolean poll(ByteBuffer slot)
+	{
+		long head = (long) LONG.getOpaque(buffer, HEAD_OFFSET);
+		long tail = (long) LONG.getAcquire(buffer, TAIL_OFFSET);
+		if (head == tail)
+			return false;
+
+		int index = (int) (head & (CAPACITY - 1));
+		int length = buffer.getInt(DATA_OFFSET + index);
+		if (length == PADDING)
+		{
+			head += CAPACITY - index;
+			index = 0;
+			length = buffer.getInt(DATA_OFFSET);
+		}
+
+		slot.clear();
+		int copied = Math.min(length, slot.capacity());
+		slot.put(0, buffer, DATA_OFFSET + index + RECORD_HEADER_SIZE, copied);
+		slot.limit(copied);
+
+		LONG.setRelease(buffer, HEAD_OFFSET, head + align(RECORD_HEADER_SIZE + length));
+		return true;
+	}
+
+	/**
+	 * This method aligns the record size to 8 bytes
+	 *
+	 * @param size record size
+	 * @return aligned record size
+	 */
+	private static int align(int size)
+	{
+		return (size + 7) & ~7;
+	}
+}
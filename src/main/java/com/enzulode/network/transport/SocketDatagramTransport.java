@@ -0,0 +1,239 @@
+package com.enzulode.network.transport;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link DatagramSocket} based transport: one datagram is received and sent per syscall
+ *
+ */
+public final class SocketDatagramTransport implements DatagramTransport
+{
+	/**
+	 * Datagram socket instance
+	 *
+	 */
+	private final DatagramSocket socket;
+
+	/**
+	 * Incoming datagram packet instance
+	 *
+	 */
+	private final DatagramPacket incomingPacket;
+
+	/**
+	 * Receive timeout the socket is configured with
+	 *
+	 */
+	private long timeout;
+
+	/**
+	 * Socket transport constructor
+	 *
+	 * @throws SocketException if it's failed to open the socket
+	 */
+	public SocketDatagramTransport() throws SocketException
+	{
+		this.socket = new DatagramSocket(null);
+		this.socket.setReuseAddress(true);
+		this.socket.setReceiveBufferSize(DEFAULT_RECEIVE_BUFFER_SIZE);
+		this.incomingPacket = new DatagramPacket(new byte[0], 0);
+	}
+
+	/**
+	 * This method binds the transport to the local address
+	 *
+	 * @param address local address (port 0 - any available port)
+	 * @return the address the transport was bound to
+	 * @throws IOException if it's failed to bind the socket
+	 */
+	@Override
+	public InetSocketAddress bind(InetSocketAddress address) throws IOException
+	{
+		socket.bind(address);
+		return getLocalAddress();
+	}
+
+	/**
+	 * This method creates the batch laid out for this transport
+	 *
+	 * @param capacity the largest amount of datagrams in the batch
+	 * @return heap datagram batch
+	 */
+	@Override
+	public DatagramBatch newBatch(int capacity)
+	{
+		return new DatagramBatch(capacity, false);
+	}
+
+	/**
+	 * This method waits for the next datagram. The socket receives a single datagram per call
+	 *
+	 * @param batch batch created by {@link #newBatch(int)} to fill from the first slot
+	 * @param timeout the longest wait in milliseconds or 0 to wait until a datagram is received
+	 * @return the amount of received datagrams, 0 if the timeout expired
+	 * @throws IOException if it's failed to receive the datagram or the socket was closed
+	 */
+	@Override
+	public int receive(DatagramBatch batch, long timeout) throws IOException
+	{
+		ByteBuffer slot = batch.slot(0).clear();
+		if (!slot.hasArray())
+			throw new IllegalArgumentException("Batch was not created by the socket transport");
+
+		if (this.timeout != timeout)
+		{
+			socket.setSoTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+			this.timeout = timeout;
+		}
+
+		incomingPacket.setData(slot.array(), slot.arrayOffset(), slot.capacity());
+		try
+		{
+			socket.receive(incomingPacket);
+		}
+		catch (SocketTimeoutException e)
+		{
+			batch.setSize(0);
+			return 0;
+		}
+
+		slot.limit(incomingPacket.getLength());
+		batch.setAddress(0, incomingPacket.getSocketAddress());
+		batch.setSize(1);
+		return 1;
+	}
+
+	/**
+	 * This method sends all datagrams of the batch
+	 *
+	 * @param batch batch created by {@link #newBatch(int)}
+	 * @throws IOException if it's failed to send a datagram
+	 */
+	@Override
+	public void send(DatagramBatch batch) throws IOException
+	{
+		for (int i = 0; i < batch.size(); i++)
+		{
+			ByteBuffer buffer = batch.buffer(i);
+			if (!buffer.hasArray())
+				throw new IllegalArgumentException("Batch was not created by the socket transport");
+
+			socket.send(new DatagramPacket(
+					buffer.array(),
+					buffer.arrayOffset() + buffer.position(),
+					buffer.remaining(),
+					batch.address(i)
+			));
+			buffer.position(buffer.limit());
+		}
+	}
+
+	/**
+	 * This method requests the socket receive buffer size
+	 *
+	 * @param size receive buffer size in bytes
+	 * @throws IOException if it's failed to set the buffer size
+	 */
+	@Override
+	public void setReceiveBufferSize(int size) throws IOException
+	{
+		socket.setReceiveBufferSize(size);
+	}
+
+	/**
+	 * Receive buffer size getter
+	 *
+	 * @return receive buffer size in bytes granted by the kernel
+	 * @throws IOException if it's failed to get the buffer size
+	 */
+	@Override
+	public int getReceiveBufferSize() throws IOException
+	{
+		return socket.getReceiveBufferSize();
+	}
+
+	/**
+	 * This method requests the socket send buffer size
+	 *
+	 * @param size send buffer size in bytes
+	 * @throws IOException if it's failed to set the buffer size
+	 */
+	@Override
+	public void setSendBufferSize(int size) throws IOException
+	{
+		socket.setSendBufferSize(size);
+	}
+
+	/**
+	 * Send buffer size getter
+	 *
+	 * @return send buffer size in bytes granted by the kernel
+	 * @throws IOException if it's failed to get the buffer size
+	 */
+	@Override
+	public int getSendBufferSize() throws IOException
+	{
+		return socket.getSendBufferSize();
+	}
+
+	/**
+	 * This method returns the amount of datagrams the kernel dropped for the bound port
+	 *
+	 * @return the amount of dropped datagrams or -1 if the socket is not bound or the host is not Linux
+	 */
+	@Override
+	public long getDroppedDatagrams()
+	{
+		return socket.isBound() ? UdpDropCounter.read(socket.getLocalPort()) : -1;
+	}
+
+	/**
+	 * Local address getter
+	 *
+	 * @return the address the socket is bound to or null if it is not bound
+	 */
+	@Override
+	public InetSocketAddress getLocalAddress()
+	{
+		return (InetSocketAddress) socket.getLocalSocketAddress();
+	}
+
+	/**
+	 * This method checks if the transport is open
+	 *
+	 * @return true if the socket was not closed
+	 */
+	@Override
+	public boolean isOpen()
+	{
+		return !socket.isClosed();
+	}
+
+	/**
+	 * Transport name getter
+	 *
+	 * @return transport name
+	 */
+	@Override
+	public String getName()
+	{
+		return "socket";
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Closes the socket
+	 *
+	 */
+	@Override
+	public void close()
+	{
+		socket.close();
+	}
+}
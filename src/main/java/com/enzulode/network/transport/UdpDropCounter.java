@@ -0,0 +1,75 @@
+package com.enzulode.network.transport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Reader of the Linux UDP socket tables. Every socket line of {@code /proc/net/udp} and {@code /proc/net/udp6}
+ * ends with the amount of datagrams the kernel dropped for the socket, mostly because its receive buffer was full
+ *
+ */
+final class UdpDropCounter
+{
+	/**
+	 * UDP socket tables
+	 *
+	 */
+	private static final Path[] TABLES = {Path.of("/proc/net/udp"), Path.of("/proc/net/udp6")};
+
+	/**
+	 * Local address column of the socket line
+	 *
+	 */
+	private static final int LOCAL_ADDRESS_COLUMN = 1;
+
+	private UdpDropCounter()
+	{
+	}
+
+	/**
+	 * This method sums the drops of the sockets bound to the port.
+	 * Sockets sharing the port with {@code SO_REUSEPORT} are summed together
+	 *
+	 * @param port bound port
+	 * @return the amount of dropped datagrams or -1 if the socket tables are not available
+	 */
+	static long read(int port)
+	{
+		long drops = 0;
+		boolean available = false;
+
+		for (Path table : TABLES)
+		{
+			try (BufferedReader reader = Files.newBufferedReader(table))
+			{
+				available = true;
+
+//				Skipping the column names
+				String line = reader.readLine();
+				while ((line = reader.readLine()) != null)
+				{
+					String[] columns = line.trim().split("\\s+");
+					String localAddress = columns[LOCAL_ADDRESS_COLUMN];
+					int localPort = Integer.parseInt(localAddress.substring(localAddress.lastIndexOf(':') + 1), 16);
+
+					if (localPort == port)
+						drops += Long.parseLong(columns[columns.length - 1]);
+				}
+			}
+			catch (NoSuchFileException e)
+			{
+//				Not a Linux host or IPv6 is disabled
+			}
+			catch (IOException | RuntimeException e)
+			{
+//				Malformed or unreadable table: the counter is unknown
+				return -1;
+			}
+		}
+
+		return available ? drops : -1;
+	}
+}
@@ -0,0 +1,107 @@
+package com.enzulode.network.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Payload of a completely assembled message.
+ * The payload may be kept in a {@link ReassemblyArena} slab, so decoders read it right from the off-heap memory.
+ * The message has to be closed as soon as it is decoded: the slab is returned to the arena then
+ *
+ */
+public final class AssembledMessage implements AutoCloseable
+{
+	/**
+	 * Message identifier
+	 *
+	 */
+	private final int messageId;
+
+	/**
+	 * Message payload compression state
+	 *
+	 */
+	private final boolean compressed;
+
+	/**
+	 * Message payload
+	 *
+	 */
+	private final ByteBuffer payload;
+
+	/**
+	 * Arena the payload slab belongs to or null if the payload is kept on heap
+	 *
+	 */
+	private final ReassemblyArena arena;
+
+	/**
+	 * Message state
+	 *
+	 */
+	private boolean closed;
+
+	/**
+	 * Assembled message constructor
+	 *
+	 * @param messageId message identifier
+	 * @param compressed true if the payload has to be decompressed
+	 * @param payload message payload
+	 * @param arena arena the payload slab belongs to or null if the payload is kept on heap
+	 */
+	AssembledMessage(int messageId, boolean compressed, ByteBuffer payload, ReassemblyArena arena)
+	{
+		this.messageId = messageId;
+		this.compressed = compressed;
+		this.payload = payload;
+		this.arena = arena;
+	}
+
+	/**
+	 * Message identifier getter
+	 *
+	 * @return message identifier
+	 */
+	public int getMessageId()
+	{
+		return messageId;
+	}
+
+	/**
+	 * This method checks if the message payload is compressed
+	 *
+	 * @return true if the payload has to be decompressed
+	 */
+	public boolean isCompressed()
+	{
+		return compressed;
+	}
+
+	/**
+	 * Message payload getter
+	 *
+	 * @return read-only view of the message payload, valid until the message is closed
+	 */
+	public ByteBuffer getPayload()
+	{
+		if (closed)
+			throw new IllegalStateException("Message was already closed");
+
+		return payload.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Returns the payload slab to the arena
+	 *
+	 */
+	@Override
+	public void close()
+	{
+		if (closed)
+			return;
+
+		closed = true;
+		if (arena != null)
+			arena.release(payload);
+	}
+}
@@ -0,0 +1,305 @@
+package com.enzulode.network.util;
+
+import com.enzulode.network.concurrent.factories.ThreadNamingFactory;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class resolves the frame size for a specific peer.
+ * By default, every peer gets the configured frame size. If path MTU discovery is enabled, the frame size
+ * is derived from the MTU of the network interface the peer is routed through, so frames are never fragmented.
+ * Discovery runs in the background: peers get the configured frame size until their path MTU is discovered
+ *
+ */
+public final class FrameSizeResolver
+{
+	/**
+	 * IPv4 header size in bytes
+	 *
+	 */
+	private static final int IPV4_HEADER_SIZE = 20;
+
+	/**
+	 * IPv6 header size in bytes
+	 *
+	 */
+	private static final int IPV6_HEADER_SIZE = 40;
+
+	/**
+	 * UDP header size in bytes
+	 *
+	 */
+	private static final int UDP_HEADER_SIZE = 8;
+
+	/**
+	 * The period discovered frame sizes are kept for (the same as the kernel path MTU cache expiration)
+	 *
+	 */
+	private static final long DISCOVERY_EXPIRATION_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+	/**
+	 * The largest amount of peers discovered frame sizes are kept for
+	 *
+	 */
+	private static final int MAX_DISCOVERED_PEERS = 4096;
+
+	/**
+	 * Executor discovering frame sizes out of the sending threads. Its only thread stops when there is nothing to discover
+	 *
+	 */
+	private static final ExecutorService DISCOVERY_EXECUTOR = new ThreadPoolExecutor(
+			0,
+			1,
+			1,
+			TimeUnit.SECONDS,
+			new LinkedBlockingQueue<>(),
+			daemonThreads(new ThreadNamingFactory("mtu-discovery", "thread"))
+	);
+
+	/**
+	 * Discovered frame sizes cache
+	 *
+	 */
+	private final ConcurrentMap<InetAddress, DiscoveredFrameSize> discovered;
+
+	/**
+	 * Peers whose frame size discovery is scheduled
+	 *
+	 */
+	private final Set<InetAddress> discovering;
+
+	/**
+	 * Configured frame size
+	 *
+	 */
+	private volatile int frameSize;
+
+	/**
+	 * Path MTU discovery state
+	 *
+	 */
+	private volatile boolean pathMTUDiscovery;
+
+	/**
+	 * Frame size resolver constructor with default frame size
+	 *
+	 */
+	public FrameSizeResolver()
+	{
+		this(NetworkUtils.DEFAULT_FRAME_SIZE);
+	}
+
+	/**
+	 * Frame size resolver constructor
+	 *
+	 * @param frameSize frame size in bytes
+	 */
+	public FrameSizeResolver(int frameSize)
+	{
+		this.discovered = new ConcurrentHashMap<>();
+		this.discovering = ConcurrentHashMap.newKeySet();
+		setFrameSize(frameSize);
+	}
+
+	/**
+	 * Configured frame size getter
+	 *
+	 * @return configured frame size in bytes
+	 */
+	public int getFrameSize()
+	{
+		return frameSize;
+	}
+
+	/**
+	 * Configured frame size setter.
+	 * This size is also used as a fallback if path MTU discovery fails
+	 *
+	 * @param frameSize the whole datagram size in bytes, including frame overhead
+	 */
+	public void setFrameSize(int frameSize)
+	{
+		if (frameSize < NetworkUtils.MIN_FRAME_SIZE || frameSize > NetworkUtils.MAX_DATAGRAM_SIZE)
+			throw new IllegalArgumentException(
+					"Frame size has to be between " + NetworkUtils.MIN_FRAME_SIZE + " and " + NetworkUtils.MAX_DATAGRAM_SIZE
+			);
+
+		this.frameSize = frameSize;
+//		Failed discoveries fell back to the previous frame size
+		discovered.clear();
+	}
+
+	/**
+	 * Path MTU discovery state getter
+	 *
+	 * @return true if path MTU discovery is enabled and false otherwise
+	 */
+	public boolean isPathMTUDiscovery()
+	{
+		return pathMTUDiscovery;
+	}
+
+	/**
+	 * Path MTU discovery state setter
+	 *
+	 * @param pathMTUDiscovery true to size frames by the peer path MTU and false to use the configured frame size
+	 */
+	public void setPathMTUDiscovery(boolean pathMTUDiscovery)
+	{
+		this.pathMTUDiscovery = pathMTUDiscovery;
+		discovered.clear();
+	}
+
+	/**
+	 * This method resolves the frame size for the provided peer
+	 *
+	 * @param peer peer address
+	 * @return frame size in bytes
+	 */
+	public int resolveFrameSize(InetSocketAddress peer)
+	{
+		Objects.requireNonNull(peer, "Peer address cannot be null");
+
+		if (!pathMTUDiscovery || peer.isUnresolved())
+			return frameSize;
+
+		DiscoveredFrameSize cached = discovered.get(peer.getAddress());
+		if (cached != null && !cached.isExpired())
+			return cached.size();
+
+//		The expired size is still used while it is rediscovered
+		scheduleDiscovery(peer);
+		return cached != null ? cached.size() : frameSize;
+	}
+
+	/**
+	 * This method resolves the amount of payload bytes a single frame sent to the provided peer may carry
+	 *
+	 * @param peer peer address
+	 * @return frame payload size in bytes
+	 */
+	public int resolvePayloadSize(InetSocketAddress peer)
+	{
+		return NetworkUtils.payloadSize(resolveFrameSize(peer));
+	}
+
+	/**
+	 * This method schedules the frame size discovery for the provided peer unless it is already scheduled
+	 *
+	 * @param peer peer address
+	 */
+	private void scheduleDiscovery(InetSocketAddress peer)
+	{
+		InetAddress address = peer.getAddress();
+		if (discovering.size() >= MAX_DISCOVERED_PEERS || !discovering.add(address))
+			return;
+
+		DISCOVERY_EXECUTOR.execute(() -> {
+			try
+			{
+				cache(address, discoverFrameSize(peer));
+			}
+			finally
+			{
+				discovering.remove(address);
+			}
+		});
+	}
+
+	/**
+	 * This method caches the discovered frame size. Expired sizes are evicted first,
+	 * and the cache is emptied if it is still full, so it never grows above {@link #MAX_DISCOVERED_PEERS}
+	 *
+	 * @param address peer address
+	 * @param size discovered frame size
+	 */
+	private void cache(InetAddress address, int size)
+	{
+		if (discovered.size() >= MAX_DISCOVERED_PEERS)
+		{
+			discovered.values().removeIf(DiscoveredFrameSize::isExpired);
+			if (discovered.size() >= MAX_DISCOVERED_PEERS)
+				discovered.clear();
+		}
+
+		discovered.put(address, new DiscoveredFrameSize(size, System.nanoTime()));
+	}
+
+	/**
+	 * This method discovers the largest unfragmented datagram size for the provided peer.
+	 * Connecting a datagram socket makes the kernel to select the route to the peer without sending anything,
+	 * so the MTU of the selected network interface is the path MTU for the first hop
+	 *
+	 * @param peer peer address
+	 * @return discovered frame size or the configured frame size if discovery failed
+	 */
+	private int discoverFrameSize(InetSocketAddress peer)
+	{
+		try (DatagramSocket probe = new DatagramSocket())
+		{
+			probe.connect(peer);
+
+			NetworkInterface networkInterface = NetworkInterface.getByInetAddress(probe.getLocalAddress());
+			if (networkInterface == null || networkInterface.getMTU() <= 0)
+				return frameSize;
+
+			int headers = (peer.getAddress() instanceof Inet6Address ? IPV6_HEADER_SIZE : IPV4_HEADER_SIZE)
+					+ UDP_HEADER_SIZE;
+
+			int size = networkInterface.getMTU() - headers;
+			return Math.max(NetworkUtils.MIN_FRAME_SIZE, Math.min(size, NetworkUtils.MAX_DATAGRAM_SIZE));
+		}
+		catch (IOException e)
+		{
+			return frameSize;
+		}
+	}
+
+	/**
+	 * Discovered frame size cache entry
+	 *
+	 * @param size discovered frame size
+	 * @param discoveredAt discovery timestamp in nanoseconds
+	 */
+	private record DiscoveredFrameSize(int size, long discoveredAt)
+	{
+		/**
+		 * This method checks whether the discovered frame size has to be discovered again
+		 *
+		 * @return true if the entry is older than the discovery expiration and false otherwise
+		 */
+		boolean isExpired()
+		{
+			return System.nanoTime() - discoveredAt >= DISCOVERY_EXPIRATION_NANOS;
+		}
+	}
+
+	/**
+	 * This method makes the threads of the provided factory daemon ones, so discovery never keeps the JVM alive
+	 *
+	 * @param factory thread factory
+	 * @return daemon thread factory
+	 */
+	private static ThreadFactory daemonThreads(ThreadFactory factory)
+	{
+		return r -> {
+			Thread thread = factory.newThread(r);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
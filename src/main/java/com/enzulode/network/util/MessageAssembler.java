@@ -0,0 +1,618 @@
+package com.enzulode.network.util;
+
+import com.enzulode.network.fec.ReedSolomonCodec;
+import com.enzulode.network.model.transport.UDPFrame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class assembles a single message from its frames.
+ * Frames may arrive in any order. If the message is protected with FEC, lost data frames are
+ * reconstructed from parity frames as soon as enough of them has arrived.
+ * Messages without FEC may be assembled in a {@link ReassemblyArena} slab: frames are copied into the off-heap
+ * memory right away, so partially assembled messages do not stay on heap.
+ * Instances are not thread-safe
+ *
+ */
+public final class MessageAssembler
+{
+	/**
+	 * The period an incomplete message is kept for
+	 *
+	 */
+	public static final long EXPIRATION_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	/**
+	 * Marker of the data frames copied into the arena slab
+	 *
+	 */
+	private static final byte[] STORED_OFF_HEAP = new byte[0];
+
+	/**
+	 * Message identifier
+	 *
+	 */
+	private final int messageId;
+
+	/**
+	 * Whole message length in bytes
+	 *
+	 */
+	private final int messageLength;
+
+	/**
+	 * FEC group size
+	 *
+	 */
+	private final int groupSize;
+
+	/**
+	 * FEC parity frames count per group
+	 *
+	 */
+	private final int parityCount;
+
+	/**
+	 * Message payload compression state
+	 *
+	 */
+	private final boolean compressed;
+
+	/**
+	 * Received and reconstructed data frames payloads
+	 *
+	 */
+	private final byte[][] dataFrames;
+
+	/**
+	 * Received parity frames payloads
+	 *
+	 */
+	private final byte[][] parityFrames;
+
+	/**
+	 * Message assembling start timestamp
+	 *
+	 */
+	private final long createdAt;
+
+	/**
+	 * Arena the slab belongs to
+	 *
+	 */
+	private final ReassemblyArena arena;
+
+	/**
+	 * Arena slab the data frames are copied into or null if the message is assembled on heap
+	 *
+	 */
+	private ByteBuffer slab;
+
+	/**
+	 * Payload length of every data frame except the last one or 0 if it is not known yet
+	 *
+	 */
+	private int chunkLength;
+
+	/**
+	 * The amount of received and reconstructed data frames
+	 *
+	 */
+	private int received;
+
+	/**
+	 * The amount of frames arrived for the message: data, parity and duplicate ones
+	 *
+	 */
+	private int arrived;
+
+	/**
+	 * The highest index of the arrived data frames
+	 *
+	 */
+	private int highestIndex;
+
+	/**
+	 * The amount of data frame indexes skipped by the arrived frames and not arrived yet
+	 *
+	 */
+	private int skipped;
+
+	/**
+	 * Message delivery state
+	 *
+	 */
+	private boolean delivered;
+
+	/**
+	 * Message assembler constructor
+	 *
+	 * @param frame any frame of the message
+	 */
+	public MessageAssembler(UDPFrame frame)
+	{
+		this(frame, null);
+	}
+
+	/**
+	 * Message assembler constructor.
+	 * Multi-frame messages without FEC are assembled in the arena slab if the arena has enough space
+	 *
+	 * @param frame any frame of the message
+	 * @param arena reassembly arena or null to assemble the message on heap
+	 */
+	public MessageAssembler(UDPFrame frame, ReassemblyArena arena)
+	{
+		Objects.requireNonNull(frame, "Frame cannot be null");
+
+		this.messageId = frame.messageId();
+		this.messageLength = frame.messageLength();
+		this.groupSize = frame.groupSize();
+		this.parityCount = frame.parityCount();
+		this.compressed = frame.compressed();
+		this.dataFrames = new byte[frame.count()][];
+		this.parityFrames = groupSize > 0
+				? new byte[groupsCount() * parityCount][]
+				: new byte[0][];
+		this.createdAt = System.nanoTime();
+		this.highestIndex = -1;
+
+		this.arena = arena;
+		if (arena != null && groupSize == 0 && dataFrames.length > 1 && messageLength > 0)
+			this.slab = arena.allocate(messageLength);
+	}
+
+	/**
+	 * Message identifier getter
+	 *
+	 * @return message identifier
+	 */
+	public int getMessageId()
+	{
+		return messageId;
+	}
+
+	/**
+	 * Message length getter
+	 *
+	 * @return the amount of message bytes
+	 */
+	public int getMessageLength()
+	{
+		return messageLength;
+	}
+
+	/**
+	 * Data frames count getter
+	 *
+	 * @return the amount of message data frames
+	 */
+	public int getFrameCount()
+	{
+		return dataFrames.length;
+	}
+
+	/**
+	 * Received data frames count getter
+	 *
+	 * @return the amount of received or reconstructed data frames
+	 */
+	public int getReceivedFrameCount()
+	{
+		return received;
+	}
+
+	/**
+	 * Arrived frames count getter
+	 *
+	 * @return the amount of frames arrived for the message, parity and duplicate frames included
+	 */
+	public int getArrivedFrameCount()
+	{
+		return arrived;
+	}
+
+	/**
+	 * Skipped frames count getter.
+	 * Data frames are sent by their indexes, so the skipped ones are considered lost until they arrive out of order
+	 *
+	 * @return the amount of data frames skipped by the arrived ones
+	 */
+	public int getSkippedFrameCount()
+	{
+		return skipped;
+	}
+
+	/**
+	 * Trailing frames count getter. Data frames following the last arrived one are lost as well
+	 * once the message is complete or expired
+	 *
+	 * @return the amount of data frames following the last arrived one
+	 */
+	public int getTrailingFrameCount()
+	{
+		return dataFrames.length - 1 - highestIndex;
+	}
+
+	/**
+	 * Creation time getter
+	 *
+	 * @return {@link System#nanoTime()} value the first frame of the message was received at
+	 */
+	public long getCreatedAt()
+	{
+		return createdAt;
+	}
+
+	/**
+	 * This method adds a frame to the message
+	 *
+	 * @param frame frame to be added
+	 * @return true if the message is complete and false otherwise
+	 */
+	public boolean add(UDPFrame frame)
+	{
+		Objects.requireNonNull(frame, "Frame cannot be null");
+
+		if (frame.messageId() != messageId || frame.count() != dataFrames.length)
+			throw new IllegalArgumentException("Frame does not belong to the message");
+
+		arrived++;
+
+		if (isComplete())
+			return true;
+
+		int group;
+		if (frame.parity())
+		{
+			if (frame.index() >= parityFrames.length || parityFrames[frame.index()] != null)
+				return false;
+
+			parityFrames[frame.index()] = frame.data();
+			group = frame.index() / parityCount;
+		}
+		else
+		{
+			if (frame.index() >= dataFrames.length || dataFrames[frame.index()] != null)
+				return false;
+
+			if (slab != null)
+			{
+				if (!storeOffHeap(frame))
+					return false;
+
+				dataFrames[frame.index()] = STORED_OFF_HEAP;
+			}
+			else
+			{
+				dataFrames[frame.index()] = frame.data();
+			}
+
+			received++;
+
+//			Tracking the gaps of the data frames sequence
+			if (frame.index() > highestIndex)
+			{
+				skipped += frame.index() - highestIndex - 1;
+				highestIndex = frame.index();
+			}
+			else
+			{
+				skipped--;
+			}
+
+			if (groupSize == 0)
+				return isComplete();
+
+			group = frame.index() / groupSize;
+		}
+
+		reconstructGroup(group);
+		return isComplete();
+	}
+
+	/**
+	 * This method checks the message completion
+	 *
+	 * @return true if every data frame was received or reconstructed
+	 */
+	public boolean isComplete()
+	{
+		return received == dataFrames.length;
+	}
+
+	/**
+	 * This method checks if the message is assembled in the arena slab
+	 *
+	 * @return true if the message payload is kept off heap
+	 */
+	public boolean isOffHeap()
+	{
+		return slab != null;
+	}
+
+	/**
+	 * This method checks if the message is protected with FEC
+	 *
+	 * @return true if parity frames are sent for the message
+	 */
+	public boolean isProtected()
+	{
+		return groupSize > 0;
+	}
+
+	/**
+	 * This method checks if the message payload is compressed
+	 *
+	 * @return true if the assembled bytes have to be decompressed
+	 */
+	public boolean isCompressed()
+	{
+		return compressed;
+	}
+
+	/**
+	 * This method checks if the message was delivered
+	 *
+	 * @return true if the message was delivered and false otherwise
+	 */
+	public boolean isDelivered()
+	{
+		return delivered;
+	}
+
+	/**
+	 * This method marks the complete message as delivered and releases its payload.
+	 * A delivered assembler silently absorbs late frames of the message, such as parity frames
+	 * that were not required for reconstruction
+	 *
+	 */
+	public void markDelivered()
+	{
+		if (!isComplete())
+			throw new IllegalStateException("Message is not complete yet");
+
+		delivered = true;
+		Arrays.fill(dataFrames, null);
+		Arrays.fill(parityFrames, null);
+		release();
+	}
+
+	/**
+	 * This method returns the arena slab of the message, if any. Has to be called if the message is dropped
+	 * before completion, e.g. on expiration. The payload cannot be read after it was released
+	 *
+	 */
+	public void release()
+	{
+		if (slab == null)
+			return;
+
+		arena.release(slab);
+		slab = null;
+		Arrays.fill(dataFrames, null);
+		received = 0;
+	}
+
+	/**
+	 * This method checks if the message is being assembled for too long
+	 *
+	 * @param now current {@link System#nanoTime()} value
+	 * @return true if the message is expired and false otherwise
+	 */
+	public boolean isExpired(long now)
+	{
+		return now - createdAt > EXPIRATION_NANOS;
+	}
+
+	/**
+	 * This method returns data frames of the complete message in their order.
+	 * Reconstructed frames are included as well
+	 *
+	 * @return data frames list
+	 */
+	public List<UDPFrame> frames()
+	{
+		if (!isComplete() || delivered)
+			throw new IllegalStateException("Message is not complete yet or was already delivered");
+
+		List<UDPFrame> frames = new ArrayList<>(dataFrames.length);
+		for (int i = 0; i < dataFrames.length; i++)
+			frames.add(new UDPFrame(
+					slab != null ? copyOffHeapFrame(i) : dataFrames[i],
+					i == dataFrames.length - 1,
+					messageId,
+					i,
+					dataFrames.length,
+					messageLength,
+					groupSize,
+					parityCount,
+					false,
+					compressed
+			));
+
+		return Collections.unmodifiableList(frames);
+	}
+
+	/**
+	 * This method concatenates payloads of the complete message
+	 *
+	 * @return message bytes
+	 */
+	public byte[] assemble()
+	{
+		if (!isComplete() || delivered)
+			throw new IllegalStateException("Message is not complete yet or was already delivered");
+
+		if (slab != null)
+		{
+			byte[] message = new byte[messageLength];
+			slab.get(0, message);
+			return message;
+		}
+
+		if (dataFrames.length == 1)
+			return dataFrames[0];
+
+		byte[] message = new byte[messageLength];
+		int position = 0;
+		for (byte[] frame : dataFrames)
+		{
+			int length = Math.min(frame.length, messageLength - position);
+			System.arraycopy(frame, 0, message, position, length);
+			position += length;
+		}
+
+		return message;
+	}
+
+	/**
+	 * This method hands the payload of the complete message over and marks the message as delivered.
+	 * The arena slab is owned by the returned message from now on, so it is released when the message is closed
+	 *
+	 * @return assembled message
+	 */
+	public AssembledMessage message()
+	{
+		if (!isComplete() || delivered)
+			throw new IllegalStateException("Message is not complete yet or was already delivered");
+
+		AssembledMessage message;
+		if (slab == null)
+		{
+			message = new AssembledMessage(messageId, compressed, ByteBuffer.wrap(assemble()), null);
+		}
+		else
+		{
+			message = new AssembledMessage(messageId, compressed, slab, arena);
+			slab = null;
+		}
+
+		markDelivered();
+		return message;
+	}
+
+	/**
+	 * This method copies the data frame payload into the arena slab
+	 *
+	 * @param frame data frame
+	 * @return true if the frame was stored and false if it does not fit the message
+	 */
+	private boolean storeOffHeap(UDPFrame frame)
+	{
+		byte[] data = frame.data();
+		boolean last = frame.index() == dataFrames.length - 1;
+
+//		Every data frame except the last one is as long as the first one is, the last one ends the message
+		if (!last)
+		{
+			if (chunkLength == 0)
+				chunkLength = data.length;
+			else if (chunkLength != data.length)
+				return false;
+		}
+
+		long offset = last ? (long) messageLength - data.length : (long) frame.index() * data.length;
+		if (offset < 0 || offset + data.length > messageLength)
+			return false;
+
+		slab.put((int) offset, data);
+		return true;
+	}
+
+	/**
+	 * This method copies the data frame payload from the arena slab
+	 *
+	 * @param index data frame index
+	 * @return data frame payload
+	 */
+	private byte[] copyOffHeapFrame(int index)
+	{
+		int offset = index * chunkLength;
+		int length = index == dataFrames.length - 1 ? messageLength - offset : chunkLength;
+
+		byte[] data = new byte[length];
+		slab.get(offset, data);
+		return data;
+	}
+
+	/**
+	 * This method reconstructs lost data frames of the group if enough parity frames were received
+	 *
+	 * @param group group index
+	 */
+	private void reconstructGroup(int group)
+	{
+		int from = group * groupSize;
+		int to = Math.min(from + groupSize, dataFrames.length);
+
+		int lost = 0;
+		for (int i = from; i < to; i++)
+			if (dataFrames[i] == null)
+				lost++;
+
+		if (lost == 0)
+			return;
+
+		byte[][] parity = Arrays.copyOfRange(parityFrames, group * parityCount, (group + 1) * parityCount);
+		int parityReceived = 0;
+		for (byte[] frame : parity)
+			if (frame != null)
+				parityReceived++;
+
+		if (parityReceived < lost)
+			return;
+
+		byte[][] data = Arrays.copyOfRange(dataFrames, from, to);
+		if (!ReedSolomonCodec.reconstruct(data, parity))
+			return;
+
+//		Every data frame except the last one is as long as parity frames are
+		int chunkLength = firstNonNull(parity).length;
+		for (int i = from; i < to; i++)
+		{
+			if (dataFrames[i] != null)
+				continue;
+
+			int length = i == dataFrames.length - 1
+					? Math.max(0, Math.min(chunkLength, messageLength - chunkLength * (dataFrames.length - 1)))
+					: chunkLength;
+
+			dataFrames[i] = data[i - from].length == length
+					? data[i - from]
+					: Arrays.copyOf(data[i - from], length);
+			received++;
+		}
+	}
+
+	/**
+	 * This method finds the first received frame
+	 *
+	 * @param frames frames array
+	 * @return first non-null frame
+	 */
+	private static byte[] firstNonNull(byte[][] frames)
+	{
+		for (byte[] frame : frames)
+			if (frame != null)
+				return frame;
+
+		throw new IllegalStateException("No frames received");
+	}
+
+	/**
+	 * This method calculates the amount of FEC groups in the message
+	 *
+	 * @return groups count
+	 */
+	private int groupsCount()
+	{
+		return (dataFrames.length + groupSize - 1) / groupSize;
+	}
+}
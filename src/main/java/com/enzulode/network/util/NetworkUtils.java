@@ -1,7 +1,10 @@
 package com.enzulode.network.util;
 
+import com.enzulode.network.compression.PayloadCompressor;
 import com.enzulode.network.exception.MappingException;
 import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.fec.FecScheme;
+import com.enzulode.network.fec.ReedSolomonCodec;
 import com.enzulode.network.mapper.FrameMapper;
 import com.enzulode.network.mapper.RequestMapper;
 import com.enzulode.network.model.interconnection.Request;
@@ -11,11 +14,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utility class for network interactions
@@ -27,15 +33,68 @@ public class NetworkUtils
 	/**
 	 * Default request buffer size
 	 *
+	 * @deprecated frame size is configured per endpoint, see {@link FrameSizeResolver}
 	 */
+	@Deprecated
 	public static final int REQUEST_BUFFER_SIZE = 1024 * 4;
 
 	/**
 	 * Default response buffer size
 	 *
+	 * @deprecated frame size is configured per endpoint, see {@link FrameSizeResolver}
 	 */
+	@Deprecated
 	public static final int RESPONSE_BUFFER_SIZE = 1024 * 4;
 
+	/**
+	 * The largest UDP payload that can be carried by a single IPv4 datagram.
+	 * Every receiving buffer is sized with this value, so a peer may use any frame size
+	 *
+	 */
+	public static final int MAX_DATAGRAM_SIZE = 65507;
+
+	/**
+	 * Default frame size: 1500 bytes Ethernet MTU without IPv4 (20 bytes) and UDP (8 bytes) headers
+	 *
+	 */
+	public static final int DEFAULT_FRAME_SIZE = 1472;
+
+	/**
+	 * Minimal frame size: the largest UDP payload every IPv4 host has to accept without fragmentation
+	 *
+	 */
+	public static final int MIN_FRAME_SIZE = 508;
+
+	/**
+	 * The amount of bytes {@link FrameMapper} adds to the frame payload
+	 *
+	 */
+	public static final int FRAME_OVERHEAD = FrameMapper.HEADER_SIZE;
+
+	/**
+	 * The largest message length accepted from the frame headers. Longer messages are never assembled
+	 *
+	 */
+	public static final int MAX_MESSAGE_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * Default size of the smallest encoded message moved onto the TCP fallback connection
+	 *
+	 */
+	public static final int DEFAULT_TCP_FALLBACK_THRESHOLD = 64 * 1024;
+
+	/**
+	 * Default size of the largest encoded message accepted from the TCP fallback connection
+	 *
+	 */
+	public static final int DEFAULT_TCP_FALLBACK_LIMIT = 64 * 1024 * 1024;
+
+	/**
+	 * Message identifiers sequence. Starts from a random value, so identifiers are not reused after restart
+	 *
+	 */
+	private static final AtomicInteger MESSAGE_ID_SEQUENCE = new AtomicInteger(ThreadLocalRandom.current().nextInt());
+
 	/**
 	 * This method divides an array of bytes into separate chunks
 	 *
@@ -50,36 +109,55 @@ public class NetworkUtils
 
 		List<byte[]> chunks = new ArrayList<>();
 
-//		Prevent excessive operations if chunk size is 1
-		if (chunk == 1)
-		{
-			for (byte item : array)
-				chunks.add(new byte[] { item });
-
-			return chunks;
-		}
+		if (chunk <= 0)
+			throw new IllegalArgumentException("Chunk size has to be positive");
 
-//		Array should be simply wrapped with a list if chunk size is equal to array length
-		if (chunk == array.length)
+//		Array should be simply wrapped with a list if it fits into a single chunk
+		if (array.length <= chunk)
 			return List.of(array);
 
-//		Pointer initialization
-		int pointer = 0;
+		for (int pointer = 0; pointer < array.length; pointer += chunk)
+			chunks.add(Arrays.copyOfRange(array, pointer, Math.min(pointer + chunk, array.length)));
 
-		while(pointer <= array.length)
-		{
-			if (pointer == array.length)
-				chunks.add(new byte[] {array[array.length - 1]});
+		return chunks;
+	}
 
-			if (pointer < array.length && pointer + chunk > array.length)
-				chunks.add(Arrays.copyOfRange(array, pointer, pointer + (array.length - pointer)));
-			else
-				chunks.add(Arrays.copyOfRange(array, pointer, pointer + chunk));
+	/**
+	 * This method generates a new message identifier
+	 *
+	 * @return message identifier
+	 */
+	public static int nextMessageId()
+	{
+		return MESSAGE_ID_SEQUENCE.incrementAndGet();
+	}
 
-			pointer += chunk;
-		}
+	/**
+	 * This method wraps message bytes with a single frame ({@link UDPFrame})
+	 *
+	 * @param bytes message bytes
+	 * @param messageId message identifier
+	 * @return single {@link UDPFrame} of the message
+	 */
+	public static UDPFrame wrapBytesWithUDPFrame(byte[] bytes, int messageId)
+	{
+		return wrapBytesWithUDPFrame(bytes, messageId, false);
+	}
 
-		return chunks;
+	/**
+	 * This method wraps message bytes with a single frame ({@link UDPFrame})
+	 *
+	 * @param bytes message bytes
+	 * @param messageId message identifier
+	 * @param compressed true if message bytes are compressed
+	 * @return single {@link UDPFrame} of the message
+	 */
+	public static UDPFrame wrapBytesWithUDPFrame(byte[] bytes, int messageId, boolean compressed)
+	{
+//		Requiring message bytes to be non-null
+		Objects.requireNonNull(bytes, "Message bytes cannot be null");
+
+		return new UDPFrame(bytes, true, messageId, 0, 1, bytes.length, 0, 0, false, compressed);
 	}
 
 	/**
@@ -89,18 +167,94 @@ public class NetworkUtils
 	 * @return list of {@link UDPFrame}
 	 */
 	public static List<UDPFrame> wrapChunksWithUDPFrames(List<byte[]> chunks)
+	{
+		return wrapChunksWithUDPFrames(chunks, nextMessageId(), null);
+	}
+
+	/**
+	 * This method wraps chunks with frames ({@link UDPFrame}).
+	 * If FEC scheme is provided, parity frames are placed right after every group of data frames
+	 *
+	 * @param chunks message chunks
+	 * @param messageId message identifier
+	 * @param fec FEC scheme or null if FEC is disabled
+	 * @return list of {@link UDPFrame}
+	 */
+	public static List<UDPFrame> wrapChunksWithUDPFrames(List<byte[]> chunks, int messageId, FecScheme fec)
+	{
+		return wrapChunksWithUDPFrames(chunks, messageId, fec, false);
+	}
+
+	/**
+	 * This method wraps chunks with frames ({@link UDPFrame}).
+	 * If FEC scheme is provided, parity frames are placed right after every group of data frames
+	 *
+	 * @param chunks message chunks
+	 * @param messageId message identifier
+	 * @param fec FEC scheme or null if FEC is disabled
+	 * @param compressed true if message bytes are compressed
+	 * @return list of {@link UDPFrame}
+	 */
+	public static List<UDPFrame> wrapChunksWithUDPFrames(
+			List<byte[]> chunks,
+			int messageId,
+			FecScheme fec,
+			boolean compressed
+	)
 	{
 //		Requiring list of chunks to be non-null
 		Objects.requireNonNull(chunks, "Byte chunks list cannot be null");
 
-//		Getting request chunks from raw bytes
-		List<UDPFrame> frames = new ArrayList<>();
+		int count = chunks.size();
+		int messageLength = 0;
+		for (byte[] chunk : chunks)
+			messageLength += chunk.length;
+
+//		FEC makes sense for multi-frame messages only
+		boolean protect = fec != null && count > 1;
+		int groupSize = protect ? fec.dataFrames() : 0;
+		int parityCount = protect ? fec.parityFrames() : 0;
+
+		List<UDPFrame> frames = new ArrayList<>(protect ? count + (count / groupSize + 1) * parityCount : count);
 
 //		Wrapping separate chunks into separate frames
-		for (int i = 0; i < chunks.size() - 1; i++)
-			frames.add(new UDPFrame(chunks.get(i), false));
+		for (int i = 0; i < count; i++)
+		{
+			frames.add(new UDPFrame(
+					chunks.get(i),
+					i == count - 1,
+					messageId,
+					i,
+					count,
+					messageLength,
+					groupSize,
+					parityCount,
+					false,
+					compressed
+			));
+
+//			Adding parity frames after the group is complete
+			if (protect && ((i + 1) % groupSize == 0 || i == count - 1))
+			{
+				int group = i / groupSize;
+				byte[][] parity = ReedSolomonCodec.encode(chunks.subList(group * groupSize, i + 1), parityCount);
+
+				for (int j = 0; j < parityCount; j++)
+					frames.add(new UDPFrame(
+							parity[j],
+							false,
+							messageId,
+							group * parityCount + j,
+							count,
+							messageLength,
+							groupSize,
+							parityCount,
+							true,
+							compressed
+					));
+			}
+		}
 
-		frames.add(new UDPFrame(chunks.get(chunks.size() - 1), true));
 		return frames;
 	}
 
@@ -116,6 +270,24 @@ public class NetworkUtils
 			List<UDPFrame> frames,
 			InetSocketAddress destination
 	) throws NetworkException
+	{
+		return wrapUDPFramesWithDatagramPackets(frames, destination, false);
+	}
+
+	/**
+	 * This method wraps every frame ({@link UDPFrame}) with {@link DatagramPacket}
+	 *
+	 * @param frames frames to be wrapped
+	 * @param destination packet destination
+	 * @param checksum true to protect every frame with a checksum and false otherwise
+	 * @return list of {@link DatagramPacket}
+	 * @throws NetworkException if it's failed to map frames to bytes
+	 */
+	public static List<DatagramPacket> wrapUDPFramesWithDatagramPackets(
+			List<UDPFrame> frames,
+			InetSocketAddress destination,
+			boolean checksum
+	) throws NetworkException
 	{
 //		Requiring list of frames and destination address to be non-null
 		Objects.requireNonNull(frames, "List of frames cannot be null");
@@ -128,7 +300,7 @@ public class NetworkUtils
 			for (UDPFrame frame : frames)
 			{
 //				Mapping every frame to raw bytes
-				byte[] frameBytes = FrameMapper.mapFromInstanceToBytes(frame);
+				byte[] frameBytes = FrameMapper.mapFromInstanceToBytes(frame, checksum);
 //				Wrapping every frame byte array with datagram packet
 				packets.add(new DatagramPacket(frameBytes, frameBytes.length, destination));
 			}
@@ -170,6 +342,19 @@ public class NetworkUtils
 	 * @throws NetworkException if some of the frames was not mapped to bytes
 	 */
 	public static List<byte[]> udpFramesToBytes(List<UDPFrame> frames) throws NetworkException
+	{
+		return udpFramesToBytes(frames, false);
+	}
+
+	/**
+	 * Remap UDPFrames list to list of byte arrays
+	 *
+	 * @param frames list of UDPFrames to be unwrapped
+	 * @param checksum true to protect every frame with a checksum and false otherwise
+	 * @return a list of byte arrays
+	 * @throws NetworkException if some of the frames was not mapped to bytes
+	 */
+	public static List<byte[]> udpFramesToBytes(List<UDPFrame> frames, boolean checksum) throws NetworkException
 	{
 //		Requiring list of frames to be non-null
 		Objects.requireNonNull(frames, "List of frames cannot be null");
@@ -179,7 +364,7 @@ public class NetworkUtils
 		try
 		{
 			for (UDPFrame frame : frames)
-				bytes.add(FrameMapper.mapFromInstanceToBytes(frame));
+				bytes.add(FrameMapper.mapFromInstanceToBytes(frame, checksum));
 		}
 		catch (MappingException e)
 		{
@@ -214,6 +399,20 @@ public class NetworkUtils
 	 * @throws NetworkException if something went wrong during byte array output stream operations or during mapping operations
 	 */
 	public static <T extends Request> T requestFromFrames(List<UDPFrame> frames) throws NetworkException
+	{
+		return requestFromFrames(frames, null);
+	}
+
+	/**
+	 * This method maps the request from UDPFrames to a java instance decompressing its bytes if required
+	 *
+	 * @param frames list of udp frames
+	 * @param compressor payload compressor or null if compressed requests are not expected
+	 * @return a request instance
+	 * @param <T> request type param
+	 * @throws NetworkException if something went wrong during byte array output stream operations or during mapping operations
+	 */
+	public static <T extends Request> T requestFromFrames(List<UDPFrame> frames, PayloadCompressor compressor) throws NetworkException
 	{
 //		Check the frame list is not null
 		Objects.requireNonNull(frames, "Frame list cannot be null");
@@ -224,7 +423,16 @@ public class NetworkUtils
 			for (UDPFrame frame : frames)
 				baos.writeBytes(frame.data());
 
-			return RequestMapper.mapFromBytesToInstance(baos.toByteArray());
+			byte[] requestBytes = baos.toByteArray();
+			if (!frames.isEmpty() && frames.get(0).compressed())
+			{
+				if (compressor == null)
+					throw new NetworkException("Failed to map request: compressed requests are not supported");
+
+				requestBytes = compressor.decompress(requestBytes);
+			}
+
+			return RequestMapper.mapFromBytesToInstance(requestBytes);
 		}
 		catch (IOException e)
 		{
@@ -236,6 +444,53 @@ public class NetworkUtils
 		}
 	}
 
+	/**
+	 * This method maps the request from the assembled message decompressing its bytes if required.
+	 * Off-heap payload is read right from the arena slab
+	 *
+	 * @param message assembled message
+	 * @param compressor payload compressor or null if compressed requests are not expected
+	 * @return a request instance
+	 * @param <T> request type param
+	 * @throws NetworkException if mapping or decompression failed
+	 */
+	public static <T extends Request> T requestFromMessage(AssembledMessage message, PayloadCompressor compressor) throws NetworkException
+	{
+//		Check the message is not null
+		Objects.requireNonNull(message, "Message cannot be null");
+
+		return requestFromPayload(message.getPayload(), message.isCompressed(), compressor);
+	}
+
+	/**
+	 * This method maps the request right from the payload bytes, e.g. from the payload of a single frame message
+	 * inside the receive buffer, decompressing them if required
+	 *
+	 * @param payload buffer with the request payload between its position and limit
+	 * @param compressed true if the payload is compressed
+	 * @param compressor payload compressor or null if compressed requests are not expected
+	 * @return a request instance
+	 * @param <T> request type param
+	 * @throws NetworkException if mapping or decompression failed
+	 */
+	public static <T extends Request> T requestFromPayload(ByteBuffer payload, boolean compressed, PayloadCompressor compressor) throws NetworkException
+	{
+		try
+		{
+			if (!compressed)
+				return RequestMapper.mapFromBufferToInstance(payload);
+
+			if (compressor == null)
+				throw new NetworkException("Failed to map request: compressed requests are not supported");
+
+			return RequestMapper.mapFromBytesToInstance(compressor.decompress(payload));
+		}
+		catch (MappingException e)
+		{
+			throw new NetworkException("Failed to map request", e);
+		}
+	}
+
 	/**
 	 * This method wraps overheaded response bytes with datagram packets
 	 *
@@ -245,18 +500,130 @@ public class NetworkUtils
 	 * @throws NetworkException if it's failed to wrap response frames with datagram packets
 	 */
 	public static List<DatagramPacket> getPacketsForOverheadedResponseBytes(byte[] responseBytes, InetSocketAddress destination) throws NetworkException
+	{
+		return getPacketsForOverheadedResponseBytes(
+				responseBytes,
+				destination,
+				payloadSize(DEFAULT_FRAME_SIZE)
+		);
+	}
+
+	/**
+	 * This method wraps overheaded response bytes with datagram packets
+	 *
+	 * @param responseBytes overheaded response bytes
+	 * @param destination response destination
+	 * @param payloadSize the amount of response bytes a single frame may carry
+	 * @return list of datagram packets
+	 * @throws NetworkException if it's failed to wrap response frames with datagram packets
+	 */
+	public static List<DatagramPacket> getPacketsForOverheadedResponseBytes(
+			byte[] responseBytes,
+			InetSocketAddress destination,
+			int payloadSize
+	) throws NetworkException
+	{
+		return getPacketsForOverheadedResponseBytes(responseBytes, destination, payloadSize, nextMessageId(), null);
+	}
+
+	/**
+	 * This method wraps overheaded response bytes with datagram packets
+	 *
+	 * @param responseBytes overheaded response bytes
+	 * @param destination response destination
+	 * @param payloadSize the amount of response bytes a single frame may carry
+	 * @param messageId response message identifier
+	 * @param fec FEC scheme or null if FEC is disabled
+	 * @return list of datagram packets
+	 * @throws NetworkException if it's failed to wrap response frames with datagram packets
+	 */
+	public static List<DatagramPacket> getPacketsForOverheadedResponseBytes(
+			byte[] responseBytes,
+			InetSocketAddress destination,
+			int payloadSize,
+			int messageId,
+			FecScheme fec
+	) throws NetworkException
+	{
+		return getPacketsForOverheadedResponseBytes(responseBytes, destination, payloadSize, messageId, fec, false);
+	}
+
+	/**
+	 * This method wraps overheaded response bytes with datagram packets
+	 *
+	 * @param responseBytes overheaded response bytes
+	 * @param destination response destination
+	 * @param payloadSize the amount of response bytes a single frame may carry
+	 * @param messageId response message identifier
+	 * @param fec FEC scheme or null if FEC is disabled
+	 * @param compressed true if response bytes are compressed
+	 * @return list of datagram packets
+	 * @throws NetworkException if it's failed to wrap response frames with datagram packets
+	 */
+	public static List<DatagramPacket> getPacketsForOverheadedResponseBytes(
+			byte[] responseBytes,
+			InetSocketAddress destination,
+			int payloadSize,
+			int messageId,
+			FecScheme fec,
+			boolean compressed
+	) throws NetworkException
+	{
+		return getPacketsForOverheadedResponseBytes(
+				responseBytes,
+				destination,
+				payloadSize,
+				messageId,
+				fec,
+				compressed,
+				false
+		);
+	}
+
+	/**
+	 * This method wraps overheaded response bytes with datagram packets
+	 *
+	 * @param responseBytes overheaded response bytes
+	 * @param destination response destination
+	 * @param payloadSize the amount of response bytes a single frame may carry
+	 * @param messageId response message identifier
+	 * @param fec FEC scheme or null if FEC is disabled
+	 * @param compressed true if response bytes are compressed
+	 * @param checksum true to protect every frame with a checksum and false otherwise
+	 * @return list of datagram packets
+	 * @throws NetworkException if it's failed to wrap response frames with datagram packets
+	 */
+	public static List<DatagramPacket> getPacketsForOverheadedResponseBytes(
+			byte[] responseBytes,
+			InetSocketAddress destination,
+			int payloadSize,
+			int messageId,
+			FecScheme fec,
+			boolean compressed,
+			boolean checksum
+	) throws NetworkException
 	{
 //		Check that response bytes and response destination are not null
 		Objects.requireNonNull(responseBytes, "Response bytes cannot be null");
 		Objects.requireNonNull(destination, "Response destination cannot be null");
 
 //		Get response chunks from rew response bytes
-		List<byte[]> responseChunks = NetworkUtils.splitIntoChunks(responseBytes, NetworkUtils.RESPONSE_BUFFER_SIZE);
+		List<byte[]> responseChunks = NetworkUtils.splitIntoChunks(responseBytes, payloadSize);
 
 //		Wrap chunks with UDPFrames
-		List<UDPFrame> udpFrames = NetworkUtils.wrapChunksWithUDPFrames(responseChunks);
+		List<UDPFrame> udpFrames = NetworkUtils.wrapChunksWithUDPFrames(responseChunks, messageId, fec, compressed);
 
-		return NetworkUtils.wrapUDPFramesWithDatagramPackets(udpFrames, destination);
+		return NetworkUtils.wrapUDPFramesWithDatagramPackets(udpFrames, destination, checksum);
 	}
 
+	/**
+	 * This method calculates the amount of frame payload bytes for the provided frame size
+	 *
+	 * @param frameSize the whole frame size in bytes
+	 * @return the amount of payload bytes a frame of that size may carry
+	 */
+	public static int payloadSize(int frameSize)
+	{
+		return frameSize - FRAME_OVERHEAD;
+	}
 }
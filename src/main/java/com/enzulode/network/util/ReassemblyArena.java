@@ -0,0 +1,226 @@
+package com.enzulode.network.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Off-heap slab arena for messages being assembled.
+ * Slabs are direct buffers of power of two size classes. A released slab is kept in its class free list
+ * and reused by the next message of the same class, so the reserved memory never exceeds the arena capacity.
+ * If the arena is exhausted or the message is too large for any class, the message is assembled on heap
+ *
+ */
+public final class ReassemblyArena
+{
+	/**
+	 * The smallest slab size in bytes
+	 *
+	 */
+	public static final int MIN_SLAB_SIZE = 4 * 1024;
+
+	/**
+	 * The largest slab size in bytes
+	 *
+	 */
+	public static final int MAX_SLAB_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * Default arena capacity in bytes
+	 *
+	 */
+	public static final long DEFAULT_CAPACITY = 64 * 1024 * 1024;
+
+	/**
+	 * Released slabs by size class
+	 *
+	 */
+	private final List<ArrayDeque<ByteBuffer>> freeSlabs;
+
+	/**
+	 * Arena capacity in bytes
+	 *
+	 */
+	private final long capacity;
+
+	/**
+	 * The amount of direct memory reserved by the slabs
+	 *
+	 */
+	private long reserved;
+
+	/**
+	 * The amount of bytes of the slabs in use
+	 *
+	 */
+	private long used;
+
+	/**
+	 * The amount of slabs handed out
+	 *
+	 */
+	private final LongAdder allocations;
+
+	/**
+	 * The amount of messages assembled on heap because the arena was exhausted
+	 *
+	 */
+	private final LongAdder fallbacks;
+
+	/**
+	 * Reassembly arena constructor with default capacity
+	 *
+	 */
+	public ReassemblyArena()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Reassembly arena constructor
+	 *
+	 * @param capacity the largest amount of direct memory the arena may reserve in bytes
+	 */
+	public ReassemblyArena(long capacity)
+	{
+		if (capacity < MIN_SLAB_SIZE)
+			throw new IllegalArgumentException("Arena capacity cannot be less than " + MIN_SLAB_SIZE + " bytes");
+
+		this.capacity = capacity;
+		this.freeSlabs = new ArrayList<>();
+		for (int size = MIN_SLAB_SIZE; size <= MAX_SLAB_SIZE; size <<= 1)
+			freeSlabs.add(new ArrayDeque<>());
+
+		this.allocations = new LongAdder();
+		this.fallbacks = new LongAdder();
+	}
+
+	/**
+	 * This method hands out a slab fitting the message
+	 *
+	 * @param size message length in bytes
+	 * @return slab with position 0 and limit set to the message length or null if the message has to be assembled on heap
+	 */
+	public ByteBuffer allocate(int size)
+	{
+		if (size <= 0)
+			throw new IllegalArgumentException("Message length has to be positive");
+
+		if (size > MAX_SLAB_SIZE)
+		{
+			fallbacks.increment();
+			return null;
+		}
+
+		int sizeClass = sizeClass(size);
+		int slabSize = MIN_SLAB_SIZE << sizeClass;
+
+		ByteBuffer slab;
+		synchronized (this)
+		{
+			slab = freeSlabs.get(sizeClass).poll();
+			if (slab == null)
+			{
+				if (reserved + slabSize > capacity)
+				{
+					fallbacks.increment();
+					return null;
+				}
+
+				reserved += slabSize;
+			}
+
+			used += slabSize;
+		}
+
+//		Direct memory is allocated outside the lock, the space was already reserved
+		if (slab == null)
+			slab = ByteBuffer.allocateDirect(slabSize);
+
+		allocations.increment();
+		return slab.clear().limit(size);
+	}
+
+	/**
+	 * This method returns the slab to the arena. The slab must not be used after it was released
+	 *
+	 * @param slab slab handed out by this arena
+	 */
+	public void release(ByteBuffer slab)
+	{
+		if (!slab.isDirect() || slab.capacity() > MAX_SLAB_SIZE || slab.capacity() != MIN_SLAB_SIZE << sizeClass(slab.capacity()))
+			throw new IllegalArgumentException("The buffer was not allocated by the arena");
+
+		synchronized (this)
+		{
+			used -= slab.capacity();
+			freeSlabs.get(sizeClass(slab.capacity())).push(slab);
+		}
+	}
+
+	/**
+	 * Arena capacity getter
+	 *
+	 * @return the largest amount of direct memory the arena may reserve in bytes
+	 */
+	public long getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Reserved memory getter
+	 *
+	 * @return the amount of direct memory reserved by the slabs in bytes
+	 */
+	public synchronized long getReservedBytes()
+	{
+		return reserved;
+	}
+
+	/**
+	 * Used memory getter
+	 *
+	 * @return the amount of bytes of the slabs held by messages being assembled
+	 */
+	public synchronized long getUsedBytes()
+	{
+		return used;
+	}
+
+	/**
+	 * Allocations counter getter
+	 *
+	 * @return the amount of slabs handed out
+	 */
+	public long getAllocations()
+	{
+		return allocations.sum();
+	}
+
+	/**
+	 * Fallbacks counter getter
+	 *
+	 * @return the amount of messages assembled on heap because the arena was exhausted or the message was too large
+	 */
+	public long getFallbacks()
+	{
+		return fallbacks.sum();
+	}
+
+	/**
+	 * This method finds the smallest size class fitting the size
+	 *
+	 * @param size size in bytes, not greater than {@link #MAX_SLAB_SIZE}
+	 * @return size class index
+	 */
+	private static int sizeClass(int size)
+	{
+		if (size <= MIN_SLAB_SIZE)
+			return 0;
+
+		return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_SLAB_SIZE);
+	}
+}
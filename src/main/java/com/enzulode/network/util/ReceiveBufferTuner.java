@@ -0,0 +1,205 @@
+package com.enzulode.network.util;
+
+import com.enzulode.network.metrics.NetworkMetrics;
+import com.enzulode.network.transport.DatagramTransport;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class grows the transport receive buffer while datagrams are dropped.
+ * Drops are detected by the gaps of the frames sequence and by the kernel drop counter of the transport.
+ * The buffer is doubled at most once per check interval until drops stop, the buffer reaches
+ * {@link #MAX_RECEIVE_BUFFER_SIZE} or the kernel refuses to grant more (e.g. {@code net.core.rmem_max} on Linux)
+ *
+ */
+public final class ReceiveBufferTuner
+{
+	/**
+	 * The largest receive buffer size the tuner requests in bytes
+	 *
+	 */
+	public static final int MAX_RECEIVE_BUFFER_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * Period between drop checks in nanoseconds
+	 *
+	 */
+	private static final long CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Logger instance
+	 *
+	 */
+	private final Logger logger;
+
+	/**
+	 * Datagram transport instance
+	 *
+	 */
+	private final DatagramTransport transport;
+
+	/**
+	 * Network metrics instance lost frames are counted with
+	 *
+	 */
+	private final NetworkMetrics metrics;
+
+	/**
+	 * Auto-tuning state
+	 *
+	 */
+	private volatile boolean enabled;
+
+	/**
+	 * {@link System#nanoTime()} value of the next check
+	 *
+	 */
+	private volatile long nextCheck;
+
+	/**
+	 * Lost frames counter value of the previous check
+	 *
+	 */
+	private long lastFramesLost;
+
+	/**
+	 * Kernel drops counter value of the previous check
+	 *
+	 */
+	private long lastKernelDrops;
+
+	/**
+	 * Growth state: false once the buffer cannot grow anymore
+	 *
+	 */
+	private boolean growing;
+
+	/**
+	 * Receive buffer tuner constructor. Auto-tuning is disabled by default
+	 *
+	 * @param transport datagram transport instance
+	 * @param metrics network metrics instance lost frames are counted with
+	 */
+	public ReceiveBufferTuner(DatagramTransport transport, NetworkMetrics metrics)
+	{
+		this.logger = Logger.getLogger(ReceiveBufferTuner.class.getName());
+		this.transport = Objects.requireNonNull(transport, "Transport instance cannot be null");
+		this.metrics = Objects.requireNonNull(metrics, "Metrics instance cannot be null");
+	}
+
+	/**
+	 * This method enables or disables auto-tuning. Drops counted before enabling are not taken into account
+	 *
+	 * @param enabled auto-tuning state
+	 */
+	public synchronized void setEnabled(boolean enabled)
+	{
+		this.lastFramesLost = metrics.getFramesLost();
+		this.lastKernelDrops = transport.getDroppedDatagrams();
+		this.growing = true;
+		this.nextCheck = System.nanoTime() + CHECK_INTERVAL;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * This method checks if auto-tuning is enabled
+	 *
+	 * @return auto-tuning state
+	 */
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * This method grows the receive buffer if datagrams were dropped since the previous check.
+	 * It is cheap enough to be called for every received frame: counters are read once per check interval
+	 *
+	 */
+	public void check()
+	{
+		if (!enabled)
+			return;
+
+		long now = System.nanoTime();
+		if (now - nextCheck < 0)
+			return;
+
+		tune(now);
+	}
+
+	/**
+	 * Receive buffer size getter
+	 *
+	 * @return receive buffer size granted by the kernel in bytes or 0 if it's failed to get it
+	 */
+	public long getReceiveBufferSize()
+	{
+		try
+		{
+			return transport.getReceiveBufferSize();
+		}
+		catch (IOException e)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * This method compares the drop counters with the previous check ones and doubles the buffer on drops
+	 *
+	 * @param now current {@link System#nanoTime()} value
+	 */
+	private synchronized void tune(long now)
+	{
+//		Another receiving thread has checked meanwhile
+		if (now - nextCheck < 0)
+			return;
+
+		nextCheck = now + CHECK_INTERVAL;
+
+		long framesLost = metrics.getFramesLost();
+		long kernelDrops = transport.getDroppedDatagrams();
+		boolean dropped = framesLost > lastFramesLost || kernelDrops > lastKernelDrops;
+		lastFramesLost = framesLost;
+		lastKernelDrops = kernelDrops;
+
+		if (!dropped || !growing)
+			return;
+
+		try
+		{
+			int size = transport.getReceiveBufferSize();
+			if (size >= MAX_RECEIVE_BUFFER_SIZE)
+			{
+				growing = false;
+				return;
+			}
+
+			transport.setReceiveBufferSize((int) Math.min(2L * size, MAX_RECEIVE_BUFFER_SIZE));
+
+			int granted = transport.getReceiveBufferSize();
+			if (granted > size)
+			{
+				logger.log(Level.INFO, "Receive buffer was grown to {0} bytes: datagrams were dropped", granted);
+				return;
+			}
+
+			growing = false;
+			logger.log(
+					Level.WARNING,
+					"Receive buffer cannot grow beyond {0} bytes while datagrams are dropped: the kernel limit has to be raised",
+					size
+			);
+		}
+		catch (IOException e)
+		{
+			growing = false;
+			logger.log(Level.WARNING, "Failed to grow the receive buffer", e);
+		}
+	}
+}
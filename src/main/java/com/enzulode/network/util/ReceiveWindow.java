@@ -0,0 +1,295 @@
+package com.enzulode.network.util;
+
+import com.enzulode.network.transport.DatagramTransport;
+
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the credit a server grants to its clients.
+ * Every sender is granted its share of the server receive budget in frames, the sum of the outstanding grants
+ * never exceeds the budget, so the frames queued in the socket receive buffer by all senders together
+ * fit into it. Grants are advertised in acknowledgements and in the first response frames, they are held
+ * for the grant lease since the sender was active last and are returned to the budget afterwards
+ *
+ */
+public final class ReceiveWindow
+{
+	/**
+	 * Default receive budget: the default socket receive buffer filled with frames of the default size.
+	 * The kernel charges a datagram about twice its size with the bookkeeping, so a frame is counted twice
+	 *
+	 */
+	public static final int DEFAULT_BUDGET = DatagramTransport.DEFAULT_RECEIVE_BUFFER_SIZE / (2 * NetworkUtils.DEFAULT_FRAME_SIZE);
+
+	/**
+	 * Credit of the senders the receiver did not grant a window to yet or whose grant has expired.
+	 * It is not reserved from the budget, so it is kept small: the first acknowledgement grants the sender its share
+	 *
+	 */
+	public static final int INITIAL_WINDOW = 8;
+
+	/**
+	 * The smallest receive budget
+	 *
+	 */
+	public static final int MIN_WINDOW = 4;
+
+	/**
+	 * The first wait for the credit in milliseconds. Senders probe the receiver with a half of the window afterwards
+	 * and double the wait until the credit comes
+	 *
+	 */
+	public static final long STALL_TIMEOUT = 50;
+
+	/**
+	 * Period a grant is held for since the sender was active last in nanoseconds. Senders forget their grants
+	 * a half of the period after they were advertised, so they never use a grant the receiver has returned
+	 *
+	 */
+	public static final long GRANT_LEASE = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Credit of the active senders
+	 *
+	 */
+	private final Map<SocketAddress, Credit> credits;
+
+	/**
+	 * Receive budget in frames
+	 *
+	 */
+	private int budget;
+
+	/**
+	 * The sum of the outstanding grants in frames
+	 *
+	 */
+	private int granted;
+
+	/**
+	 * {@link System#nanoTime()} value of the next expired grants sweep
+	 *
+	 */
+	private long nextSweep;
+
+	/**
+	 * Receive window constructor
+	 *
+	 */
+	public ReceiveWindow()
+	{
+		this.credits = new HashMap<>();
+		this.budget = DEFAULT_BUDGET;
+		this.nextSweep = System.nanoTime();
+	}
+
+	/**
+	 * This method sets the receive budget shared by the senders. Outstanding grants are adjusted
+	 * as the senders are granted their credit again
+	 *
+	 * @param budget receive budget in frames
+	 */
+	public synchronized void setBudget(int budget)
+	{
+		if (budget < MIN_WINDOW)
+			throw new IllegalArgumentException("Receive budget cannot be less than " + MIN_WINDOW + " frames");
+
+		this.budget = budget;
+	}
+
+	/**
+	 * Receive budget getter
+	 *
+	 * @return receive budget in frames
+	 */
+	public synchronized int getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * Outstanding grants getter
+	 *
+	 * @return the sum of the grants held by the active senders in frames
+	 */
+	public synchronized int getGranted()
+	{
+		return granted;
+	}
+
+	/**
+	 * This method counts the frame taken from the socket receive buffer. Once a half of the sender credit
+	 * has arrived, the sender is acknowledged and granted its share of the budget again
+	 *
+	 * @param sender frame sender address
+	 * @param messageId identifier of the frame message
+	 * @return acknowledgement to be sent or null if the sender is not acknowledged yet
+	 */
+	public synchronized Acknowledgement frameArrived(SocketAddress sender, int messageId)
+	{
+		long now = System.nanoTime();
+		sweep(now);
+
+		Credit credit = credits.get(sender);
+		if (credit == null)
+		{
+//			New senders hold the initial window, so it is counted as granted until they are granted their share
+			credit = new Credit();
+			credit.grant = INITIAL_WINDOW;
+			credit.grantedAt = now;
+			granted += INITIAL_WINDOW;
+			credits.put(sender, credit);
+		}
+
+		if (credit.arrived == 0 || credit.messageId != messageId)
+		{
+			credit.messageId = messageId;
+			credit.arrived = 0;
+			credit.unacknowledged = 0;
+		}
+
+		credit.arrived++;
+		credit.unacknowledged++;
+		credit.lastActive = now;
+
+//		Senders may have forgotten the grant advertised a half of the lease ago and hold the initial window instead
+		int held = credit.grant > 0 && now - credit.grantedAt < GRANT_LEASE / 2
+				? credit.grant
+				: Math.min(Math.max(1, credit.grant), INITIAL_WINDOW);
+		if (credit.unacknowledged < ackInterval(held))
+			return null;
+
+		credit.unacknowledged = 0;
+		return new Acknowledgement(credit.arrived, regrant(credit, now));
+	}
+
+	/**
+	 * This method grants the sender its share of the budget, e.g. for the next requests along with the response
+	 *
+	 * @param sender sender address
+	 * @return granted window in frames
+	 */
+	public synchronized int grant(SocketAddress sender)
+	{
+		long now = System.nanoTime();
+		sweep(now);
+
+		return regrant(credits.computeIfAbsent(sender, key -> new Credit()), now);
+	}
+
+	/**
+	 * This method resolves the amount of frames acknowledged at once. Senders get the credit back
+	 * while they still have a half of the window to send, so they are never stalled by the acknowledgement delay
+	 *
+	 * @param window receive window in frames
+	 * @return the amount of frames between acknowledgements
+	 */
+	public static int ackInterval(int window)
+	{
+		return Math.max(1, window / 2);
+	}
+
+	/**
+	 * This method replaces the sender grant with its current share of the budget.
+	 * The share is limited by the budget the other senders left, so the grants of the late senders grow
+	 * as the earlier senders are granted their smaller shares. A single sender never holds more than a half
+	 * of the budget, so the senders appearing meanwhile find the room for their initial windows.
+	 * Every sender keeps a single frame at least
+	 *
+	 * @param credit sender credit
+	 * @param now current {@link System#nanoTime()} value
+	 * @return granted window in frames
+	 */
+	private int regrant(Credit credit, long now)
+	{
+		int share = Math.min(budget / 2, budget / credits.size());
+		int grant = Math.max(1, Math.min(share, budget - (granted - credit.grant)));
+
+		granted += grant - credit.grant;
+		credit.grant = grant;
+		credit.grantedAt = now;
+		credit.lastActive = now;
+		return grant;
+	}
+
+	/**
+	 * This method returns the grants of the senders which were not active for the grant lease
+	 *
+	 * @param now current {@link System#nanoTime()} value
+	 */
+	private void sweep(long now)
+	{
+		if (now - nextSweep < 0)
+			return;
+
+		nextSweep = now + GRANT_LEASE / 2;
+
+		Iterator<Credit> iterator = credits.values().iterator();
+		while (iterator.hasNext())
+		{
+			Credit credit = iterator.next();
+			if (now - credit.lastActive < GRANT_LEASE)
+				continue;
+
+			granted -= credit.grant;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * This record represents the acknowledgement of the sender frames
+	 *
+	 * @param arrived the amount of frames of the message arrived so far
+	 * @param window window granted to the sender in frames
+	 */
+	public record Acknowledgement(int arrived, int window)
+	{
+	}
+
+	/**
+	 * Credit state of a single sender
+	 *
+	 */
+	private static final class Credit
+	{
+		/**
+		 * Identifier of the message being received
+		 *
+		 */
+		private int messageId;
+
+		/**
+		 * The amount of frames of the message arrived so far, parity and duplicate frames included
+		 *
+		 */
+		private int arrived;
+
+		/**
+		 * The amount of frames arrived since the last acknowledgement
+		 *
+		 */
+		private int unacknowledged;
+
+		/**
+		 * Window granted to the sender or 0 if the sender was not granted yet
+		 *
+		 */
+		private int grant;
+
+		/**
+		 * {@link System#nanoTime()} value of the last grant
+		 *
+		 */
+		private long grantedAt;
+
+		/**
+		 * {@link System#nanoTime()} value of the last frame or grant
+		 *
+		 */
+		private long lastActive;
+	}
+}
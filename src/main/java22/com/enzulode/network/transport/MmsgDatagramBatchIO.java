@@ -0,0 +1,858 @@
+package com.enzulode.network.transport;
+
+import com.enzulode.network.util.NetworkUtils;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.foreign.MemoryLayout.PathElement.groupElement;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+/**
+ * Linux batched datagram I/O backend: the whole batch is received with a single {@code recvmmsg}
+ * and sent with a single {@code sendmmsg} syscall. Message headers are kept off heap and prepared once per batch,
+ * datagrams are placed right into the batch slots and sender addresses are decoded only when they change
+ *
+ */
+public final class MmsgDatagramBatchIO implements DatagramBatchIO
+{
+	/**
+	 * IPv4 address family
+	 *
+	 */
+	private static final short AF_INET = 2;
+
+	/**
+	 * IPv6 address family
+	 *
+	 */
+	private static final short AF_INET6 = 10;
+
+	/**
+	 * Non-blocking operation flag
+	 *
+	 */
+	private static final int MSG_DONTWAIT = 0x40;
+
+	/**
+	 * Interrupted syscall error number
+	 *
+	 */
+	private static final int EINTR = 4;
+
+	/**
+	 * Operation would block error number
+	 *
+	 */
+	private static final int EAGAIN = 11;
+
+	/**
+	 * Writable socket poll event
+	 *
+	 */
+	private static final short POLLOUT = 0x004;
+
+	/**
+	 * The longest single wait for the socket send buffer to drain in milliseconds, the backend state is checked between waits
+	 *
+	 */
+	private static final int SEND_POLL_INTERVAL = 10;
+
+	/**
+	 * Period the socket send buffer may stay full before the send fails in nanoseconds
+	 *
+	 */
+	private static final long SEND_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Socket address storage size in bytes ({@code struct sockaddr_storage})
+	 *
+	 */
+	private static final int SOCKADDR_SIZE = 128;
+
+	/**
+	 * Port layout: ports are kept in the network byte order
+	 *
+	 */
+	private static final ValueLayout.OfShort PORT = JAVA_SHORT.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/**
+	 * {@code struct iovec} layout
+	 *
+	 */
+	private static final StructLayout IOVEC = MemoryLayout.structLayout(
+			ADDRESS.withName("iov_base"),
+			JAVA_LONG.withName("iov_len")
+	);
+
+	/**
+	 * {@code struct mmsghdr} layout (64-bit Linux)
+	 *
+	 */
+	private static final StructLayout MMSGHDR = MemoryLayout.structLayout(
+			ADDRESS.withName("msg_name"),
+			JAVA_INT.withName("msg_namelen"),
+			MemoryLayout.paddingLayout(4),
+			ADDRESS.withName("msg_iov"),
+			JAVA_LONG.withName("msg_iovlen"),
+			ADDRESS.withName("msg_control"),
+			JAVA_LONG.withName("msg_controllen"),
+			JAVA_INT.withName("msg_flags"),
+			MemoryLayout.paddingLayout(4),
+			JAVA_INT.withName("msg_len"),
+			MemoryLayout.paddingLayout(4)
+	);
+
+	/**
+	 * Buffer base offset inside {@code struct iovec}
+	 *
+	 */
+	private static final long IOV_BASE = IOVEC.byteOffset(groupElement("iov_base"));
+
+	/**
+	 * Buffer length offset inside {@code struct iovec}
+	 *
+	 */
+	private static final long IOV_LEN = IOVEC.byteOffset(groupElement("iov_len"));
+
+	/**
+	 * Peer address offset inside {@code struct mmsghdr}
+	 *
+	 */
+	private static final long MSG_NAME = MMSGHDR.byteOffset(groupElement("msg_name"));
+
+	/**
+	 * Peer address length offset inside {@code struct mmsghdr}
+	 *
+	 */
+	private static final long MSG_NAMELEN = MMSGHDR.byteOffset(groupElement("msg_namelen"));
+
+	/**
+	 * Buffers offset inside {@code struct mmsghdr}
+	 *
+	 */
+	private static final long MSG_IOV = MMSGHDR.byteOffset(groupElement("msg_iov"));
+
+	/**
+	 * Buffers count offset inside {@code struct mmsghdr}
+	 *
+	 */
+	private static final long MSG_IOVLEN = MMSGHDR.byteOffset(groupElement("msg_iovlen"));
+
+	/**
+	 * Datagram length offset inside {@code struct mmsghdr}
+	 *
+	 */
+	private static final long MSG_LEN = MMSGHDR.byteOffset(groupElement("msg_len"));
+
+	/**
+	 * {@code struct pollfd} size in bytes
+	 *
+	 */
+	private static final long POLLFD_SIZE = 8;
+
+	/**
+	 * Datagram channel instance
+	 *
+	 */
+	private final DatagramChannel channel;
+
+	/**
+	 * Channel file descriptor
+	 *
+	 */
+	private final int fd;
+
+	/**
+	 * Socket address family
+	 *
+	 */
+	private final short family;
+
+	/**
+	 * Arena of the native headers
+	 *
+	 */
+	private final Arena arena;
+
+	/**
+	 * Headers of the received datagrams
+	 *
+	 */
+	private final Headers receiveHeaders;
+
+	/**
+	 * Headers of the sent datagrams
+	 *
+	 */
+	private final Headers sendHeaders;
+
+	/**
+	 * {@code struct pollfd} of the socket waited for to become writable
+	 *
+	 */
+	private final MemorySegment sendPoll;
+
+	/**
+	 * The amount of calls using the native headers. The arena is closed by the last of them once the backend is closed
+	 *
+	 */
+	private final AtomicInteger inFlight;
+
+	/**
+	 * Native headers state: set once the arena is closed
+	 *
+	 */
+	private final AtomicBoolean released;
+
+	/**
+	 * Backend state
+	 *
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Native backend constructor
+	 *
+	 * @param channel non-blocking datagram channel
+	 * @throws IOException if it's failed to get the channel address
+	 * @throws ReflectiveOperationException if the channel file descriptor is not accessible
+	 */
+	public MmsgDatagramBatchIO(DatagramChannel channel) throws IOException, ReflectiveOperationException
+	{
+		this.channel = Objects.requireNonNull(channel, "Channel cannot be null");
+
+//		Native access is checked first, so the JVM does not warn about restricted methods used by the fallback check
+		if (!MmsgDatagramBatchIO.class.getModule().isNativeAccessEnabled())
+			throw new UnsupportedOperationException("Native access is not enabled");
+
+//		The descriptor is accessible with --add-exports java.base/sun.nio.ch=ALL-UNNAMED only
+		Method getFDVal = Class.forName("sun.nio.ch.SelChImpl").getMethod("getFDVal");
+		this.fd = (int) getFDVal.invoke(channel);
+
+		this.arena = Arena.ofShared();
+		this.receiveHeaders = new Headers();
+		this.sendHeaders = new Headers();
+		this.inFlight = new AtomicInteger();
+		this.released = new AtomicBoolean();
+
+		this.sendPoll = arena.allocate(POLLFD_SIZE, 4);
+		sendPoll.set(JAVA_INT, 0, fd);
+		sendPoll.set(JAVA_SHORT, 4, POLLOUT);
+
+		try
+		{
+			this.family = socketFamily();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			arena.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * This method receives the datagrams already queued by the kernel without blocking
+	 *
+	 * @param batch batch to fill from the first slot
+	 * @return the amount of received datagrams, 0 if there are none
+	 * @throws IOException if it's failed to receive datagrams
+	 */
+	@Override
+	public int receive(DatagramBatch batch) throws IOException
+	{
+		acquire();
+		try
+		{
+			return receiveBatch(batch);
+		}
+		finally
+		{
+			release();
+		}
+	}
+
+	/**
+	 * This method sends all datagrams of the batch
+	 *
+	 * @param batch batch to send
+	 * @throws IOException if it's failed to send datagrams
+	 */
+	@Override
+	public void send(DatagramBatch batch) throws IOException
+	{
+		acquire();
+		try
+		{
+			sendBatch(batch);
+		}
+		finally
+		{
+			release();
+		}
+	}
+
+	/**
+	 * This method receives the queued datagrams with a single {@code recvmmsg} call
+	 *
+	 * @param batch batch to fill from the first slot
+	 * @return the amount of received datagrams, 0 if there are none
+	 * @throws IOException if it's failed to receive datagrams
+	 */
+	private int receiveBatch(DatagramBatch batch) throws IOException
+	{
+		Headers headers = receiveHeaders;
+		headers.prepare(batch);
+
+		for (int i = 0; i < batch.capacity(); i++)
+			headers.vector.set(JAVA_INT, i * MMSGHDR.byteSize() + MSG_NAMELEN, SOCKADDR_SIZE);
+
+		int received;
+		try
+		{
+			received = (int) Native.RECVMMSG.invokeExact(
+					headers.state,
+					fd,
+					headers.vector,
+					batch.capacity(),
+					MSG_DONTWAIT,
+					MemorySegment.NULL
+			);
+		}
+		catch (Throwable e)
+		{
+			throw new IOException("Failed to call recvmmsg", e);
+		}
+
+		if (received < 0)
+		{
+			int errno = headers.errno();
+			if (errno != EAGAIN && errno != EINTR)
+				throw new IOException("recvmmsg failed with errno " + errno);
+
+			received = 0;
+		}
+
+		for (int i = 0; i < received; i++)
+		{
+			long header = i * MMSGHDR.byteSize();
+			batch.slot(i).clear().limit(headers.vector.get(JAVA_INT, header + MSG_LEN));
+			batch.setAddress(i, headers.sender(i, headers.vector.get(JAVA_INT, header + MSG_NAMELEN)));
+		}
+
+		batch.setSize(received);
+		return received;
+	}
+
+	/**
+	 * This method sends all datagrams of the batch with as few {@code sendmmsg} calls as the socket send buffer allows
+	 *
+	 * @param batch batch to send
+	 * @throws IOException if it's failed to send datagrams
+	 */
+	private void sendBatch(DatagramBatch batch) throws IOException
+	{
+		Headers headers = sendHeaders;
+		headers.prepare(batch);
+
+		for (int i = 0; i < batch.size(); i++)
+		{
+			ByteBuffer buffer = batch.buffer(i);
+			MemorySegment iovec = headers.iovecs.asSlice(i * IOVEC.byteSize(), IOVEC.byteSize());
+			iovec.set(ADDRESS, IOV_BASE, buffer.position() == 0 ? headers.slots[i] : headers.slots[i].asSlice(buffer.position()));
+			iovec.set(JAVA_LONG, IOV_LEN, buffer.remaining());
+
+			headers.destination(i, batch.address(i));
+		}
+
+		int sent = 0;
+		long stalledSince = 0;
+		boolean stalled = false;
+		while (sent < batch.size())
+		{
+			int result;
+			try
+			{
+				result = (int) Native.SENDMMSG.invokeExact(
+						headers.state,
+						fd,
+						headers.vector.asSlice(sent * MMSGHDR.byteSize()),
+						batch.size() - sent,
+						0
+				);
+			}
+			catch (Throwable e)
+			{
+				throw new IOException("Failed to call sendmmsg", e);
+			}
+
+			if (result < 0)
+			{
+				int errno = headers.errno();
+				if (errno != EAGAIN && errno != EINTR)
+					throw new IOException("sendmmsg failed with errno " + errno);
+
+				if (errno == EAGAIN)
+				{
+//					Socket send buffer is full: datagrams are not dropped, the socket is polled until the kernel drains the buffer
+					if (!stalled)
+					{
+						stalled = true;
+						stalledSince = System.nanoTime();
+					}
+
+					awaitWritable(headers, stalledSince);
+				}
+
+				continue;
+			}
+
+			sent += result;
+			stalled = false;
+		}
+
+		for (int i = 0; i < batch.size(); i++)
+		{
+			ByteBuffer buffer = batch.buffer(i);
+			buffer.position(buffer.limit());
+		}
+	}
+
+	/**
+	 * Backend name getter
+	 *
+	 * @return backend name
+	 */
+	@Override
+	public String getName()
+	{
+		return "recvmmsg";
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Releases the native headers, the channel is not closed
+	 *
+	 */
+	@Override
+	public void close()
+	{
+		closed = true;
+
+//		Calls in flight keep using the headers, so the arena is closed by the last of them
+		if (inFlight.get() == 0)
+			releaseHeaders();
+	}
+
+	/**
+	 * This method registers the call using the native headers and checks the backend and the channel are open:
+	 * the descriptor of the closed channel may be reused
+	 *
+	 * @throws ClosedChannelException if the backend or the channel was closed
+	 */
+	private void acquire() throws ClosedChannelException
+	{
+		inFlight.incrementAndGet();
+		if (closed || !channel.isOpen())
+		{
+			release();
+			throw new ClosedChannelException();
+		}
+	}
+
+	/**
+	 * This method unregisters the call using the native headers and closes the arena if the backend was closed meanwhile
+	 *
+	 */
+	private void release()
+	{
+		if (inFlight.decrementAndGet() == 0 && closed)
+			releaseHeaders();
+	}
+
+	/**
+	 * This method closes the arena of the native headers once
+	 *
+	 */
+	private void releaseHeaders()
+	{
+		if (released.compareAndSet(false, true))
+			arena.close();
+	}
+
+	/**
+	 * This method waits for the socket send buffer to drain
+	 *
+	 * @param headers headers capturing the error number
+	 * @param stalledSince {@link System#nanoTime()} value of the first failed send
+	 * @throws IOException if the backend or the channel was closed, the buffer was not drained in time or the poll failed
+	 */
+	private void awaitWritable(Headers headers, long stalledSince) throws IOException
+	{
+		if (closed || !channel.isOpen())
+			throw new ClosedChannelException();
+
+		long remaining = SEND_TIMEOUT - (System.nanoTime() - stalledSince);
+		if (remaining <= 0)
+			throw new IOException("Socket send buffer was not drained in " + TimeUnit.NANOSECONDS.toMillis(SEND_TIMEOUT) + " ms");
+
+		int result;
+		try
+		{
+			result = (int) Native.POLL.invokeExact(
+					headers.state,
+					sendPoll,
+					1L,
+					(int) Math.max(1, Math.min(SEND_POLL_INTERVAL, TimeUnit.NANOSECONDS.toMillis(remaining)))
+			);
+		}
+		catch (Throwable e)
+		{
+			throw new IOException("Failed to call poll", e);
+		}
+
+		if (result < 0 && headers.errno() != EINTR)
+			throw new IOException("poll failed with errno " + headers.errno());
+	}
+
+	/**
+	 * This method gets the address family of the socket
+	 *
+	 * @return socket address family
+	 * @throws IOException if it's failed to get the socket address
+	 */
+	private short socketFamily() throws IOException
+	{
+		MemorySegment address = arena.allocate(SOCKADDR_SIZE);
+		MemorySegment length = arena.allocate(JAVA_INT);
+		length.set(JAVA_INT, 0, SOCKADDR_SIZE);
+
+		int result;
+		try
+		{
+			result = (int) Native.GETSOCKNAME.invokeExact(receiveHeaders.state, fd, address, length);
+		}
+		catch (Throwable e)
+		{
+			throw new IOException("Failed to call getsockname", e);
+		}
+
+		if (result < 0)
+			throw new IOException("getsockname failed with errno " + receiveHeaders.errno());
+
+		short family = address.get(JAVA_SHORT, 0);
+		if (family != AF_INET && family != AF_INET6)
+			throw new IOException("Unsupported address family " + family);
+
+		return family;
+	}
+
+	/**
+	 * Native message headers of a batch: every header refers to its own slot and peer address storage
+	 *
+	 */
+	private final class Headers
+	{
+		/**
+		 * Error number captured after the syscall
+		 *
+		 */
+		private final MemorySegment state;
+
+		/**
+		 * {@code struct mmsghdr} array
+		 *
+		 */
+		private MemorySegment vector;
+
+		/**
+		 * {@code struct iovec} array
+		 *
+		 */
+		private MemorySegment iovecs;
+
+		/**
+		 * Peer addresses storage
+		 *
+		 */
+		private MemorySegment names;
+
+		/**
+		 * Raw peer addresses of the decoded or encoded addresses
+		 *
+		 */
+		private MemorySegment cachedNames;
+
+		/**
+		 * Raw peer address lengths of the decoded addresses
+		 *
+		 */
+		private int[] cachedLengths;
+
+		/**
+		 * Decoded or encoded peer addresses
+		 *
+		 */
+		private SocketAddress[] cachedAddresses;
+
+		/**
+		 * Native segments of the batch slots
+		 *
+		 */
+		private MemorySegment[] slots;
+
+		/**
+		 * The batch the headers were prepared for
+		 *
+		 */
+		private DatagramBatch prepared;
+
+		/**
+		 * Headers constructor
+		 *
+		 */
+		private Headers()
+		{
+			this.state = arena.allocate(Linker.Option.captureStateLayout());
+		}
+
+		/**
+		 * This method points the headers to the batch slots. Headers are prepared once for the same batch
+		 *
+		 * @param batch batch to receive or send
+		 */
+		private void prepare(DatagramBatch batch)
+		{
+			if (prepared == batch)
+				return;
+
+			int capacity = batch.capacity();
+			if (slots == null || slots.length < capacity)
+			{
+				vector = arena.allocate(MMSGHDR.byteSize() * capacity, MMSGHDR.byteAlignment());
+				iovecs = arena.allocate(IOVEC.byteSize() * capacity, IOVEC.byteAlignment());
+				names = arena.allocate((long) SOCKADDR_SIZE * capacity, 8);
+				cachedNames = arena.allocate((long) SOCKADDR_SIZE * capacity, 8);
+				slots = new MemorySegment[capacity];
+			}
+
+			cachedLengths = new int[capacity];
+			cachedAddresses = new SocketAddress[capacity];
+
+			for (int i = 0; i < capacity; i++)
+			{
+				slots[i] = MemorySegment.ofBuffer(batch.slot(i).duplicate().clear());
+
+				MemorySegment iovec = iovecs.asSlice(i * IOVEC.byteSize(), IOVEC.byteSize());
+				iovec.set(ADDRESS, IOV_BASE, slots[i]);
+				iovec.set(JAVA_LONG, IOV_LEN, NetworkUtils.MAX_DATAGRAM_SIZE);
+
+				MemorySegment header = vector.asSlice(i * MMSGHDR.byteSize(), MMSGHDR.byteSize());
+				header.fill((byte) 0);
+				header.set(ADDRESS, MSG_NAME, names.asSlice((long) i * SOCKADDR_SIZE, SOCKADDR_SIZE));
+				header.set(JAVA_INT, MSG_NAMELEN, SOCKADDR_SIZE);
+				header.set(ADDRESS, MSG_IOV, iovec);
+				header.set(JAVA_LONG, MSG_IOVLEN, 1);
+			}
+
+			prepared = batch;
+		}
+
+		/**
+		 * Error number getter
+		 *
+		 * @return error number of the last failed syscall
+		 */
+		private int errno()
+		{
+			return state.get(JAVA_INT, Native.ERRNO);
+		}
+
+		/**
+		 * This method decodes the sender address of the received datagram. The address is decoded again
+		 * only if it differs from the previous sender of the same slot
+		 *
+		 * @param index slot index
+		 * @param length raw address length
+		 * @return sender address
+		 * @throws IOException if the address is not an IP one
+		 */
+		private SocketAddress sender(int index, int length) throws IOException
+		{
+			long offset = (long) index * SOCKADDR_SIZE;
+			if (cachedAddresses[index] != null && cachedLengths[index] == length
+					&& MemorySegment.mismatch(names, offset, offset + length, cachedNames, offset, offset + length) == -1)
+				return cachedAddresses[index];
+
+			int port = Short.toUnsignedInt(names.get(PORT, offset + 2));
+			InetAddress address;
+			switch (names.get(JAVA_SHORT, offset))
+			{
+				case AF_INET ->
+				{
+					byte[] bytes = new byte[4];
+					MemorySegment.copy(names, ValueLayout.JAVA_BYTE, offset + 4, bytes, 0, bytes.length);
+					address = InetAddress.getByAddress(bytes);
+				}
+				case AF_INET6 ->
+				{
+					byte[] bytes = new byte[16];
+					MemorySegment.copy(names, ValueLayout.JAVA_BYTE, offset + 8, bytes, 0, bytes.length);
+					int scope = names.get(JAVA_INT, offset + 24);
+
+//					IPv4-mapped addresses of the dual stack socket are decoded as IPv4 ones
+					address = scope == 0
+							? InetAddress.getByAddress(bytes)
+							: Inet6Address.getByAddress(null, bytes, scope);
+				}
+				default -> throw new IOException("Unsupported sender address family");
+			}
+
+			MemorySegment.copy(names, offset, cachedNames, offset, length);
+			cachedLengths[index] = length;
+			cachedAddresses[index] = new InetSocketAddress(address, port);
+			return cachedAddresses[index];
+		}
+
+		/**
+		 * This method encodes the destination address of the datagram to send. The address is encoded again
+		 * only if it differs from the previous destination of the same slot
+		 *
+		 * @param index slot index
+		 * @param destination destination address
+		 * @throws IOException if the address cannot be reached through the socket
+		 */
+		private void destination(int index, SocketAddress destination) throws IOException
+		{
+			if (destination.equals(cachedAddresses[index]))
+				return;
+
+			if (!(destination instanceof InetSocketAddress inetDestination) || inetDestination.isUnresolved())
+				throw new IOException("Unresolved destination address: " + destination);
+
+			long offset = (long) index * SOCKADDR_SIZE;
+			MemorySegment name = names.asSlice(offset, SOCKADDR_SIZE);
+			name.fill((byte) 0);
+			name.set(JAVA_SHORT, 0, family);
+			name.set(PORT, 2, (short) inetDestination.getPort());
+
+			InetAddress address = inetDestination.getAddress();
+			int length;
+			if (family == AF_INET)
+			{
+				if (!(address instanceof Inet4Address))
+					throw new IOException("IPv6 destination cannot be reached through IPv4 socket: " + destination);
+
+				MemorySegment.copy(address.getAddress(), 0, name, ValueLayout.JAVA_BYTE, 4, 4);
+				length = 16;
+			}
+			else if (address instanceof Inet4Address)
+			{
+//				IPv4 destination of the dual stack socket is an IPv4-mapped address
+				name.set(ValueLayout.JAVA_BYTE, 18, (byte) 0xff);
+				name.set(ValueLayout.JAVA_BYTE, 19, (byte) 0xff);
+				MemorySegment.copy(address.getAddress(), 0, name, ValueLayout.JAVA_BYTE, 20, 4);
+				length = 28;
+			}
+			else
+			{
+				MemorySegment.copy(address.getAddress(), 0, name, ValueLayout.JAVA_BYTE, 8, 16);
+				name.set(JAVA_INT, 24, ((Inet6Address) address).getScopeId());
+				length = 28;
+			}
+
+			vector.set(JAVA_INT, index * MMSGHDR.byteSize() + MSG_NAMELEN, length);
+			cachedAddresses[index] = destination;
+		}
+	}
+
+	/**
+	 * Native functions, linked when the first backend is opened
+	 *
+	 */
+	private static final class Native
+	{
+		/**
+		 * Error number offset inside the captured call state
+		 *
+		 */
+		private static final long ERRNO = Linker.Option.captureStateLayout().byteOffset(groupElement("errno"));
+
+		/**
+		 * {@code int recvmmsg(int, struct mmsghdr *, unsigned int, int, struct timespec *)}
+		 *
+		 */
+		private static final MethodHandle RECVMMSG = downcall(
+				"recvmmsg",
+				FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT, ADDRESS)
+		);
+
+		/**
+		 * {@code int sendmmsg(int, struct mmsghdr *, unsigned int, int)}
+		 *
+		 */
+		private static final MethodHandle SENDMMSG = downcall(
+				"sendmmsg",
+				FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT)
+		);
+
+		/**
+		 * {@code int poll(struct pollfd *, nfds_t, int)}
+		 *
+		 */
+		private static final MethodHandle POLL = downcall(
+				"poll",
+				FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG, JAVA_INT)
+		);
+
+		/**
+		 * {@code int getsockname(int, struct sockaddr *, socklen_t *)}
+		 *
+		 */
+		private static final MethodHandle GETSOCKNAME = downcall(
+				"getsockname",
+				FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS, ADDRESS)
+		);
+
+		/**
+		 * This method links the C library function capturing its error number
+		 *
+		 * @param name function name
+		 * @param descriptor function descriptor
+		 * @return function handle taking the captured state segment first
+		 */
+		private static MethodHandle downcall(String name, FunctionDescriptor descriptor)
+		{
+			Linker linker = Linker.nativeLinker();
+			return linker.downcallHandle(
+					linker.defaultLookup().find(name).orElseThrow(() -> new UnsatisfiedLinkError(name + " is not available")),
+					descriptor,
+					Linker.Option.captureCallState("errno")
+			);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package com.enzulode.network.perf;
+
+import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.exception.ServerNotAvailableException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Allocation budget check of the request/response hot path.
+ * For every server and client combination a small request is exchanged on loopback and the amount of heap bytes
+ * allocated by all threads per round trip is compared with the budget from {@code allocation-budget.properties}.
+ * The check exits with a non-zero status if any budget is exceeded
+ *
+ * Options:
+ * <pre>
+ * --warmup=N                       the amount of round trips before measurement (5000)
+ * --iterations=N                   the amount of measured round trips (5000)
+ * --request-size=N                 request payload size in bytes (128)
+ * --response-size=N                response payload size in bytes (128)
+ * </pre>
+ *
+ */
+public final class AllocationBudget
+{
+	/**
+	 * Budget resource name
+	 *
+	 */
+	private static final String BUDGET_RESOURCE = "allocation-budget.properties";
+
+	/**
+	 * Endpoint kinds
+	 *
+	 */
+	private static final String[] KINDS = {"socket", "channel"};
+
+	/**
+	 * Thread MX bean providing allocated bytes
+	 *
+	 */
+	private final com.sun.management.ThreadMXBean threads;
+
+	/**
+	 * Budgets in bytes per round trip by {@code server.client} combination
+	 *
+	 */
+	private final Properties budgets;
+
+	/**
+	 * The amount of round trips before measurement
+	 *
+	 */
+	private final int warmup;
+
+	/**
+	 * The amount of measured round trips
+	 *
+	 */
+	private final int iterations;
+
+	/**
+	 * Request payload size
+	 *
+	 */
+	private final int requestSize;
+
+	/**
+	 * Response payload size
+	 *
+	 */
+	private final int responseSize;
+
+	/**
+	 * Allocation budget check constructor
+	 *
+	 * @param options command line options
+	 * @throws IOException if it's failed to read the budgets
+	 */
+	public AllocationBudget(Options options) throws IOException
+	{
+		this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		this.budgets = new Properties();
+		this.warmup = options.getInt("warmup", 5000);
+		this.iterations = options.getInt("iterations", 5000);
+		this.requestSize = options.getInt("request-size", 128);
+		this.responseSize = options.getInt("response-size", 128);
+
+		try (InputStream budgetStream = AllocationBudget.class.getClassLoader().getResourceAsStream(BUDGET_RESOURCE))
+		{
+			if (budgetStream == null)
+				throw new IOException("Allocation budget resource was not found: " + BUDGET_RESOURCE);
+
+			budgets.load(budgetStream);
+		}
+
+		if (!threads.isThreadAllocatedMemorySupported())
+			throw new IllegalStateException("Thread allocated memory measurement is not supported");
+
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	/**
+	 * Allocation budget check entry point
+	 *
+	 * @param args check options
+	 * @throws Exception if the check failed to run
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		boolean exceeded = new AllocationBudget(new Options(args)).run();
+		System.exit(exceeded ? 1 : 0);
+	}
+
+	/**
+	 * This method measures every server and client combination
+	 *
+	 * @return true if any budget was exceeded
+	 * @throws NetworkException if it's failed to start a server or open a client
+	 * @throws ServerNotAvailableException if the server did not respond
+	 */
+	public boolean run() throws NetworkException, ServerNotAvailableException
+	{
+		boolean exceeded = false;
+
+		System.out.printf(Locale.ROOT, "%-18s %14s %14s%n", "server.client", "bytes/trip", "budget");
+		for (String serverKind : KINDS)
+		{
+			for (String clientKind : KINDS)
+			{
+				String combination = serverKind + "." + clientKind;
+				long allocated = measure(serverKind, clientKind);
+
+				String budget = budgets.getProperty(combination);
+				boolean failed = budget != null && allocated > Long.parseLong(budget.trim());
+				exceeded |= failed;
+
+				System.out.printf(Locale.ROOT, "%-18s %14d %14s%s%n",
+						combination,
+						allocated,
+						budget == null ? "-" : budget.trim(),
+						failed ? "  EXCEEDED" : ""
+				);
+			}
+		}
+
+		return exceeded;
+	}
+
+	/**
+	 * This method measures the amount of bytes allocated per round trip by all threads
+	 *
+	 * @param serverKind server implementation
+	 * @param clientKind client implementation
+	 * @return allocated bytes per round trip
+	 * @throws NetworkException if it's failed to start the server or open the client
+	 * @throws ServerNotAvailableException if the server did not respond
+	 */
+	private long measure(String serverKind, String clientKind) throws NetworkException, ServerNotAvailableException
+	{
+		try (
+				Endpoints.Server server = Endpoints.startServer(serverKind, Endpoints.ECHO_HANDLER);
+				Endpoints.Client client = Endpoints.openClient(clientKind, server.getAddress())
+		)
+		{
+			LoadRequest request = new LoadRequest(new byte[requestSize], responseSize);
+
+			for (int i = 0; i < warmup; i++)
+				client.exchange(request);
+
+			Map<Long, Long> before = allocatedBytes();
+			for (int i = 0; i < iterations; i++)
+				client.exchange(request);
+
+			Map<Long, Long> after = allocatedBytes();
+
+//			Threads finished during the measurement (e.g. of the previous endpoints) are not taken into account
+			long allocated = 0;
+			for (Map.Entry<Long, Long> thread : after.entrySet())
+				allocated += thread.getValue() - before.getOrDefault(thread.getKey(), 0L);
+
+			return allocated / iterations;
+		}
+	}
+
+	/**
+	 * This method collects the amount of bytes allocated by every live thread
+	 *
+	 * @return allocated bytes by thread identifier
+	 */
+	private Map<Long, Long> allocatedBytes()
+	{
+		long[] ids = threads.getAllThreadIds();
+		long[] bytes = threads.getThreadAllocatedBytes(ids);
+
+		Map<Long, Long> allocated = new HashMap<>();
+		for (int i = 0; i < ids.length; i++)
+			if (bytes[i] >= 0)
+				allocated.put(ids[i], bytes[i]);
+
+		return allocated;
+	}
+}
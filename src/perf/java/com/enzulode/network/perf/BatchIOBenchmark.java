@@ -0,0 +1,196 @@
+package com.enzulode.network.perf;
+
+import com.enzulode.network.transport.DatagramBatch;
+import com.enzulode.network.transport.DatagramBatchIO;
+import com.enzulode.network.transport.NioDatagramBatchIO;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback packet rate benchmark of the batched datagram I/O backends.
+ * A sender thread sends datagrams by batches as fast as it can, the receiver receives them by batches,
+ * both sides report their packet rates. The native backend is measured only if it is available in this JVM
+ *
+ * Options:
+ * <pre>
+ * --backend=nio|native|both        measured backends (both)
+ * --datagrams=N                    the amount of datagrams sent by every run (2000000)
+ * --size=BYTES                     datagram size (64)
+ * --batch=N                        the amount of datagrams per batch (16)
+ * </pre>
+ *
+ */
+public final class BatchIOBenchmark
+{
+	/**
+	 * Receiver idle period closing the run after the sender finished
+	 *
+	 */
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+	/**
+	 * Socket buffers size in bytes
+	 *
+	 */
+	private static final int SOCKET_BUFFER_SIZE = 8 * 1024 * 1024;
+
+	/**
+	 * The amount of datagrams sent by every run
+	 *
+	 */
+	private final int datagrams;
+
+	/**
+	 * Datagram size in bytes
+	 *
+	 */
+	private final int size;
+
+	/**
+	 * The amount of datagrams per batch
+	 *
+	 */
+	private final int batchSize;
+
+	/**
+	 * Batched I/O benchmark constructor
+	 *
+	 * @param options benchmark options
+	 */
+	public BatchIOBenchmark(Options options)
+	{
+		this.datagrams = options.getInt("datagrams", 2_000_000);
+		this.size = options.getInt("size", 64);
+		this.batchSize = options.getInt("batch", DatagramBatchIO.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Batched I/O benchmark entry point
+	 *
+	 * @param args benchmark options
+	 * @throws Exception if the benchmark failed to run
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		Options options = new Options(args);
+		String backend = options.get("backend", "both");
+		BatchIOBenchmark benchmark = new BatchIOBenchmark(options);
+
+		System.out.printf(Locale.ROOT, "%-10s %14s %14s %10s%n", "backend", "sent pps", "received pps", "lost");
+		if (!backend.equals("native"))
+			benchmark.run(false);
+
+		if (!backend.equals("nio"))
+			benchmark.run(true);
+	}
+
+	/**
+	 * This method sends the datagrams through the loopback and prints the packet rates
+	 *
+	 * @param nativeBackend true if the native backend has to be measured
+	 * @throws IOException if it's failed to open channels, send or receive datagrams
+	 * @throws InterruptedException if the benchmark was interrupted
+	 */
+	public void run(boolean nativeBackend) throws IOException, InterruptedException
+	{
+		try (
+				DatagramChannel receiverChannel = open();
+				DatagramChannel senderChannel = open()
+		)
+		{
+			DatagramBatchIO receiver = nativeBackend ? DatagramBatchIO.open(receiverChannel) : new NioDatagramBatchIO(receiverChannel);
+			DatagramBatchIO sender = nativeBackend ? DatagramBatchIO.open(senderChannel) : new NioDatagramBatchIO(senderChannel);
+
+			if (nativeBackend && receiver instanceof NioDatagramBatchIO)
+			{
+				System.out.printf(Locale.ROOT, "%-10s %s%n", "native", "not available in this JVM");
+				return;
+			}
+
+			SocketAddress destination = receiverChannel.getLocalAddress();
+			long[] sendNanos = new long[1];
+			IOException[] sendFailure = new IOException[1];
+
+			Thread senderThread = new Thread(() -> {
+				DatagramBatch batch = new DatagramBatch(batchSize);
+				byte[] payload = new byte[size];
+
+				long start = System.nanoTime();
+				try
+				{
+					for (int sent = 0; sent < datagrams; sent += batch.size())
+					{
+						batch.clear();
+						while (!batch.isFull() && sent + batch.size() < datagrams)
+							batch.add(payload, destination);
+
+						sender.send(batch);
+					}
+				}
+				catch (IOException e)
+				{
+					sendFailure[0] = e;
+				}
+
+				sendNanos[0] = System.nanoTime() - start;
+			}, "batch-io-sender");
+
+			DatagramBatch batch = new DatagramBatch(batchSize);
+			long received = 0;
+			long start = System.nanoTime();
+			long lastReceived = start;
+
+			senderThread.start();
+			while (senderThread.isAlive() || System.nanoTime() - lastReceived < IDLE_NANOS)
+			{
+				int count = receiver.receive(batch);
+				if (count == 0)
+				{
+					Thread.onSpinWait();
+					continue;
+				}
+
+				received += count;
+				lastReceived = System.nanoTime();
+				if (received == datagrams)
+					break;
+			}
+
+			senderThread.join();
+			if (sendFailure[0] != null)
+				throw sendFailure[0];
+
+			System.out.printf(Locale.ROOT, "%-10s %14.0f %14.0f %10d%n",
+					receiver.getName(),
+					datagrams * 1e9 / sendNanos[0],
+					received * 1e9 / (lastReceived - start),
+					datagrams - received
+			);
+
+			receiver.close();
+			sender.close();
+		}
+	}
+
+	/**
+	 * This method opens a non-blocking loopback channel with large socket buffers
+	 *
+	 * @return datagram channel
+	 * @throws IOException if it's failed to open the channel
+	 */
+	private static DatagramChannel open() throws IOException
+	{
+		DatagramChannel channel = DatagramChannel.open();
+		channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+		channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_SIZE);
+		channel.bind(new InetSocketAddress("127.0.0.1", 0));
+		channel.configureBlocking(false);
+		return channel;
+	}
+}
@@ -0,0 +1,299 @@
+package com.enzulode.network.perf;
+
+import com.enzulode.network.LocalClient;
+import com.enzulode.network.UDPChannelClient;
+import com.enzulode.network.UDPChannelServer;
+import com.enzulode.network.UDPSocketClient;
+import com.enzulode.network.UDPSocketServer;
+import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.exception.ServerNotAvailableException;
+import com.enzulode.network.handling.RequestHandler;
+import com.enzulode.network.model.interconnection.Request;
+import com.enzulode.network.model.interconnection.Response;
+import com.enzulode.network.transport.DatagramTransport;
+import com.enzulode.network.transport.SharedMemoryDatagramTransport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loopback servers and clients of the performance harness
+ *
+ */
+public final class Endpoints
+{
+	/**
+	 * Logger instance
+	 *
+	 */
+	private static final Logger logger = Logger.getLogger(Endpoints.class.getName());
+
+	/**
+	 * Echo handler: responds with a payload of the requested size
+	 *
+	 */
+	public static final RequestHandler ECHO_HANDLER = request -> {
+		if (request instanceof LoadRequest loadRequest)
+			return new LoadResponse(new byte[loadRequest.getResponseSize()]);
+
+		return new LoadResponse(new byte[0]);
+	};
+
+	private Endpoints()
+	{
+	}
+
+	/**
+	 * Common client view
+	 *
+	 */
+	public interface Client extends AutoCloseable
+	{
+		/**
+		 * This method sends a request and waits for the response
+		 *
+		 * @param request request to be sent
+		 * @return response instance
+		 * @throws NetworkException if it's failed to send the request or receive the response
+		 * @throws ServerNotAvailableException if the server did not respond in time
+		 */
+		Response exchange(Request request) throws NetworkException, ServerNotAvailableException;
+
+		@Override
+		void close() throws NetworkException;
+	}
+
+	/**
+	 * Running server view
+	 *
+	 */
+	public interface Server extends AutoCloseable
+	{
+		/**
+		 * Server address getter
+		 *
+		 * @return the address server is bound to
+		 */
+		InetSocketAddress getAddress();
+
+		@Override
+		void close() throws NetworkException;
+	}
+
+	/**
+	 * This method starts a loopback server handling requests on a daemon thread.
+	 * The server is bound to the local endpoint as well, so local clients may call it
+	 *
+	 * @param kind server kind: socket, channel or shm (channel server over the shared memory transport)
+	 * @param handler request handler
+	 * @return running server
+	 * @throws NetworkException if it's failed to open the server
+	 */
+	public static Server startServer(String kind, RequestHandler handler) throws NetworkException
+	{
+		switch (kind)
+		{
+			case "socket":
+			{
+				UDPSocketServer server = new UDPSocketServer(0);
+				server.bindLocal(localName(server.getServerAddress()));
+				server.subscribe(handler);
+				daemon("socket-server", () -> {
+					try
+					{
+						server.handleIncomingRequests();
+					}
+					catch (NetworkException e)
+					{
+						logger.log(Level.SEVERE, "Socket server stopped", e);
+					}
+				});
+
+				return new Server()
+				{
+					@Override
+					public InetSocketAddress getAddress()
+					{
+						return server.getServerAddress();
+					}
+
+					@Override
+					public void close() throws NetworkException
+					{
+						server.close();
+					}
+				};
+			}
+
+			case "channel":
+			case "shm":
+			{
+				UDPChannelServer server = kind.equals("shm")
+						? new UDPChannelServer(openSharedMemoryTransport(), new InetSocketAddress("127.0.0.1", 0))
+						: new UDPChannelServer(0);
+				server.bindLocal(localName(server.getServerAddress()));
+				server.addRequestHandler(handler);
+
+				AtomicBoolean closed = new AtomicBoolean();
+				daemon("channel-server", () -> {
+					try
+					{
+						while (!closed.get())
+							server.handleRequest();
+					}
+					catch (NetworkException e)
+					{
+//						Closing the server interrupts the request waiting
+						if (!closed.get())
+							logger.log(Level.SEVERE, "Channel server stopped", e);
+					}
+				});
+
+				return new Server()
+				{
+					@Override
+					public InetSocketAddress getAddress()
+					{
+						return server.getServerAddress();
+					}
+
+					@Override
+					public void close() throws NetworkException
+					{
+						closed.set(true);
+						server.close();
+					}
+				};
+			}
+
+			default:
+				throw new IllegalArgumentException("Unknown server kind: " + kind);
+		}
+	}
+
+	/**
+	 * This method opens a client
+	 *
+	 * @param kind client kind: socket, channel, shm (channel client over the shared memory transport)
+	 * or local (in-process calls of the server started by this JVM)
+	 * @param address server address
+	 * @return client instance
+	 * @throws NetworkException if it's failed to open the client
+	 */
+	public static Client openClient(String kind, InetSocketAddress address) throws NetworkException
+	{
+		String host = address.getHostString();
+		int port = address.getPort();
+
+		switch (kind)
+		{
+			case "socket":
+			{
+				UDPSocketClient client = new UDPSocketClient(0, host, port);
+				return new Client()
+				{
+					@Override
+					public Response exchange(Request request) throws NetworkException, ServerNotAvailableException
+					{
+						return client.sendRequestAndWaitResponse(request);
+					}
+
+					@Override
+					public void close() throws NetworkException
+					{
+						client.close();
+					}
+				};
+			}
+
+			case "channel":
+			case "shm":
+			{
+				UDPChannelClient client = kind.equals("shm")
+						? new UDPChannelClient(openSharedMemoryTransport(), 0, host, port)
+						: new UDPChannelClient(0, host, port);
+				return new Client()
+				{
+					@Override
+					public Response exchange(Request request) throws NetworkException, ServerNotAvailableException
+					{
+						return client.sendRequestAndWaitResponse(request);
+					}
+
+					@Override
+					public void close() throws NetworkException
+					{
+						client.close();
+					}
+				};
+			}
+
+			case "local":
+			{
+				LocalClient client = new LocalClient(localName(address));
+				return new Client()
+				{
+					@Override
+					public Response exchange(Request request) throws NetworkException, ServerNotAvailableException
+					{
+						return client.sendRequestAndWaitResponse(request);
+					}
+
+					@Override
+					public void close()
+					{
+						client.close();
+					}
+				};
+			}
+
+			default:
+				throw new IllegalArgumentException("Unknown client kind: " + kind);
+		}
+	}
+
+	/**
+	 * This method opens the shared memory transport
+	 *
+	 * @return shared memory transport instance
+	 * @throws NetworkException if it's failed to create the transport directory
+	 */
+	private static DatagramTransport openSharedMemoryTransport() throws NetworkException
+	{
+		try
+		{
+			return new SharedMemoryDatagramTransport();
+		}
+		catch (IOException e)
+		{
+			throw new NetworkException("Failed to open the shared memory transport", e);
+		}
+	}
+
+	/**
+	 * This method resolves the local endpoint name of the server started by this JVM
+	 *
+	 * @param address server address
+	 * @return local endpoint name
+	 */
+	private static String localName(InetSocketAddress address)
+	{
+		return "perf-" + address.getPort();
+	}
+
+	/**
+	 * This method starts a daemon thread
+	 *
+	 * @param name thread name
+	 * @param body thread body
+	 */
+	private static void daemon(String name, Runnable body)
+	{
+		Thread thread = new Thread(body, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+}
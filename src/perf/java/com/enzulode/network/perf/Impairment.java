@@ -0,0 +1,247 @@
+package com.enzulode.network.perf;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Network impairment settings of the {@link ImpairmentProxy}.
+ * Every setting is applied to both directions independently
+ *
+ */
+public final class Impairment
+{
+	/**
+	 * Datagram loss probability
+	 *
+	 */
+	private double loss;
+
+	/**
+	 * Datagram duplication probability
+	 *
+	 */
+	private double duplication;
+
+	/**
+	 * Datagram reordering probability
+	 *
+	 */
+	private double reordering;
+
+	/**
+	 * Extra delay of the reordered datagrams in nanoseconds
+	 *
+	 */
+	private long reorderingDelayNanos;
+
+	/**
+	 * Base delay in nanoseconds
+	 *
+	 */
+	private long delayNanos;
+
+	/**
+	 * Delay jitter in nanoseconds
+	 *
+	 */
+	private long jitterNanos;
+
+	/**
+	 * Bandwidth limit in bytes per second or 0 if bandwidth is not limited
+	 *
+	 */
+	private long bandwidth;
+
+	/**
+	 * Impairment constructor: nothing is impaired by default
+	 *
+	 */
+	public Impairment()
+	{
+		this.reorderingDelayNanos = TimeUnit.MILLISECONDS.toNanos(5);
+	}
+
+	/**
+	 * This method reads impairment settings from the options:
+	 * {@code --loss}, {@code --duplication}, {@code --reordering} (probabilities from 0 to 1),
+	 * {@code --reordering-delay-ms}, {@code --delay-ms}, {@code --jitter-ms} and {@code --bandwidth} (bytes per second)
+	 *
+	 * @param options command line options
+	 * @return impairment settings
+	 */
+	public static Impairment fromOptions(Options options)
+	{
+		Impairment impairment = new Impairment();
+		impairment.setLoss(options.getDouble("loss", 0));
+		impairment.setDuplication(options.getDouble("duplication", 0));
+		impairment.setReordering(options.getDouble("reordering", 0));
+		impairment.setReorderingDelay(options.getDouble("reordering-delay-ms", 5));
+		impairment.setDelay(options.getDouble("delay-ms", 0));
+		impairment.setJitter(options.getDouble("jitter-ms", 0));
+		impairment.setBandwidth(options.getInt("bandwidth", 0));
+		return impairment;
+	}
+
+	/**
+	 * Loss probability setter
+	 *
+	 * @param loss probability from 0 to 1
+	 */
+	public void setLoss(double loss)
+	{
+		this.loss = probability(loss);
+	}
+
+	/**
+	 * Duplication probability setter
+	 *
+	 * @param duplication probability from 0 to 1
+	 */
+	public void setDuplication(double duplication)
+	{
+		this.duplication = probability(duplication);
+	}
+
+	/**
+	 * Reordering probability setter
+	 *
+	 * @param reordering probability from 0 to 1
+	 */
+	public void setReordering(double reordering)
+	{
+		this.reordering = probability(reordering);
+	}
+
+	/**
+	 * Reordered datagrams extra delay setter
+	 *
+	 * @param millis extra delay in milliseconds
+	 */
+	public void setReorderingDelay(double millis)
+	{
+		this.reorderingDelayNanos = nanos(millis);
+	}
+
+	/**
+	 * Base delay setter
+	 *
+	 * @param millis delay in milliseconds
+	 */
+	public void setDelay(double millis)
+	{
+		this.delayNanos = nanos(millis);
+	}
+
+	/**
+	 * Delay jitter setter: the delay is uniformly distributed in range of the base delay plus-minus jitter
+	 *
+	 * @param millis jitter in milliseconds
+	 */
+	public void setJitter(double millis)
+	{
+		this.jitterNanos = nanos(millis);
+	}
+
+	/**
+	 * Bandwidth limit setter
+	 *
+	 * @param bandwidth bytes per second or 0 to disable the limit
+	 */
+	public void setBandwidth(long bandwidth)
+	{
+		if (bandwidth < 0)
+			throw new IllegalArgumentException("Bandwidth cannot be negative");
+
+		this.bandwidth = bandwidth;
+	}
+
+	/**
+	 * This method decides if the datagram is lost
+	 *
+	 * @param random random instance
+	 * @return true if the datagram has to be dropped
+	 */
+	boolean lose(Random random)
+	{
+		return loss > 0 && random.nextDouble() < loss;
+	}
+
+	/**
+	 * This method decides if the datagram is duplicated
+	 *
+	 * @param random random instance
+	 * @return true if the datagram has to be sent twice
+	 */
+	boolean duplicate(Random random)
+	{
+		return duplication > 0 && random.nextDouble() < duplication;
+	}
+
+	/**
+	 * This method picks the datagram delay
+	 *
+	 * @param random random instance
+	 * @return delay in nanoseconds
+	 */
+	long delay(Random random)
+	{
+		long delay = delayNanos;
+		if (jitterNanos > 0)
+			delay += (long) ((random.nextDouble() * 2 - 1) * jitterNanos);
+
+		if (reordering > 0 && random.nextDouble() < reordering)
+			delay += reorderingDelayNanos;
+
+		return Math.max(delay, 0);
+	}
+
+	/**
+	 * This method computes the datagram transmission time on the limited link
+	 *
+	 * @param size datagram size in bytes
+	 * @return transmission time in nanoseconds or 0 if bandwidth is not limited
+	 */
+	long transmissionTime(int size)
+	{
+		return bandwidth == 0 ? 0 : size * TimeUnit.SECONDS.toNanos(1) / bandwidth;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "loss=" + loss
+				+ " duplication=" + duplication
+				+ " reordering=" + reordering
+				+ " delay=" + TimeUnit.NANOSECONDS.toMicros(delayNanos) + "us"
+				+ " jitter=" + TimeUnit.NANOSECONDS.toMicros(jitterNanos) + "us"
+				+ " bandwidth=" + (bandwidth == 0 ? "unlimited" : bandwidth + "B/s");
+	}
+
+	/**
+	 * This method validates the probability
+	 *
+	 * @param probability probability
+	 * @return probability
+	 */
+	private static double probability(double probability)
+	{
+		if (probability < 0 || probability > 1)
+			throw new IllegalArgumentException("Probability has to be in range from 0 to 1");
+
+		return probability;
+	}
+
+	/**
+	 * This method converts milliseconds to nanoseconds
+	 *
+	 * @param millis non-negative milliseconds
+	 * @return nanoseconds
+	 */
+	private static long nanos(double millis)
+	{
+		if (millis < 0)
+			throw new IllegalArgumentException("Delay cannot be negative");
+
+		return (long) (millis * 1e6);
+	}
+}
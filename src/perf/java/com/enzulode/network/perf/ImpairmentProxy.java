@@ -0,0 +1,449 @@
+package com.enzulode.network.perf;
+
+import com.enzulode.network.util.NetworkUtils;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Localhost UDP proxy impairing the traffic between clients and a server.
+ * Every client gets its own upstream socket, so the server responds through the proxy as well.
+ * Datagrams of both directions are dropped, duplicated, delayed, reordered and rate limited according to
+ * the {@link Impairment} settings
+ *
+ * Options:
+ * <pre>
+ * --listen=PORT                    proxy port (0 - any available port)
+ * --target=HOST:PORT               server address
+ * --seed=N                         random seed of the impairments
+ * </pre>
+ * and impairment options described in {@link Impairment#fromOptions(Options)}
+ *
+ */
+public final class ImpairmentProxy implements AutoCloseable
+{
+	/**
+	 * Logger instance
+	 *
+	 */
+	private static final Logger logger = Logger.getLogger(ImpairmentProxy.class.getName());
+
+	/**
+	 * Client facing socket
+	 *
+	 */
+	private final DatagramSocket frontSocket;
+
+	/**
+	 * Server address
+	 *
+	 */
+	private final SocketAddress target;
+
+	/**
+	 * Upstream sockets by client address
+	 *
+	 */
+	private final ConcurrentMap<SocketAddress, DatagramSocket> upstreamSockets;
+
+	/**
+	 * Client to server link
+	 *
+	 */
+	private final Link upstream;
+
+	/**
+	 * Server to client link
+	 *
+	 */
+	private final Link downstream;
+
+	/**
+	 * Datagrams waiting for delivery
+	 *
+	 */
+	private final DelayQueue<Delivery> deliveries;
+
+	/**
+	 * Delivery sequence: datagrams with the same delivery time are sent in the order they were received
+	 *
+	 */
+	private final AtomicLong sequence;
+
+	/**
+	 * Proxy state
+	 *
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Impairment proxy constructor
+	 *
+	 * @param listenPort proxy port (0 - any available port)
+	 * @param target server address
+	 * @param impairment impairment settings
+	 * @param seed random seed of the impairments
+	 * @throws IOException if it's failed to open the proxy socket
+	 */
+	public ImpairmentProxy(int listenPort, SocketAddress target, Impairment impairment, long seed) throws IOException
+	{
+		Objects.requireNonNull(target, "Target address cannot be null");
+		Objects.requireNonNull(impairment, "Impairment cannot be null");
+
+		this.frontSocket = new DatagramSocket(new InetSocketAddress("127.0.0.1", listenPort));
+		this.target = target;
+		this.upstreamSockets = new ConcurrentHashMap<>();
+		this.upstream = new Link(impairment, new Random(seed));
+		this.downstream = new Link(impairment, new Random(seed + 1));
+		this.deliveries = new DelayQueue<>();
+		this.sequence = new AtomicLong();
+
+		daemon("proxy-front", this::receiveFromClients);
+		daemon("proxy-delivery", this::deliver);
+	}
+
+	/**
+	 * Impairment proxy entry point
+	 *
+	 * @param args proxy options
+	 * @throws Exception if the proxy failed
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		Options options = new Options(args);
+		String target = options.get("target", null);
+		if (target == null)
+			throw new IllegalArgumentException("Target address has to be provided with --target=HOST:PORT");
+
+		Impairment impairment = Impairment.fromOptions(options);
+		try (ImpairmentProxy proxy = new ImpairmentProxy(
+				options.getInt("listen", 0),
+				parseAddress(target),
+				impairment,
+				options.getInt("seed", 0)
+		))
+		{
+			System.out.println("Proxy " + proxy.getAddress() + " -> " + target + ": " + impairment);
+			while (true)
+			{
+				TimeUnit.SECONDS.sleep(10);
+				System.out.println(proxy.statistics());
+			}
+		}
+	}
+
+	/**
+	 * Proxy address getter
+	 *
+	 * @return the address clients have to send requests to
+	 */
+	public InetSocketAddress getAddress()
+	{
+		return new InetSocketAddress("127.0.0.1", frontSocket.getLocalPort());
+	}
+
+	/**
+	 * This method describes forwarded, dropped and duplicated datagrams of both directions
+	 *
+	 * @return proxy statistics
+	 */
+	public String statistics()
+	{
+		return "upstream: " + upstream + ", downstream: " + downstream;
+	}
+
+	/**
+	 * This method parses the HOST:PORT address
+	 *
+	 * @param address address string
+	 * @return socket address
+	 */
+	public static InetSocketAddress parseAddress(String address)
+	{
+		int separator = address.lastIndexOf(':');
+		if (separator < 0)
+			throw new IllegalArgumentException("Address has to be provided as HOST:PORT");
+
+		return new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+	}
+
+	/**
+	 * This method receives client datagrams and schedules them to the server
+	 *
+	 */
+	private void receiveFromClients()
+	{
+		byte[] buffer = new byte[NetworkUtils.MAX_DATAGRAM_SIZE];
+		DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+		while (!closed)
+		{
+			try
+			{
+				frontSocket.receive(packet);
+
+				SocketAddress client = packet.getSocketAddress();
+				DatagramSocket upstreamSocket = upstreamSockets.computeIfAbsent(client, this::openUpstreamSocket);
+				if (upstreamSocket == null)
+					continue;
+
+				byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+				upstream.schedule(upstreamSocket, data, target);
+			}
+			catch (IOException e)
+			{
+				if (!closed)
+					logger.log(Level.WARNING, "Failed to receive a client datagram", e);
+			}
+		}
+	}
+
+	/**
+	 * This method opens an upstream socket of the client and starts receiving server datagrams for it
+	 *
+	 * @param client client address
+	 * @return upstream socket or null if it's failed to open it
+	 */
+	private DatagramSocket openUpstreamSocket(SocketAddress client)
+	{
+		try
+		{
+			DatagramSocket upstreamSocket = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0));
+			daemon("proxy-upstream-" + upstreamSocket.getLocalPort(), () -> receiveFromServer(upstreamSocket, client));
+			return upstreamSocket;
+		}
+		catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to open an upstream socket", e);
+			return null;
+		}
+	}
+
+	/**
+	 * This method receives server datagrams and schedules them to the client
+	 *
+	 * @param upstreamSocket upstream socket of the client
+	 * @param client client address
+	 */
+	private void receiveFromServer(DatagramSocket upstreamSocket, SocketAddress client)
+	{
+		byte[] buffer = new byte[NetworkUtils.MAX_DATAGRAM_SIZE];
+		DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+		while (!closed)
+		{
+			try
+			{
+				upstreamSocket.receive(packet);
+
+				byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength());
+				downstream.schedule(frontSocket, data, client);
+			}
+			catch (IOException e)
+			{
+				if (!closed)
+					logger.log(Level.WARNING, "Failed to receive a server datagram", e);
+			}
+		}
+	}
+
+	/**
+	 * This method sends scheduled datagrams when their delivery time comes
+	 *
+	 */
+	private void deliver()
+	{
+		while (!closed)
+		{
+			try
+			{
+				Delivery delivery = deliveries.take();
+				delivery.socket().send(new DatagramPacket(delivery.data(), delivery.data().length, delivery.destination()));
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			catch (IOException e)
+			{
+				if (!closed)
+					logger.log(Level.WARNING, "Failed to deliver a datagram", e);
+			}
+		}
+	}
+
+	/**
+	 * This method starts a daemon thread
+	 *
+	 * @param name thread name
+	 * @param body thread body
+	 */
+	private static void daemon(String name, Runnable body)
+	{
+		Thread thread = new Thread(body, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Method forced by {@link AutoCloseable} interface.
+	 * Closes the proxy sockets, scheduled datagrams are dropped
+	 *
+	 */
+	@Override
+	public void close()
+	{
+		closed = true;
+
+		frontSocket.close();
+		for (DatagramSocket upstreamSocket : upstreamSockets.values())
+			upstreamSocket.close();
+
+		deliveries.clear();
+	}
+
+	/**
+	 * Single direction of the impaired link
+	 *
+	 */
+	private final class Link
+	{
+		/**
+		 * Impairment settings
+		 *
+		 */
+		private final Impairment impairment;
+
+		/**
+		 * Random instance
+		 *
+		 */
+		private final Random random;
+
+		/**
+		 * Forwarded datagrams counter
+		 *
+		 */
+		private final LongAdder forwarded;
+
+		/**
+		 * Dropped datagrams counter
+		 *
+		 */
+		private final LongAdder dropped;
+
+		/**
+		 * Duplicated datagrams counter
+		 *
+		 */
+		private final LongAdder duplicated;
+
+		/**
+		 * The time the link finishes transmitting already scheduled datagrams
+		 *
+		 */
+		private long busyUntil;
+
+		/**
+		 * Link constructor
+		 *
+		 * @param impairment impairment settings
+		 * @param random random instance
+		 */
+		Link(Impairment impairment, Random random)
+		{
+			this.impairment = impairment;
+			this.random = random;
+			this.forwarded = new LongAdder();
+			this.dropped = new LongAdder();
+			this.duplicated = new LongAdder();
+		}
+
+		/**
+		 * This method schedules the datagram delivery
+		 *
+		 * @param socket socket the datagram is sent with
+		 * @param data datagram data
+		 * @param destination datagram destination
+		 */
+		synchronized void schedule(DatagramSocket socket, byte[] data, SocketAddress destination)
+		{
+			if (impairment.lose(random))
+			{
+				dropped.increment();
+				return;
+			}
+
+			int copies = 1;
+			if (impairment.duplicate(random))
+			{
+				duplicated.increment();
+				copies = 2;
+			}
+
+			long now = System.nanoTime();
+			for (int i = 0; i < copies; i++)
+			{
+//				Datagrams are transmitted one by one, then every datagram is delayed on its own
+				busyUntil = Math.max(busyUntil, now) + impairment.transmissionTime(data.length);
+				long deliveryTime = busyUntil + impairment.delay(random);
+
+				deliveries.add(new Delivery(socket, data, destination, deliveryTime, sequence.incrementAndGet()));
+				forwarded.increment();
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return "forwarded=" + forwarded.sum() + " dropped=" + dropped.sum() + " duplicated=" + duplicated.sum();
+		}
+	}
+
+	/**
+	 * Scheduled datagram
+	 *
+	 * @param socket socket the datagram is sent with
+	 * @param data datagram data
+	 * @param destination datagram destination
+	 * @param deliveryTime {@link System#nanoTime()} value the datagram is sent at
+	 * @param sequence delivery sequence number
+	 */
+	private record Delivery(
+			DatagramSocket socket,
+			byte[] data,
+			SocketAddress destination,
+			long deliveryTime,
+			long sequence
+	) implements Delayed
+	{
+		@Override
+		public long getDelay(TimeUnit unit)
+		{
+			return unit.convert(deliveryTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other)
+		{
+			Delivery delivery = (Delivery) other;
+			int result = Long.compare(deliveryTime - delivery.deliveryTime, 0);
+			return result != 0 ? result : Long.compare(sequence, delivery.sequence);
+		}
+	}
+}
@@ -0,0 +1,353 @@
+package com.enzulode.network.perf;
+
+import com.enzulode.network.exception.NetworkException;
+import com.enzulode.network.exception.ServerNotAvailableException;
+import com.enzulode.network.metrics.LatencyHistogram;
+import com.enzulode.network.metrics.LatencySnapshot;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Loopback end-to-end load generator.
+ * Starts a server and drives it with several clients in one of the following modes:
+ * <ul>
+ *     <li>open - requests are sent at a constant total rate regardless of responses. Latency is measured from
+ *     the time the request was scheduled at, so a stalled server is not hidden by clients waiting for it
+ *     (coordinated omission)</li>
+ *     <li>closed - every client sends the next request as soon as it receives the response. Latency is
+ *     corrected for coordinated omission with the expected interval between requests if it is provided</li>
+ * </ul>
+ *
+ * Options:
+ * <pre>
+ * --server=socket|channel|shm       server implementation (socket)
+ * --client=socket|channel|shm|local client implementation (socket)
+ * --clients=N                       the amount of clients (4)
+ * --mode=open|closed                load mode (closed)
+ * --rate=N                          total request rate per second in the open mode (1000)
+ * --expected-interval-us=N          expected interval between requests of a client in the closed mode (0)
+ * --warmup=S                        warmup duration in seconds, not measured (5)
+ * --duration=S                      measured duration in seconds (30)
+ * --request-size=DISTRIBUTION       request payload size distribution (fixed:256)
+ * --response-size=DISTRIBUTION      response payload size distribution (fixed:256)
+ * --proxy                           route the traffic through the {@link ImpairmentProxy}
+ * </pre>
+ * Size distributions are described in {@link SizeDistribution}, impairment options of the proxy
+ * are described in {@link Impairment#fromOptions(Options)}
+ *
+ */
+public final class LoadGenerator
+{
+	/**
+	 * Server implementation
+	 *
+	 */
+	private final String serverKind;
+
+	/**
+	 * Client implementation
+	 *
+	 */
+	private final String clientKind;
+
+	/**
+	 * The amount of clients
+	 *
+	 */
+	private final int clients;
+
+	/**
+	 * Open load mode state
+	 *
+	 */
+	private final boolean openLoop;
+
+	/**
+	 * Total request rate per second in the open mode
+	 *
+	 */
+	private final double rate;
+
+	/**
+	 * Expected interval between requests of a client in the closed mode
+	 *
+	 */
+	private final long expectedIntervalNanos;
+
+	/**
+	 * Warmup duration in nanoseconds
+	 *
+	 */
+	private final long warmupNanos;
+
+	/**
+	 * Measured duration in nanoseconds
+	 *
+	 */
+	private final long durationNanos;
+
+	/**
+	 * Request payload size distribution
+	 *
+	 */
+	private final SizeDistribution requestSizes;
+
+	/**
+	 * Response payload size distribution
+	 *
+	 */
+	private final SizeDistribution responseSizes;
+
+	/**
+	 * Impairment settings or null if the traffic is not routed through the proxy
+	 *
+	 */
+	private final Impairment impairment;
+
+	/**
+	 * Latency histograms of the clients
+	 *
+	 */
+	private final List<LatencyHistogram> histograms;
+
+	/**
+	 * The amount of measured responses
+	 *
+	 */
+	private final LongAdder responses;
+
+	/**
+	 * The amount of measured failed requests
+	 *
+	 */
+	private final LongAdder errors;
+
+	/**
+	 * Load generator constructor
+	 *
+	 * @param options command line options
+	 */
+	public LoadGenerator(Options options)
+	{
+		this.serverKind = options.get("server", "socket");
+		this.clientKind = options.get("client", "socket");
+		this.clients = options.getInt("clients", 4);
+		this.openLoop = "open".equals(options.get("mode", "closed"));
+		this.rate = options.getDouble("rate", 1000);
+		this.expectedIntervalNanos = TimeUnit.MICROSECONDS.toNanos(options.getInt("expected-interval-us", 0));
+		this.warmupNanos = TimeUnit.SECONDS.toNanos(options.getInt("warmup", 5));
+		this.durationNanos = TimeUnit.SECONDS.toNanos(options.getInt("duration", 30));
+		this.requestSizes = SizeDistribution.parse(options.get("request-size", "fixed:256"));
+		this.responseSizes = SizeDistribution.parse(options.get("response-size", "fixed:256"));
+		this.impairment = options.getBoolean("proxy") ? Impairment.fromOptions(options) : null;
+
+		if (clients <= 0 || rate <= 0)
+			throw new IllegalArgumentException("Clients count and rate have to be positive");
+
+		this.histograms = new ArrayList<>();
+		this.responses = new LongAdder();
+		this.errors = new LongAdder();
+	}
+
+	/**
+	 * Load generator entry point
+	 *
+	 * @param args load generator options
+	 * @throws Exception if the load test failed
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		new LoadGenerator(new Options(args)).run();
+		System.exit(0);
+	}
+
+	/**
+	 * This method runs the load test and prints the report
+	 *
+	 * @throws NetworkException if it's failed to start the server or open a client
+	 * @throws IOException if it's failed to start the proxy
+	 * @throws InterruptedException if the load generator thread was interrupted
+	 */
+	public void run() throws NetworkException, IOException, InterruptedException
+	{
+		ImpairmentProxy proxy = null;
+		try (Endpoints.Server server = Endpoints.startServer(serverKind, Endpoints.ECHO_HANDLER))
+		{
+			InetSocketAddress address = server.getAddress();
+			if (impairment != null)
+			{
+				proxy = new ImpairmentProxy(0, address, impairment, 0);
+				address = proxy.getAddress();
+			}
+
+			List<Endpoints.Client> openedClients = new ArrayList<>();
+			for (int i = 0; i < clients; i++)
+				openedClients.add(Endpoints.openClient(clientKind, address));
+
+			long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+			long measureFrom = start + warmupNanos;
+			long end = measureFrom + durationNanos;
+
+			CountDownLatch finished = new CountDownLatch(clients);
+			for (int i = 0; i < clients; i++)
+			{
+				LatencyHistogram histogram = new LatencyHistogram();
+				histograms.add(histogram);
+
+				Endpoints.Client client = openedClients.get(i);
+				long offset = (long) (i * 1e9 / rate);
+				Thread thread = new Thread(() -> {
+					try
+					{
+						drive(client, histogram, start + offset, measureFrom, end);
+					}
+					finally
+					{
+						finished.countDown();
+					}
+				}, "load-client-" + i);
+
+				thread.setDaemon(true);
+				thread.start();
+			}
+
+			finished.await();
+
+			for (Endpoints.Client client : openedClients)
+				client.close();
+
+			report();
+
+			if (proxy != null)
+				System.out.println("proxy " + impairment + "\n  " + proxy.statistics());
+		}
+		finally
+		{
+			if (proxy != null)
+				proxy.close();
+		}
+	}
+
+	/**
+	 * This method drives a single client
+	 *
+	 * @param client client instance
+	 * @param histogram client latency histogram
+	 * @param start the first request schedule time
+	 * @param measureFrom measurement start time
+	 * @param end load end time
+	 */
+	private void drive(Endpoints.Client client, LatencyHistogram histogram, long start, long measureFrom, long end)
+	{
+		Random random = new Random();
+		long interval = (long) (1e9 * clients / rate);
+
+		long scheduled = start;
+		while (true)
+		{
+			if (openLoop)
+			{
+				long delay;
+				while ((delay = scheduled - System.nanoTime()) > 0)
+					LockSupport.parkNanos(delay);
+			}
+			else
+			{
+				scheduled = System.nanoTime();
+			}
+
+			if (scheduled - end >= 0)
+				return;
+
+			LoadRequest request = new LoadRequest(new byte[requestSizes.next(random)], responseSizes.next(random));
+			boolean succeed;
+			try
+			{
+				client.exchange(request);
+				succeed = true;
+			}
+			catch (NetworkException | ServerNotAvailableException e)
+			{
+				succeed = false;
+			}
+
+			long latency = System.nanoTime() - scheduled;
+			if (scheduled - measureFrom >= 0)
+			{
+				if (succeed)
+				{
+					responses.increment();
+					record(histogram, latency);
+				}
+				else
+				{
+					errors.increment();
+				}
+			}
+
+			if (openLoop)
+				scheduled += interval;
+		}
+	}
+
+	/**
+	 * This method records the latency. In the closed mode latencies exceeding the expected interval
+	 * are complemented with the latencies of the requests that would have been sent meanwhile
+	 *
+	 * @param histogram latency histogram
+	 * @param latency latency in nanoseconds
+	 */
+	private void record(LatencyHistogram histogram, long latency)
+	{
+		histogram.record(latency);
+
+		if (openLoop || expectedIntervalNanos <= 0)
+			return;
+
+		for (long missed = latency - expectedIntervalNanos; missed >= expectedIntervalNanos; missed -= expectedIntervalNanos)
+			histogram.record(missed);
+	}
+
+	/**
+	 * This method prints the load test report
+	 *
+	 */
+	private void report()
+	{
+		LatencySnapshot latency = LatencySnapshot.EMPTY;
+		for (LatencyHistogram histogram : histograms)
+			latency = latency.merge(histogram.snapshot());
+
+		double seconds = durationNanos / 1e9;
+
+		System.out.printf(Locale.ROOT, "server=%s client=%s clients=%d mode=%s%s request-size=%s response-size=%s%n",
+				serverKind,
+				clientKind,
+				clients,
+				openLoop ? "open" : "closed",
+				openLoop ? " rate=" + rate : "",
+				requestSizes,
+				responseSizes
+		);
+		System.out.printf(Locale.ROOT, "responses=%d errors=%d throughput=%.1f req/s%n",
+				responses.sum(),
+				errors.sum(),
+				responses.sum() / seconds
+		);
+		System.out.printf(Locale.ROOT, "latency (us, coordinated omission corrected):%n");
+		for (double percentile : new double[] {50, 90, 99, 99.9, 99.99})
+			System.out.printf(Locale.ROOT, "  p%-6s %12.1f%n", percentile, latency.getValueAtPercentile(percentile) / 1e3);
+
+		System.out.printf(Locale.ROOT, "  max     %12.1f%n", latency.getMax() / 1e3);
+		System.out.printf(Locale.ROOT, "  mean    %12.1f%n", latency.getMean() / 1e3);
+	}
+}
@@ -0,0 +1,63 @@
+package com.enzulode.network.perf;
+
+import com.enzulode.network.model.interconnection.Request;
+
+import java.io.Serial;
+
+/**
+ * Load test request: carries a payload and the size of the expected response payload
+ *
+ */
+public final class LoadRequest extends Request
+{
+	/**
+	 * Serial UID
+	 *
+	 */
+	@Serial
+	private static final long serialVersionUID = 7725133905236474561L;
+
+	/**
+	 * Request payload
+	 *
+	 */
+	private final byte[] payload;
+
+	/**
+	 * Expected response payload size
+	 *
+	 */
+	private final int responseSize;
+
+	/**
+	 * Load request constructor
+	 *
+	 * @param payload request payload
+	 * @param responseSize expected response payload size in bytes
+	 */
+	public LoadRequest(byte[] payload, int responseSize)
+	{
+		this.payload = payload;
+		this.responseSize = responseSize;
+	}
+
+	/**
+	 * Payload getter
+	 *
+	 * @return request payload
+	 */
+	public byte[] getPayload()
+	{
+		return payload;
+	}
+
+	/**
+	 * Expected response payload size getter
+	 *
+	 * @return response payload size in bytes
+	 */
+	public int getResponseSize()
+	{
+		return responseSize;
+	}
+}
@@ -0,0 +1,47 @@
+package com.enzulode.network.perf;
+
+import com.enzulode.network.model.interconnection.Response;
+import com.enzulode.network.model.interconnection.util.ResponseCode;
+
+import java.io.Serial;
+
+/**
+ * Load test response carrying a payload of the requested size
+ *
+ */
+public final class LoadResponse extends Response
+{
+	/**
+	 * Serial UID
+	 *
+	 */
+	@Serial
+	private static final long serialVersionUID = -1870427719457265380L;
+
+	/**
+	 * Response payload
+	 *
+	 */
+	private final byte[] payload;
+
+	/**
+	 * Load response constructor
+	 *
+	 * @param payload response payload
+	 */
+	public LoadResponse(byte[] payload)
+	{
+		super(ResponseCode.SUCCEED);
+		this.payload = payload;
+	}
+
+	/**
+	 * Payload getter
+	 *
+	 * @return response payload
+	 */
+	public byte[] getPayload()
+	{
+		return payload;
+	}
+}
@@ -0,0 +1,88 @@
+package com.enzulode.network.perf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options in {@code --name=value} form
+ *
+ */
+public final class Options
+{
+	/**
+	 * Option values by name
+	 *
+	 */
+	private final Map<String, String> values;
+
+	/**
+	 * Options constructor
+	 *
+	 * @param args command line arguments
+	 */
+	public Options(String[] args)
+	{
+		this.values = new HashMap<>();
+
+		for (String arg : args)
+		{
+			if (!arg.startsWith("--"))
+				throw new IllegalArgumentException("Unexpected argument: " + arg);
+
+			int separator = arg.indexOf('=');
+			if (separator < 0)
+				values.put(arg.substring(2), "true");
+			else
+				values.put(arg.substring(2, separator), arg.substring(separator + 1));
+		}
+	}
+
+	/**
+	 * String option getter
+	 *
+	 * @param name option name
+	 * @param defaultValue default value
+	 * @return option value
+	 */
+	public String get(String name, String defaultValue)
+	{
+		return values.getOrDefault(name, defaultValue);
+	}
+
+	/**
+	 * Integer option getter
+	 *
+	 * @param name option name
+	 * @param defaultValue default value
+	 * @return option value
+	 */
+	public int getInt(String name, int defaultValue)
+	{
+		String value = values.get(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	/**
+	 * Floating point option getter
+	 *
+	 * @param name option name
+	 * @param defaultValue default value
+	 * @return option value
+	 */
+	public double getDouble(String name, double defaultValue)
+	{
+		String value = values.get(name);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+
+	/**
+	 * Boolean option getter
+	 *
+	 * @param name option name
+	 * @return true if the option is set to true
+	 */
+	public boolean getBoolean(String name)
+	{
+		return Boolean.parseBoolean(values.get(name));
+	}
+}
@@ -0,0 +1,168 @@
+package com.enzulode.network.perf;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Payload size distribution. Distributions are parsed from the following specifications:
+ * <ul>
+ *     <li>{@code fixed:256} - every payload is 256 bytes long</li>
+ *     <li>{@code uniform:64:4096} - payload size is uniformly distributed from 64 to 4096 bytes</li>
+ *     <li>{@code mix:128@90,16384@9,1048576@1} - weighted mix of fixed sizes (size@weight)</li>
+ * </ul>
+ *
+ */
+public final class SizeDistribution
+{
+	/**
+	 * Distribution sizes: a single size for the fixed distribution, bounds for the uniform one
+	 * or the mix sizes
+	 *
+	 */
+	private final int[] sizes;
+
+	/**
+	 * Cumulative mix weights or null if the distribution is not a mix
+	 *
+	 */
+	private final int[] cumulativeWeights;
+
+	/**
+	 * Uniform distribution state
+	 *
+	 */
+	private final boolean uniform;
+
+	/**
+	 * Distribution specification
+	 *
+	 */
+	private final String specification;
+
+	/**
+	 * Size distribution constructor
+	 *
+	 * @param sizes distribution sizes
+	 * @param cumulativeWeights cumulative mix weights or null
+	 * @param uniform uniform distribution state
+	 * @param specification distribution specification
+	 */
+	private SizeDistribution(int[] sizes, int[] cumulativeWeights, boolean uniform, String specification)
+	{
+		this.sizes = sizes;
+		this.cumulativeWeights = cumulativeWeights;
+		this.uniform = uniform;
+		this.specification = specification;
+	}
+
+	/**
+	 * This method parses the distribution specification
+	 *
+	 * @param specification distribution specification
+	 * @return size distribution
+	 */
+	public static SizeDistribution parse(String specification)
+	{
+		Objects.requireNonNull(specification, "Distribution specification cannot be null");
+
+		String[] parts = specification.split(":");
+		try
+		{
+			switch (parts[0])
+			{
+				case "fixed":
+					if (parts.length == 2)
+						return new SizeDistribution(new int[] {size(parts[1])}, null, false, specification);
+					break;
+
+				case "uniform":
+					if (parts.length == 3 && size(parts[1]) <= size(parts[2]))
+						return new SizeDistribution(new int[] {size(parts[1]), size(parts[2])}, null, true, specification);
+					break;
+
+				case "mix":
+					if (parts.length == 2)
+						return parseMix(parts[1], specification);
+					break;
+
+				default:
+					break;
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Invalid size distribution: " + specification, e);
+		}
+
+		throw new IllegalArgumentException("Invalid size distribution: " + specification);
+	}
+
+	/**
+	 * This method picks the next payload size
+	 *
+	 * @param random random instance
+	 * @return payload size in bytes
+	 */
+	public int next(Random random)
+	{
+		if (uniform)
+			return sizes[0] + random.nextInt(sizes[1] - sizes[0] + 1);
+
+		if (cumulativeWeights == null)
+			return sizes[0];
+
+		int point = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		int index = Arrays.binarySearch(cumulativeWeights, point + 1);
+		return sizes[index >= 0 ? index : -index - 1];
+	}
+
+	@Override
+	public String toString()
+	{
+		return specification;
+	}
+
+	/**
+	 * This method parses the weighted mix of sizes
+	 *
+	 * @param mix comma separated size@weight pairs
+	 * @param specification distribution specification
+	 * @return size distribution
+	 */
+	private static SizeDistribution parseMix(String mix, String specification)
+	{
+		String[] entries = mix.split(",");
+		int[] sizes = new int[entries.length];
+		int[] cumulativeWeights = new int[entries.length];
+
+		int total = 0;
+		for (int i = 0; i < entries.length; i++)
+		{
+			String[] entry = entries[i].split("@");
+			if (entry.length != 2 || Integer.parseInt(entry[1]) <= 0)
+				throw new IllegalArgumentException("Invalid size distribution: " + specification);
+
+			sizes[i] = size(entry[0]);
+			total += Integer.parseInt(entry[1]);
+			cumulativeWeights[i] = total;
+		}
+
+		return new SizeDistribution(sizes, cumulativeWeights, false, specification);
+	}
+
+	/**
+	 * This method parses a non-negative size
+	 *
+	 * @param size size
+	 * @return size in bytes
+	 */
+	private static int size(String size)
+	{
+		int value = Integer.parseInt(size);
+		if (value < 0)
+			throw new IllegalArgumentException("Payload size cannot be negative");
+
+		return value;
+	}
+}